@@ -0,0 +1,136 @@
+/*
+ * @author 2018 Simone Pezzano
+ * ---
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package simonepezzano.exonschema;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generates synthetic JSON documents for the benchmarks, made of the same maps and lists the deserializer produces.
+ * Every object has "width" keys: one of them is an array of objects, one is a nested object, the others are base
+ * types. Objects nest down to "depth" levels
+ */
+public class BenchmarkData {
+
+    private static final String[] WORDS = {"alpha","beta","gamma","delta","epsilon","zeta","eta","theta"};
+
+    private final int depth;
+    private final int width;
+    private final int arrayLength;
+    private final double heterogeneity;
+    private final Random random;
+
+    /**
+     * Default constructor
+     * @param depth how many levels of objects are nested
+     * @param width how many keys each object has
+     * @param arrayLength how many items each array has
+     * @param heterogeneity the probability (0 to 1) of an array item having a different structure from its siblings
+     * @param seed the seed of the random generator, so that documents can be reproduced
+     */
+    public BenchmarkData(int depth, int width, int arrayLength, double heterogeneity, long seed){
+        if(depth < 0 || width < 2 || arrayLength < 0)
+            throw new IllegalArgumentException("Depth must be at least 0, width at least 2, array length at least 0");
+        if(heterogeneity < 0 || heterogeneity > 1)
+            throw new IllegalArgumentException("Heterogeneity must be between 0 and 1");
+        this.depth = depth;
+        this.width = width;
+        this.arrayLength = arrayLength;
+        this.heterogeneity = heterogeneity;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * @return a new document
+     */
+    public Map<String,Object> generate(){
+        return generateObject(depth,false);
+    }
+
+    /**
+     * Generates an object
+     * @param level the levels of nesting left
+     * @param variant true if the object should differ from the regular structure
+     * @return the object
+     */
+    private Map<String,Object> generateObject(int level, boolean variant){
+        final Map<String,Object> object = new LinkedHashMap<>();
+        for(int i = 0; i < width; i++){
+            final String key = "field_"+i;
+            if(level > 0 && i == 0)
+                object.put(key,generateArray(level-1));
+            else
+                if(level > 0 && i == 1)
+                    object.put(key,generateObject(level-1,false));
+                else
+                    object.put(key,generateValue(variant ? i+1 : i));
+        }
+        // Variants have an extra key or miss one, or have different types, depending on the dice
+        if(variant){
+            switch(random.nextInt(3)){
+                case 0:
+                    object.put("extra_"+random.nextInt(4),generateValue(random.nextInt(4)));
+                    break;
+                case 1:
+                    object.remove("field_"+(width-1));
+                    break;
+                default:
+            }
+        }
+        return object;
+    }
+
+    /**
+     * Generates an array of objects
+     * @param level the levels of nesting of the objects
+     * @return the array
+     */
+    private List<Object> generateArray(int level){
+        final List<Object> array = new ArrayList<>(arrayLength);
+        for(int i = 0; i < arrayLength; i++)
+            array.add(generateObject(level,random.nextDouble() < heterogeneity));
+        return array;
+    }
+
+    /**
+     * Generates a base type value
+     * @param kind selects the type of the value
+     * @return the value
+     */
+    private Object generateValue(int kind){
+        switch(kind % 5){
+            case 0:
+                return WORDS[random.nextInt(WORDS.length)];
+            case 1:
+                return random.nextInt(1000);
+            case 2:
+                return random.nextDouble();
+            case 3:
+                return random.nextBoolean();
+            default:
+                return random.nextInt(10) == 0 ? null : WORDS[random.nextInt(WORDS.length)]+random.nextInt(100);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * @author 2018 Simone Pezzano
+ * ---
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package simonepezzano.exonschema;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the main stages of the schema extraction: walking the data (from scratch or hitting the shape
+ * cache), simplifying, merging, comparing, serializing and checkpointing the schemas. Run with the gc profiler (the default of the
+ * "benchmarks" Maven profile) to get the allocation rate of each stage
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExonBenchmarks {
+
+    public static final String SYNTHETIC = "synthetic";
+
+    /**
+     * Either "synthetic" or the path of a JSON file
+     */
+    @Param({"samples/real_world/spotify.json",SYNTHETIC})
+    public String dataset;
+
+    @Param({"3"})
+    public int depth;
+
+    @Param({"10"})
+    public int width;
+
+    @Param({"20"})
+    public int arrayLength;
+
+    @Param({"0.1"})
+    public double heterogeneity;
+
+    private Object data;
+
+    private Schema schema;
+
+    private Schema otherSchema;
+
+    private Schema clonedSchema;
+
+    private final ExonWalker walker = new ExonWalker();
+
+    private final ExonSimplifier simplifier = new ExonSimplifier();
+
+    private final ExonSchemaCache cache = new ExonSchemaCache();
+
+    private final ExonSchemaMerger merger = new ExonSchemaMerger();
+
+    private final ExonSchemaWriter compactWriter = new ExonSchemaWriter();
+
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+    private String json;
+
+    private byte[] checkpoint;
+
+    @Setup
+    public void setup() throws IOException {
+        Object otherData;
+        if(SYNTHETIC.equals(dataset)) {
+            data = new BenchmarkData(depth,width,arrayLength,heterogeneity,1).generate();
+            otherData = new BenchmarkData(depth,width,arrayLength,heterogeneity,2).generate();
+        } else {
+            data = ExonUtils.deserializeJsonPayload(new File(dataset));
+            otherData = data;
+        }
+        schema = walker.analyze(data,"#","benchmark");
+        otherSchema = walker.analyze(otherData,"#","benchmark");
+        clonedSchema = schema.clone();
+        cache.analyze(data,"#","benchmark");
+        compactWriter.setPretty(false);
+        json = ExonUtils.serializeJsonPayload(schema);
+        final ByteArrayOutputStream checkpointOutput = new ByteArrayOutputStream();
+        ExonCheckpoint.write(schema,checkpointOutput);
+        checkpoint = checkpointOutput.toByteArray();
+    }
+
+    @Benchmark
+    public Schema walk(){
+        return walker.analyze(data,"#","benchmark");
+    }
+
+    /**
+     * Walking a document whose shape has been seen already
+     */
+    @Benchmark
+    public Schema cachedWalk(){
+        return cache.analyze(data,"#","benchmark");
+    }
+
+    @Benchmark
+    public Schema simplify(){
+        return simplifier.analyze(schema);
+    }
+
+    @Benchmark
+    public Property merge(){
+        return ExonUtils.merge(schema,otherSchema);
+    }
+
+    /**
+     * The recursive merge whose outcome does not depend on the order of the schemas
+     */
+    @Benchmark
+    public Schema orderIndependentMerge(){
+        return merger.merge(schema,otherSchema);
+    }
+
+    @Benchmark
+    public boolean equivalentTo(){
+        return schema.equivalentTo(clonedSchema);
+    }
+
+    @Benchmark
+    public String serialize() throws IOException {
+        return ExonUtils.serializeJsonPayload(schema);
+    }
+
+    @Benchmark
+    public int writeCompact() throws IOException {
+        output.reset();
+        compactWriter.write(schema,output);
+        return output.size();
+    }
+
+    @Benchmark
+    public int writeCheckpoint() throws IOException {
+        output.reset();
+        ExonCheckpoint.write(schema,output);
+        return output.size();
+    }
+
+    @Benchmark
+    public Schema readCheckpoint() throws IOException {
+        return ExonCheckpoint.readSchema(new ByteArrayInputStream(checkpoint));
+    }
+
+    /**
+     * The JSON round trip readCheckpoint is meant to replace
+     */
+    @Benchmark
+    public Schema readJson() throws IOException {
+        return Schema.create(json);
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * @author 2018 Simone Pezzano
+ * ---
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package simonepezzano.exonschema;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Benchmarks of the classification of strings into formats: the hand-written classifiers, on strings and on a
+ * buffer of characters as the one of a parser, against the equivalent regular expressions. The operation is the
+ * classification of all the strings of a document
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FormatBenchmarks {
+
+    private static final Pattern DATE_TIME = Pattern.compile(
+            "\\d{4}-(0[1-9]|1[0-2])-(0[1-9]|[12]\\d|3[01])T([01]\\d|2[0-3]):[0-5]\\d:[0-5]\\d(\\.\\d{1,9})?" +
+            "(Z|[+-](0\\d|1[0-7]):[0-5]\\d|[+-]18:00)");
+
+    private static final Pattern UUID = Pattern.compile(
+            "[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}");
+
+    private static final Pattern IPV4 = Pattern.compile(
+            "(25[0-5]|2[0-4]\\d|1\\d\\d|[1-9]?\\d)(\\.(25[0-5]|2[0-4]\\d|1\\d\\d|[1-9]?\\d)){3}");
+
+    private static final Pattern EMAIL = Pattern.compile(
+            "(?=.{1,64}@)[A-Za-z0-9!#$%&'*+/=?^_`{|}~-]+(\\.[A-Za-z0-9!#$%&'*+/=?^_`{|}~-]+)*@" +
+            "(?=.{1,253}$)([A-Za-z0-9]([A-Za-z0-9-]{0,61}[A-Za-z0-9])?\\.)+[A-Za-z]{2,63}");
+
+    private static final Pattern URI = Pattern.compile(
+            "[A-Za-z][A-Za-z0-9+.-]*:(?!#)(?!//$)([A-Za-z0-9\\-._~:/?@!$&'()*+,;=]|%[0-9a-fA-F]{2})+" +
+            "(#([A-Za-z0-9\\-._~:/?@!$&'()*+,;=]|%[0-9a-fA-F]{2})*)?");
+
+    private static final Pattern[] PATTERNS = {DATE_TIME,UUID,IPV4,EMAIL,URI};
+
+    /**
+     * The path of a JSON file, whose strings get classified
+     */
+    @Param({"samples/real_world/spotify.json"})
+    public String dataset;
+
+    private String[] strings;
+
+    /**
+     * All the strings one after the other, with their offsets, as they'd be found in the buffer of a parser
+     */
+    private char[] buffer;
+
+    private int[] offsets;
+
+    @Setup
+    public void setup() throws IOException {
+        final List<String> found = new ArrayList<>();
+        collect(ExonUtils.deserializeJsonPayload(new File(dataset)),found);
+        strings = found.toArray(new String[0]);
+        offsets = new int[strings.length+1];
+        final StringBuilder builder = new StringBuilder();
+        for(int i = 0; i < strings.length; i++) {
+            offsets[i] = builder.length();
+            builder.append(strings[i]);
+        }
+        offsets[strings.length] = builder.length();
+        buffer = builder.toString().toCharArray();
+    }
+
+    private static void collect(Object data, List<String> found){
+        if(data instanceof Map)
+            ((Map<?,?>) data).values().forEach(value -> collect(value,found));
+        else if(data instanceof List)
+            ((List<?>) data).forEach(value -> collect(value,found));
+        else if(data instanceof String)
+            found.add((String) data);
+    }
+
+    @Benchmark
+    public int handWritten(){
+        int formats = 0;
+        for(String string : strings)
+            formats += StringFormat.match(string,StringFormat.ALL);
+        return formats;
+    }
+
+    @Benchmark
+    public int handWrittenBuffer(){
+        int formats = 0;
+        for(int i = 0; i < strings.length; i++)
+            formats += StringFormat.match(buffer,offsets[i],offsets[i+1]-offsets[i],StringFormat.ALL);
+        return formats;
+    }
+
+    @Benchmark
+    public int regex(){
+        int formats = 0;
+        for(String string : strings) {
+            int mask = 0;
+            for(int i = 0; i < PATTERNS.length; i++)
+                if(PATTERNS[i].matcher(string).matches())
+                    mask |= 1 << i;
+            formats += mask;
+        }
+        return formats;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * @author 2018 Simone Pezzano
+ * ---
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package simonepezzano.exonschema;
+
+import com.fasterxml.jackson.core.JsonParser;
+import org.everit.json.schema.loader.SchemaLoader;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the validation of a document against its schema: the compiled ExonValidator, on the deserialized
+ * document and on its tokens, against the interpreting everit validator. Parsing is included in the token-stream
+ * benchmarks only, as it's the whole point of validating tokens
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ValidatorBenchmarks {
+
+    /**
+     * Either "synthetic" or the path of a JSON file. The synthetic documents are not in the defaults, as everit
+     * builds an exception for each "anyOf" scenario that doesn't match, and runs out of memory on their nested
+     * scenarios
+     */
+    @Param({"samples/real_world/spotify.json"})
+    public String dataset;
+
+    @Param({"3"})
+    public int depth;
+
+    @Param({"10"})
+    public int width;
+
+    @Param({"20"})
+    public int arrayLength;
+
+    @Param({"0.1"})
+    public double heterogeneity;
+
+    private Object data;
+
+    private byte[] json;
+
+    private JSONObject everitData;
+
+    private ExonValidator compiled;
+
+    private org.everit.json.schema.Schema everit;
+
+    @Setup
+    public void setup() throws IOException {
+        if(ExonBenchmarks.SYNTHETIC.equals(dataset))
+            data = new BenchmarkData(depth,width,arrayLength,heterogeneity,1).generate();
+        else
+            data = ExonUtils.deserializeJsonPayload(new File(dataset));
+        final Schema schema = new ExonWalker().analyze(data,"#","benchmark");
+        final String serialized = ExonUtils.serializeJsonPayload(data);
+        json = serialized.getBytes(StandardCharsets.UTF_8);
+        everitData = new JSONObject(serialized);
+        compiled = ExonValidator.compile(schema);
+        everit = SchemaLoader.load(new JSONObject(ExonUtils.serializeJsonPayload(schema)));
+    }
+
+    @Benchmark
+    public boolean compiledTree(){
+        return compiled.isValid(data);
+    }
+
+    @Benchmark
+    public boolean compiledStream() throws IOException {
+        try(JsonParser parser = ExonUtils.createParser(json)) {
+            return compiled.isValid(parser);
+        }
+    }
+
+    @Benchmark
+    public boolean everit(){
+        everit.validate(everitData);
+        return true;
+    }
+}
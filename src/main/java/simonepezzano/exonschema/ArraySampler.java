@@ -0,0 +1,141 @@
+/*
+ * @author 2018 Simone Pezzano
+ * ---
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package simonepezzano.exonschema;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Applies a sampling policy to the items of one array, as the walkers go through them. For each index the walker
+ * asks whether the item should be analyzed, and whether the rest of the array can be skipped altogether
+ */
+class ArraySampler {
+
+    private final SamplingPolicy policy;
+
+    private final ScenarioCollector collector;
+
+    /**
+     * Reservoir sampling only: the sampled items and their indexes
+     */
+    private Property[] reservoir;
+    private int[] reservoirIndexes;
+    private int reservoirSize;
+
+    /**
+     * Adaptive sampling only: how many items in a row left the scenarios unchanged
+     */
+    private int streak;
+
+    private int pendingSlot;
+
+    ArraySampler(SamplingPolicy policy, ExamplesPolicy examplesPolicy, ExonListener listener, boolean valueStatistics){
+        this.policy = policy;
+        this.collector = new ScenarioCollector(examplesPolicy,listener,valueStatistics);
+        if(policy.getMode() == SamplingPolicy.Mode.RESERVOIR) {
+            reservoir = new Property[policy.getLimit()];
+            reservoirIndexes = new int[policy.getLimit()];
+        }
+    }
+
+    /**
+     * @param index the index of an item
+     * @return true if the item should be analyzed and passed to add
+     */
+    boolean accept(int index){
+        switch(policy.getMode()){
+            case FIRST:
+                return index < policy.getLimit();
+            case STRIDE:
+                return index % policy.getLimit() == 0;
+            case RESERVOIR:
+                if(index < policy.getLimit()) {
+                    pendingSlot = index;
+                    return true;
+                }
+                // The item replaces a random sampled item with probability limit/(index+1)
+                pendingSlot = (int)Math.min(Math.floorMod(SamplingPolicy.scramble(index),index+1L),Integer.MAX_VALUE);
+                return pendingSlot < policy.getLimit();
+            case ADAPTIVE:
+                return streak < policy.getLimit();
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * @param index the index of the next item
+     * @return true if none of the items from the provided index on will be accepted
+     */
+    boolean isComplete(int index){
+        switch(policy.getMode()){
+            case FIRST:
+                return index >= policy.getLimit();
+            case ADAPTIVE:
+                return streak >= policy.getLimit();
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Adds an accepted item
+     * @param index the index of the item
+     * @param item the property describing the item
+     */
+    void add(int index, Property item){
+        if(reservoir != null) {
+            reservoir[pendingSlot] = item;
+            reservoirIndexes[pendingSlot] = index;
+            reservoirSize = Math.max(reservoirSize,pendingSlot+1);
+            return;
+        }
+        if(collector.add(item))
+            streak = 0;
+        else
+            streak++;
+    }
+
+    /**
+     * @return the scenarios of the analyzed items, in the order of the items
+     */
+    List<Property> getScenarios(){
+        if(reservoir != null && reservoirSize > 0) {
+            // The sampled items get folded in their original order
+            final Integer[] order = new Integer[reservoirSize];
+            for(int i = 0; i < reservoirSize; i++)
+                order[i] = i;
+            Arrays.sort(order,(a,b) -> Integer.compare(reservoirIndexes[a],reservoirIndexes[b]));
+            for(final Integer slot : order)
+                collector.add(reservoir[slot]);
+            reservoir = null;
+        }
+        return collector.getScenarios();
+    }
+
+    /**
+     * @return true if no item has been analyzed
+     */
+    boolean isEmpty(){
+        return collector.isEmpty() && reservoirSize == 0;
+    }
+}
@@ -0,0 +1,390 @@
+/*
+ * @author 2018 Simone Pezzano
+ * ---
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package simonepezzano.exonschema;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The distinct values of a base type property, numbers and strings. The values are kept in a small exact set
+ * until there are more than EXACT_LIMIT of them; then the set is dropped, and the values are only counted by a
+ * HyperLogLog sketch of fixed size, with a standard error of about 3%. Both merge with the ones of other properties,
+ * so the number of distinct values is known however many values and schemas go through
+ */
+public final class DistinctValues {
+
+    /**
+     * The number of distinct values the exact set holds at most
+     */
+    static final int EXACT_LIMIT = 32;
+
+    /**
+     * The number of times each distinct value must have been seen, on average, for the values to be an enum
+     */
+    static final int ENUM_REPEATS = 3;
+
+    /**
+     * The number of bits of a hash that select a register of the sketch
+     */
+    static final int PRECISION = 10;
+
+    static final int REGISTERS = 1 << PRECISION;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static final long NUMBER_SEED = 0x9e3779b97f4a7c15L;
+
+    /**
+     * The number of values seen, distinct or not
+     */
+    long count;
+
+    /**
+     * The exact set: the distinct values, as Strings, Longs (numbers with no fractional part) and Doubles, and
+     * their hashes, in the first size slots. Null once the values are only counted by the sketch
+     */
+    Object[] values = new Object[2];
+
+    long[] hashes = new long[2];
+
+    int size;
+
+    /**
+     * The registers of the sketch, allocated when the exact set is dropped
+     */
+    byte[] registers;
+
+    /**
+     * A number of distinct values known otherwise, as when reading a schema
+     */
+    long lowerBound;
+
+    /**
+     * Default constructor, with no values
+     */
+    public DistinctValues(){
+        super();
+    }
+
+    /**
+     * @param value a string
+     */
+    public void addString(CharSequence value){
+        long hash = FNV_OFFSET;
+        for(int i = 0; i < value.length(); i++)
+            hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+        hash = mix(hash);
+        count++;
+        if(values == null)
+            addHash(hash);
+        else
+            if(indexOf(hash,value) < 0)
+                addExact(hash,value.toString());
+    }
+
+    /**
+     * Adds a string held in a portion of an array of characters, as the text buffer of a parser. The string is
+     * only copied if it's a new value of the exact set
+     * @param chars the characters
+     * @param offset the offset of the string in the array
+     * @param length the length of the string
+     */
+    public void addString(char[] chars, int offset, int length){
+        long hash = FNV_OFFSET;
+        for(int i = offset; i < offset+length; i++)
+            hash = (hash ^ chars[i]) * FNV_PRIME;
+        hash = mix(hash);
+        count++;
+        if(values == null)
+            addHash(hash);
+        else
+            if(indexOf(hash,chars,offset,length) < 0)
+                addExact(hash,new String(chars,offset,length));
+    }
+
+    /**
+     * @param value an integer
+     */
+    public void addInteger(long value){
+        final long hash = mix(value + NUMBER_SEED);
+        count++;
+        if(values == null)
+            addHash(hash);
+        else
+            if(indexOf(hash,value) < 0)
+                addExact(hash,value);
+    }
+
+    /**
+     * @param value a number. Numbers with no fractional part count as integers, so 2 and 2.0 are the same value
+     */
+    public void addNumber(double value){
+        if(value == Math.rint(value) && Math.abs(value) < 0x1p63) {
+            addInteger((long) value);
+            return;
+        }
+        final long hash = mix(Double.doubleToLongBits(value) ^ NUMBER_SEED);
+        count++;
+        if(values == null)
+            addHash(hash);
+        else
+            if(indexOf(hash,value) < 0)
+                addExact(hash,value);
+    }
+
+    /**
+     * Adds a value, as when reading a schema
+     * @param value a string or a number, anything else is ignored
+     */
+    void add(Object value){
+        if(value instanceof CharSequence)
+            addString((CharSequence) value);
+        else if(value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte)
+            addInteger(((Number) value).longValue());
+        else if(value instanceof Number)
+            addNumber(((Number) value).doubleValue());
+    }
+
+    /**
+     * Adds the values of other distinct values to these ones
+     * @param other the other distinct values, may be null
+     */
+    public void add(DistinctValues other){
+        if(other == null)
+            return;
+        count += other.count;
+        lowerBound = Math.max(lowerBound,other.lowerBound);
+        if(other.values != null) {
+            for(int i = 0; i < other.size; i++)
+                if(values == null)
+                    addHash(other.hashes[i]);
+                else
+                    if(indexOf(other.hashes[i],other.values[i]) < 0)
+                        addExact(other.hashes[i],other.values[i]);
+        } else {
+            if(values != null)
+                dropExactSet();
+            if(other.registers != null && registers == null)
+                registers = new byte[REGISTERS];
+            if(other.registers != null)
+                for(int i = 0; i < REGISTERS; i++)
+                    registers[i] = (byte) Math.max(registers[i],other.registers[i]);
+        }
+    }
+
+    public DistinctValues copy(){
+        final DistinctValues copy = new DistinctValues();
+        copy.count = count;
+        copy.lowerBound = lowerBound;
+        if(values != null) {
+            copy.values = Arrays.copyOf(values,Math.max(size,2));
+            copy.hashes = Arrays.copyOf(hashes,Math.max(size,2));
+            copy.size = size;
+        } else {
+            copy.values = null;
+            copy.hashes = null;
+            copy.registers = (registers != null) ? registers.clone() : null;
+        }
+        return copy;
+    }
+
+    /**
+     * @return the number of values seen, distinct or not
+     */
+    public long getCount(){
+        return count;
+    }
+
+    /**
+     * @return true if the distinct values are known exactly, rather than estimated
+     */
+    public boolean isExact(){
+        return values != null && lowerBound <= size;
+    }
+
+    /**
+     * @return the number of distinct values, exact if isExact, estimated otherwise
+     */
+    public long getCardinality(){
+        if(values != null)
+            return Math.max(size,lowerBound);
+        if(registers == null)
+            return lowerBound;
+        double sum = 0;
+        int zeros = 0;
+        for(byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if(register == 0)
+                zeros++;
+        }
+        final double alpha = 0.7213 / (1 + 1.079 / REGISTERS);
+        double estimate = alpha * REGISTERS * REGISTERS / sum;
+        // Linear counting is more accurate for small cardinalities
+        if(estimate <= 2.5 * REGISTERS && zeros > 0)
+            estimate = REGISTERS * Math.log((double) REGISTERS / zeros);
+        return Math.max(Math.round(estimate),lowerBound);
+    }
+
+    /**
+     * @return the distinct values, numbers first and then strings, each in their natural order, or null if they
+     * are not known exactly
+     */
+    public List<Object> getValues(){
+        if(!isExact())
+            return null;
+        final Object[] sorted = Arrays.copyOf(values,size);
+        Arrays.sort(sorted,DistinctValues::compare);
+        return new ArrayList<>(Arrays.asList(sorted));
+    }
+
+    /**
+     * @return true if the values are so few, and repeated so often, that they're an enumeration
+     */
+    public boolean isEnum(){
+        return isExact() && size > 0 && count >= (long) size * ENUM_REPEATS;
+    }
+
+    /**
+     * Sets the values as an enumeration, as when reading a schema: they're taken as seen just often enough to be one
+     * @param enumValues the values, anything but strings and numbers is ignored
+     */
+    void setEnum(List<?> enumValues){
+        enumValues.forEach(this::add);
+        count = Math.max(count,(long) size * ENUM_REPEATS);
+    }
+
+    /**
+     * Adds the hash of a value to the sketch
+     * @param hash the hash
+     */
+    private void addHash(long hash){
+        if(registers == null)
+            registers = new byte[REGISTERS];
+        final int index = (int) (hash >>> (64 - PRECISION));
+        final byte rank = (byte) (Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1);
+        if(rank > registers[index])
+            registers[index] = rank;
+    }
+
+    /**
+     * Adds a new value to the exact set, or drops the set for the sketch if it's full
+     * @param hash the hash of the value
+     * @param value the value
+     */
+    private void addExact(long hash, Object value){
+        if(size == EXACT_LIMIT) {
+            dropExactSet();
+            addHash(hash);
+            return;
+        }
+        if(size == values.length) {
+            values = Arrays.copyOf(values,size*2);
+            hashes = Arrays.copyOf(hashes,size*2);
+        }
+        values[size] = value;
+        hashes[size] = hash;
+        size++;
+    }
+
+    /**
+     * Drops the exact set, so that the values are only counted by the sketch
+     */
+    void dropExactSet(){
+        for(int i = 0; i < size; i++)
+            addHash(hashes[i]);
+        values = null;
+        hashes = null;
+        size = 0;
+    }
+
+    private int indexOf(long hash, Object value){
+        for(int i = 0; i < size; i++)
+            if(hashes[i] == hash && values[i].equals(value))
+                return i;
+        return -1;
+    }
+
+    private int indexOf(long hash, long value){
+        for(int i = 0; i < size; i++)
+            if(hashes[i] == hash && values[i] instanceof Long && (Long) values[i] == value)
+                return i;
+        return -1;
+    }
+
+    private int indexOf(long hash, double value){
+        for(int i = 0; i < size; i++)
+            if(hashes[i] == hash && values[i] instanceof Double && Double.compare((Double) values[i],value) == 0)
+                return i;
+        return -1;
+    }
+
+    private int indexOf(long hash, CharSequence value){
+        for(int i = 0; i < size; i++)
+            if(hashes[i] == hash && values[i] instanceof String && ((String) values[i]).contentEquals(value))
+                return i;
+        return -1;
+    }
+
+    private int indexOf(long hash, char[] chars, int offset, int length){
+        for(int i = 0; i < size; i++)
+            if(hashes[i] == hash && values[i] instanceof String && equals((String) values[i],chars,offset,length))
+                return i;
+        return -1;
+    }
+
+    private static boolean equals(String value, char[] chars, int offset, int length){
+        if(value.length() != length)
+            return false;
+        for(int i = 0; i < length; i++)
+            if(value.charAt(i) != chars[offset+i])
+                return false;
+        return true;
+    }
+
+    /**
+     * The finalizer of MurmurHash3, so that all the bits of a hash depend on all the bits of the value
+     */
+    private static long mix(long hash){
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static int compare(Object first, Object second){
+        final boolean firstString = first instanceof String;
+        final boolean secondString = second instanceof String;
+        if(firstString && secondString)
+            return ((String) first).compareTo((String) second);
+        if(firstString || secondString)
+            return firstString ? 1 : -1;
+        if(first instanceof Long && second instanceof Long)
+            return Long.compare((Long) first,(Long) second);
+        return Double.compare(((Number) first).doubleValue(),((Number) second).doubleValue());
+    }
+}
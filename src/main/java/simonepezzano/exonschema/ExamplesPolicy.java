@@ -0,0 +1,258 @@
+/*
+ * @author 2018 Simone Pezzano
+ * ---
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package simonepezzano.exonschema;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Decides how many examples a property keeps. Keeping every distinct value makes both the memory footprint and the
+ * size of the schema grow with the data, so the examples can be capped to the first K values, to a uniform
+ * sample of K values (reservoir sampling), or not collected at all
+ */
+public final class ExamplesPolicy {
+
+    public enum Mode {
+        /**
+         * Every distinct value is kept
+         */
+        ALL,
+        /**
+         * The first K distinct values are kept
+         */
+        FIRST,
+        /**
+         * A uniform sample of K distinct values is kept
+         */
+        RESERVOIR,
+        /**
+         * No value is kept
+         */
+        NONE
+    }
+
+    /**
+     * Keeps every distinct value. This is the default
+     */
+    public static final ExamplesPolicy ALL = new ExamplesPolicy(Mode.ALL,Integer.MAX_VALUE);
+
+    /**
+     * Keeps no example at all
+     */
+    public static final ExamplesPolicy NONE = new ExamplesPolicy(Mode.NONE,0);
+
+    private final Mode mode;
+
+    private final int limit;
+
+    private ExamplesPolicy(Mode mode, int limit){
+        this.mode = mode;
+        this.limit = limit;
+    }
+
+    /**
+     * @param limit the maximum number of examples
+     * @return a policy keeping the first "limit" distinct values
+     */
+    public static ExamplesPolicy first(int limit){
+        if(limit < 1)
+            throw new IllegalArgumentException("The examples limit must be positive");
+        return new ExamplesPolicy(Mode.FIRST,limit);
+    }
+
+    /**
+     * @param limit the maximum number of examples
+     * @return a policy keeping a uniform sample of "limit" distinct values
+     */
+    public static ExamplesPolicy reservoir(int limit){
+        if(limit < 1)
+            throw new IllegalArgumentException("The examples limit must be positive");
+        return new ExamplesPolicy(Mode.RESERVOIR,limit);
+    }
+
+    public Mode getMode(){
+        return mode;
+    }
+
+    public int getLimit(){
+        return limit;
+    }
+
+    /**
+     * @return true if the policy keeps at least some examples
+     */
+    public boolean keepsExamples(){
+        return mode != Mode.NONE;
+    }
+
+    /**
+     * Offers a value that is not in the examples yet
+     * @param examples the examples collected so far
+     * @param value the value
+     * @param seen how many values have been offered to the examples so far, this one included
+     */
+    void offer(Set<Object> examples, Object value, long seen){
+        switch(mode){
+            case ALL:
+                examples.add(value);
+                break;
+            case FIRST:
+                if(examples.size() < limit)
+                    examples.add(value);
+                break;
+            case RESERVOIR:
+                if(examples.size() < limit)
+                    examples.add(value);
+                else {
+                    // The value replaces a random example with probability limit/seen
+                    final long slot = Math.floorMod(scramble(seen,value),seen);
+                    if(slot < limit){
+                        final Iterator<Object> iterator = examples.iterator();
+                        for(long i = 0; i < slot; i++)
+                            iterator.next();
+                        iterator.next();
+                        iterator.remove();
+                        examples.add(value);
+                    }
+                }
+                break;
+            default:
+        }
+    }
+
+    /**
+     * Merges the examples of several properties into a target, which may be one of them. The values kept by more
+     * than one property are counted once in the values seen. A reservoir draws the merged examples as in draw
+     * @param target the property receiving the merged examples
+     * @param sources the properties whose examples are merged
+     */
+    void merge(Property target, List<Property> sources){
+        if(mode == Mode.NONE) {
+            target.setExamples(null);
+            return;
+        }
+        final List<Set> sets = new ArrayList<>(sources.size());
+        final long[] seen = new long[sources.size()];
+        final Set<Object> distinct = new LinkedHashSet<>();
+        long total = 0;
+        long kept = 0;
+        boolean collected = false;
+        for(int i = 0; i < seen.length; i++) {
+            final Property source = sources.get(i);
+            final Set set = source.getExamples();
+            sets.add(set);
+            seen[i] = source.getExamplesSeen();
+            if(set != null) {
+                collected = true;
+                distinct.addAll(set);
+                total += seen[i];
+                kept += set.size();
+            }
+        }
+        // None of the properties collected examples, so neither does the target
+        if(!collected) {
+            target.setExamples(null);
+            return;
+        }
+        final Set<Object> examples;
+        if(mode == Mode.RESERVOIR)
+            examples = draw(sets,seen);
+        else {
+            examples = new HashSet<>();
+            for(Object value : distinct)
+                if(examples.size() < limit)
+                    examples.add(value);
+        }
+        target.setExamples(examples);
+        target.setExamplesSeen(total-kept+distinct.size());
+    }
+
+    /**
+     * Draws "limit" examples out of samples of different sizes. Each example of a sample stands for seen/size of
+     * the values offered to it, and the examples are drawn with these weights: each one gets the key -ln(u)/weight,
+     * where u is a pseudo-random number derived from the value, and the ones with the smallest keys are kept. A
+     * value in more than one sample gets the largest of its weights. The outcome doesn't depend on the order of the
+     * samples
+     * @param sets the samples, each may be null
+     * @param seen how many values have been offered to each sample
+     * @return the drawn examples
+     */
+    Set<Object> draw(List<Set> sets, long[] seen){
+        final Map<Object,Double> weights = new LinkedHashMap<>();
+        for(int i = 0; i < seen.length; i++) {
+            final Set set = sets.get(i);
+            if(set == null || set.isEmpty())
+                continue;
+            final double weight = Math.max(1.0,(double) seen[i]/set.size());
+            for(Object value : set)
+                weights.merge(value,weight,Math::max);
+        }
+        if(weights.size() <= limit)
+            return new HashSet<>(weights.keySet());
+        final List<Map.Entry<Object,Double>> entries = new ArrayList<>(weights.entrySet());
+        entries.sort( (entry1, entry2) -> Double.compare(drawKey(entry1.getKey(),entry1.getValue()),drawKey(entry2.getKey(),entry2.getValue())));
+        final Set<Object> examples = new HashSet<>();
+        for(int i = 0; i < limit; i++)
+            examples.add(entries.get(i).getKey());
+        return examples;
+    }
+
+    private static double drawKey(Object value, double weight){
+        final double uniform = ((scramble(0,value) >>> 11)+0.5)/(1L << 53);
+        return -Math.log(uniform)/weight;
+    }
+
+    /**
+     * A cheap pseudo-random number, derived from the position and the value so that the same data always leads to
+     * the same examples
+     * @param seen the position of the value
+     * @param value the value
+     * @return a pseudo-random number
+     */
+    private static long scramble(long seen, Object value){
+        long hash = seen*0x9E3779B97F4A7C15L+((value != null) ? value.hashCode() : 0);
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    @Override
+    public String toString(){
+        switch(mode){
+            case FIRST:
+                return "first("+limit+")";
+            case RESERVOIR:
+                return "reservoir("+limit+")";
+            default:
+                return mode.name().toLowerCase();
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * @author 2018 Simone Pezzano
+ * ---
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package simonepezzano.exonschema;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Keeps one running JsonSchema for a stream of documents. Each document gets analyzed and folded into the
+ * running schema in place, so memory depends on the size of the schema and not on the number of documents.
+ * All methods are thread safe
+ */
+public class ExonAccumulator {
+
+    private final ExonWalker walker;
+
+    private final String id;
+
+    private final String title;
+
+    private Schema schema;
+
+    private long documentCount;
+
+    /**
+     * Default constructor
+     * @param id the ID to assign to the JSON schema
+     * @param title the title of the schema
+     */
+    public ExonAccumulator(String id, String title){
+        this(new ExonWalker(),id,title);
+    }
+
+    /**
+     * Constructor with a custom walker
+     * @param walker the walker that will analyze the documents
+     * @param id the ID to assign to the JSON schema
+     * @param title the title of the schema
+     */
+    public ExonAccumulator(ExonWalker walker, String id, String title){
+        super();
+        this.walker = walker;
+        this.id = id;
+        this.title = title;
+    }
+
+    /**
+     * Analyzes a document and folds it into the running schema
+     * @param payload a piece of data (maps and arrays)
+     */
+    public void add(Object payload){
+        // The walker is stateless, so only the merge needs to be synchronized
+        final Schema schema = walker.analyze(payload,id,title);
+        synchronized (this) {
+            merge(schema, 1);
+        }
+    }
+
+    /**
+     * Folds a schema generated elsewhere into the running schema. Beware! Parts of the provided schema may be
+     * adopted by the running schema, so it should not be used afterwards
+     * @param schema the schema to fold
+     */
+    public synchronized void add(Schema schema){
+        merge(schema,1);
+    }
+
+    /**
+     * Folds the content of another accumulator into this one. The other accumulator is left untouched
+     * @param other another accumulator
+     */
+    public void add(ExonAccumulator other){
+        final Schema otherSchema;
+        final long otherCount;
+        synchronized (other) {
+            if(other.schema == null)
+                return;
+            otherSchema = other.schema.clone();
+            otherCount = other.documentCount;
+        }
+        synchronized (this) {
+            merge(otherSchema, otherCount);
+        }
+    }
+
+    private void merge(Schema incoming, long count){
+        if(schema == null)
+            schema = incoming;
+        else {
+            final ExonListener listener = walker.getListener();
+            listener.phaseStarted(ExonPhase.MERGE);
+            final long start = System.nanoTime();
+            try {
+                ExonUtils.mergeInto(schema, incoming, walker.getExamplesPolicy());
+                listener.merged();
+            } finally {
+                listener.phaseCompleted(ExonPhase.MERGE,System.nanoTime()-start);
+            }
+        }
+        documentCount += count;
+    }
+
+    /**
+     * @return a copy of the running schema, or null if no document has been added yet
+     */
+    public synchronized Schema snapshot(){
+        return (schema != null) ? schema.clone() : null;
+    }
+
+    /**
+     * @return the number of documents folded into the running schema
+     */
+    public synchronized long getDocumentCount(){
+        return documentCount;
+    }
+
+    /**
+     * Saves the state of the accumulator (ID, title, number of documents and running schema) to a binary
+     * checkpoint, see ExonCheckpoint. The stream is flushed, but not closed
+     * @param outputStream the stream
+     * @throws IOException
+     */
+    public synchronized void checkpoint(OutputStream outputStream) throws IOException {
+        final ExonCheckpoint.Output output = new ExonCheckpoint.Output(outputStream,ExonCheckpoint.ACCUMULATOR_CHECKPOINT);
+        output.writeString(id);
+        output.writeString(title);
+        output.writeVarLong(documentCount);
+        output.writeVarLong((schema != null) ? 1 : 0);
+        if(schema != null)
+            output.writeSchema(schema);
+        output.flush();
+    }
+
+    /**
+     * Restores an accumulator from a checkpoint, so that it can carry on where it was left. The stream is not closed
+     * @param inputStream the stream
+     * @param walker the walker that will analyze the documents from now on
+     * @return the accumulator
+     * @throws IOException if the stream is not an accumulator checkpoint, or is of an unknown version
+     */
+    public static ExonAccumulator restore(InputStream inputStream, ExonWalker walker) throws IOException {
+        final ExonCheckpoint.Input input = new ExonCheckpoint.Input(inputStream,ExonCheckpoint.ACCUMULATOR_CHECKPOINT);
+        final ExonAccumulator accumulator = new ExonAccumulator(walker,input.readString(),input.readString());
+        final long documentCount = input.readVarLong();
+        final Schema schema = (input.readVarLong() != 0) ? input.readSchema() : null;
+        synchronized (accumulator) {
+            accumulator.documentCount = documentCount;
+            accumulator.schema = schema;
+        }
+        return accumulator;
+    }
+}
@@ -0,0 +1,652 @@
+/*
+ * @author 2018 Simone Pezzano
+ * ---
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package simonepezzano.exonschema;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * A compact binary format to save and restore schemas, including the state needed to keep working on them, such as
+ * how many examples have been seen. Strings (keys, types, IDs, examples) are written once and then referenced by
+ * index, and the locations of the properties are written one segment at a time, sharing their parents as the
+ * PropertyPath objects do. Restoring a checkpoint is a lot faster than deserializing the JSON schema, and the
+ * restored schema is the same as the saved one, locations included. The statistics of the values are saved
+ * straight from the package-private fields of ValueStatistics and DistinctValues.
+ * The format starts with a magic number and a version number, checkpoints of unknown versions are rejected
+ */
+public final class ExonCheckpoint {
+
+    /**
+     * "EXON"
+     */
+    static final int MAGIC = 0x45584f4e;
+
+    /**
+     * The version of the format
+     */
+    static final int VERSION = 1;
+
+    static final byte SCHEMA_CHECKPOINT = 'S';
+
+    static final byte ACCUMULATOR_CHECKPOINT = 'A';
+
+    private static final int HAS_PATH = 1;
+    private static final int HAS_ID = 1 << 1;
+    private static final int HAS_TYPE = 1 << 2;
+    private static final int HAS_TYPE_SET = 1 << 3;
+    private static final int HAS_DEFAULT = 1 << 4;
+    private static final int HAS_EXAMPLES = 1 << 5;
+    private static final int HAS_ANY_OF = 1 << 6;
+    private static final int HAS_REQUIRED = 1 << 7;
+    private static final int HAS_PROPERTIES = 1 << 8;
+    private static final int HAS_ITEMS = 1 << 9;
+    private static final int HAS_REF = 1 << 10;
+    private static final int HAS_STATISTICS = 1 << 11;
+
+    private static final byte NO_DISTINCT_VALUES = 0;
+    private static final byte EXACT_DISTINCT_VALUES = 1;
+    private static final byte SKETCHED_DISTINCT_VALUES = 2;
+
+    private static final byte NULL_VALUE = 0;
+    private static final byte TRUE_VALUE = 1;
+    private static final byte FALSE_VALUE = 2;
+    private static final byte INT_VALUE = 3;
+    private static final byte LONG_VALUE = 4;
+    private static final byte DOUBLE_VALUE = 5;
+    private static final byte STRING_VALUE = 6;
+    private static final byte BIG_INTEGER_VALUE = 7;
+    private static final byte BIG_DECIMAL_VALUE = 8;
+    private static final byte FLOAT_VALUE = 9;
+
+    private ExonCheckpoint(){
+    }
+
+    /**
+     * Saves a schema to a stream. The stream is flushed, but not closed
+     * @param schema the schema
+     * @param outputStream the stream
+     * @throws IOException
+     */
+    public static void write(Schema schema, OutputStream outputStream) throws IOException {
+        final Output output = new Output(outputStream,SCHEMA_CHECKPOINT);
+        output.writeSchema(schema);
+        output.flush();
+    }
+
+    /**
+     * Saves a schema to a file
+     * @param schema the schema
+     * @param path the file
+     * @throws IOException
+     */
+    public static void write(Schema schema, Path path) throws IOException {
+        try(OutputStream outputStream = Files.newOutputStream(path)) {
+            write(schema,outputStream);
+        }
+    }
+
+    /**
+     * Restores a schema from a stream. The stream is not closed
+     * @param inputStream the stream
+     * @return the schema
+     * @throws IOException if the stream is not a schema checkpoint, or is of an unknown version
+     */
+    public static Schema readSchema(InputStream inputStream) throws IOException {
+        return new Input(inputStream,SCHEMA_CHECKPOINT).readSchema();
+    }
+
+    /**
+     * Restores a schema from a file
+     * @param path the file
+     * @return the schema
+     * @throws IOException if the file is not a schema checkpoint, or is of an unknown version
+     */
+    public static Schema readSchema(Path path) throws IOException {
+        try(InputStream inputStream = Files.newInputStream(path)) {
+            return readSchema(inputStream);
+        }
+    }
+
+    /**
+     * Writes a checkpoint
+     */
+    static final class Output {
+
+        private final DataOutputStream out;
+
+        private final Map<String,Integer> strings = new HashMap<>();
+
+        private final Map<PropertyPath,Integer> paths = new IdentityHashMap<>();
+
+        /**
+         * Starts a checkpoint, writing its header
+         * @param outputStream the stream
+         * @param kind what the checkpoint contains
+         * @throws IOException
+         */
+        Output(OutputStream outputStream, byte kind) throws IOException {
+            out = new DataOutputStream(new BufferedOutputStream(outputStream));
+            out.writeInt(MAGIC);
+            writeVarLong(VERSION);
+            out.writeByte(kind);
+        }
+
+        void flush() throws IOException {
+            out.flush();
+        }
+
+        void writeSchema(Schema schema) throws IOException {
+            writeString(schema.getTitle());
+            writeString(schema.getSampling());
+            writeProperty(schema);
+            final Map<String,Property> definitions = schema.getDefinitions();
+            writeVarLong((definitions != null) ? definitions.size() : 0);
+            if(definitions != null)
+                for(Map.Entry<String,Property> entry : definitions.entrySet()) {
+                    writeString(entry.getKey());
+                    writeProperty(entry.getValue());
+                }
+        }
+
+        void writeProperty(Property property) throws IOException {
+            int flags = 0;
+            if(property.getPath() != null)
+                flags |= HAS_PATH;
+            else
+                if(property.getId() != null)
+                    flags |= HAS_ID;
+            if(property.getType() != null)
+                flags |= (property.getType() instanceof Collection) ? HAS_TYPE_SET : HAS_TYPE;
+            if(property.getDefaultValue() != null)
+                flags |= HAS_DEFAULT;
+            if(property.getExamples() != null)
+                flags |= HAS_EXAMPLES;
+            if(property.getAnyOf() != null)
+                flags |= HAS_ANY_OF;
+            if(property.getRequired() != null)
+                flags |= HAS_REQUIRED;
+            if(property.getProperties() != null)
+                flags |= HAS_PROPERTIES;
+            if(property.getItems() != null)
+                flags |= HAS_ITEMS;
+            if(property.getRef() != null)
+                flags |= HAS_REF;
+            if(property.getStatistics() != null)
+                flags |= HAS_STATISTICS;
+            writeVarLong(flags);
+            if((flags & HAS_PATH) != 0)
+                writePath(property.getPath());
+            if((flags & HAS_ID) != 0)
+                writeString(property.getId());
+            if((flags & HAS_REF) != 0)
+                writeString(property.getRef());
+            if((flags & HAS_TYPE) != 0)
+                writeString(property.getTypeAsString());
+            if((flags & HAS_TYPE_SET) != 0)
+                writeStrings((Collection<?>) property.getType());
+            if((flags & HAS_DEFAULT) != 0)
+                writeValue(property.getDefaultValue());
+            if((flags & HAS_EXAMPLES) != 0) {
+                writeVarLong(property.getExamplesSeen());
+                writeVarLong(property.getExamples().size());
+                for(Object example : property.getExamples())
+                    writeValue(example);
+            }
+            if((flags & HAS_STATISTICS) != 0)
+                writeStatistics(property.getStatistics());
+            if((flags & HAS_ANY_OF) != 0) {
+                writeVarLong(property.getAnyOf().size());
+                for(Property scenario : property.getAnyOf())
+                    writeProperty(scenario);
+            }
+            if((flags & HAS_REQUIRED) != 0)
+                writeStrings(property.getRequired());
+            if((flags & HAS_PROPERTIES) != 0) {
+                writeVarLong(property.getProperties().size());
+                for(Map.Entry<String,Property> entry : property.getProperties().entrySet()) {
+                    writeString(entry.getKey());
+                    writeProperty(entry.getValue());
+                }
+            }
+            if((flags & HAS_ITEMS) != 0)
+                writeProperty(property.getItems());
+        }
+
+        /**
+         * Writes the statistics of the values of a property, field by field
+         * @param statistics the statistics
+         * @throws IOException
+         */
+        private void writeStatistics(ValueStatistics statistics) throws IOException {
+            writeVarLong(statistics.nulls);
+            writeVarLong(statistics.integers);
+            writeVarLong(statistics.fractions);
+            writeVarLong(statistics.strings);
+            writeSignedVarLong(statistics.integerMinimum);
+            writeSignedVarLong(statistics.integerMaximum);
+            out.writeDouble(statistics.numberMinimum);
+            out.writeDouble(statistics.numberMaximum);
+            writeSignedVarLong(statistics.minLength);
+            writeSignedVarLong(statistics.maxLength);
+            writeVarLong(statistics.formats);
+            writeDistinctValues(statistics.distinct);
+        }
+
+        /**
+         * Writes distinct values: the values of the exact set, or the registers of the sketch if any
+         * @param distinct the distinct values, may be null
+         * @throws IOException
+         */
+        private void writeDistinctValues(DistinctValues distinct) throws IOException {
+            if(distinct == null) {
+                out.writeByte(NO_DISTINCT_VALUES);
+                return;
+            }
+            out.writeByte((distinct.values != null) ? EXACT_DISTINCT_VALUES : SKETCHED_DISTINCT_VALUES);
+            writeVarLong(distinct.count);
+            writeVarLong(distinct.lowerBound);
+            if(distinct.values != null) {
+                writeVarLong(distinct.size);
+                for(int i = 0; i < distinct.size; i++)
+                    writeValue(distinct.values[i]);
+            } else
+                writeBytes((distinct.registers != null) ? distinct.registers : new byte[0]);
+        }
+
+        /**
+         * Writes a path: a reference to a path written already, or its last segment after its parent
+         * @param path the path
+         * @throws IOException
+         */
+        private void writePath(PropertyPath path) throws IOException {
+            final Integer index = paths.get(path);
+            if(index != null) {
+                writeVarLong(index+1);
+                return;
+            }
+            writeVarLong(0);
+            out.writeByte(path.getSegmentType());
+            if(path.getParent() != null) {
+                writePath(path.getParent());
+                writeString(path.getKey());
+                writeVarLong(path.getIndex());
+            }
+            paths.put(path,paths.size());
+        }
+
+        private void writeStrings(Collection<?> values) throws IOException {
+            writeVarLong(values.size());
+            for(Object value : values)
+                writeString(String.valueOf(value));
+        }
+
+        /**
+         * Writes a string: 0 for null, 1 followed by the string the first time, the index plus 2 afterwards
+         * @param value the string
+         * @throws IOException
+         */
+        void writeString(String value) throws IOException {
+            if(value == null) {
+                writeVarLong(0);
+                return;
+            }
+            final Integer index = strings.get(value);
+            if(index != null) {
+                writeVarLong(index+2);
+                return;
+            }
+            writeVarLong(1);
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length);
+            out.write(bytes);
+            strings.put(value,strings.size());
+        }
+
+        private void writeValue(Object value) throws IOException {
+            if(value == null)
+                out.writeByte(NULL_VALUE);
+            else if(value instanceof Boolean)
+                out.writeByte((Boolean) value ? TRUE_VALUE : FALSE_VALUE);
+            else if(value instanceof Integer) {
+                out.writeByte(INT_VALUE);
+                writeSignedVarLong((Integer) value);
+            } else if(value instanceof Long) {
+                out.writeByte(LONG_VALUE);
+                writeSignedVarLong((Long) value);
+            } else if(value instanceof Double) {
+                out.writeByte(DOUBLE_VALUE);
+                out.writeDouble((Double) value);
+            } else if(value instanceof String) {
+                out.writeByte(STRING_VALUE);
+                writeString((String) value);
+            } else if(value instanceof BigInteger) {
+                out.writeByte(BIG_INTEGER_VALUE);
+                writeBytes(((BigInteger) value).toByteArray());
+            } else if(value instanceof BigDecimal) {
+                out.writeByte(BIG_DECIMAL_VALUE);
+                writeSignedVarLong(((BigDecimal) value).scale());
+                writeBytes(((BigDecimal) value).unscaledValue().toByteArray());
+            } else if(value instanceof Float) {
+                out.writeByte(FLOAT_VALUE);
+                out.writeFloat((Float) value);
+            } else
+                throw new IOException("Unsupported value of type "+value.getClass().getName());
+        }
+
+        private void writeBytes(byte[] bytes) throws IOException {
+            writeVarLong(bytes.length);
+            out.write(bytes);
+        }
+
+        void writeSignedVarLong(long value) throws IOException {
+            writeVarLong((value << 1) ^ (value >> 63));
+        }
+
+        /**
+         * Writes a number, 7 bits per byte
+         * @param value the number
+         * @throws IOException
+         */
+        void writeVarLong(long value) throws IOException {
+            while((value & ~0x7FL) != 0) {
+                out.writeByte((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.writeByte((int) value);
+        }
+    }
+
+    /**
+     * Reads a checkpoint
+     */
+    static final class Input {
+
+        private final DataInputStream in;
+
+        private final List<String> strings = new ArrayList<>();
+
+        private final List<PropertyPath> paths = new ArrayList<>();
+
+        /**
+         * Starts reading a checkpoint, verifying its header
+         * @param inputStream the stream
+         * @param kind what the checkpoint is expected to contain
+         * @throws IOException if the header does not match
+         */
+        Input(InputStream inputStream, byte kind) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(inputStream));
+            if(in.readInt() != MAGIC)
+                throw new IOException("Not a checkpoint");
+            final long version = readVarLong();
+            if(version != VERSION)
+                throw new IOException("Unsupported checkpoint version "+version);
+            final byte actualKind = in.readByte();
+            if(actualKind != kind)
+                throw new IOException("Unexpected checkpoint content "+(char) actualKind);
+        }
+
+        Schema readSchema() throws IOException {
+            final String title = readString();
+            final String sampling = readString();
+            final Schema schema = new Schema(null,title,null);
+            readProperty(schema);
+            schema.setSampling(sampling);
+            final int definitionCount = readCount();
+            if(definitionCount > 0) {
+                final Map<String,Property> definitions = new LinkedHashMap<>();
+                for(int i = 0; i < definitionCount; i++) {
+                    final String name = readString();
+                    definitions.put(name,readProperty(null));
+                }
+                schema.setDefinitions(definitions);
+            }
+            return schema;
+        }
+
+        /**
+         * Reads a property
+         * @param target the property to read into, or null to create a new one
+         * @return the property
+         * @throws IOException
+         */
+        Property readProperty(Property target) throws IOException {
+            final int flags = (int) readVarLong();
+            final PropertyPath path = ((flags & HAS_PATH) != 0) ? readPath() : null;
+            final String id = ((flags & HAS_ID) != 0) ? readString() : null;
+            final String ref = ((flags & HAS_REF) != 0) ? readString() : null;
+            Object type = null;
+            if((flags & HAS_TYPE) != 0)
+                type = readString();
+            if((flags & HAS_TYPE_SET) != 0)
+                type = readStrings(new LinkedHashSet<>());
+            final Object defaultValue = ((flags & HAS_DEFAULT) != 0) ? readValue() : null;
+            final Property property;
+            if(target != null) {
+                property = target;
+                property.setType(type);
+                property.setDefaultValue(defaultValue);
+                if(path != null)
+                    property.setPath(path);
+            } else
+                // These constructors don't generate random IDs
+                property = (path != null) ? new Property(path,type,defaultValue) : new Property(id,type,defaultValue);
+            if(id != null)
+                property.setId(id);
+            property.setRef(ref);
+            if((flags & HAS_EXAMPLES) != 0) {
+                final long examplesSeen = readVarLong();
+                final int count = readCount();
+                final Set<Object> examples = new HashSet<>();
+                for(int i = 0; i < count; i++)
+                    examples.add(readValue());
+                property.setExamples(examples);
+                property.setExamplesSeen(examplesSeen);
+            } else
+                property.setExamples(null);
+            if((flags & HAS_STATISTICS) != 0)
+                property.setStatistics(readStatistics());
+            if((flags & HAS_ANY_OF) != 0) {
+                final int count = readCount();
+                final List<Property> anyOf = new LinkedList<>();
+                for(int i = 0; i < count; i++)
+                    anyOf.add(readProperty(null));
+                property.setAnyOf(anyOf);
+            }
+            if((flags & HAS_REQUIRED) != 0)
+                property.setRequired(readStrings(new HashSet<>()));
+            if((flags & HAS_PROPERTIES) != 0) {
+                final int count = readCount();
+                final Map<String,Property> properties = new HashMap<>();
+                for(int i = 0; i < count; i++) {
+                    final String key = readString();
+                    properties.put(key,readProperty(null));
+                }
+                property.setProperties(properties);
+            }
+            if((flags & HAS_ITEMS) != 0)
+                property.setItems(readProperty(null));
+            return property;
+        }
+
+        private PropertyPath readPath() throws IOException {
+            final int reference = readCount();
+            if(reference > 0)
+                return get(paths,reference-1);
+            final byte segmentType = in.readByte();
+            PropertyPath parent = null;
+            String key = null;
+            int index = 0;
+            if(segmentType != 0) {
+                parent = readPath();
+                key = readString();
+                index = readCount();
+            }
+            final PropertyPath path = PropertyPath.of(parent,segmentType,key,index);
+            paths.add(path);
+            return path;
+        }
+
+        private <T extends Collection<String>> T readStrings(T values) throws IOException {
+            final int count = readCount();
+            for(int i = 0; i < count; i++)
+                values.add(readString());
+            return values;
+        }
+
+        String readString() throws IOException {
+            final int reference = readCount();
+            if(reference == 0)
+                return null;
+            if(reference > 1)
+                return get(strings,reference-2);
+            final String value = new String(readBytes(),StandardCharsets.UTF_8);
+            strings.add(value);
+            return value;
+        }
+
+        private Object readValue() throws IOException {
+            final byte tag = in.readByte();
+            switch(tag){
+                case NULL_VALUE:
+                    return null;
+                case TRUE_VALUE:
+                    return Boolean.TRUE;
+                case FALSE_VALUE:
+                    return Boolean.FALSE;
+                case INT_VALUE:
+                    return (int) readSignedVarLong();
+                case LONG_VALUE:
+                    return readSignedVarLong();
+                case DOUBLE_VALUE:
+                    return in.readDouble();
+                case STRING_VALUE:
+                    return readString();
+                case BIG_INTEGER_VALUE:
+                    return new BigInteger(readBytes());
+                case BIG_DECIMAL_VALUE: {
+                    final int scale = (int) readSignedVarLong();
+                    return new BigDecimal(new BigInteger(readBytes()),scale);
+                }
+                case FLOAT_VALUE:
+                    return in.readFloat();
+                default:
+                    throw new IOException("Unknown value tag "+tag);
+            }
+        }
+
+        private byte[] readBytes() throws IOException {
+            final byte[] bytes = new byte[readCount()];
+            in.readFully(bytes);
+            return bytes;
+        }
+
+        private static <T> T get(List<T> table, int index) throws IOException {
+            if(index >= table.size())
+                throw new IOException("Invalid reference "+index);
+            return table.get(index);
+        }
+
+        /**
+         * Reads the statistics of the values of a property
+         * @return the statistics
+         * @throws IOException
+         */
+        private ValueStatistics readStatistics() throws IOException {
+            final ValueStatistics statistics = new ValueStatistics();
+            statistics.nulls = readVarLong();
+            statistics.integers = readVarLong();
+            statistics.fractions = readVarLong();
+            statistics.strings = readVarLong();
+            statistics.integerMinimum = readSignedVarLong();
+            statistics.integerMaximum = readSignedVarLong();
+            statistics.numberMinimum = in.readDouble();
+            statistics.numberMaximum = in.readDouble();
+            statistics.minLength = readSignedVarLong();
+            statistics.maxLength = readSignedVarLong();
+            statistics.formats = readCount() & StringFormat.ALL;
+            statistics.distinct = readDistinctValues();
+            return statistics;
+        }
+
+        /**
+         * Reads distinct values. The hashes of the exact set are computed again as the values are added
+         * @return the distinct values, or null if there are none
+         * @throws IOException
+         */
+        private DistinctValues readDistinctValues() throws IOException {
+            final byte kind = in.readByte();
+            if(kind == NO_DISTINCT_VALUES)
+                return null;
+            if(kind != EXACT_DISTINCT_VALUES && kind != SKETCHED_DISTINCT_VALUES)
+                throw new IOException("Unknown distinct values kind "+kind);
+            final DistinctValues distinct = new DistinctValues();
+            final long count = readVarLong();
+            distinct.lowerBound = readVarLong();
+            if(kind == EXACT_DISTINCT_VALUES) {
+                final int size = readCount();
+                for(int i = 0; i < size; i++)
+                    distinct.add(readValue());
+            } else {
+                distinct.dropExactSet();
+                final byte[] registers = readBytes();
+                if(registers.length != 0 && registers.length != DistinctValues.REGISTERS)
+                    throw new IOException("Invalid distinct values sketch of "+registers.length+" registers");
+                distinct.registers = (registers.length != 0) ? registers : null;
+            }
+            distinct.count = count;
+            return distinct;
+        }
+
+        /**
+         * @return a count or an index, which must fit an int
+         * @throws IOException
+         */
+        int readCount() throws IOException {
+            final long value = readVarLong();
+            if(value < 0 || value > Integer.MAX_VALUE)
+                throw new IOException("Invalid count "+value);
+            return (int) value;
+        }
+
+        long readSignedVarLong() throws IOException {
+            final long value = readVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        long readVarLong() throws IOException {
+            long value = 0;
+            for(int shift = 0; shift < 64; shift += 7) {
+                final int b = in.readUnsignedByte();
+                value |= (long) (b & 0x7F) << shift;
+                if((b & 0x80) == 0)
+                    return value;
+            }
+            throw new IOException("Malformed number");
+        }
+    }
+}
@@ -0,0 +1,413 @@
+/*
+ * @author 2018 Simone Pezzano
+ * ---
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package simonepezzano.exonschema;
+
+import java.util.*;
+
+/**
+ * Shrinks a schema by storing the sub-schemas that occur more than once under "definitions", and replacing each
+ * occurrence with a "$ref" to its definition. Two sub-schemas are the same when they have the same types, required
+ * keys and structure, whatever their IDs and examples: the examples of all the occurrences end up in the definition.
+ * Objects nested into an object with the same keys, as in a tree of comments with their replies, are recognized as
+ * recursive: they are merged into the outer object, which becomes a definition referencing itself
+ */
+public class ExonDeduplicator {
+
+    /**
+     * The prefix of the references to the definitions
+     */
+    public static final String DEFINITIONS_PREFIX = "#/definitions/";
+
+    /**
+     * The reference to the schema itself
+     */
+    public static final String ROOT_REFERENCE = "#";
+
+    /**
+     * How many times a sub-schema needs to occur to be stored under "definitions"
+     */
+    private final int minOccurrences;
+
+    /**
+     * Whether recursive structures have to be detected
+     */
+    private final boolean detectRecursion;
+
+    /**
+     * The policy to follow when merging the examples of the occurrences of a sub-schema
+     */
+    private final ExamplesPolicy examplesPolicy;
+
+    /**
+     * Default constructor. Sub-schemas occurring twice are shared, and recursive structures are detected
+     */
+    public ExonDeduplicator(){
+        this(2,true,ExamplesPolicy.ALL);
+    }
+
+    /**
+     * Constructor
+     * @param minOccurrences how many times a sub-schema needs to occur to be stored under "definitions", at least 2
+     * @param detectRecursion whether objects nested into objects with the same keys have to be made recursive
+     * @param examplesPolicy the policy to follow when merging the examples of the occurrences of a sub-schema
+     */
+    public ExonDeduplicator(int minOccurrences, boolean detectRecursion, ExamplesPolicy examplesPolicy){
+        if(minOccurrences < 2)
+            throw new IllegalArgumentException("A sub-schema needs to occur at least twice to be shared");
+        this.minOccurrences = minOccurrences;
+        this.detectRecursion = detectRecursion;
+        this.examplesPolicy = examplesPolicy;
+    }
+
+    /**
+     * Performs the analysis. The provided schema is not modified
+     * @param schema an ExonSchema object
+     * @return a copy of the schema, with the repeated sub-schemas stored under "definitions"
+     */
+    public Schema analyze(Schema schema){
+        final Context context = new Context(schema.clone());
+        if(detectRecursion)
+            foldRecursion(context.schema,"root",new ArrayList<>(),context);
+        final List<Property> roots = new ArrayList<>();
+        roots.add(context.schema);
+        roots.addAll(context.definitions.values());
+        for(Property root : roots)
+            context.intern(root,"root");
+        // Counting the references to each shape, each shape counting once however many times it occurs
+        for(Shape shape : context.shapes.values())
+            shape.children.forEach( child -> child.references++);
+        for(Property root : roots)
+            share(root,context);
+        if(!context.definitions.isEmpty())
+            context.schema.setDefinitions(context.definitions);
+        return context.schema;
+    }
+
+    /**
+     * Walks a property, replacing the objects nested into an object with the same keys with a reference to the
+     * outer object
+     * @param property the property
+     * @param name the name a definition of the property would get
+     * @param ancestors the objects containing the property
+     * @param context the state of the analysis
+     * @return the property to keep in place of the walked one: the property itself, or a reference to it if it
+     * became a definition
+     */
+    private Property foldRecursion(Property property, String name, List<Property> ancestors, Context context){
+        final boolean object = isObject(property);
+        if(object) {
+            ancestors.add(property);
+            context.names.put(property, name);
+        }
+        foldChildren(property,name,ancestors,context);
+        if(object)
+            ancestors.remove(ancestors.size()-1);
+        // The nested occurrences are merged into the property, now that all of them have been found
+        final List<Property> occurrences = context.occurrences.remove(property);
+        if(occurrences == null)
+            return property;
+        // The innermost occurrences end with empty objects and arrays, which must not cut the recursion short
+        occurrences.forEach( occurrence -> ExonUtils.mergeInto(property,occurrence,examplesPolicy,false));
+        if(property == context.schema)
+            return property;
+        return Property.reference(context.define(context.references.get(property),property));
+    }
+
+    /**
+     * Walks the child properties, the "items" and the "anyOf" scenarios of a property. See foldRecursion
+     * @param property the property
+     * @param name the name a definition of the property would get
+     * @param ancestors the objects containing the children
+     * @param context the state of the analysis
+     */
+    private void foldChildren(Property property, String name, List<Property> ancestors, Context context){
+        if(property.hasProperties())
+            for(Map.Entry<String,Property> entry : property.getProperties().entrySet())
+                entry.setValue(foldChild(entry.getValue(),entry.getKey(),ancestors,context));
+        if(property.hasItems())
+            property.setItems(foldChild(property.getItems(),name+"_item",ancestors,context));
+        if(property.hasAnyOf()) {
+            final ListIterator<Property> scenarios = property.getAnyOf().listIterator();
+            while(scenarios.hasNext())
+                scenarios.set(foldChild(scenarios.next(),name+"_"+scenarios.nextIndex(),ancestors,context));
+        }
+    }
+
+    /**
+     * Walks a child property. If the child is an object with the same keys of one of its ancestors, it gets
+     * replaced by a reference to the ancestor, and it will be merged into it
+     * @param child the child property
+     * @param name the name a definition of the child would get
+     * @param ancestors the objects containing the child
+     * @param context the state of the analysis
+     * @return the property to keep in place of the child
+     */
+    private Property foldChild(Property child, String name, List<Property> ancestors, Context context){
+        if(isObject(child))
+            for(int i = ancestors.size()-1; i >= 0; i--) {
+                final Property ancestor = ancestors.get(i);
+                if(ancestor.getPropertiesKeys().equals(child.getPropertiesKeys())) {
+                    // The child may nest further occurrences, which have to be found before merging it
+                    foldChildren(child,context.names.get(ancestor),ancestors,context);
+                    context.occurrences.computeIfAbsent(ancestor, key -> new ArrayList<>()).add(child);
+                    return Property.reference(context.referenceTo(ancestor));
+                }
+            }
+        return foldRecursion(child,name,ancestors,context);
+    }
+
+    /**
+     * Replaces the children of a property occurring often enough with references to their definitions
+     * @param property the property
+     * @param context the state of the analysis
+     */
+    private void share(Property property, Context context){
+        if(property.hasProperties())
+            for(Map.Entry<String,Property> entry : property.getProperties().entrySet())
+                entry.setValue(shareChild(entry.getValue(),context));
+        if(property.hasItems())
+            property.setItems(shareChild(property.getItems(),context));
+        if(property.hasAnyOf()) {
+            final ListIterator<Property> scenarios = property.getAnyOf().listIterator();
+            while(scenarios.hasNext())
+                scenarios.set(shareChild(scenarios.next(),context));
+        }
+    }
+
+    /**
+     * Replaces a child property with a reference to its definition, if it occurs often enough. The definition is
+     * created by the first occurrence that gets replaced
+     * @param child the child property
+     * @param context the state of the analysis
+     * @return the property to keep in place of the child
+     */
+    private Property shareChild(Property child, Context context){
+        final Shape shape = context.shapeOf.get(child);
+        if(!shape.shareable || shape.references < minOccurrences) {
+            share(child,context);
+            return child;
+        }
+        if(shape.reference == null) {
+            final Property definition = shape.occurrences.get(0);
+            for(int i = 1; i < shape.occurrences.size(); i++)
+                mergeExamples(definition,shape.occurrences.get(i));
+            shape.reference = context.define(context.newName(shape.name),definition);
+            share(definition,context);
+        }
+        return Property.reference(shape.reference);
+    }
+
+    /**
+     * Adds the examples and statistics of a property to another property with the same shape, in a recursive fashion
+     * @param target the property receiving the examples
+     * @param source the property providing the examples
+     */
+    private void mergeExamples(Property target, Property source){
+        examplesPolicy.merge(target,Arrays.asList(target,source));
+        target.addStatistics(source.getStatistics());
+        if(target.hasProperties())
+            target.getProperties().forEach( (key,child) -> mergeExamples(child,source.getProperty(key)));
+        if(target.hasItems())
+            mergeExamples(target.getItems(),source.getItems());
+        if(target.hasAnyOf())
+            for(int i = 0; i < target.getAnyOf().size(); i++)
+                mergeExamples(target.getAnyOf().get(i),source.getAnyOf().get(i));
+    }
+
+    /**
+     * @param property a property
+     * @return true if the property describes objects with at least one child property
+     */
+    private static boolean isObject(Property property){
+        return property.isOfType(JsonType.OBJECT) && property.hasProperties();
+    }
+
+    /**
+     * Everything the analysis of a schema needs to keep track of
+     */
+    private static final class Context {
+
+        final Schema schema;
+
+        final Map<String,Property> definitions;
+
+        /**
+         * The names the definitions of the objects being walked would get
+         */
+        final Map<Property,String> names = new IdentityHashMap<>();
+
+        /**
+         * The references to the objects that turned out to be recursive
+         */
+        final Map<Property,String> references = new IdentityHashMap<>();
+
+        /**
+         * The nested occurrences of the recursive objects, yet to be merged into them
+         */
+        final Map<Property,List<Property>> occurrences = new IdentityHashMap<>();
+
+        /**
+         * The distinct shapes, by key
+         */
+        final Map<String,Shape> shapes = new HashMap<>();
+
+        /**
+         * The shape of each property
+         */
+        final Map<Property,Shape> shapeOf = new IdentityHashMap<>();
+
+        Context(Schema schema){
+            this.schema = schema;
+            this.definitions = (schema.getDefinitions() != null) ? schema.getDefinitions() : new LinkedHashMap<>();
+        }
+
+        /**
+         * @param property a recursive object
+         * @return the reference to the object, reserving a name for its definition the first time
+         */
+        String referenceTo(Property property){
+            if(property == schema)
+                return ROOT_REFERENCE;
+            return references.computeIfAbsent(property, key -> DEFINITIONS_PREFIX+newName(names.get(key)));
+        }
+
+        /**
+         * Stores a definition
+         * @param reference the reference to the definition, or its name
+         * @param definition the definition
+         * @return the reference to the definition
+         */
+        String define(String reference, Property definition){
+            final String name = reference.startsWith(DEFINITIONS_PREFIX) ? reference.substring(DEFINITIONS_PREFIX.length()) : reference;
+            definitions.put(name,definition);
+            return DEFINITIONS_PREFIX+name;
+        }
+
+        /**
+         * Reserves a name for a definition. Characters that would need escaping in a reference are replaced, and a
+         * number is appended when the name is already taken
+         * @param hint the preferred name
+         * @return the name
+         */
+        String newName(String hint){
+            String base = hint.replaceAll("[^A-Za-z0-9_-]","_");
+            if(base.isEmpty())
+                base = "definition";
+            String name = base;
+            for(int i = 2; definitions.containsKey(name); i++)
+                name = base+"_"+i;
+            // Reserving the name, the definition comes later
+            definitions.put(name,null);
+            return name;
+        }
+
+        /**
+         * Finds the shape of a property and of all its sub-properties, creating the shapes never seen before
+         * @param property the property
+         * @param name the name a definition of the property would get
+         * @return the shape of the property
+         */
+        Shape intern(Property property, String name){
+            final StringBuilder key = new StringBuilder();
+            final List<Shape> children = new ArrayList<>();
+            if(property.isReference())
+                key.append("$ref ").append(property.getRef());
+            else {
+                final Object type = property.getType();
+                if(type == null)
+                    key.append('-');
+                else
+                    key.append((type instanceof Collection) ? new TreeSet<>((Collection) type) : type);
+                if(property.getRequired() != null)
+                    key.append(" required").append(new TreeSet<>(property.getRequired()));
+                if(property.hasProperties())
+                    for(String childName : new TreeSet<>(property.getPropertiesKeys())) {
+                        final Shape child = intern(property.getProperty(childName),childName);
+                        children.add(child);
+                        // The length of the key keeps keys containing separators unambiguous
+                        key.append(' ').append(childName.length()).append(':').append(childName).append('=').append(child.id);
+                    }
+                if(property.hasItems()) {
+                    final Shape child = intern(property.getItems(),name+"_item");
+                    children.add(child);
+                    key.append(" items=").append(child.id);
+                }
+                if(property.hasAnyOf()) {
+                    key.append(" anyOf=");
+                    int index = 1;
+                    for(Property scenario : property.getAnyOf()) {
+                        final Shape child = intern(scenario,name+"_"+index++);
+                        children.add(child);
+                        key.append(child.id).append(',');
+                    }
+                }
+            }
+            final Shape shape = shapes.computeIfAbsent(key.toString(), k -> new Shape(shapes.size(),name,children,property));
+            shape.occurrences.add(property);
+            shapeOf.put(property,shape);
+            return shape;
+        }
+    }
+
+    /**
+     * A distinct sub-schema, and the properties sharing it
+     */
+    private static final class Shape {
+
+        final int id;
+
+        /**
+         * The name the definition would get, after the first occurrence
+         */
+        final String name;
+
+        /**
+         * The shapes of the child properties, the "items" and the "anyOf" scenarios
+         */
+        final List<Shape> children;
+
+        /**
+         * Whether a reference would be any shorter than the sub-schema. Base types and references aren't
+         */
+        final boolean shareable;
+
+        final List<Property> occurrences = new ArrayList<>(1);
+
+        /**
+         * How many times the shape occurs in the distinct shapes
+         */
+        int references;
+
+        /**
+         * The reference to the definition, once created
+         */
+        String reference;
+
+        Shape(int id, String name, List<Shape> children, Property property){
+            this.id = id;
+            this.name = name;
+            this.children = children;
+            this.shareable = !property.isReference() && !children.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * @author 2018 Simone Pezzano
+ * ---
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package simonepezzano.exonschema;
+
+import jdk.jfr.*;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A listener that emits a JDK Flight Recorder event for each phase, so that the phases show up in recordings next
+ * to garbage collections and everything else the JVM records. Events are only created when a recording enables
+ * them. This class requires a JVM shipping JFR (11 and later, or 8u262 and later), and is the only one depending
+ * on it
+ */
+public class ExonFlightRecorder implements ExonListener {
+
+    /**
+     * The phases in progress in each thread, innermost last
+     */
+    private final ThreadLocal<Deque<PhaseEvent>> phases = ThreadLocal.withInitial(ArrayDeque::new);
+
+    @Override
+    public void phaseStarted(ExonPhase phase){
+        final PhaseEvent event = new PhaseEvent();
+        event.phase = phase.name();
+        event.begin();
+        phases.get().push(event);
+    }
+
+    @Override
+    public void phaseCompleted(ExonPhase phase, long nanos){
+        final PhaseEvent event = phases.get().poll();
+        if(event != null)
+            event.commit();
+    }
+
+    @Override
+    public void nodeVisited(int depth){
+        final PhaseEvent event = phases.get().peek();
+        if(event != null) {
+            event.nodes++;
+            event.maxDepth = Math.max(event.maxDepth,depth);
+        }
+    }
+
+    @Override
+    public void scenarioCreated(){
+        final PhaseEvent event = phases.get().peek();
+        if(event != null)
+            event.scenarios++;
+    }
+
+    @Override
+    public void bytesRead(long bytes){
+        final PhaseEvent event = phases.get().peek();
+        if(event != null)
+            event.bytes += bytes;
+    }
+
+    /**
+     * A phase of the inference. Counts only include what happened in the thread running the phase
+     */
+    @Name("simonepezzano.exonschema.Phase")
+    @Label("ExonSchema Phase")
+    @Category("ExonSchema")
+    @Description("A phase of a JSON schema inference")
+    static class PhaseEvent extends Event {
+
+        @Label("Phase")
+        String phase;
+
+        @Label("Nodes Visited")
+        long nodes;
+
+        @Label("Max Depth")
+        int maxDepth;
+
+        @Label("Scenarios Created")
+        long scenarios;
+
+        @Label("Bytes Read")
+        @DataAmount
+        long bytes;
+    }
+}
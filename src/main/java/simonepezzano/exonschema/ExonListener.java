@@ -0,0 +1,135 @@
+/*
+ * @author 2018 Simone Pezzano
+ * ---
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package simonepezzano.exonschema;
+
+/**
+ * Receives the events of a schema inference: the phases with their duration, and the counts of what the walkers,
+ * the simplifier and the mergers do. Every method does nothing by default, so implementations only override what
+ * they need. Listeners may be called from several threads at once, by parallel walkers and pipelines.
+ * See ExonMetrics and ExonFlightRecorder
+ */
+public interface ExonListener {
+
+    /**
+     * The listener that ignores everything, used when none has been set
+     */
+    ExonListener NONE = new ExonListener(){};
+
+    /**
+     * A phase is starting, in the current thread
+     * @param phase the phase
+     */
+    default void phaseStarted(ExonPhase phase){
+    }
+
+    /**
+     * The last phase started in the current thread is over
+     * @param phase the phase
+     * @param nanos how long the phase took, in nanoseconds
+     */
+    default void phaseCompleted(ExonPhase phase, long nanos){
+    }
+
+    /**
+     * A walker went through a value of the data
+     * @param depth how deep the value is, 0 being the root
+     */
+    default void nodeVisited(int depth){
+    }
+
+    /**
+     * An array item turned out to be a new scenario
+     */
+    default void scenarioCreated(){
+    }
+
+    /**
+     * Two properties have been compared with equivalentTo while collecting scenarios
+     */
+    default void equivalenceChecked(){
+    }
+
+    /**
+     * A property has been merged into another one, or properties have been merged together
+     */
+    default void merged(){
+    }
+
+    /**
+     * A walker read some JSON from a stream
+     * @param bytes the bytes read, or the characters when reading text
+     */
+    default void bytesRead(long bytes){
+    }
+
+    /**
+     * @param listeners some listeners
+     * @return a listener forwarding every event to all the provided listeners, in order
+     */
+    static ExonListener of(ExonListener... listeners){
+        final ExonListener[] targets = listeners.clone();
+        return new ExonListener() {
+            @Override
+            public void phaseStarted(ExonPhase phase){
+                for(ExonListener listener : targets)
+                    listener.phaseStarted(phase);
+            }
+
+            @Override
+            public void phaseCompleted(ExonPhase phase, long nanos){
+                for(ExonListener listener : targets)
+                    listener.phaseCompleted(phase,nanos);
+            }
+
+            @Override
+            public void nodeVisited(int depth){
+                for(ExonListener listener : targets)
+                    listener.nodeVisited(depth);
+            }
+
+            @Override
+            public void scenarioCreated(){
+                for(ExonListener listener : targets)
+                    listener.scenarioCreated();
+            }
+
+            @Override
+            public void equivalenceChecked(){
+                for(ExonListener listener : targets)
+                    listener.equivalenceChecked();
+            }
+
+            @Override
+            public void merged(){
+                for(ExonListener listener : targets)
+                    listener.merged();
+            }
+
+            @Override
+            public void bytesRead(long bytes){
+                for(ExonListener listener : targets)
+                    listener.bytesRead(bytes);
+            }
+        };
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * @author 2018 Simone Pezzano
+ * ---
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package simonepezzano.exonschema;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A listener that counts what happens during the inference and sums up the time spent in each phase.
+ * It can be shared between threads and walkers
+ */
+public class ExonMetrics implements ExonListener {
+
+    private static final ExonPhase[] PHASES = ExonPhase.values();
+
+    private final LongAdder nodes = new LongAdder();
+
+    private final LongAdder scenarios = new LongAdder();
+
+    private final LongAdder equivalenceChecks = new LongAdder();
+
+    private final LongAdder merges = new LongAdder();
+
+    private final LongAdder bytes = new LongAdder();
+
+    private final LongAccumulator maxDepth = new LongAccumulator(Math::max,0);
+
+    private final LongAdder[] phaseNanos = new LongAdder[PHASES.length];
+
+    private final LongAdder[] phaseCounts = new LongAdder[PHASES.length];
+
+    /**
+     * Default constructor
+     */
+    public ExonMetrics(){
+        for(int i = 0; i < PHASES.length; i++) {
+            phaseNanos[i] = new LongAdder();
+            phaseCounts[i] = new LongAdder();
+        }
+    }
+
+    @Override
+    public void phaseCompleted(ExonPhase phase, long nanos){
+        phaseNanos[phase.ordinal()].add(nanos);
+        phaseCounts[phase.ordinal()].increment();
+    }
+
+    @Override
+    public void nodeVisited(int depth){
+        nodes.increment();
+        maxDepth.accumulate(depth);
+    }
+
+    @Override
+    public void scenarioCreated(){
+        scenarios.increment();
+    }
+
+    @Override
+    public void equivalenceChecked(){
+        equivalenceChecks.increment();
+    }
+
+    @Override
+    public void merged(){
+        merges.increment();
+    }
+
+    @Override
+    public void bytesRead(long bytes){
+        this.bytes.add(bytes);
+    }
+
+    public long getNodesVisited(){
+        return nodes.sum();
+    }
+
+    public long getScenariosCreated(){
+        return scenarios.sum();
+    }
+
+    public long getEquivalenceChecks(){
+        return equivalenceChecks.sum();
+    }
+
+    public long getMerges(){
+        return merges.sum();
+    }
+
+    public long getBytesRead(){
+        return bytes.sum();
+    }
+
+    public int getMaxDepth(){
+        return (int) maxDepth.get();
+    }
+
+    /**
+     * @param phase a phase
+     * @return the total time spent in the phase, in nanoseconds
+     */
+    public long getNanos(ExonPhase phase){
+        return phaseNanos[phase.ordinal()].sum();
+    }
+
+    /**
+     * @param phase a phase
+     * @return how many times the phase has been completed
+     */
+    public long getCount(ExonPhase phase){
+        return phaseCounts[phase.ordinal()].sum();
+    }
+
+    /**
+     * Sets all the metrics back to zero
+     */
+    public void reset(){
+        nodes.reset();
+        scenarios.reset();
+        equivalenceChecks.reset();
+        merges.reset();
+        bytes.reset();
+        maxDepth.reset();
+        for(int i = 0; i < PHASES.length; i++) {
+            phaseNanos[i].reset();
+            phaseCounts[i].reset();
+        }
+    }
+
+    /**
+     * @return a summary of the metrics, one per line
+     */
+    @Override
+    public String toString(){
+        final StringBuilder sb = new StringBuilder();
+        sb.append(String.format("nodes visited: %d, max depth: %d, bytes read: %d%n",getNodesVisited(),getMaxDepth(),getBytesRead()));
+        sb.append(String.format("scenarios created: %d, equivalence checks: %d, merges: %d",getScenariosCreated(),getEquivalenceChecks(),getMerges()));
+        for(ExonPhase phase : PHASES)
+            if(getCount(phase) > 0)
+                sb.append(String.format("%n%s: %.3f ms (%d)",phase.name().toLowerCase(),getNanos(phase)/1e6,getCount(phase)));
+        return sb.toString();
+    }
+}
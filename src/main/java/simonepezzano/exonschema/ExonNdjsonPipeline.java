@@ -0,0 +1,286 @@
+/*
+ * @author 2018 Simone Pezzano
+ * ---
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package simonepezzano.exonschema;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Generates one JsonSchema out of newline-delimited JSON (NDJSON), one document per line. Reading, parsing and
+ * inference overlap: the calling thread reads the lines in chunks, a pool of workers parses and analyzes each
+ * chunk into a partial schema, and the partial schemas are merged in the same order as the chunks while the
+ * following ones are still being processed.
+ * An instance can run one analysis at a time
+ */
+public class ExonNdjsonPipeline {
+
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    private final ExonWalker walker;
+
+    private final int threads;
+
+    private final int chunkSize;
+
+    private long documentCount;
+
+    private long elapsedNanos;
+
+    /**
+     * Default constructor. Uses a streaming walker, as many threads as the available processors and the default
+     * chunk size
+     */
+    public ExonNdjsonPipeline(){
+        this(new ExonStreamWalker(),Runtime.getRuntime().availableProcessors(),DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Constructor
+     * @param walker the walker that will analyze the documents. An ExonStreamWalker parses and analyzes each line
+     *               in one go, any other walker analyzes the deserialized documents
+     * @param threads the number of worker threads
+     * @param chunkSize the number of lines in each chunk
+     */
+    public ExonNdjsonPipeline(ExonWalker walker, int threads, int chunkSize){
+        if(threads < 1 || chunkSize < 1)
+            throw new IllegalArgumentException("Threads and chunk size must be at least 1");
+        this.walker = walker;
+        this.threads = threads;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Analyzes an NDJSON file. Gzip-compressed files are decompressed on the fly
+     * @param file a file containing one JSON document per line
+     * @param id the ID to assign to the JSON schema
+     * @param title the title of the schema
+     * @return the generated JSON schema, or null if the file contains no documents
+     * @throws IOException
+     */
+    public Schema analyze(File file, String id, String title) throws IOException {
+        try(InputStream inputStream = Files.newInputStream(file.toPath())){
+            return analyze(inputStream,id,title);
+        }
+    }
+
+    /**
+     * Analyzes a stream of NDJSON. Gzip-compressed streams are decompressed on the fly. The stream is not closed
+     * @param inputStream a stream providing one JSON document per line
+     * @param id the ID to assign to the JSON schema
+     * @param title the title of the schema
+     * @return the generated JSON schema, or null if there are no documents
+     * @throws IOException
+     */
+    public Schema analyze(InputStream inputStream, String id, String title) throws IOException {
+        return analyze(new BufferedReader(new InputStreamReader(ExonUtils.decompress(inputStream),StandardCharsets.UTF_8),65536),id,title);
+    }
+
+    /**
+     * Analyzes NDJSON content. Blank lines are skipped
+     * @param reader a reader providing one JSON document per line
+     * @param id the ID to assign to the JSON schema
+     * @param title the title of the schema
+     * @return the generated JSON schema, or null if there are no documents
+     * @throws IOException if reading fails or a line does not contain valid JSON
+     */
+    public Schema analyze(BufferedReader reader, String id, String title) throws IOException {
+        final long start = System.nanoTime();
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        // The chunks being processed, in reading order. Bounded, so that reading can't run too far ahead
+        final Deque<Future<Chunk>> pending = new ArrayDeque<>();
+        final Chunk result = new Chunk();
+        try {
+            List<String> lines = new ArrayList<>(chunkSize);
+            long firstLine = 1;
+            long lineNumber = 0;
+            String line;
+            while((line = reader.readLine()) != null){
+                lineNumber++;
+                lines.add(line);
+                if(lines.size() == chunkSize){
+                    submit(executor,pending,lines,firstLine,id,title);
+                    lines = new ArrayList<>(chunkSize);
+                    firstLine = lineNumber+1;
+                    if(pending.size() >= threads*2)
+                        result.merge(await(pending.poll()),walker);
+                }
+            }
+            if(!lines.isEmpty())
+                submit(executor,pending,lines,firstLine,id,title);
+            while(!pending.isEmpty())
+                result.merge(await(pending.poll()),walker);
+        } finally {
+            executor.shutdownNow();
+            documentCount = result.count;
+            elapsedNanos = System.nanoTime()-start;
+        }
+        return result.schema;
+    }
+
+    private void submit(ExecutorService executor, Deque<Future<Chunk>> pending, List<String> lines, long firstLine,
+                        String id, String title){
+        pending.add(executor.submit(() -> analyzeChunk(lines,firstLine,id,title)));
+    }
+
+    /**
+     * Waits for a chunk to be processed
+     * @param future the chunk
+     * @return the processed chunk
+     * @throws IOException if the processing failed
+     */
+    private static Chunk await(Future<Chunk> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("NDJSON analysis interrupted");
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Parses and analyzes the lines of a chunk, merging them into a partial schema
+     * @param lines the lines
+     * @param firstLine the number of the first line, for error reporting
+     * @param id the ID to assign to the JSON schema
+     * @param title the title of the schema
+     * @return the processed chunk
+     * @throws IOException if a line does not contain valid JSON
+     */
+    private Chunk analyzeChunk(List<String> lines, long firstLine, String id, String title) throws IOException {
+        final Chunk chunk = new Chunk();
+        long lineNumber = firstLine;
+        for(final String line : lines){
+            if(!line.trim().isEmpty()) {
+                try {
+                    chunk.merge(analyzeLine(line, id, title), walker);
+                } catch (JsonProcessingException e) {
+                    throw new IOException("Invalid JSON at line " + lineNumber, e);
+                }
+            }
+            lineNumber++;
+        }
+        return chunk;
+    }
+
+    private Schema analyzeLine(String line, String id, String title) throws IOException {
+        if(walker instanceof ExonStreamWalker) {
+            try (JsonParser parser = ExonUtils.createParser(line)) {
+                final Schema schema = ((ExonStreamWalker) walker).analyze(parser, id, title);
+                requireEnd(parser);
+                return schema;
+            }
+        }
+        final ExonListener listener = walker.getListener();
+        listener.phaseStarted(ExonPhase.PARSE);
+        final long start = System.nanoTime();
+        final Object payload;
+        try (JsonParser parser = ExonUtils.createParser(line)) {
+            payload = parser.readValueAs(Object.class);
+            requireEnd(parser);
+            listener.bytesRead(line.length());
+        } finally {
+            listener.phaseCompleted(ExonPhase.PARSE,System.nanoTime()-start);
+        }
+        return walker.analyze(payload,id,title);
+    }
+
+    /**
+     * Makes sure a line holds a single JSON value, with nothing after it
+     * @param parser the parser of the line, past the value
+     * @throws JsonParseException if something follows the value
+     */
+    private static void requireEnd(JsonParser parser) throws IOException {
+        if(parser.nextToken() != null)
+            throw new JsonParseException(parser,"Unexpected content after the JSON value");
+    }
+
+    /**
+     * @return the number of documents analyzed by the last run
+     */
+    public long getDocumentCount(){
+        return documentCount;
+    }
+
+    /**
+     * @return the duration of the last run, in nanoseconds
+     */
+    public long getElapsedNanos(){
+        return elapsedNanos;
+    }
+
+    /**
+     * @return the throughput of the last run, in documents per second
+     */
+    public double getDocumentsPerSecond(){
+        return (elapsedNanos > 0) ? documentCount*1e9/elapsedNanos : 0;
+    }
+
+    /**
+     * A partial schema and the number of documents it describes
+     */
+    private static class Chunk {
+
+        private Schema schema;
+
+        private long count;
+
+        void merge(Schema incoming, ExonWalker walker){
+            merge(incoming,1,walker);
+        }
+
+        void merge(Chunk chunk, ExonWalker walker){
+            if(chunk.schema != null)
+                merge(chunk.schema,chunk.count,walker);
+        }
+
+        private void merge(Schema incoming, long incomingCount, ExonWalker walker){
+            if(schema == null)
+                schema = incoming;
+            else {
+                final ExonListener listener = walker.getListener();
+                listener.phaseStarted(ExonPhase.MERGE);
+                final long start = System.nanoTime();
+                try {
+                    ExonUtils.mergeInto(schema, incoming, walker.getExamplesPolicy());
+                    listener.merged();
+                } finally {
+                    listener.phaseCompleted(ExonPhase.MERGE,System.nanoTime()-start);
+                }
+            }
+            count += incomingCount;
+        }
+    }
+}
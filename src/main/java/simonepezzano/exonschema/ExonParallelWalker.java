@@ -0,0 +1,254 @@
+/*
+ * @author 2018 Simone Pezzano
+ * ---
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package simonepezzano.exonschema;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * A walker that analyzes large arrays and wide objects in parallel, using a ForkJoinPool. Arrays and objects with
+ * at least "threshold" elements get split into subtasks, whose results are merged in the original order, so the
+ * produced schema is the same the sequential ExonWalker would produce.
+ * The scenarios of two array chunks can only be merged exactly when the items have an exact structure (see
+ * Property.structuralHash) and the examples policy does not depend on the order of the values. Arrays with items
+ * of a loose structure are still analyzed in parallel, and then folded one item at a time, in order
+ */
+public class ExonParallelWalker extends ExonWalker {
+
+    /**
+     * The default minimum number of elements for an array or an object to be split
+     */
+    public static final int DEFAULT_THRESHOLD = 256;
+
+    private final ForkJoinPool pool;
+
+    private final int threshold;
+
+    /**
+     * Default constructor, using the common pool and the default threshold
+     */
+    public ExonParallelWalker(){
+        this(ForkJoinPool.commonPool(),DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Constructor with a custom pool and threshold
+     * @param pool the pool that will run the subtasks
+     * @param threshold the minimum number of elements for an array or an object to be split
+     */
+    public ExonParallelWalker(ForkJoinPool pool, int threshold){
+        super();
+        if(threshold < 2)
+            throw new IllegalArgumentException("The threshold must be at least 2");
+        this.pool = pool;
+        this.threshold = threshold;
+    }
+
+    @Override
+    protected boolean delegate(Object item, Property currentElement, PropertyPath path){
+        final JsonType type = JsonType.of(item);
+        if(type == JsonType.OBJECT && ((Map)item).size() >= threshold) {
+            analyzeObject((Map<String, Object>) item, currentElement, path);
+            return true;
+        }
+        if(type == JsonType.ARRAY && ((List)item).size() >= threshold && isOrderInsensitive() && !samplingPolicy.isSampling()) {
+            analyzeArray((List) item, currentElement, path);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Analyzes the entries of a wide object in parallel
+     * @param item the object
+     * @param currentElement the current element that will hold the analysis result
+     * @param path the location of the current element
+     */
+    private void analyzeObject(Map<String,Object> item, Property currentElement, PropertyPath path){
+        currentElement.setRequired(getRequired(item));
+        final Map.Entry<String,Object>[] entries = item.entrySet().toArray(new Map.Entry[0]);
+        final Property[] children = new Property[entries.length];
+        run(new ObjectTask(entries,children,0,entries.length,path));
+        // Children are added in the original order
+        for(int i = 0; i < entries.length; i++)
+            currentElement.addChildProperty(entries[i].getKey(),children[i]);
+    }
+
+    /**
+     * Analyzes the items of a large array in parallel, then folds them into scenarios. If some item has a loose
+     * structure, the scenarios of different chunks can't be merged exactly, so the items get folded one at a time,
+     * in order. Either way, each item is analyzed once
+     * @param item the array
+     * @param currentElement the current element that will hold the analysis result
+     * @param path the location of the current element
+     */
+    private void analyzeArray(List item, Property currentElement, PropertyPath path){
+        final Property[] props = new Property[item.size()];
+        final int[] hashes = new int[props.length];
+        run(new ItemTask(item,props,hashes,0,props.length,path));
+        boolean loose = false;
+        for(int hash : hashes)
+            loose |= hash == Property.LOOSE_STRUCTURE;
+        final ScenarioCollector collector;
+        if(loose) {
+            collector = new ScenarioCollector(examplesPolicy,listener,valueStatistics);
+            for(int i = 0; i < props.length; i++)
+                collector.add(props[i],hashes[i]);
+        } else
+            collector = run(new FoldTask(props,hashes,0,props.length));
+        setItems(currentElement,collector.getScenarios(),path);
+    }
+
+    /**
+     * @return true if the outcome of merging examples does not depend on the order of the values
+     */
+    private boolean isOrderInsensitive(){
+        return examplesPolicy.getMode() == ExamplesPolicy.Mode.ALL || examplesPolicy.getMode() == ExamplesPolicy.Mode.NONE;
+    }
+
+    /**
+     * Runs a task, either in the current worker or in the pool
+     * @param task the task
+     * @return the result of the task
+     */
+    private <T> T run(ForkJoinTask<T> task){
+        if(ForkJoinTask.inForkJoinPool() && ForkJoinTask.getPool() == pool)
+            return task.invoke();
+        return pool.invoke(task);
+    }
+
+    /**
+     * Analyzes a range of the entries of an object
+     */
+    private class ObjectTask extends RecursiveAction {
+
+        private final Map.Entry<String,Object>[] entries;
+        private final Property[] children;
+        private final int from;
+        private final int to;
+        private final PropertyPath path;
+
+        ObjectTask(Map.Entry<String,Object>[] entries, Property[] children, int from, int to, PropertyPath path){
+            this.entries = entries;
+            this.children = children;
+            this.from = from;
+            this.to = to;
+            this.path = path;
+        }
+
+        @Override
+        protected void compute(){
+            if(to-from > threshold) {
+                final int middle = (from+to) >>> 1;
+                invokeAll(new ObjectTask(entries,children,from,middle,path),new ObjectTask(entries,children,middle,to,path));
+                return;
+            }
+            for(int i = from; i < to; i++) {
+                final PropertyPath localPath = path.property(entries[i].getKey());
+                final Object value = entries[i].getValue();
+                final Property prop = createProperty(localPath,JsonType.of(value));
+                analyze(value,prop,localPath);
+                children[i] = prop;
+            }
+        }
+    }
+
+    /**
+     * Analyzes a range of the items of an array, computing their structural hashes
+     */
+    private class ItemTask extends RecursiveAction {
+
+        private final List items;
+        private final Property[] props;
+        private final int[] hashes;
+        private final int from;
+        private final int to;
+        private final PropertyPath path;
+
+        ItemTask(List items, Property[] props, int[] hashes, int from, int to, PropertyPath path){
+            this.items = items;
+            this.props = props;
+            this.hashes = hashes;
+            this.from = from;
+            this.to = to;
+            this.path = path;
+        }
+
+        @Override
+        protected void compute(){
+            if(to-from > threshold) {
+                final int middle = (from+to) >>> 1;
+                invokeAll(new ItemTask(items,props,hashes,from,middle,path),
+                          new ItemTask(items,props,hashes,middle,to,path));
+                return;
+            }
+            for(int i = from; i < to; i++) {
+                final Object localItem = items.get(i);
+                final PropertyPath localPath = path.item(i);
+                final Property prop = createProperty(localPath,JsonType.of(localItem));
+                analyze(localItem,prop,localPath);
+                props[i] = prop;
+                hashes[i] = prop.structuralHash();
+            }
+        }
+    }
+
+    /**
+     * Collects the scenarios of a range of analyzed items with an exact structure
+     */
+    private class FoldTask extends RecursiveTask<ScenarioCollector> {
+
+        private final Property[] props;
+        private final int[] hashes;
+        private final int from;
+        private final int to;
+
+        FoldTask(Property[] props, int[] hashes, int from, int to){
+            this.props = props;
+            this.hashes = hashes;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected ScenarioCollector compute(){
+            if(to-from > threshold) {
+                final int middle = (from+to) >>> 1;
+                final FoldTask left = new FoldTask(props,hashes,from,middle);
+                left.fork();
+                final ScenarioCollector right = new FoldTask(props,hashes,middle,to).compute();
+                final ScenarioCollector result = left.join();
+                // The scenarios on the right come later, so they get folded into the ones on the left
+                right.getScenarios().forEach(result::add);
+                return result;
+            }
+            final ScenarioCollector collector = new ScenarioCollector(examplesPolicy,listener,valueStatistics);
+            for(int i = from; i < to; i++)
+                collector.add(props[i],hashes[i]);
+            return collector;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * @author 2018 Simone Pezzano
+ * ---
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package simonepezzano.exonschema;
+
+/**
+ * The phases of a schema inference, as reported to an ExonListener
+ */
+public enum ExonPhase {
+
+    /**
+     * Deserializing a JSON document, when it's not parsed and walked in one go
+     */
+    PARSE,
+
+    /**
+     * Walking a document to generate its schema. Streaming walkers parse the document in this phase
+     */
+    WALK,
+
+    /**
+     * Simplifying a schema
+     */
+    SIMPLIFY,
+
+    /**
+     * Merging the schema of a document, or a partial schema, into a running schema
+     */
+    MERGE,
+
+    /**
+     * Writing a schema
+     */
+    SERIALIZE
+}
@@ -0,0 +1,305 @@
+/*
+ * @author 2018 Simone Pezzano
+ * ---
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package simonepezzano.exonschema;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Caches the schemas generated by a walker by the shape of the data: payloads with the same keys and types at each
+ * level, whatever their values, share one schema, so analyzing them only takes a scan computing their structural
+ * fingerprint (see fingerprint). The cache is bounded, least recently used shapes are evicted first. Walkers that
+ * sample arrays are not cached, as their schemas depend on which items get sampled rather than on the shape.
+ * By default the cached schema is returned as it is, shared between all the payloads of the same shape: it must
+ * not be modified. When examples are merged (see setMergeExamples), or when the walker collects value statistics,
+ * the values of each payload are added to the cached schema, and a copy is returned.
+ * The cache can be shared between threads
+ */
+public class ExonSchemaCache {
+
+    /**
+     * The default maximum number of cached schemas
+     */
+    public static final long DEFAULT_MAXIMUM_SIZE = 1000;
+
+    private static final long OBJECT_SEED = 0x9e3779b97f4a7c15L;
+
+    private static final long ARRAY_SEED = 0xc2b2ae3d27d4eb4fL;
+
+    private static final long UNKNOWN_SEED = 0x165667b19e3779f9L;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final ExonWalker walker;
+
+    /**
+     * Walks the items of arrays with more than one scenario, to find the scenarios they belong to
+     */
+    private final ExonWalker shapeWalker = new ExonWalker();
+
+    private final Cache<Key,Schema> cache;
+
+    private volatile boolean mergeExamples;
+
+    /**
+     * Default constructor, caching up to DEFAULT_MAXIMUM_SIZE schemas generated by an ExonWalker
+     */
+    public ExonSchemaCache(){
+        this(new ExonWalker(),DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /**
+     * Constructor
+     * @param walker the walker generating the schemas
+     * @param maximumSize the maximum number of cached schemas
+     */
+    public ExonSchemaCache(ExonWalker walker, long maximumSize){
+        super();
+        this.walker = walker;
+        this.shapeWalker.setExamplesPolicy(ExamplesPolicy.NONE);
+        // The data has been through the walker already, so its depth is fine
+        this.shapeWalker.setMaxDepth(Integer.MAX_VALUE);
+        this.cache = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().build();
+    }
+
+    /**
+     * Sets whether the values of the payloads hitting the cache have to be added to the examples of the cached
+     * schema. Statistics are always merged when the walker collects them. Defaults to false
+     * @param mergeExamples true if the examples have to be merged
+     */
+    public void setMergeExamples(boolean mergeExamples){
+        this.mergeExamples = mergeExamples;
+    }
+
+    public boolean isMergeExamples(){
+        return mergeExamples;
+    }
+
+    /**
+     * Analyzes a piece of data to generate a JSON schema, unless a piece of data of the same shape has been analyzed
+     * already
+     * @param data a piece of data (maps and arrays)
+     * @param id the ID to assign to the JSON schema
+     * @param title the title of the schema
+     * @return the JSON schema. Unless examples or statistics are merged, it's shared with the other payloads of the
+     * same shape and must not be modified
+     */
+    public Schema analyze(Object data, String id, String title){
+        if(walker.getSamplingPolicy().isSampling())
+            return walker.analyze(data,id,title);
+        final Key key = new Key(fingerprint(data),id,title);
+        final boolean[] loaded = new boolean[1];
+        final Schema schema;
+        try {
+            schema = cache.get(key, () -> {
+                loaded[0] = true;
+                return walker.analyze(data,id,title);
+            });
+        } catch(ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        final boolean examples = mergeExamples;
+        // The statistics of the cached schema only describe the payloads merged into it
+        if(!examples && !walker.isValueStatistics())
+            return schema;
+        synchronized(schema) {
+            if(!loaded[0])
+                mergeValues(data,schema,examples);
+            return schema.clone();
+        }
+    }
+
+    /**
+     * @return the hit, miss and eviction counters of the cache
+     */
+    public CacheStats stats(){
+        return cache.stats();
+    }
+
+    /**
+     * @return the number of cached schemas
+     */
+    public long size(){
+        return cache.size();
+    }
+
+    /**
+     * Drops all the cached schemas
+     */
+    public void clear(){
+        cache.invalidateAll();
+    }
+
+    /**
+     * Computes a fingerprint of the structure of a piece of data, leaving the values out: types and keys of objects
+     * (in any order), types and fingerprints of the items of arrays. Array items only count once per distinct
+     * fingerprint, together with the index where it first appears, as the IDs of the scenarios depend on it. So
+     * arrays made of the same shapes, first appearing at the same indexes, have the same fingerprint whatever their
+     * length. Pieces of data with the same fingerprint get the same schema from walkers that don't sample arrays,
+     * examples and statistics aside
+     * @param data a piece of data (maps and arrays)
+     * @return the fingerprint
+     */
+    public static long fingerprint(Object data){
+        final JsonType type = JsonType.of(data);
+        if(type == null)
+            return UNKNOWN_SEED;
+        switch(type){
+            case OBJECT: {
+                // Summing, so that the order of the keys does not matter
+                long hash = 0;
+                for(Map.Entry<String,Object> entry : ((Map<String,Object>) data).entrySet())
+                    hash += mix(hash(entry.getKey())*OBJECT_SEED+fingerprint(entry.getValue()));
+                return mix(hash+OBJECT_SEED);
+            }
+            case ARRAY: {
+                long hash = ARRAY_SEED;
+                // Arrays are mostly made of one or two shapes, so a linear search is fine
+                long[] distinct = null;
+                int count = 0;
+                int index = 0;
+                for(Object item : (List) data) {
+                    final long itemHash = fingerprint(item);
+                    index++;
+                    if(contains(distinct,count,itemHash))
+                        continue;
+                    if(distinct == null)
+                        distinct = new long[4];
+                    else
+                        if(count == distinct.length)
+                            distinct = Arrays.copyOf(distinct,count*2);
+                    distinct[count++] = itemHash;
+                    hash = mix(hash*31+itemHash+mix(index*ARRAY_SEED));
+                }
+                return hash;
+            }
+            default:
+                return mix(type.mask);
+        }
+    }
+
+    /**
+     * Hashes the characters of a key, so that keys with the same String.hashCode still get different fingerprints
+     * @param key a key
+     * @return the 64 bits hash of the key
+     */
+    private static long hash(String key){
+        long hash = FNV_OFFSET;
+        for(int i = 0; i < key.length(); i++)
+            hash = (hash ^ key.charAt(i)) * FNV_PRIME;
+        return mix(hash);
+    }
+
+    private static boolean contains(long[] values, int count, long value){
+        for(int i = 0; i < count; i++)
+            if(values[i] == value)
+                return true;
+        return false;
+    }
+
+    /**
+     * Spreads the bits of a hash
+     * @param hash a hash
+     * @return the mixed hash
+     */
+    private static long mix(long hash){
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * Adds the values of a piece of data to the examples and statistics of the schema it has the shape of
+     * @param data a piece of data
+     * @param property the property describing the data
+     * @param examples true if the values have to be added to the examples too
+     */
+    private void mergeValues(Object data, Property property, boolean examples){
+        if(property.hasAnyOf()) {
+            // As the walker does, the values go to every scenario the shape of the data is equivalent to
+            final Property shape = shapeWalker.analyze(data,(String) null,null);
+            for(Property scenario : property.getAnyOf())
+                if(shape.equivalentTo(scenario))
+                    mergeValues(data,scenario,examples);
+            return;
+        }
+        final JsonType type = JsonType.of(data);
+        if(type == JsonType.OBJECT) {
+            for(Map.Entry<String,Object> entry : ((Map<String,Object>) data).entrySet()) {
+                final Property child = property.getProperty(entry.getKey());
+                if(child != null)
+                    mergeValues(entry.getValue(),child,examples);
+            }
+        } else
+            if(type == JsonType.ARRAY) {
+                if(property.hasItems())
+                    for(Object item : (List) data)
+                        mergeValues(item,property.getItems(),examples);
+            } else {
+                if(examples)
+                    property.addExample(data,walker.getExamplesPolicy());
+                if(walker.isValueStatistics())
+                    property.addStatistics(ValueStatistics.of(data));
+            }
+    }
+
+    /**
+     * The key of a cached schema
+     */
+    private static final class Key {
+
+        final long fingerprint;
+
+        final String id;
+
+        final String title;
+
+        Key(long fingerprint, String id, String title){
+            this.fingerprint = fingerprint;
+            this.id = id;
+            this.title = title;
+        }
+
+        @Override
+        public boolean equals(Object obj){
+            if(!(obj instanceof Key))
+                return false;
+            final Key other = (Key) obj;
+            return fingerprint == other.fingerprint && Objects.equals(id,other.id) && Objects.equals(title,other.title);
+        }
+
+        @Override
+        public int hashCode(){
+            return Long.hashCode(fingerprint)*31+Objects.hashCode(id)*17+Objects.hashCode(title);
+        }
+    }
+}
@@ -0,0 +1,426 @@
+/*
+ * @author 2018 Simone Pezzano
+ * ---
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package simonepezzano.exonschema;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Merges schemas recursively, with an outcome that depends neither on the order of the schemas nor on how they
+ * are grouped: merge(a,b) is the same as merge(b,a), and merge(merge(a,b),c) is the same as merge(a,merge(b,c)).
+ * Partial schemas computed on different shards of a corpus can therefore be combined in any order, or in a tree of
+ * parallel merges (see reduce).
+ * To get there, every choice only depends on the content being merged:
+ * <ul>
+ *     <li>scenarios are grouped by kind (objects, arrays, base types, references). Within arrays, objects are also
+ *     grouped by their keys, so different kinds of items stay different scenarios. The groups are sorted;</li>
+ *     <li>types, examples and child properties are united, "required" keys intersected, examples seen summed.
+ *     An object with no properties, or an array with no items, accepts any content, so the merged property gets
+ *     no properties, or no items, either;</li>
+ *     <li>with a bounded examples policy, the examples with the smallest hashes are kept in place of the first
+ *     ones, while a reservoir draws them with the weights of the schemas they come from. The draw doesn't depend
+ *     on the order of the schemas, but may on how they are grouped;</li>
+ *     <li>the IDs of the merged properties are their location in the merged schema, as the walkers would assign
+ *     them. Properties under "definitions" have no location, so they get no ID.</li>
+ * </ul>
+ * The merged schema shares nothing with the schemas it comes from, which are not modified
+ */
+public class ExonSchemaMerger {
+
+    /**
+     * The default maximum number of schemas a reduce task merges in one go
+     */
+    public static final int DEFAULT_BATCH_SIZE = 8;
+
+    private static final int OBJECT_GROUP = 0;
+    private static final int ARRAY_GROUP = 1;
+    private static final int BASE_GROUP = 2;
+    private static final int REFERENCE_GROUP = 3;
+    private static final int OTHER_GROUP = 4;
+
+    private final ExamplesPolicy examplesPolicy;
+
+    private final ForkJoinPool pool;
+
+    private final int batchSize;
+
+    /**
+     * Default constructor, keeping every example and reducing on the common pool
+     */
+    public ExonSchemaMerger(){
+        this(ExamplesPolicy.ALL,ForkJoinPool.commonPool(),DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Constructor with a custom examples policy, pool and batch size
+     * @param examplesPolicy the policy deciding how many examples each merged property keeps
+     * @param pool the pool that will run the reduce tasks
+     * @param batchSize the maximum number of schemas a reduce task merges in one go
+     */
+    public ExonSchemaMerger(ExamplesPolicy examplesPolicy, ForkJoinPool pool, int batchSize){
+        super();
+        if(batchSize < 2)
+            throw new IllegalArgumentException("The batch size must be at least 2");
+        this.examplesPolicy = examplesPolicy;
+        this.pool = pool;
+        this.batchSize = batchSize;
+    }
+
+    public ExamplesPolicy getExamplesPolicy(){
+        return examplesPolicy;
+    }
+
+    /**
+     * Merges two schemas
+     * @param schema1 schema to merge
+     * @param schema2 schema to merge
+     * @return the merged schema
+     */
+    public Schema merge(Schema schema1, Schema schema2){
+        return merge(Arrays.asList(schema1,schema2));
+    }
+
+    /**
+     * Merges any number of schemas in one step. The outcome is the same as merging them two by two, in any order
+     * @param schemas the schemas to merge, at least one
+     * @return the merged schema
+     */
+    public Schema merge(List<Schema> schemas){
+        if(schemas.isEmpty())
+            throw new IllegalArgumentException("No schema to merge");
+        String id = null;
+        String title = null;
+        String sampling = null;
+        final Map<String,List<Property>> definitions = new TreeMap<>();
+        for(Schema schema : schemas){
+            id = least(id,schema.getId());
+            title = least(title,schema.getTitle());
+            sampling = least(sampling,schema.getSampling());
+            if(schema.getDefinitions() != null)
+                schema.getDefinitions().forEach( (name,definition) -> definitions.computeIfAbsent(name,key -> new ArrayList<>()).add(definition));
+        }
+        final Schema schema = new Schema(id,title,null);
+        final Property root = mergeAll(new ArrayList<>(schemas),PropertyPath.ROOT,false);
+        root.shallowCloneInto(schema);
+        schema.setId(id);
+        schema.setSampling(sampling);
+        if(!definitions.isEmpty()) {
+            final Map<String,Property> merged = new LinkedHashMap<>();
+            definitions.forEach( (name,group) -> merged.put(name,mergeAll(group,null,false)));
+            schema.setDefinitions(merged);
+        }
+        return schema;
+    }
+
+    /**
+     * Merges two properties, as if they were located at the root of a schema
+     * @param prop1 property to merge
+     * @param prop2 property to merge
+     * @return the merged property
+     */
+    public Property merge(Property prop1, Property prop2){
+        return mergeAll(Arrays.asList(prop1,prop2),PropertyPath.ROOT,false);
+    }
+
+    /**
+     * Merges any number of schemas as a tree of parallel merges, batchSize schemas at a time
+     * @param schemas the schemas to merge, at least one
+     * @return the merged schema
+     */
+    public Schema reduce(List<Schema> schemas){
+        if(schemas.isEmpty())
+            throw new IllegalArgumentException("No schema to merge");
+        final ReduceTask task = new ReduceTask(schemas,0,schemas.size());
+        if(ForkJoinTask.inForkJoinPool() && ForkJoinTask.getPool() == pool)
+            return task.invoke();
+        return pool.invoke(task);
+    }
+
+    /**
+     * Merges the properties found at the same location
+     * @param props the properties
+     * @param path the location, or null if the merged properties get no ID
+     * @param items true if the properties are the "items" of arrays, in which case path is the location of the array
+     * @return the merged property
+     */
+    private Property mergeAll(List<Property> props, PropertyPath path, boolean items){
+        final SortedMap<GroupKey,List<Property>> groups = new TreeMap<>();
+        for(Property prop : props)
+            group(prop,items,groups);
+        if(groups.size() == 1)
+            return mergeGroup(groups.values().iterator().next(),(items && path != null) ? path.item(0) : path);
+        final Property anyOf = new Property();
+        final PropertyPath anyOfPath = (path != null) ? path.anyOf() : null;
+        assignId(anyOf,items ? anyOfPath : path);
+        final List<Property> scenarios = new LinkedList<>();
+        int index = 0;
+        for(List<Property> group : groups.values()) {
+            final PropertyPath scenarioPath;
+            if(path == null)
+                scenarioPath = null;
+            else
+                scenarioPath = items ? path.item(index) : anyOfPath.item(index);
+            scenarios.add(mergeGroup(group,scenarioPath));
+            index++;
+        }
+        anyOf.setAnyOf(scenarios);
+        return anyOf;
+    }
+
+    /**
+     * Adds the scenarios of a property (or the property itself, if it's not an "anyOf") to their groups
+     * @param prop the property
+     * @param items true if the property is the "items" of an array
+     * @param groups the groups
+     */
+    private static void group(Property prop, boolean items, SortedMap<GroupKey,List<Property>> groups){
+        if(prop.hasAnyOf()) {
+            prop.getAnyOf().forEach( scenario -> group(scenario,items,groups));
+            return;
+        }
+        groups.computeIfAbsent(GroupKey.of(prop,items),key -> new ArrayList<>()).add(prop);
+    }
+
+    /**
+     * Merges properties of the same group
+     * @param group the properties
+     * @param path the location of the merged property, or null
+     * @return the merged property
+     */
+    private Property mergeGroup(List<Property> group, PropertyPath path){
+        final Property first = group.get(0);
+        if(first.isReference())
+            return Property.reference(first.getRef());
+        final SortedSet<String> types = new TreeSet<>();
+        Object defaultValue = null;
+        long examplesSeen = 0;
+        ValueStatistics statistics = null;
+        Set<String> required = null;
+        boolean missingRequired = false;
+        // Objects with no properties and arrays with no items accept any content, so the merged property must too
+        boolean anyContent = false;
+        boolean anyItems = false;
+        final SortedMap<String,List<Property>> children = new TreeMap<>();
+        final List<Property> items = new ArrayList<>();
+        for(Property prop : group){
+            if(prop.getType() instanceof Collection)
+                ((Collection<?>) prop.getType()).forEach( type -> types.add(String.valueOf(type)));
+            else
+                if(prop.getType() != null)
+                    types.add(prop.getTypeAsString());
+            defaultValue = leastValue(defaultValue,prop.getDefaultValue());
+            examplesSeen += prop.getExamplesSeen();
+            if(prop.getStatistics() != null) {
+                if(statistics == null)
+                    statistics = new ValueStatistics();
+                statistics.add(prop.getStatistics());
+            }
+            if(prop.getRequired() == null)
+                missingRequired = true;
+            else
+                if(required == null)
+                    required = new HashSet<>(prop.getRequired());
+                else
+                    required.retainAll(prop.getRequired());
+            for(String key : prop.getPropertiesKeys())
+                children.computeIfAbsent(key,k -> new ArrayList<>()).add(prop.getProperty(key));
+            if(prop.hasItems())
+                items.add(prop.getItems());
+            anyContent |= prop.isOfType(JsonType.OBJECT) && !prop.hasProperties();
+            anyItems |= prop.isOfType(JsonType.ARRAY) && !prop.hasItems();
+        }
+        final Object type = (types.size() > 1) ? types : (types.isEmpty() ? null : types.first());
+        final Property property = (path != null) ? new Property(path,type,defaultValue) : new Property((String) null,type,defaultValue);
+        property.setExamples(mergeExamples(group));
+        property.setExamplesSeen(examplesSeen);
+        property.setStatistics(statistics);
+        // A missing "required" counts as empty, unless none of the properties has one
+        if(required != null && missingRequired)
+            required.clear();
+        property.setRequired(required);
+        if(!anyContent)
+            children.forEach( (key,values) -> property.addChildProperty(key,mergeAll(values,(path != null) ? path.property(key) : null,false)));
+        if(!items.isEmpty() && !anyItems)
+            property.setItems(mergeAll(items,path,true));
+        return property;
+    }
+
+    /**
+     * Unites the examples of a group of properties. With a bounded policy, the examples with the smallest hashes
+     * are kept, which is the same no matter the order of the values, unless the policy is a reservoir: then the
+     * examples are drawn with the weights of the properties (see ExamplesPolicy.draw)
+     * @param group the properties
+     * @return the merged examples, or null if none of the properties has examples or the policy keeps no examples
+     */
+    private Set<Object> mergeExamples(List<Property> group){
+        if(!examplesPolicy.keepsExamples())
+            return null;
+        Set<Object> examples = null;
+        final List<Set> sets = new ArrayList<>(group.size());
+        final long[] seen = new long[group.size()];
+        for(int i = 0; i < seen.length; i++) {
+            final Set set = group.get(i).getExamples();
+            sets.add(set);
+            seen[i] = group.get(i).getExamplesSeen();
+            if(set != null) {
+                if(examples == null)
+                    examples = new HashSet<>();
+                examples.addAll(set);
+            }
+        }
+        if(examples == null || examples.size() <= examplesPolicy.getLimit())
+            return examples;
+        if(examplesPolicy.getMode() == ExamplesPolicy.Mode.RESERVOIR)
+            return examplesPolicy.draw(sets,seen);
+        final List<Object> values = new ArrayList<>(examples);
+        values.sort(ExonSchemaMerger::compareValues);
+        return new HashSet<>(values.subList(0,examplesPolicy.getLimit()));
+    }
+
+    /**
+     * Assigns a location to a property, or removes its ID if there's no location
+     * @param property the property
+     * @param path the location, or null
+     */
+    private static void assignId(Property property, PropertyPath path){
+        if(path != null)
+            property.setPath(path);
+        else
+            property.setId(null);
+    }
+
+    /**
+     * @return the least of two strings, nulls excluded
+     */
+    private static String least(String value1, String value2){
+        if(value1 == null)
+            return value2;
+        if(value2 == null)
+            return value1;
+        return (value1.compareTo(value2) <= 0) ? value1 : value2;
+    }
+
+    /**
+     * @return the least of two values according to compareValues, nulls excluded
+     */
+    private static Object leastValue(Object value1, Object value2){
+        if(value1 == null)
+            return value2;
+        if(value2 == null)
+            return value1;
+        return (compareValues(value1,value2) <= 0) ? value1 : value2;
+    }
+
+    /**
+     * An arbitrary total order of the values, by hash first
+     */
+    private static int compareValues(Object value1, Object value2){
+        int result = Long.compare(mix(value1),mix(value2));
+        if(result == 0)
+            result = String.valueOf(value1).compareTo(String.valueOf(value2));
+        if(result == 0 && value1 != null && value2 != null)
+            result = value1.getClass().getName().compareTo(value2.getClass().getName());
+        return result;
+    }
+
+    private static long mix(Object value){
+        long hash = (value != null) ? value.hashCode() : 0;
+        hash *= 0x9E3779B97F4A7C15L;
+        hash ^= hash >>> 32;
+        return hash;
+    }
+
+    /**
+     * What a scenario gets grouped by: its kind and, for objects in arrays, its keys
+     */
+    private static final class GroupKey implements Comparable<GroupKey> {
+
+        private final int kind;
+
+        private final List<String> detail;
+
+        private GroupKey(int kind, List<String> detail){
+            this.kind = kind;
+            this.detail = detail;
+        }
+
+        static GroupKey of(Property property, boolean items){
+            if(property.isReference())
+                return new GroupKey(REFERENCE_GROUP,Collections.singletonList(property.getRef()));
+            if(property.isOfType(JsonType.OBJECT))
+                return new GroupKey(OBJECT_GROUP,items ? new ArrayList<>(new TreeSet<>(property.getPropertiesKeys())) : Collections.emptyList());
+            if(property.isOfType(JsonType.ARRAY))
+                return new GroupKey(ARRAY_GROUP,Collections.emptyList());
+            if(property.hasBaseType())
+                return new GroupKey(BASE_GROUP,Collections.emptyList());
+            // Anything else only gets merged with the same types
+            final SortedSet<String> types = new TreeSet<>();
+            if(property.getType() instanceof Collection)
+                ((Collection<?>) property.getType()).forEach( type -> types.add(String.valueOf(type)));
+            else
+                types.add(String.valueOf(property.getType()));
+            return new GroupKey(OTHER_GROUP,new ArrayList<>(types));
+        }
+
+        @Override
+        public int compareTo(GroupKey other){
+            if(kind != other.kind)
+                return Integer.compare(kind,other.kind);
+            for(int i = 0; i < Math.min(detail.size(),other.detail.size()); i++){
+                final int result = detail.get(i).compareTo(other.detail.get(i));
+                if(result != 0)
+                    return result;
+            }
+            return Integer.compare(detail.size(),other.detail.size());
+        }
+    }
+
+    /**
+     * Merges a range of schemas, splitting it in two when larger than the batch size
+     */
+    private class ReduceTask extends RecursiveTask<Schema> {
+
+        private final List<Schema> schemas;
+        private final int from;
+        private final int to;
+
+        ReduceTask(List<Schema> schemas, int from, int to){
+            this.schemas = schemas;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Schema compute(){
+            if(to-from <= batchSize)
+                return merge(schemas.subList(from,to));
+            final int middle = (from+to) >>> 1;
+            final ReduceTask left = new ReduceTask(schemas,from,middle);
+            left.fork();
+            final Schema right = new ReduceTask(schemas,middle,to).compute();
+            return merge(left.join(),right);
+        }
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * @author 2018 Simone Pezzano
+ * ---
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package simonepezzano.exonschema;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes schemas straight to a JsonGenerator, an OutputStream or a Writer, walking the properties instead of going
+ * through the bean serialization of Jackson, and without building a string first. With the default settings the
+ * output is the same as ExonUtils.serializeJsonPayload: pretty-printed, with IDs and examples. The writer holds no
+ * state besides its settings, so it can be shared between threads
+ */
+public class ExonSchemaWriter {
+
+    /**
+     * The factory of the generators, whose codec writes the examples that are not plain values
+     */
+    private static final JsonFactory FACTORY = new ObjectMapper().getFactory()
+                                                    .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    private boolean pretty = true;
+
+    private boolean writeIds = true;
+
+    private boolean writeExamples = true;
+
+    private ExonListener listener = ExonListener.NONE;
+
+    /**
+     * Default constructor: pretty-printed output with IDs and examples
+     */
+    public ExonSchemaWriter(){
+        super();
+    }
+
+    /**
+     * Sets whether the output is pretty-printed or compact. Defaults to pretty-printed
+     * @param pretty true for pretty-printed output
+     */
+    public void setPretty(boolean pretty){
+        this.pretty = pretty;
+    }
+
+    public boolean isPretty(){
+        return pretty;
+    }
+
+    /**
+     * Sets whether the "$id" of the properties are written. The ID of the schema is always written. Defaults to true
+     * @param writeIds true if the IDs have to be written
+     */
+    public void setWriteIds(boolean writeIds){
+        this.writeIds = writeIds;
+    }
+
+    public boolean isWriteIds(){
+        return writeIds;
+    }
+
+    /**
+     * Sets whether the examples and default values are written. Defaults to true
+     * @param writeExamples true if the examples have to be written
+     */
+    public void setWriteExamples(boolean writeExamples){
+        this.writeExamples = writeExamples;
+    }
+
+    public boolean isWriteExamples(){
+        return writeExamples;
+    }
+
+    /**
+     * Sets the listener to notify of the time spent writing. Defaults to ExonListener.NONE
+     * @param listener the listener
+     */
+    public void setListener(ExonListener listener){
+        this.listener = listener;
+    }
+
+    public ExonListener getListener(){
+        return listener;
+    }
+
+    /**
+     * Writes a schema, or any property, to a stream in UTF-8. The stream is flushed, but not closed
+     * @param property the schema or property
+     * @param outputStream the stream
+     * @throws IOException
+     */
+    public void write(Property property, OutputStream outputStream) throws IOException {
+        try(JsonGenerator generator = FACTORY.createGenerator(outputStream,JsonEncoding.UTF8)) {
+            write(property,generator);
+        }
+    }
+
+    /**
+     * Writes a schema, or any property, to a writer. The writer is flushed, but not closed
+     * @param property the schema or property
+     * @param writer the writer
+     * @throws IOException
+     */
+    public void write(Property property, Writer writer) throws IOException {
+        try(JsonGenerator generator = FACTORY.createGenerator(writer)) {
+            write(property,generator);
+        }
+    }
+
+    /**
+     * Writes a schema, or any property, to a string
+     * @param property the schema or property
+     * @return the JSON string
+     * @throws IOException
+     */
+    public String writeToString(Property property) throws IOException {
+        final StringWriter writer = new StringWriter();
+        write(property,writer);
+        return writer.toString();
+    }
+
+    /**
+     * Writes a schema, or any property, to a generator. The pretty printer of the generator is replaced according to
+     * the settings of the writer
+     * @param property the schema or property
+     * @param generator the generator
+     * @throws IOException
+     */
+    public void write(Property property, JsonGenerator generator) throws IOException {
+        if(pretty)
+            generator.useDefaultPrettyPrinter();
+        else
+            generator.setPrettyPrinter(null);
+        listener.phaseStarted(ExonPhase.SERIALIZE);
+        final long start = System.nanoTime();
+        try {
+            writeProperty(property, generator, true);
+            generator.flush();
+        } finally {
+            listener.phaseCompleted(ExonPhase.SERIALIZE,System.nanoTime()-start);
+        }
+    }
+
+    /**
+     * Writes a property, in the order Jackson serializes its fields
+     * @param property the property
+     * @param generator the generator
+     * @param root true if the property is the root of what's being written
+     * @throws IOException
+     */
+    private void writeProperty(Property property, JsonGenerator generator, boolean root) throws IOException {
+        generator.writeStartObject();
+        if(property.getType() != null) {
+            generator.writeFieldName("type");
+            if(property.getType() instanceof Collection)
+                writeStrings((Collection) property.getType(),generator);
+            else
+                generator.writeString(property.getTypeAsString());
+        }
+        if(writeExamples) {
+            if(property.getDefaultValue() != null) {
+                generator.writeFieldName("defaultValue");
+                writeValue(property.getDefaultValue(),generator);
+            }
+            if(property.getExamples() != null) {
+                generator.writeArrayFieldStart("examples");
+                for(Object example : property.getExamples())
+                    writeValue(example,generator);
+                generator.writeEndArray();
+            }
+        }
+        if(property.getStatistics() != null)
+            writeStatistics(property,generator);
+        if(property.getAnyOf() != null) {
+            generator.writeArrayFieldStart("anyOf");
+            for(Property scenario : property.getAnyOf())
+                writeProperty(scenario,generator,false);
+            generator.writeEndArray();
+        }
+        if(property.getRequired() != null) {
+            generator.writeFieldName("required");
+            writeStrings(property.getRequired(),generator);
+        }
+        if(property.getProperties() != null)
+            writeProperties("properties",property.getProperties(),generator);
+        if(property.getItems() != null) {
+            generator.writeFieldName("items");
+            writeProperty(property.getItems(),generator,false);
+        }
+        final Schema schema = (property instanceof Schema) ? (Schema) property : null;
+        if(schema != null) {
+            if(schema.getTitle() != null)
+                generator.writeStringField("title",schema.getTitle());
+            if(schema.getDefinitions() != null && !schema.getDefinitions().isEmpty())
+                writeProperties("definitions",schema.getDefinitions(),generator);
+        }
+        if(property.getId() != null && (writeIds || root))
+            generator.writeStringField("$id",property.getId());
+        if(property.getRef() != null)
+            generator.writeStringField("$ref",property.getRef());
+        if(schema != null) {
+            generator.writeStringField("$schema",schema.getSchema());
+            if(schema.getSampling() != null)
+                generator.writeStringField("x-sampling",schema.getSampling());
+        }
+        generator.writeEndObject();
+    }
+
+    /**
+     * Writes the statistics of the values of a property
+     * @param property the property
+     * @param generator the generator
+     * @throws IOException
+     */
+    private static void writeStatistics(Property property, JsonGenerator generator) throws IOException {
+        writeNumberField("minimum",property.getMinimum(),generator);
+        writeNumberField("maximum",property.getMaximum(),generator);
+        writeNumberField("minLength",property.getMinLength(),generator);
+        writeNumberField("maxLength",property.getMaxLength(),generator);
+        if(property.getFormat() != null)
+            generator.writeStringField("format",property.getFormat());
+        final List<Object> values = property.getEnum();
+        if(values != null) {
+            generator.writeArrayFieldStart("enum");
+            for(Object value : values)
+                writeValue(value,generator);
+            generator.writeEndArray();
+        }
+        writeNumberField("x-nulls",property.getNullCount(),generator);
+        writeNumberField("x-integers",property.getIntegerCount(),generator);
+        writeNumberField("x-fractions",property.getFractionCount(),generator);
+        if(values == null)
+            writeNumberField("x-cardinality",property.getStatistics().getCardinality(),generator);
+    }
+
+    private static void writeNumberField(String name, Number value, JsonGenerator generator) throws IOException {
+        if(value == null)
+            return;
+        generator.writeFieldName(name);
+        writeValue(value,generator);
+    }
+
+    private void writeProperties(String name, Map<String,Property> properties, JsonGenerator generator) throws IOException {
+        generator.writeObjectFieldStart(name);
+        for(Map.Entry<String,Property> entry : properties.entrySet()) {
+            generator.writeFieldName(entry.getKey());
+            writeProperty(entry.getValue(),generator,false);
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writeStrings(Collection<?> values, JsonGenerator generator) throws IOException {
+        generator.writeStartArray();
+        for(Object value : values)
+            generator.writeString(String.valueOf(value));
+        generator.writeEndArray();
+    }
+
+    /**
+     * Writes an example or a default value. Anything but plain values goes through the codec of the generator
+     * @param value the value
+     * @param generator the generator
+     * @throws IOException
+     */
+    private static void writeValue(Object value, JsonGenerator generator) throws IOException {
+        if(value == null)
+            generator.writeNull();
+        else if(value instanceof String)
+            generator.writeString((String) value);
+        else if(value instanceof Integer || value instanceof Long)
+            generator.writeNumber(((Number) value).longValue());
+        else if(value instanceof Double)
+            generator.writeNumber((Double) value);
+        else if(value instanceof Boolean)
+            generator.writeBoolean((Boolean) value);
+        else
+            generator.writeObject(value);
+    }
+}
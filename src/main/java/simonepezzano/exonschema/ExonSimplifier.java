@@ -21,10 +21,12 @@
 
 package simonepezzano.exonschema;
 
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * The crazy crazy ExonSimplifier. Given a Schema generated by ExonWalker, it will try to simplify the schema
@@ -40,13 +42,30 @@ public class ExonSimplifier {
      */
     private final int similarityRate;
 
+    /**
+     * The policy to follow when merging the examples of two scenarios
+     */
+    private final ExamplesPolicy examplesPolicy;
+
+    private ExonListener listener = ExonListener.NONE;
+
     /**
      * Default constructor
      * @param similarityRate the similarity rate
      */
     public ExonSimplifier(int similarityRate){
+        this(similarityRate,ExamplesPolicy.ALL);
+    }
+
+    /**
+     * Constructor with an examples policy
+     * @param similarityRate the similarity rate
+     * @param examplesPolicy the policy to follow when merging the examples of two scenarios
+     */
+    public ExonSimplifier(int similarityRate, ExamplesPolicy examplesPolicy){
         super();
         this.similarityRate = similarityRate;
+        this.examplesPolicy = examplesPolicy;
     }
 
     /**
@@ -57,63 +76,230 @@ public class ExonSimplifier {
     }
 
     /**
-     * Performs the analysis
+     * Sets the listener to notify of the simplification and the merges. Defaults to ExonListener.NONE
+     * @param listener the listener
+     */
+    public void setListener(ExonListener listener){
+        this.listener = listener;
+    }
+
+    public ExonListener getListener(){
+        return listener;
+    }
+
+    /**
+     * Performs the analysis. The provided schema is not modified: only the properties on the way to a
+     * simplification are copied, everything else is shared between the two schemas. If nothing can be
+     * simplified, the provided schema itself is returned
      * @param schema an ExonSchema object
      * @return the (hopefully) simplified schema
      */
     public Schema analyze(Schema schema){
-        analyzeProperty(schema.clone());
-        return schema;
+        listener.phaseStarted(ExonPhase.SIMPLIFY);
+        final long start = System.nanoTime();
+        try {
+            return (Schema) analyzeProperty(schema);
+        } finally {
+            listener.phaseCompleted(ExonPhase.SIMPLIFY,System.nanoTime()-start);
+        }
     }
 
     /**
-     * Starts the analysis process
+     * Starts the analysis process. The properties are visited with an explicit stack of frames living on the heap,
+     * so the depth of the schema is not limited by the call stack
      * @param property the property to analyze
+     * @return the simplified property, or the property itself if nothing changed
      */
-    private void analyzeProperty(Property property){
+    private Property analyzeProperty(Property property){
+        // One frame per level, reused by all the properties at that level
+        final List<SimplifyFrame> stack = new ArrayList<>();
+        stack.add(new SimplifyFrame());
+        stack.get(0).reset(property,mergeScenarios(property));
+        int depth = 0;
+        while(true){
+            final SimplifyFrame frame = stack.get(depth);
+            final Property child = frame.next();
+            if(child != null) {
+                // Nothing to simplify below a property with no scenarios, items or child properties
+                if(child.hasAnyOf() || child.hasItems() || child.hasProperties()) {
+                    if(++depth == stack.size())
+                        stack.add(new SimplifyFrame());
+                    stack.get(depth).reset(child,mergeScenarios(child));
+                } else
+                    frame.add(child);
+                continue;
+            }
+            final Property simplified = frame.finish();
+            if(depth == 0)
+                return simplified;
+            stack.get(--depth).add(simplified);
+        }
+    }
+
+    /**
+     * Merges the similar scenarios of the "items" of a property, if the "items" field has an anyOf combinatory
+     * field. This means multiple scenarios apply, and we want to check whether some of these can be merged
+     * @param property the property
+     * @return a copy of the property with the merged scenarios, or the property itself if nothing changed
+     */
+    private Property mergeScenarios(Property property){
+        if(!property.hasItems() || !property.getItems().hasAnyOf())
+            return property;
+        // Similar scenarios are clustered together, and each cluster is merged in one go
+        final List<List<Property>> clusters = new MinHashClusterer(similarityRate).cluster(property.getItems().getAnyOf());
+        if(clusters.size() == property.getItems().getAnyOf().size())
+            return property;
+        final List<Property> scenarios = new LinkedList<>();
+        for (List<Property> cluster : clusters) {
+            if(cluster.size() > 1)
+                listener.merged();
+            scenarios.add(ExonUtils.merge(cluster, examplesPolicy));
+        }
+        final Property result = property.shallowClone();
         /*
-         * If the property's "items" field has an anyOf combinatory field.
-         * This means multiple scenarios apply, and we want to check whether some of these can be merged
+         * If we are left with one scenario, the anyOf is not useful anymore, so we can set the one scenario
+         * to "items"
          */
-        if(property.hasItems() && property.getItems().hasAnyOf()) {
-            // For each scenario...
-            Iterator<Property> iterator = property.getItems().getAnyOf().iterator();
-            List<Property> toRemove = new LinkedList<>();
-            HashSet<Property> toAdd = new HashSet<>();
-            // We first take one sample property...
-            Property currentProp = iterator.next();
-            // ... and iterate through the others
-            while(iterator.hasNext()){
-                Property prop2 = iterator.next();
-                // If both properties sub-properties that look "similar"
-                if(currentProp.hasProperties() && prop2.hasProperties() && ExonUtils.haveSimilarProps(currentProp,prop2,similarityRate)){
-                    // We mark both for removal
-                    toRemove.add(currentProp);
-                    toRemove.add(prop2);
-                    // And create a merged version of them to be added
-                    currentProp = ExonUtils.merge(currentProp,prop2);
-                    toAdd.add(currentProp);
+        if (scenarios.size() == 1)
+            result.setItems(scenarios.get(0));
+        else {
+            final Property items = property.getItems().shallowClone();
+            items.setAnyOf(scenarios);
+            result.setItems(items);
+        }
+        return result;
+    }
+
+    /**
+     * A property being simplified. We dig into its scenarios, its items and its child properties, in this order,
+     * and the property is copied only if some of them changed
+     */
+    private static final class SimplifyFrame {
+
+        /**
+         * The original property
+         */
+        Property property;
+
+        /**
+         * The property after merging the scenarios of its "items", either the original or its copy
+         */
+        Property result;
+
+        Iterator<Property> scenarios;
+
+        boolean items;
+
+        Iterator<Map.Entry<String,Property>> entries;
+
+        /**
+         * The child last handed out by next, and its key if it's a child property
+         */
+        Property current;
+
+        String key;
+
+        int scenarioIndex;
+
+        /**
+         * What changed, created only when something does
+         */
+        List<Property> simplifiedScenarios;
+
+        Property simplifiedItems;
+
+        Map<String,Property> changed;
+
+        /**
+         * Gets the frame ready for a new property
+         * @param property the original property
+         * @param result the property after merging the scenarios of its "items"
+         */
+        void reset(Property property, Property result){
+            this.property = property;
+            this.result = result;
+            this.scenarios = result.hasAnyOf() ? result.getAnyOf().iterator() : null;
+            this.items = result.hasItems();
+            this.entries = result.hasProperties() ? result.getProperties().entrySet().iterator() : null;
+            this.current = null;
+            this.key = null;
+            this.scenarioIndex = 0;
+            this.simplifiedScenarios = null;
+            this.simplifiedItems = null;
+            this.changed = null;
+        }
+
+        /**
+         * @return the next child to simplify, or null if there is none left
+         */
+        Property next(){
+            if(scenarios != null) {
+                if(scenarios.hasNext())
+                    return current = scenarios.next();
+                scenarios = null;
+            }
+            key = null;
+            if(items) {
+                items = false;
+                return current = result.getItems();
+            }
+            if(entries != null && entries.hasNext()) {
+                final Map.Entry<String,Property> entry = entries.next();
+                key = entry.getKey();
+                return current = entry.getValue();
+            }
+            return null;
+        }
+
+        /**
+         * @param simplified the simplified version of the child last handed out by next
+         */
+        void add(Property simplified){
+            if(scenarios != null) {
+                if(simplified != current && simplifiedScenarios == null)
+                    simplifiedScenarios = new LinkedList<>(result.getAnyOf().subList(0,scenarioIndex));
+                if(simplifiedScenarios != null)
+                    simplifiedScenarios.add(simplified);
+                scenarioIndex++;
+            } else
+                if(simplified != current) {
+                    if(key == null)
+                        simplifiedItems = simplified;
+                    else {
+                        if(changed == null)
+                            changed = new HashMap<>();
+                        changed.put(key, simplified);
+                    }
                 }
+        }
+
+        /**
+         * @return the simplified property, or the property itself if none of its children changed
+         */
+        Property finish(){
+            if(simplifiedScenarios != null) {
+                result = copyOnce(property, result);
+                result.setAnyOf(simplifiedScenarios);
+            }
+            if(simplifiedItems != null) {
+                result = copyOnce(property, result);
+                result.setItems(simplifiedItems);
             }
-            // Remove the items marked for removal
-            property.getItems().getAnyOf().removeAll(toRemove);
-            /*
-             * If the items to add are one, and the anyOf has been left empty, it means we are left with one
-             * scenario and the anyOf is not useful anymore, so we can set the one scenario to "items"
-             */
-            if(toAdd.size()==1 && property.getItems().getAnyOf().size()==0) {
-                property.setItems(toAdd.iterator().next());
+            if(changed != null) {
+                result = copyOnce(property, result);
+                changed.forEach(result::addChildProperty);
             }
-            else
-                // Otherwise we can add all the sceanrios to anyOf
-                property.getItems().getAnyOf().addAll(toAdd);
-          // If this had no anyOf, it means this property has, at best, regular child properties
-        } else{
-            // If it has regular properties
-            if(property.hasProperties())
-                // We can dig into them in a recursive fashion
-                property.getProperties().values().forEach(this::analyzeProperty);
+            return result;
         }
+    }
 
+    /**
+     * Copies a property, unless it has been copied already
+     * @param original the original property
+     * @param current the property being simplified, either the original or its copy
+     * @return the copy
+     */
+    private static Property copyOnce(Property original, Property current){
+        return (current == original) ? original.shallowClone() : current;
     }
 }
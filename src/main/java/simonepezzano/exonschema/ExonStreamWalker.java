@@ -0,0 +1,354 @@
+/*
+ * @author 2018 Simone Pezzano
+ * ---
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package simonepezzano.exonschema;
+
+import com.fasterxml.jackson.core.JsonLocation;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.google.common.io.CountingInputStream;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A walker that generates the JsonSchema straight from a stream of JSON tokens, without deserializing the payload
+ * first. Memory usage depends on the size of the schema rather than on the size of the payload.
+ * The produced schema is the same ExonWalker would produce on the deserialized payload
+ */
+public class ExonStreamWalker extends ExonWalker {
+
+    /**
+     * Default constructor
+     */
+    public ExonStreamWalker(){
+        super();
+    }
+
+    /**
+     * Analyzes a JSON file to generate a JSON schema
+     * @param file a file containing JSON
+     * @param id the ID to assign to the JSON schema
+     * @param title the title of the schema
+     * @return the generated JSON schema
+     * @throws IOException
+     */
+    public Schema analyze(File file, String id, String title) throws IOException {
+        return analyze(file.toPath(),id,title);
+    }
+
+    /**
+     * Analyzes a JSON file to generate a JSON schema. The file is memory-mapped, and decompressed on the fly if
+     * gzip-compressed
+     * @param path a file containing JSON
+     * @param id the ID to assign to the JSON schema
+     * @param title the title of the schema
+     * @return the generated JSON schema
+     * @throws IOException
+     */
+    public Schema analyze(Path path, String id, String title) throws IOException {
+        try(JsonParser parser = ExonUtils.createParser(path)) {
+            return analyze(parser, id, title, Files.size(path));
+        }
+    }
+
+    /**
+     * Analyzes a JSON document held in an array of bytes, without copying it. Gzip-compressed content is
+     * decompressed on the fly
+     * @param data the bytes of a JSON document
+     * @param id the ID to assign to the JSON schema
+     * @param title the title of the schema
+     * @return the generated JSON schema
+     * @throws IOException
+     */
+    public Schema analyze(byte[] data, String id, String title) throws IOException {
+        try(JsonParser parser = ExonUtils.createParser(data)) {
+            return analyze(parser, id, title, data.length);
+        }
+    }
+
+    /**
+     * Analyzes a JSON document held in the remaining bytes of a buffer. See ExonUtils.createParser(ByteBuffer)
+     * @param buffer a buffer containing a JSON document
+     * @param id the ID to assign to the JSON schema
+     * @param title the title of the schema
+     * @return the generated JSON schema
+     * @throws IOException
+     */
+    public Schema analyze(ByteBuffer buffer, String id, String title) throws IOException {
+        final int size = buffer.remaining();
+        try(JsonParser parser = ExonUtils.createParser(buffer)) {
+            return analyze(parser, id, title, size);
+        }
+    }
+
+    /**
+     * Analyzes a stream of JSON. Gzip-compressed streams are decompressed on the fly. The stream is not closed
+     * @param inputStream a stream of JSON
+     * @param id the ID to assign to the JSON schema
+     * @param title the title of the schema
+     * @return the generated JSON schema
+     * @throws IOException
+     */
+    public Schema analyze(InputStream inputStream, String id, String title) throws IOException {
+        final CountingInputStream counter = new CountingInputStream(inputStream);
+        try(JsonParser parser = ExonUtils.createParser(counter)) {
+            final Schema schema = analyze(parser, id, title, -1);
+            listener.bytesRead(counter.getCount());
+            return schema;
+        }
+    }
+
+    /**
+     * Analyzes the next JSON value available in a parser to generate a JSON schema.
+     * @param parser a JSON parser, either positioned on the value to analyze or right before it
+     * @param id the ID to assign to the JSON schema
+     * @param title the title of the schema
+     * @return the generated JSON schema
+     * @throws IOException
+     */
+    public Schema analyze(JsonParser parser, String id, String title) throws IOException {
+        return analyze(parser,id,title,0);
+    }
+
+    /**
+     * Analyzes the next JSON value available in a parser, reporting the bytes read to the listener
+     * @param parser a JSON parser, either positioned on the value to analyze or right before it
+     * @param id the ID to assign to the JSON schema
+     * @param title the title of the schema
+     * @param bytes the size of the input, 0 to use the offsets reported by the parser, or -1 if the caller reports
+     *              the bytes read
+     * @return the generated JSON schema
+     * @throws IOException
+     */
+    private Schema analyze(JsonParser parser, String id, String title, long bytes) throws IOException {
+        if(!parser.hasCurrentToken() && parser.nextToken() == null)
+            throw new IOException("No JSON content to analyze");
+
+        Schema schema = new Schema(id,title,ExonUtils.determineType(parser.currentToken()));
+
+        listener.phaseStarted(ExonPhase.WALK);
+        final long start = System.nanoTime();
+        final long startOffset = offset(parser.getTokenLocation());
+        try {
+            analyze(parser, schema, PropertyPath.ROOT);
+            if(bytes > 0)
+                listener.bytesRead(bytes);
+            else
+                if(bytes == 0)
+                    listener.bytesRead(offset(parser.getCurrentLocation())-startOffset);
+        } finally {
+            listener.phaseCompleted(ExonPhase.WALK,System.nanoTime()-start);
+        }
+        if(samplingPolicy.isSampling())
+            schema.setSampling(samplingPolicy.toString());
+        return schema;
+    }
+
+    /**
+     * Analyzes a value and the whole structure below it. The structure is walked with an explicit stack living on
+     * the heap, so the depth of the data is only limited by maxDepth. When invoked, the parser is positioned on the
+     * first token of the value, when it returns it's positioned on the last one
+     * @param parser the parser
+     * @param currentElement the current element that will hold the analysis result
+     * @param path the location of the current element
+     * @throws IOException
+     */
+    protected void analyze(JsonParser parser, Property currentElement, PropertyPath path) throws IOException {
+        visit(path);
+        final StreamFrame root = open(parser,currentElement,path);
+        if(root == null)
+            return;
+        final Deque<StreamFrame> stack = new ArrayDeque<>();
+        stack.push(root);
+        while(!stack.isEmpty()){
+            final StreamFrame frame = stack.peek();
+            final StreamFrame child = (frame.sampler != null) ? nextItem(parser,frame) : nextEntry(parser,frame);
+            if(child != null)
+                stack.push(child);
+            else {
+                stack.pop();
+                if(frame.sampler == null)
+                    frame.element.setRequired(frame.required);
+                else
+                    // The array is over: all the items have been folded into scenarios
+                    if(!frame.sampler.isEmpty())
+                        setItems(frame.element, frame.sampler.getScenarios(), frame.path);
+            }
+        }
+    }
+
+    /**
+     * Starts the analysis of the value the parser is positioned on. Base data types get analyzed right away,
+     * objects and arrays get a frame that will go through their content
+     * @param parser the parser
+     * @param currentElement the current element that will hold the analysis result
+     * @param path the location of the current element
+     * @return the frame of an object or array, or null if there is nothing more to do
+     * @throws IOException
+     */
+    private StreamFrame open(JsonParser parser, Property currentElement, PropertyPath path) throws IOException {
+        switch(parser.currentToken()){
+            case START_OBJECT:
+                return new StreamFrame(null,currentElement,path);
+            case START_ARRAY:
+                return new StreamFrame(samplingPolicy.newSampler(examplesPolicy,listener,valueStatistics),currentElement,path);
+            default:
+                // Statistics are read straight from the parser, the value only gets boxed if it's kept as an example
+                if(valueStatistics)
+                    currentElement.setStatistics(ValueStatistics.of(parser));
+                currentElement.setExample(examplesPolicy.keepsExamples() ? readValue(parser) : null,examplesPolicy);
+                return null;
+        }
+    }
+
+    /**
+     * Moves on to the next entry of an object, making it a child property
+     * @param parser the parser
+     * @param frame the frame of the object
+     * @return the frame of the next child object or array, or null if the object is over
+     * @throws IOException
+     */
+    private StreamFrame nextEntry(JsonParser parser, StreamFrame frame) throws IOException {
+        while(parser.nextToken() == JsonToken.FIELD_NAME){
+            final String key = parser.getCurrentName();
+            final JsonToken valueToken = parser.nextToken();
+            if(valueToken != JsonToken.VALUE_NULL)
+                frame.required.add(key);
+            final PropertyPath localPath = frame.path.property(key);
+            final Property prop = createProperty(localPath,JsonType.of(valueToken));
+            frame.element.addChildProperty(key, prop);
+            visit(localPath);
+            final StreamFrame child = open(parser,prop,localPath);
+            if(child != null)
+                return child;
+        }
+        return null;
+    }
+
+    /**
+     * Moves on to the next sampled item of an array, after folding the previous one into the scenarios. Items that
+     * are not sampled get skipped
+     * @param parser the parser
+     * @param frame the frame of the array
+     * @return the frame of the next item, if an object or an array, or null if the array is over
+     * @throws IOException
+     */
+    private StreamFrame nextItem(JsonParser parser, StreamFrame frame) throws IOException {
+        if(frame.pending != null) {
+            frame.sampler.add(frame.index, frame.pending);
+            frame.pending = null;
+            frame.index++;
+        }
+        JsonToken token;
+        while((token = parser.nextToken()) != JsonToken.END_ARRAY){
+            if(!frame.sampler.isComplete(frame.index) && frame.sampler.accept(frame.index)) {
+                final PropertyPath localPath = frame.path.item(frame.index);
+                final Property prop = createProperty(localPath, JsonType.of(token));
+                visit(localPath);
+                final StreamFrame child = open(parser,prop,localPath);
+                // The item can only be folded once it has been analyzed completely
+                if(child != null) {
+                    frame.pending = prop;
+                    return child;
+                }
+                frame.sampler.add(frame.index, prop);
+            } else
+                // The item is not sampled, its tokens still need to be consumed
+                parser.skipChildren();
+            frame.index++;
+        }
+        return null;
+    }
+
+    /**
+     * The state of an object or an array being walked
+     */
+    private static final class StreamFrame {
+
+        /**
+         * Arrays only: the sampler collecting the scenarios of the items
+         */
+        final ArraySampler sampler;
+
+        /**
+         * Objects only: the keys with a non-null value
+         */
+        final Set<String> required;
+
+        final Property element;
+
+        final PropertyPath path;
+
+        /**
+         * Arrays only: the index of the current item, and the property of the item being analyzed, if any
+         */
+        int index;
+
+        Property pending;
+
+        StreamFrame(ArraySampler sampler, Property element, PropertyPath path){
+            this.sampler = sampler;
+            this.required = (sampler == null) ? new HashSet<>() : null;
+            this.element = element;
+            this.path = path;
+        }
+    }
+
+    /**
+     * @param location a location in the input of a parser
+     * @return the offset of the location, in bytes, or in characters if the parser reads text
+     */
+    private static long offset(JsonLocation location){
+        return (location.getByteOffset() >= 0) ? location.getByteOffset() : location.getCharOffset();
+    }
+
+    /**
+     * Reads the scalar value the parser is positioned on, using the same Java types the default deserializer uses
+     * @param parser the parser
+     * @return the value
+     * @throws IOException
+     */
+    protected static Object readValue(JsonParser parser) throws IOException {
+        switch(parser.currentToken()){
+            case VALUE_STRING:
+                return parser.getText();
+            case VALUE_NUMBER_INT:
+                return parser.getNumberValue();
+            case VALUE_NUMBER_FLOAT:
+                return parser.getDoubleValue();
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            default:
+                return null;
+        }
+    }
+}
@@ -21,15 +21,25 @@
 
 package simonepezzano.exonschema;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Sets;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.zip.GZIPInputStream;
 
 /**
  * Utility functions
@@ -53,6 +63,12 @@ public class ExonUtils {
     public static final String JAVA_TYPE_ARRAY = "ArrayList";
     public static final String JAVA_TYPE_OBJECT = "LinkedHashMap";
 
+    /**
+     * The first two bytes of any gzip stream
+     */
+    private static final int GZIP_MAGIC_1 = 0x1f;
+    private static final int GZIP_MAGIC_2 = 0x8b;
+
     private static final ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
 
     /**
@@ -85,13 +101,21 @@ public class ExonUtils {
     /**
      * Determines the "type" of a piece of data
      * @param data the data to be evaluated
-     * @return
+     * @return the JsonSchema type, or null if the data is not of a known type
      */
     public static String determineType(Object data){
-        final String name = data != null ? data.getClass().getSimpleName() : null;
-        if(name == null)
-            return SCHEMA_TYPE_NULL;
-       return JAVA_TO_SCHEMA_TYPES.get(name);
+        final JsonType type = JsonType.of(data);
+        return (type != null) ? type.schemaName : null;
+    }
+
+    /**
+     * Determines the "type" of the JSON value starting with the provided token
+     * @param token the first token of a JSON value
+     * @return the JsonSchema type
+     */
+    public static String determineType(JsonToken token){
+        final JsonType type = JsonType.of(token);
+        return (type != null) ? type.schemaName : null;
     }
 
     /**
@@ -111,23 +135,8 @@ public class ExonUtils {
      * @return true if the provided type is a base type
      */
     public static boolean isBaseType(Object type){
-        // Null is a base type
-        if(type == null)
-            return false;
-        Set<String> types = new HashSet<>();
-        //If the proposed type is a string
-        if(type instanceof String)
-            types.add(type.toString());
-        else
-            //If the proposed type is a collection of types
-            types = (Set<String>) type;
-
         // If even one of the types is not a base type, return false
-        for(String t : types)
-            if(!BASE_TYPES.contains(t))
-                return false;
-
-        return true;
+        return JsonType.isBase(JsonType.maskOf(type));
     }
 
     /**
@@ -162,6 +171,155 @@ public class ExonUtils {
         return objectMapper.readValue(json,Object.class);
     }
 
+    /**
+     * Creates a streaming JSON parser for a text file containing JSON
+     * @param file a file
+     * @return a JSON parser
+     * @throws IOException
+     */
+    public static JsonParser createParser(File file) throws IOException {
+        return objectMapper.getFactory().createParser(file);
+    }
+
+    /**
+     * Given a stream of JSON, it deserializes it into a Java object using the default deserializer (maps and
+     * arrays). Gzip-compressed streams are decompressed transparently
+     * @param inputStream a stream of JSON. It won't be closed
+     * @return the deserialized object
+     * @throws IOException
+     */
+    public static Object deserializeJsonPayload(InputStream inputStream) throws IOException {
+        try(JsonParser parser = createParser(inputStream)){
+            return objectMapper.readValue(parser,Object.class);
+        }
+    }
+
+    /**
+     * Given a file containing JSON, it deserializes it into a Java object using the default deserializer (maps and
+     * arrays). The file is memory-mapped and gzip-compressed files are decompressed transparently
+     * @param path a file
+     * @return the deserialized object
+     * @throws IOException
+     */
+    public static Object deserializeJsonPayload(Path path) throws IOException {
+        try(JsonParser parser = createParser(path)){
+            return objectMapper.readValue(parser,Object.class);
+        }
+    }
+
+    /**
+     * Deserializes the JSON value a parser is positioned on into a Java object using the default deserializer (maps
+     * and arrays). The parser is left on the last token of the value
+     * @param parser a JSON parser
+     * @return the deserialized object
+     * @throws IOException
+     */
+    public static Object deserializeJsonPayload(JsonParser parser) throws IOException {
+        return objectMapper.readValue(parser,Object.class);
+    }
+
+    /**
+     * Creates a streaming JSON parser for a string of JSON
+     * @param json a JSON string
+     * @return a JSON parser
+     * @throws IOException
+     */
+    public static JsonParser createParser(String json) throws IOException {
+        return objectMapper.getFactory().createParser(json);
+    }
+
+    /**
+     * Creates a streaming JSON parser for an array of bytes, which is parsed in place. Gzip-compressed content is
+     * decompressed transparently
+     * @param data the bytes of a JSON document
+     * @return a JSON parser
+     * @throws IOException
+     */
+    public static JsonParser createParser(byte[] data) throws IOException {
+        return createParser(data,0,data.length);
+    }
+
+    /**
+     * Creates a streaming JSON parser for a portion of an array of bytes, which is parsed in place.
+     * Gzip-compressed content is decompressed transparently
+     * @param data an array of bytes
+     * @param offset the offset of the JSON document in the array
+     * @param length the length of the JSON document
+     * @return a JSON parser
+     * @throws IOException
+     */
+    public static JsonParser createParser(byte[] data, int offset, int length) throws IOException {
+        if(length >= 2 && (data[offset] & 0xff) == GZIP_MAGIC_1 && (data[offset+1] & 0xff) == GZIP_MAGIC_2)
+            return objectMapper.getFactory().createParser(new GZIPInputStream(new ByteArrayInputStream(data,offset,length)));
+        return objectMapper.getFactory().createParser(data,offset,length);
+    }
+
+    /**
+     * Creates a streaming JSON parser for the remaining bytes of a buffer. Heap buffers are parsed in place, direct
+     * buffers (such as memory-mapped files) are read through a stream. The position of the buffer is not changed.
+     * Gzip-compressed content is decompressed transparently
+     * @param buffer a buffer containing a JSON document
+     * @return a JSON parser
+     * @throws IOException
+     */
+    public static JsonParser createParser(ByteBuffer buffer) throws IOException {
+        if(buffer.hasArray())
+            return createParser(buffer.array(),buffer.arrayOffset()+buffer.position(),buffer.remaining());
+        return createParser(new ByteBufferBackedInputStream(buffer.duplicate()));
+    }
+
+    /**
+     * Creates a streaming JSON parser for a stream. Gzip-compressed streams are decompressed transparently.
+     * Closing the parser does not close the stream
+     * @param inputStream a stream of JSON
+     * @return a JSON parser
+     * @throws IOException
+     */
+    public static JsonParser createParser(InputStream inputStream) throws IOException {
+        final JsonParser parser = objectMapper.getFactory().createParser(decompress(inputStream));
+        parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+        return parser;
+    }
+
+    /**
+     * Creates a streaming JSON parser for a file. Files up to 2GB are memory-mapped, so their content is never
+     * copied to the heap as a whole. Gzip-compressed files are decompressed transparently
+     * @param path a file
+     * @return a JSON parser
+     * @throws IOException
+     */
+    public static JsonParser createParser(Path path) throws IOException {
+        try(FileChannel channel = FileChannel.open(path,StandardOpenOption.READ)){
+            // Mappings are limited to 2GB, larger files get streamed
+            if(channel.size() > Integer.MAX_VALUE) {
+                final JsonParser parser = objectMapper.getFactory().createParser(decompress(Files.newInputStream(path)));
+                parser.enable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+                return parser;
+            }
+            // The mapping stays valid after the channel is closed
+            return createParser(channel.map(FileChannel.MapMode.READ_ONLY,0,channel.size()));
+        }
+    }
+
+    /**
+     * Wraps a stream so that gzip-compressed content gets decompressed. Any other content is left as is
+     * @param inputStream a stream
+     * @return a stream providing the decompressed content
+     * @throws IOException
+     */
+    public static InputStream decompress(InputStream inputStream) throws IOException {
+        final PushbackInputStream pushback = new PushbackInputStream(inputStream,2);
+        final byte[] magic = new byte[2];
+        int read = 0;
+        int n;
+        while(read < 2 && (n = pushback.read(magic,read,2-read)) != -1)
+            read += n;
+        pushback.unread(magic,0,read);
+        if(read == 2 && (magic[0] & 0xff) == GZIP_MAGIC_1 && (magic[1] & 0xff) == GZIP_MAGIC_2)
+            return new GZIPInputStream(pushback,65536);
+        return pushback;
+    }
+
     /**
      * Loads a text file
      * @param file a file
@@ -169,13 +327,13 @@ public class ExonUtils {
      * @throws IOException
      */
     public static String load(File file) throws IOException {
-        BufferedReader reader = new BufferedReader(new FileReader(file));
-        StringBuilder sb = new StringBuilder();
-        String line;
-        while((line = reader.readLine())!= null){
-            sb.append(line+"\n");
+        try(BufferedReader reader = Files.newBufferedReader(file.toPath(),StandardCharsets.UTF_8)) {
+            StringBuilder sb = new StringBuilder();
+            String line;
+            while ((line = reader.readLine()) != null)
+                sb.append(line).append('\n');
+            return sb.toString();
         }
-        return sb.toString();
     }
 
     /**
@@ -217,27 +375,71 @@ public class ExonUtils {
         return types;
     }
 
+    /**
+     * Merges two sets of examples
+     * @param examples1 examples to merge
+     * @param examples2 examples to merge
+     * @return the merged examples
+     */
     public static Set mergeExamples(Set examples1, Set examples2){
-        Set examples = new HashSet<>();
-        if(examples1 != null)
-            examples.addAll(examples1);
-        if(examples2 != null)
-            examples.addAll(examples2);
+        return mergeExamples(examples1,examples2,ExamplesPolicy.ALL);
+    }
+
+    /**
+     * Merges two sets of examples following an examples policy
+     * @param examples1 examples to merge
+     * @param examples2 examples to merge
+     * @param policy the examples policy
+     * @return the merged examples, or null if the policy keeps no examples
+     */
+    public static Set mergeExamples(Set examples1, Set examples2, ExamplesPolicy policy){
+        return mergeExamples(Arrays.asList(examples1,examples2),policy);
+    }
+
+    /**
+     * Merges any number of sets of examples following an examples policy
+     * @param sets the sets of examples, each may be null
+     * @param policy the examples policy
+     * @return the merged examples, or null if the policy keeps no examples
+     */
+    public static Set mergeExamples(List<Set> sets, ExamplesPolicy policy){
+        if(!policy.keepsExamples())
+            return null;
+        Set<Object> examples = new HashSet<>();
+        long seen = 0;
+        for(Set set : sets) {
+            if(set == null)
+                continue;
+            for(Object value : set)
+                if(!examples.contains(value))
+                    policy.offer(examples, value, ++seen);
+        }
         return examples;
     }
 
     /**
      * Merges two properties. Beware! This function will merge the attributes and properties of two Property
      * instances in a non-recursive fashion. It will also ignore the "items" sub-property, so array definitions
-     * will not be merged
+     * will not be merged. The two properties are not modified, and the merged property shares with them the
+     * sub-properties that need no change, so it should be cloned before being modified in place.
+     * The merged property keeps the ID and default value of prop1, so the outcome depends on the order of the
+     * arguments. See ExonSchemaMerger for a recursive merge whose outcome doesn't
      * @param prop1 property to merge
      * @param prop2 property to merge
      * @return the merged property
      */
     public static Property merge(Property prop1, Property prop2){
-        prop1 = prop1.clone();
-        prop2 = prop2.clone();
+        return merge(prop1,prop2,ExamplesPolicy.ALL);
+    }
 
+    /**
+     * Merges two properties, following an examples policy. See merge(Property, Property)
+     * @param prop1 property to merge
+     * @param prop2 property to merge
+     * @param policy the examples policy
+     * @return the merged property
+     */
+    public static Property merge(Property prop1, Property prop2, ExamplesPolicy policy){
         // Create a new property that will hold the merged content
         final Property property = new Property(prop1.getId(),prop1.getType(),prop1.getDefaultValue());
 
@@ -263,18 +465,21 @@ public class ExonUtils {
                     property.addChildProperty(key,child1);
                     removeFromRequired.add(key);
                 } else
-                    // If the two children are basically the same. We pick one.
+                    // If the two children are basically the same. We pick one, copying only the node that changes
                     if(child1.equivalentTo(child2)) {
-                        child1.setExamples(mergeExamples(child1.getExamples(),child2.getExamples()));
-                        property.addChildProperty(key, child1);
+                        final Property merged = child1.shallowClone();
+                        policy.merge(merged,Arrays.asList(child1,child2));
+                        merged.setStatistics(ValueStatistics.merge(child1.getStatistics(),child2.getStatistics()));
+                        property.addChildProperty(key, merged);
                     }
                     else {
                         // If the two children are made of base types, we can merge them
-                        if(ExonUtils.isBaseType(child1.getType()) && ExonUtils.isBaseType(child2.getType()) && !child1.typeEquals(child2.getType())){
-                            Set<String> newType = ExonUtils.mergeTypes(child1.getType(),child2.getType());
-                            child1.setType(newType);
-                            child1.setExamples(ExonUtils.mergeExamples(child1.getExamples(),child2.getExamples()));
-                            property.addChildProperty(key,child1);
+                        if(child1.hasBaseType() && child2.hasBaseType() && !child1.typeEquals(child2)){
+                            final Property merged = child1.shallowClone();
+                            merged.setType(ExonUtils.mergeTypes(child1.getType(),child2.getType()));
+                            policy.merge(merged,Arrays.asList(child1,child2));
+                            merged.setStatistics(ValueStatistics.merge(child1.getStatistics(),child2.getStatistics()));
+                            property.addChildProperty(key,merged);
                         }else {
                             // The two children represent different scenarios, then we do an anyOf
                             Property anyOf = new Property();
@@ -291,10 +496,325 @@ public class ExonUtils {
         property.getRequired().removeAll(removeFromRequired);
         if(!prop1.getType().equals(prop2.getType()))
             property.setType(ExonUtils.mergeTypes(prop1.getType(),prop2.getType()));
-        property.setExamples(ExonUtils.mergeExamples(prop1.getExamples(),prop2.getExamples()));
+        policy.merge(property,Arrays.asList(prop1,prop2));
+        property.setStatistics(ValueStatistics.merge(prop1.getStatistics(),prop2.getStatistics()));
         return property;
     }
 
+    /**
+     * Merges any number of properties in one step, in a recursive fashion. Objects get the union of the child
+     * properties (each key merged with the same logic) and require only the keys all of them require; the "items"
+     * of arrays are folded into scenarios; base types get their types and examples merged; different kinds of data
+     * end up in an "anyOf". The provided properties are not modified, and the merged property shares with them the
+     * sub-properties that need no change, so it should be cloned before being modified in place
+     * @param props the properties to merge, at least one
+     * @param policy the examples policy
+     * @return the merged property
+     */
+    public static Property merge(List<Property> props, ExamplesPolicy policy){
+        if(props.size() == 1)
+            return props.get(0);
+        final Property first = props.get(0);
+        // Grouping the scenarios by kind, in order of appearance
+        final Map<Object,List<Property>> groups = new LinkedHashMap<>();
+        boolean anyOf = false;
+        for(Property prop : props){
+            if(prop.hasAnyOf()) {
+                anyOf = true;
+                prop.getAnyOf().forEach( scenario -> groups.computeIfAbsent(kindOf(scenario),key -> new ArrayList<>()).add(scenario));
+            } else
+                groups.computeIfAbsent(kindOf(prop),key -> new ArrayList<>()).add(prop);
+        }
+        if(!anyOf && groups.size() == 1)
+            return mergeSameKind(props,policy);
+        final Property property = new Property();
+        copyId(first,property);
+        final List<Property> scenarios = new LinkedList<>();
+        groups.values().forEach( group -> scenarios.add(mergeSameKind(group,policy)));
+        property.setAnyOf(scenarios);
+        return property;
+    }
+
+    /**
+     * Merges properties of the same kind (see kindOf)
+     * @param props the properties to merge
+     * @param policy the examples policy
+     * @return the merged property
+     */
+    private static Property mergeSameKind(List<Property> props, ExamplesPolicy policy){
+        if(props.size() == 1)
+            return props.get(0);
+        final Property first = props.get(0);
+        Object type = first.getType();
+        ValueStatistics statistics = null;
+        for(Property prop : props) {
+            if(!first.typeEquals(prop) || !prop.typeEquals(first))
+                type = mergeTypes(type,prop.getType());
+            if(prop.getStatistics() != null) {
+                if(statistics == null)
+                    statistics = new ValueStatistics();
+                statistics.add(prop.getStatistics());
+            }
+        }
+        final Property property = new Property(first.getId(),type,first.getDefaultValue());
+        copyId(first,property);
+        policy.merge(property,props);
+        property.setStatistics(statistics);
+        if(first.isOfType(JsonType.OBJECT)) {
+            Set<String> required = null;
+            final Map<String,List<Property>> children = new LinkedHashMap<>();
+            for(Property prop : props) {
+                for(String key : prop.getPropertiesKeys())
+                    children.computeIfAbsent(key,k -> new ArrayList<>(props.size())).add(prop.getProperty(key));
+                if(prop.getRequired() != null) {
+                    if(required == null)
+                        required = new HashSet<>(prop.getRequired());
+                    else
+                        required.retainAll(prop.getRequired());
+                }
+            }
+            for(Map.Entry<String,List<Property>> entry : children.entrySet()) {
+                property.addChildProperty(entry.getKey(), merge(entry.getValue(), policy));
+                // A key missing in some of the properties can't be required
+                if(required != null && entry.getValue().size() < props.size())
+                    required.remove(entry.getKey());
+            }
+            property.setRequired(required);
+        } else
+            if(first.isOfType(JsonType.ARRAY)) {
+                final List<Property> items = new ArrayList<>();
+                for(Property prop : props)
+                    if(prop.hasItems()) {
+                        if(prop.getItems().hasAnyOf())
+                            items.addAll(prop.getItems().getAnyOf());
+                        else
+                            items.add(prop.getItems());
+                    }
+                if(!items.isEmpty())
+                    property.setItems(mergeItems(items,property,policy));
+            }
+        return property;
+    }
+
+    /**
+     * Folds the scenarios of the "items" of some arrays: equivalent scenarios are merged, as are the base types.
+     * Anything else stays a separate scenario
+     * @param scenarios the scenarios
+     * @param array the merged array property
+     * @param policy the examples policy
+     * @return the merged "items" property
+     */
+    private static Property mergeItems(List<Property> scenarios, Property array, ExamplesPolicy policy){
+        final List<List<Property>> groups = new ArrayList<>();
+        for(Property scenario : scenarios){
+            List<Property> match = null;
+            for(List<Property> group : groups)
+                if(scenario.equivalentTo(group.get(0)) || (scenario.hasBaseType() && group.get(0).hasBaseType())) {
+                    match = group;
+                    break;
+                }
+            if(match == null)
+                groups.add(match = new ArrayList<>());
+            match.add(scenario);
+        }
+        if(groups.size() == 1)
+            return merge(groups.get(0),policy);
+        final Property anyOf = new Property();
+        if(array.getPath() != null)
+            anyOf.setPath(array.getPath().anyOf());
+        else
+            anyOf.setId(array.getId()+"/anyOf");
+        final List<Property> merged = new LinkedList<>();
+        groups.forEach( group -> merged.add(merge(group,policy)));
+        anyOf.setAnyOf(merged);
+        return anyOf;
+    }
+
+    /**
+     * @param property a property
+     * @return what kind of data the property describes: objects, arrays and base types are different kinds
+     */
+    private static Object kindOf(Property property){
+        if(property.isOfType(JsonType.OBJECT))
+            return JsonType.OBJECT;
+        if(property.isOfType(JsonType.ARRAY))
+            return JsonType.ARRAY;
+        if(property.hasBaseType())
+            return JsonType.NULL;
+        // Anything else can only be merged with itself
+        return property;
+    }
+
+    /**
+     * Gives a property the same ID (or location) of another one
+     * @param from the property whose ID is copied
+     * @param to the property receiving the ID
+     */
+    private static void copyId(Property from, Property to){
+        if(from.getPath() != null)
+            to.setPath(from.getPath());
+        else
+            to.setId(from.getId());
+    }
+
+    /**
+     * Merges a property into another one, in place and in a recursive fashion. Unlike merge, child properties and
+     * "items" are merged all the way down. Objects with no properties and arrays with no items accept any content,
+     * so they leave the merged property with no properties, or no items, as well. Beware! The target property is
+     * modified, and parts of the source property may be adopted by the target, so the source should not be used
+     * afterwards
+     * @param target the property that will hold the merged content
+     * @param source the property to merge into the target
+     */
+    public static void mergeInto(Property target, Property source){
+        mergeInto(target,source,ExamplesPolicy.ALL);
+    }
+
+    /**
+     * Merges a property into another one, in place and in a recursive fashion, following an examples policy.
+     * See mergeInto(Property, Property)
+     * @param target the property that will hold the merged content
+     * @param source the property to merge into the target
+     * @param policy the examples policy
+     */
+    public static void mergeInto(Property target, Property source, ExamplesPolicy policy){
+        mergeInto(target,source,policy,true);
+    }
+
+    /**
+     * Merges a property into another one, in place and in a recursive fashion, following an examples policy.
+     * See mergeInto(Property, Property)
+     * @param target the property that will hold the merged content
+     * @param source the property to merge into the target
+     * @param policy the examples policy
+     * @param widen true if objects with no properties and arrays with no items accept any content, false if they're
+     *              only empty
+     */
+    static void mergeInto(Property target, Property source, ExamplesPolicy policy, boolean widen){
+        // Two references to the same schema have nothing to merge. Any other reference is a different scenario
+        if(target.isReference() && target.equivalentTo(source))
+            return;
+        /*
+         * If any of the two is an "anyOf", we fold the scenarios of the source into the scenarios of the target.
+         * Out of arrays, scenarios only exist to separate different kinds of data
+         */
+        if(target.hasAnyOf() || source.hasAnyOf()){
+            if(!target.hasAnyOf())
+                target.moveToAnyOf();
+            foldScenarios(target.getAnyOf(),source,true,policy,widen);
+            return;
+        }
+        // Two objects: we merge the child properties one by one
+        if(target.isOfType(JsonType.OBJECT) && source.isOfType(JsonType.OBJECT)) {
+            target.intersectRequires(source.getRequired());
+            // An object with no properties accepts any content, and so must the merged one
+            if(widen && (!target.hasProperties() || !source.hasProperties()))
+                target.setProperties(null);
+            else
+                for(String key : source.getPropertiesKeys()){
+                    Property child = target.getProperty(key);
+                    if(child == null)
+                        target.addChildProperty(key,source.getProperty(key));
+                    else
+                        mergeInto(child,source.getProperty(key),policy,widen);
+                }
+            policy.merge(target,Arrays.asList(target,source));
+        } else
+            // Two arrays: we fold the scenarios of the source items into the ones of the target
+            if(target.isOfType(JsonType.ARRAY) && source.isOfType(JsonType.ARRAY)) {
+                // The same goes for arrays with no items
+                if(!target.hasItems() || !source.hasItems()) {
+                    if(widen)
+                        target.setItems(null);
+                    else
+                        if(!target.hasItems())
+                            target.setItems(source.getItems());
+                } else {
+                    if(!target.getItems().hasAnyOf()){
+                        List<Property> scenarios = new LinkedList<>();
+                        scenarios.add(target.getItems());
+                        foldScenarios(scenarios,source.getItems(),false,policy,widen);
+                        if(scenarios.size()>1){
+                            Property anyOf = new Property();
+                            if(target.getPath() != null)
+                                anyOf.setPath(target.getPath().anyOf());
+                            else
+                                anyOf.setId(target.getId()+"/anyOf");
+                            anyOf.setAnyOf(scenarios);
+                            target.setItems(anyOf);
+                        }
+                    } else
+                        foldScenarios(target.getItems().getAnyOf(),source.getItems(),false,policy,widen);
+                }
+                policy.merge(target,Arrays.asList(target,source));
+            } else
+                // Two base types: the types get merged, as the examples
+                if(target.hasBaseType() && source.hasBaseType()) {
+                    if(!target.typeEquals(source))
+                        target.setType(mergeTypes(target.getType(),source.getType()));
+                    policy.merge(target,Arrays.asList(target,source));
+                    target.addStatistics(source.getStatistics());
+                } else {
+                    // Anything else is a different scenario
+                    target.moveToAnyOf();
+                    target.getAnyOf().add(source);
+                }
+    }
+
+    /**
+     * Folds the scenarios of a property (or the property itself, if it's not an "anyOf") into a list of scenarios
+     * @param scenarios the list of scenarios
+     * @param source the property to fold
+     * @param byKind true if scenarios of the same kind (object, array or base type) should be merged together
+     * @param policy the examples policy
+     * @param widen see mergeInto(Property, Property, ExamplesPolicy, boolean)
+     */
+    private static void foldScenarios(List<Property> scenarios, Property source, boolean byKind, ExamplesPolicy policy, boolean widen){
+        if(source.hasAnyOf())
+            source.getAnyOf().forEach( scenario -> foldScenario(scenarios,scenario,byKind,policy,widen));
+        else
+            foldScenario(scenarios,source,byKind,policy,widen);
+    }
+
+    /**
+     * Folds a scenario into a list of scenarios. If an equivalent or compatible scenario exists, the scenario gets
+     * merged into it. Otherwise, it's added to the list
+     * @param scenarios the list of scenarios
+     * @param scenario the scenario to fold
+     * @param byKind true if scenarios of the same kind (object, array or base type) are compatible
+     * @param policy the examples policy
+     * @param widen see mergeInto(Property, Property, ExamplesPolicy, boolean)
+     */
+    private static void foldScenario(List<Property> scenarios, Property scenario, boolean byKind, ExamplesPolicy policy, boolean widen){
+        Property compatible = null;
+        for(Property savedItem : scenarios){
+            if(scenario.equivalentTo(savedItem)) {
+                mergeInto(savedItem,scenario,policy,widen);
+                return;
+            }
+            if(compatible == null && isCompatible(scenario,savedItem,byKind))
+                compatible = savedItem;
+        }
+        if(compatible != null)
+            mergeInto(compatible,scenario,policy,widen);
+        else
+            scenarios.add(scenario);
+    }
+
+    /**
+     * Verifies whether two non-equivalent scenarios can be merged in a single one
+     * @param prop1 first scenario
+     * @param prop2 second scenario
+     * @param byKind true if scenarios of the same kind (object or array) are compatible
+     * @return true if the two scenarios can be merged
+     */
+    private static boolean isCompatible(Property prop1, Property prop2, boolean byKind){
+        if(prop1.hasBaseType() && prop2.hasBaseType())
+            return true;
+        return byKind && ((prop1.isOfType(JsonType.OBJECT) && prop2.isOfType(JsonType.OBJECT))
+                || (prop1.isOfType(JsonType.ARRAY) && prop2.isOfType(JsonType.ARRAY)));
+    }
+
     /**
      * Verifies whether two properties have similar children. Similarity is connected to the number of properties
      * they have in common, so that if n_props_1/ratio > n_props_in_common and n_props_2/ratio > n_props_in_common
@@ -0,0 +1,758 @@
+/*
+ * @author 2018 Simone Pezzano
+ * ---
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package simonepezzano.exonschema;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.*;
+
+/**
+ * A validator compiled out of a schema. Each property becomes a node specialized for what it checks: plain types,
+ * objects, arrays, "anyOf" scenarios or references. Types are checked against masks, the keys of objects are looked
+ * up through tables built at compile time and the required keys are tracked with bits, so validating a valid
+ * document allocates nothing, whether it's a deserialized payload (maps and lists) or a stream of JSON tokens.
+ * The only exception are "anyOf" properties with more than one scenario for the same type of data, as a stream of
+ * tokens needs to be deserialized to try them in turn.
+ * The validator covers the keywords the walkers generate: "type", "required", "properties", "items", "anyOf",
+ * "$ref" to the definitions of the schema or to the schema itself, and the value statistics keywords "minimum",
+ * "maximum", "minLength", "maxLength", "format" and "enum" (of strings and null, as the walkers generate it). Formats
+ * are checked with the classifiers that infer them, which are stricter than most validators: a relative reference
+ * is not a "uri", for one. It holds no state, so it can be shared between threads
+ */
+public final class ExonValidator {
+
+    /**
+     * The mask of all the types
+     */
+    private static final int ANY_TYPE = (1 << JsonType.values().length) - 1;
+
+    private static final int INTEGER = JsonType.INTEGER.mask;
+
+    private static final int NUMBER = JsonType.NUMBER.mask;
+
+    private final Node root;
+
+    private ExonValidator(Node root){
+        this.root = root;
+    }
+
+    /**
+     * Compiles a schema
+     * @param schema the schema
+     * @return the validator
+     * @throws IllegalArgumentException if the schema contains references to anything but its definitions
+     */
+    public static ExonValidator compile(Schema schema){
+        return new ExonValidator(new Compiler(schema).compileRoot(schema));
+    }
+
+    /**
+     * Compiles a property. A "$ref" to "#" references the property itself
+     * @param property the property
+     * @return the validator
+     * @throws IllegalArgumentException if the property contains references to anything but itself
+     */
+    public static ExonValidator compile(Property property){
+        return new ExonValidator(new Compiler(null).compileRoot(property));
+    }
+
+    /**
+     * Validates a piece of data
+     * @param data a piece of data (maps and lists)
+     * @return true if the data is valid
+     */
+    public boolean isValid(Object data){
+        return root.validate(data);
+    }
+
+    /**
+     * Validates the next JSON value available in a parser. If the value is valid, the parser is left on its last
+     * token, otherwise the position of the parser is undefined
+     * @param parser a JSON parser, either positioned on the value to validate or right before it
+     * @return true if the value is valid
+     * @throws IOException if the JSON is malformed, or there's no value to validate
+     */
+    public boolean isValid(JsonParser parser) throws IOException {
+        if(!parser.hasCurrentToken() && parser.nextToken() == null)
+            throw new IOException("No JSON content to validate");
+        return root.validate(parser,parser.currentToken());
+    }
+
+    /**
+     * @param property a property
+     * @return the mask of the types the property accepts. Integers are numbers as well
+     */
+    private static int acceptedTypes(Property property){
+        if(property.getType() == null)
+            return ANY_TYPE;
+        int mask = JsonType.maskOf(property.getType()) & ANY_TYPE;
+        if((mask & NUMBER) != 0)
+            mask |= INTEGER;
+        return mask;
+    }
+
+    /**
+     * @param value a piece of data
+     * @return the type of the data, or null if it's not JSON data. Numbers with a fraction are NUMBER, even when the
+     * fraction is zero
+     */
+    private static JsonType typeOf(Object value){
+        if(value instanceof String)
+            return JsonType.STRING;
+        if(value instanceof Map)
+            return JsonType.OBJECT;
+        if(value instanceof List)
+            return JsonType.ARRAY;
+        if(value instanceof Number)
+            return (value instanceof Integer || value instanceof Long || value instanceof Short
+                        || value instanceof Byte || value instanceof BigInteger) ? JsonType.INTEGER : JsonType.NUMBER;
+        if(value instanceof Boolean)
+            return JsonType.BOOLEAN;
+        if(value == null)
+            return JsonType.NULL;
+        return null;
+    }
+
+    /**
+     * Verifies whether a piece of data is of one of the accepted types. A number with no fraction is an integer
+     * @param accepted the mask of the accepted types
+     * @param value the data
+     * @return true if the data has an accepted type
+     */
+    private static boolean typeMatches(int accepted, Object value){
+        final JsonType type = typeOf(value);
+        if(type == null)
+            return false;
+        if((accepted & type.mask) != 0)
+            return true;
+        return type == JsonType.NUMBER && (accepted & INTEGER) != 0 && isIntegral((Number) value);
+    }
+
+    /**
+     * Token version of typeMatches(int, Object)
+     * @param accepted the mask of the accepted types
+     * @param parser the parser
+     * @param token the first token of the value
+     * @return true if the value has an accepted type
+     * @throws IOException
+     */
+    private static boolean typeMatches(int accepted, JsonParser parser, JsonToken token) throws IOException {
+        final JsonType type = JsonType.of(token);
+        if(type == null)
+            return false;
+        if((accepted & type.mask) != 0)
+            return true;
+        return type == JsonType.NUMBER && (accepted & INTEGER) != 0 && isIntegral(parser.getDoubleValue());
+    }
+
+    private static boolean isIntegral(Number number){
+        if(number instanceof BigDecimal)
+            return ((BigDecimal) number).signum() == 0 || ((BigDecimal) number).stripTrailingZeros().scale() <= 0;
+        return isIntegral(number.doubleValue());
+    }
+
+    private static boolean isIntegral(double number){
+        return !Double.isInfinite(number) && number == Math.rint(number);
+    }
+
+    /**
+     * A compiled property
+     */
+    private abstract static class Node {
+
+        /**
+         * @return the mask of the types of data the node may accept
+         */
+        abstract int acceptedTypes();
+
+        /**
+         * @param value a piece of data
+         * @return true if the data is valid
+         */
+        abstract boolean validate(Object value);
+
+        /**
+         * Validates a JSON value. When invoked, the parser is positioned on the first token of the value, when it
+         * returns true it's positioned on the last one
+         * @param parser the parser
+         * @param token the current token
+         * @return true if the value is valid
+         * @throws IOException
+         */
+        abstract boolean validate(JsonParser parser, JsonToken token) throws IOException;
+    }
+
+    /**
+     * A property only checking the type of the data, and the bounds, format and enumeration of base values if any
+     */
+    private static class TypeNode extends Node {
+
+        final int accepted;
+
+        /**
+         * The checks of the base values, or null
+         */
+        final ValueChecks checks;
+
+        TypeNode(int accepted, ValueChecks checks){
+            this.accepted = accepted;
+            this.checks = checks;
+        }
+
+        @Override
+        int acceptedTypes(){
+            return accepted;
+        }
+
+        @Override
+        boolean validate(Object value){
+            return typeMatches(accepted,value) && (checks == null || checks.validate(value));
+        }
+
+        @Override
+        boolean validate(JsonParser parser, JsonToken token) throws IOException {
+            if(!typeMatches(accepted,parser,token))
+                return false;
+            if(checks != null && !checks.validate(parser,token))
+                return false;
+            parser.skipChildren();
+            return true;
+        }
+    }
+
+    /**
+     * The checks of the value statistics keywords. Bounds are compared as doubles, lengths are in code points as
+     * JSON Schema counts them
+     */
+    private static final class ValueChecks {
+
+        final Number minimum;
+
+        final Number maximum;
+
+        final long minLength;
+
+        /**
+         * The maximum length, or -1 if there's none
+         */
+        final long maxLength;
+
+        /**
+         * The mask of the format, or 0 if there's none
+         */
+        final int format;
+
+        /**
+         * The strings of the enumeration, or null if there's none
+         */
+        final String[] values;
+
+        /**
+         * Whether the enumeration holds null
+         */
+        final boolean nullValue;
+
+        ValueChecks(Property property){
+            minimum = property.getMinimum();
+            maximum = property.getMaximum();
+            minLength = (property.getMinLength() != null) ? property.getMinLength() : 0;
+            maxLength = (property.getMaxLength() != null) ? property.getMaxLength() : -1;
+            // Unknown formats are ignored, as JSON Schema wants
+            final StringFormat stringFormat = (property.getFormat() != null) ? StringFormat.fromName(property.getFormat()) : null;
+            format = (stringFormat != null) ? stringFormat.mask : 0;
+            final List<Object> enumValues = property.getEnum();
+            if(enumValues != null) {
+                final List<String> strings = new ArrayList<>();
+                for(Object value : enumValues)
+                    if(value != null)
+                        strings.add(value.toString());
+                values = strings.toArray(new String[0]);
+                nullValue = enumValues.contains(null);
+            } else {
+                values = null;
+                nullValue = false;
+            }
+        }
+
+        /**
+         * @param property a property
+         * @return the checks of the property, or null if there's nothing to check
+         */
+        static ValueChecks of(Property property){
+            if(property.getMinimum() == null && property.getMaximum() == null && property.getMinLength() == null
+                    && property.getMaxLength() == null && property.getFormat() == null && property.getEnum() == null)
+                return null;
+            return new ValueChecks(property);
+        }
+
+        /**
+         * @param value a piece of data of an accepted type
+         * @return true if the data passes the checks
+         */
+        boolean validate(Object value){
+            if(value instanceof String) {
+                final String string = (String) value;
+                if(!lengthMatches(Character.codePointCount(string,0,string.length())))
+                    return false;
+                if(format != 0 && StringFormat.match(string,format) == 0)
+                    return false;
+                if(values == null)
+                    return true;
+                for(String candidate : values)
+                    if(candidate.equals(string))
+                        return true;
+                return false;
+            }
+            if(value instanceof Number)
+                return numberMatches(((Number) value).doubleValue()) && values == null;
+            return (value == null) ? (values == null || nullValue) : values == null;
+        }
+
+        /**
+         * Token version of validate(Object). Strings are checked on the text buffer of the parser
+         * @param parser the parser
+         * @param token the first token of the value
+         * @return true if the value passes the checks
+         * @throws IOException
+         */
+        boolean validate(JsonParser parser, JsonToken token) throws IOException {
+            switch(token) {
+                case VALUE_STRING: {
+                    final char[] chars = parser.getTextCharacters();
+                    final int offset = parser.getTextOffset();
+                    final int length = parser.getTextLength();
+                    if(!lengthMatches(Character.codePointCount(chars,offset,length)))
+                        return false;
+                    if(format != 0 && StringFormat.match(chars,offset,length,format) == 0)
+                        return false;
+                    if(values == null)
+                        return true;
+                    for(String candidate : values)
+                        if(equals(candidate,chars,offset,length))
+                            return true;
+                    return false;
+                }
+                case VALUE_NUMBER_INT:
+                case VALUE_NUMBER_FLOAT:
+                    return numberMatches(parser.getDoubleValue()) && values == null;
+                case VALUE_NULL:
+                    return values == null || nullValue;
+                default:
+                    return values == null;
+            }
+        }
+
+        private boolean lengthMatches(long length){
+            return length >= minLength && (maxLength < 0 || length <= maxLength);
+        }
+
+        private boolean numberMatches(double number){
+            return (minimum == null || number >= minimum.doubleValue()) && (maximum == null || number <= maximum.doubleValue());
+        }
+
+        private static boolean equals(String string, char[] chars, int offset, int length){
+            if(string.length() != length)
+                return false;
+            for(int i = 0; i < length; i++)
+                if(string.charAt(i) != chars[offset+i])
+                    return false;
+            return true;
+        }
+    }
+
+    /**
+     * A property describing objects. Data of other accepted types only gets its type checked
+     */
+    private static final class ObjectNode extends TypeNode {
+
+        private static final Slot[] NO_SLOTS = new Slot[0];
+
+        /**
+         * The child properties, and then the required keys with no child property
+         */
+        final Slot[] slots;
+
+        /**
+         * The required keys
+         */
+        final String[] required;
+
+        /**
+         * The slot of each key, for token streams
+         */
+        final Map<String,Slot> slotsByKey = new HashMap<>();
+
+        ObjectNode(int accepted, ValueChecks checks, Map<String,Node> children, Set<String> required){
+            super(accepted,checks);
+            final List<Slot> slots = new ArrayList<>();
+            children.forEach( (key,child) -> slots.add(new Slot(key,child)));
+            for(String key : required)
+                if(!children.containsKey(key))
+                    slots.add(new Slot(key,null));
+            this.required = required.toArray(new String[0]);
+            int index = 0;
+            for(Slot slot : slots) {
+                if(required.contains(slot.key))
+                    slot.requiredIndex = index++;
+                slotsByKey.put(slot.key,slot);
+            }
+            this.slots = slots.toArray(NO_SLOTS);
+        }
+
+        @Override
+        boolean validate(Object value){
+            if(!(value instanceof Map))
+                return super.validate(value);
+            if((accepted & JsonType.OBJECT.mask) == 0)
+                return false;
+            final Map map = (Map) value;
+            for(String key : required)
+                if(!map.containsKey(key))
+                    return false;
+            for(Slot slot : slots) {
+                if(slot.node == null)
+                    continue;
+                final Object child = map.get(slot.key);
+                if(child == null && !map.containsKey(slot.key))
+                    continue;
+                if(!slot.node.validate(child))
+                    return false;
+            }
+            return true;
+        }
+
+        @Override
+        boolean validate(JsonParser parser, JsonToken token) throws IOException {
+            if(token != JsonToken.START_OBJECT)
+                return super.validate(parser,token);
+            if((accepted & JsonType.OBJECT.mask) == 0)
+                return false;
+            // The required keys found so far, one bit each. Only objects with more than 64 required keys need more
+            long found = 0;
+            final long[] moreFound = (required.length > 64) ? new long[(required.length-1)/64] : null;
+            while(parser.nextToken() == JsonToken.FIELD_NAME) {
+                final Slot slot = slotsByKey.get(parser.getCurrentName());
+                final JsonToken valueToken = parser.nextToken();
+                if(slot == null || slot.node == null)
+                    parser.skipChildren();
+                else
+                    if(!slot.node.validate(parser,valueToken))
+                        return false;
+                if(slot != null && slot.requiredIndex >= 0) {
+                    if(slot.requiredIndex < 64)
+                        found |= 1L << slot.requiredIndex;
+                    else
+                        moreFound[slot.requiredIndex/64-1] |= 1L << (slot.requiredIndex % 64);
+                }
+            }
+            return allFound(found,moreFound);
+        }
+
+        /**
+         * @param found the bits of the required keys found, the first 64
+         * @param moreFound the bits of the other required keys found, if any
+         * @return true if all the required keys have been found
+         */
+        private boolean allFound(long found, long[] moreFound){
+            if(moreFound == null)
+                return found == ((required.length == 64) ? -1L : (1L << required.length)-1);
+            if(found != -1L)
+                return false;
+            for(int i = 0; i < moreFound.length; i++) {
+                final int bits = Math.min(64,required.length-64*(i+1));
+                if(moreFound[i] != ((bits == 64) ? -1L : (1L << bits)-1))
+                    return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * A key of an object
+     */
+    private static final class Slot {
+
+        final String key;
+
+        /**
+         * The child property, or null for required keys with no child property
+         */
+        final Node node;
+
+        /**
+         * The bit of the key in the required keys found, or -1 if the key is not required
+         */
+        int requiredIndex = -1;
+
+        Slot(String key, Node node){
+            this.key = key;
+            this.node = node;
+        }
+    }
+
+    /**
+     * A property describing arrays. Data of other accepted types only gets its type checked
+     */
+    private static final class ArrayNode extends TypeNode {
+
+        final Node items;
+
+        ArrayNode(int accepted, ValueChecks checks, Node items){
+            super(accepted,checks);
+            this.items = items;
+        }
+
+        @Override
+        boolean validate(Object value){
+            if(!(value instanceof List))
+                return super.validate(value);
+            if((accepted & JsonType.ARRAY.mask) == 0)
+                return false;
+            final List list = (List) value;
+            if(list instanceof RandomAccess) {
+                for(int i = 0; i < list.size(); i++)
+                    if(!items.validate(list.get(i)))
+                        return false;
+            } else
+                for(Object item : list)
+                    if(!items.validate(item))
+                        return false;
+            return true;
+        }
+
+        @Override
+        boolean validate(JsonParser parser, JsonToken token) throws IOException {
+            if(token != JsonToken.START_ARRAY)
+                return super.validate(parser,token);
+            if((accepted & JsonType.ARRAY.mask) == 0)
+                return false;
+            JsonToken itemToken;
+            while((itemToken = parser.nextToken()) != JsonToken.END_ARRAY)
+                if(!items.validate(parser,itemToken))
+                    return false;
+            return true;
+        }
+    }
+
+    /**
+     * A property with "anyOf" scenarios. The scenarios are grouped by the types of data they accept, so that most of
+     * the time only one of them needs to be tried
+     */
+    private static final class AnyOfNode extends Node {
+
+        private static final Node[] NO_NODES = new Node[0];
+
+        final Node[] scenarios;
+
+        /**
+         * The scenarios that may accept each type of data, by JsonType ordinal
+         */
+        final Node[][] candidates = new Node[JsonType.values().length][];
+
+        AnyOfNode(List<Node> scenarios){
+            this.scenarios = scenarios.toArray(NO_NODES);
+        }
+
+        /**
+         * Groups the scenarios by type, once the references have been resolved
+         */
+        void link(){
+            for(JsonType type : JsonType.values()) {
+                final List<Node> list = new ArrayList<>();
+                for(Node scenario : scenarios) {
+                    final int accepted = scenario.acceptedTypes();
+                    // Numbers with no fraction are integers as well
+                    if((accepted & type.mask) != 0 || (type == JsonType.NUMBER && (accepted & INTEGER) != 0))
+                        list.add(scenario);
+                }
+                candidates[type.ordinal()] = list.toArray(NO_NODES);
+            }
+        }
+
+        @Override
+        int acceptedTypes(){
+            int mask = 0;
+            for(Node scenario : scenarios)
+                mask |= scenario.acceptedTypes();
+            return mask;
+        }
+
+        @Override
+        boolean validate(Object value){
+            final JsonType type = typeOf(value);
+            if(type == null)
+                return false;
+            for(Node candidate : candidates[type.ordinal()])
+                if(candidate.validate(value))
+                    return true;
+            return false;
+        }
+
+        @Override
+        boolean validate(JsonParser parser, JsonToken token) throws IOException {
+            final JsonType type = JsonType.of(token);
+            if(type == null)
+                return false;
+            final Node[] nodes = candidates[type.ordinal()];
+            if(nodes.length == 0)
+                return false;
+            if(nodes.length == 1)
+                return nodes[0].validate(parser,token);
+            /*
+             * A stream can't be rewound to try the candidates in turn, so the value gets deserialized. Any "anyOf"
+             * nested in it is then validated on the deserialized value, without reading it again
+             */
+            final Object value = ExonUtils.deserializeJsonPayload(parser);
+            for(Node candidate : nodes)
+                if(candidate.validate(value))
+                    return true;
+            return false;
+        }
+    }
+
+    /**
+     * A "$ref" to another property, resolved once the whole schema has been compiled
+     */
+    private static final class RefNode extends Node {
+
+        final String ref;
+
+        Node target;
+
+        /**
+         * Guards acceptedTypes against references to themselves
+         */
+        private boolean resolving;
+
+        RefNode(String ref){
+            this.ref = ref;
+        }
+
+        @Override
+        int acceptedTypes(){
+            if(resolving)
+                return ANY_TYPE;
+            resolving = true;
+            try {
+                return target.acceptedTypes();
+            } finally {
+                resolving = false;
+            }
+        }
+
+        @Override
+        boolean validate(Object value){
+            return target.validate(value);
+        }
+
+        @Override
+        boolean validate(JsonParser parser, JsonToken token) throws IOException {
+            return target.validate(parser,token);
+        }
+    }
+
+    /**
+     * Turns properties into nodes
+     */
+    private static final class Compiler {
+
+        /**
+         * The schema holding the definitions, or null
+         */
+        private final Schema schema;
+
+        private final Map<String,Node> definitions = new HashMap<>();
+
+        private final List<RefNode> references = new ArrayList<>();
+
+        private final List<AnyOfNode> anyOfs = new ArrayList<>();
+
+        Compiler(Schema schema){
+            this.schema = schema;
+        }
+
+        /**
+         * Compiles the root property, then the definitions it references
+         * @param property the root property
+         * @return the root node
+         */
+        Node compileRoot(Property property){
+            final Node root = compile(property);
+            // Compiling a definition may add references, so the list may grow while we go
+            for(int i = 0; i < references.size(); i++) {
+                final RefNode reference = references.get(i);
+                reference.target = ExonDeduplicator.ROOT_REFERENCE.equals(reference.ref) ? root : resolve(reference.ref);
+            }
+            anyOfs.forEach(AnyOfNode::link);
+            return root;
+        }
+
+        /**
+         * @param ref a reference to a definition
+         * @return the compiled definition
+         */
+        private Node resolve(String ref){
+            if(!ref.startsWith(ExonDeduplicator.DEFINITIONS_PREFIX))
+                throw new IllegalArgumentException("Unsupported reference: "+ref);
+            final String name = ref.substring(ExonDeduplicator.DEFINITIONS_PREFIX.length()).replace("~1","/").replace("~0","~");
+            Node node = definitions.get(name);
+            if(node == null) {
+                final Property definition = (schema != null) ? schema.getDefinition(name) : null;
+                if(definition == null)
+                    throw new IllegalArgumentException("Unresolved reference: "+ref);
+                node = compile(definition);
+                definitions.put(name,node);
+            }
+            return node;
+        }
+
+        private Node compile(Property property){
+            if(property.isReference()) {
+                final RefNode reference = new RefNode(property.getRef());
+                references.add(reference);
+                return reference;
+            }
+            if(property.hasAnyOf()) {
+                final List<Node> scenarios = new ArrayList<>();
+                property.getAnyOf().forEach( scenario -> scenarios.add(compile(scenario)));
+                final AnyOfNode anyOf = new AnyOfNode(scenarios);
+                anyOfs.add(anyOf);
+                return anyOf;
+            }
+            final int accepted = acceptedTypes(property);
+            final ValueChecks checks = ValueChecks.of(property);
+            if(property.hasProperties() || (property.getRequired() != null && !property.getRequired().isEmpty())) {
+                final Map<String,Node> children = new LinkedHashMap<>();
+                property.getPropertiesKeys().forEach( key -> children.put(key,compile(property.getProperty(key))));
+                return new ObjectNode(accepted,checks,children,(property.getRequired() != null) ? property.getRequired() : Collections.emptySet());
+            }
+            if(property.hasItems())
+                return new ArrayNode(accepted,checks,compile(property.getItems()));
+            return new TypeNode(accepted,checks);
+        }
+    }
+}
@@ -21,19 +21,30 @@
 
 package simonepezzano.exonschema;
 
-import com.google.common.collect.Lists;
-import com.google.common.collect.Sets;
-
 import java.util.*;
 import java.util.stream.Collectors;
 
 /**
  * Will generate a simple JsonSchema based on a sample data structure. The produced schema is quite simple
- * and branches in different scenarios for each difference found in non-homogeneous arrays
+ * and branches in different scenarios for each difference found in non-homogeneous arrays.
+ * The walker holds no state, so it can be shared between threads
  */
 public class ExonWalker {
 
-    private LinkedList<String> depthStack;
+    /**
+     * By default, there's no limit to the depth of the data
+     */
+    public static final int DEFAULT_MAX_DEPTH = Integer.MAX_VALUE;
+
+    protected ExamplesPolicy examplesPolicy = ExamplesPolicy.ALL;
+
+    protected SamplingPolicy samplingPolicy = SamplingPolicy.ALL;
+
+    protected ExonListener listener = ExonListener.NONE;
+
+    protected int maxDepth = DEFAULT_MAX_DEPTH;
+
+    protected boolean valueStatistics;
 
     /**
      * Default constructor
@@ -42,6 +53,71 @@ public class ExonWalker {
         super();
     }
 
+    /**
+     * Sets the policy deciding how many examples each property keeps. Defaults to ExamplesPolicy.ALL
+     * @param examplesPolicy the examples policy
+     */
+    public void setExamplesPolicy(ExamplesPolicy examplesPolicy){
+        this.examplesPolicy = examplesPolicy;
+    }
+
+    public ExamplesPolicy getExamplesPolicy(){
+        return examplesPolicy;
+    }
+
+    /**
+     * Sets the policy deciding which items of each array get analyzed. Defaults to SamplingPolicy.ALL
+     * @param samplingPolicy the sampling policy
+     */
+    public void setSamplingPolicy(SamplingPolicy samplingPolicy){
+        this.samplingPolicy = samplingPolicy;
+    }
+
+    public SamplingPolicy getSamplingPolicy(){
+        return samplingPolicy;
+    }
+
+    /**
+     * Sets the listener to notify of the phases and the work of the walker. Defaults to ExonListener.NONE
+     * @param listener the listener
+     */
+    public void setListener(ExonListener listener){
+        this.listener = listener;
+    }
+
+    public ExonListener getListener(){
+        return listener;
+    }
+
+    /**
+     * Sets how deep the analyzed data can be nested: deeper data makes the analysis fail with an
+     * IllegalArgumentException. The root is at depth 0, its children at depth 1 and so on. Defaults to
+     * DEFAULT_MAX_DEPTH
+     * @param maxDepth the maximum depth
+     */
+    public void setMaxDepth(int maxDepth){
+        if(maxDepth < 0)
+            throw new IllegalArgumentException("The maximum depth can't be negative");
+        this.maxDepth = maxDepth;
+    }
+
+    public int getMaxDepth(){
+        return maxDepth;
+    }
+
+    /**
+     * Sets whether the properties of base types collect the statistics of their values (bounds, lengths, counts,
+     * string formats, distinct values), which end up in the schema. Defaults to false
+     * @param valueStatistics true to collect the statistics
+     */
+    public void setValueStatistics(boolean valueStatistics){
+        this.valueStatistics = valueStatistics;
+    }
+
+    public boolean isValueStatistics(){
+        return valueStatistics;
+    }
+
     /**
      * Analyzes a piece of data to generate a JSON schema
      * @param data a piece of data (maps and arrays)
@@ -50,79 +126,195 @@ public class ExonWalker {
      * @return the generated JSON schema
      */
     public Schema analyze(Object data, String id, String title){
-
-        depthStack = new LinkedList<>();
-
         Schema schema = new Schema(id,title,ExonUtils.determineType(data));
 
-        analyze(data,schema);
+        listener.phaseStarted(ExonPhase.WALK);
+        final long start = System.nanoTime();
+        try {
+            analyze(data, schema, PropertyPath.ROOT);
+        } finally {
+            listener.phaseCompleted(ExonPhase.WALK,System.nanoTime()-start);
+        }
+        if(samplingPolicy.isSampling())
+            schema.setSampling(samplingPolicy.toString());
         return schema;
     }
 
     /**
-     * Recursive method to bring the analysis in depth
+     * Analyzes a piece of data and the whole structure below it. The structure is walked with an explicit stack
+     * living on the heap, so the depth of the data is only limited by maxDepth
      * @param item the item of data being analyzed
      * @param currentElement the current element that will hold the analysis result
-     * @return the analyzed property
-     */
-    protected void analyze(Object item,Property currentElement){
-        final String type = ExonUtils.determineType(item);
-        switch(type){
-            /*
-             * If it's an object, walk its entries and make them child properties
-             */
-            case ExonUtils.SCHEMA_TYPE_OBJECT: {
+     * @param path the location of the current element
+     */
+    protected void analyze(Object item,Property currentElement,PropertyPath path){
+        visit(path);
+        if(!delegate(item,currentElement,path))
+            walk(item,currentElement,path);
+    }
+
+    /**
+     * Gives subclasses the chance to analyze an object or an array in some other way, as in other threads. Invoked
+     * for each object and array the walker meets. When true is returned, the value has been analyzed completely
+     * @param item the item of data being analyzed, an object or an array
+     * @param currentElement the current element that will hold the analysis result
+     * @param path the location of the current element
+     * @return true if the value has been analyzed, false if the walker should go on as usual
+     */
+    protected boolean delegate(Object item, Property currentElement, PropertyPath path){
+        return false;
+    }
+
+    /**
+     * Walks a piece of data, without delegating it. Any object or array below it may still be delegated
+     * @param item the item of data being analyzed
+     * @param currentElement the current element that will hold the analysis result
+     * @param path the location of the current element
+     */
+    protected void walk(Object item, Property currentElement, PropertyPath path){
+        final WalkFrame root = open(item,currentElement,path);
+        if(root == null)
+            return;
+        final Deque<WalkFrame> stack = new ArrayDeque<>();
+        stack.push(root);
+        while(!stack.isEmpty()){
+            final WalkFrame frame = stack.peek();
+            final WalkFrame child = (frame.sampler != null) ? nextItem(frame) : nextEntry(frame);
+            if(child != null)
+                stack.push(child);
+            else {
+                stack.pop();
+                // The array is over: all the items have been folded into scenarios
+                if(frame.sampler != null && !frame.sampler.isEmpty())
+                    setItems(frame.element, frame.sampler.getScenarios(), frame.path);
+            }
+        }
+    }
+
+    /**
+     * Starts the analysis of a piece of data. Base data types get analyzed right away, objects and arrays get a
+     * frame that will go through their content
+     * @param item the item of data being analyzed
+     * @param currentElement the current element that will hold the analysis result
+     * @param path the location of the current element
+     * @return the frame of an object or array, or null if there is nothing more to do
+     */
+    private WalkFrame open(Object item, Property currentElement, PropertyPath path){
+        switch(JsonType.of(item)){
+            case OBJECT:
                 currentElement.setRequired(getRequired((Map<String,Object>)item));
-                for (final Map.Entry<String,Object> it : ((Map<String, Object>)item).entrySet()) {
-                    depthStack.addLast("/properties/"+it.getKey());
-                    final String localType = ExonUtils.determineType(it.getValue());
-                    final Property prop = new Property(stackToString(depthStack), localType, ExonUtils.determineDefault(localType));
-                    analyze(it.getValue(), prop);
-                    currentElement.addChildProperty(it.getKey(), prop);
-                    depthStack.removeLast();
-                }
+                return new WalkFrame(((Map<String,Object>)item).entrySet().iterator(),null,currentElement,path);
+            case ARRAY:
+                return new WalkFrame(((List)item).iterator(),samplingPolicy.newSampler(examplesPolicy,listener,valueStatistics),currentElement,path);
+            default:
+                currentElement.setExample(item,examplesPolicy);
+                if(valueStatistics)
+                    currentElement.setStatistics(ValueStatistics.of(item));
+                return null;
+        }
+    }
+
+    /**
+     * Moves on to the next child value of an object, making it a child property
+     * @param frame the frame of the object
+     * @return the frame of the next child object or array, or null if the object is over
+     */
+    private WalkFrame nextEntry(WalkFrame frame){
+        while(frame.iterator.hasNext()){
+            final Map.Entry<String,Object> it = (Map.Entry<String,Object>) frame.iterator.next();
+            final PropertyPath localPath = frame.path.property(it.getKey());
+            final Property prop = createProperty(localPath,JsonType.of(it.getValue()));
+            frame.element.addChildProperty(it.getKey(), prop);
+            final WalkFrame child = enter(it.getValue(),prop,localPath);
+            if(child != null)
+                return child;
+        }
+        return null;
+    }
+
+    /**
+     * Moves on to the next sampled item of an array, after folding the previous one into the scenarios
+     * @param frame the frame of the array
+     * @return the frame of the next item, if an object or an array, or null if the array is over
+     */
+    private WalkFrame nextItem(WalkFrame frame){
+        if(frame.pending != null) {
+            frame.sampler.add(frame.index, frame.pending);
+            frame.pending = null;
+            frame.index++;
+        }
+        while(frame.iterator.hasNext()){
+            final Object localItem = frame.iterator.next();
+            if(frame.sampler.isComplete(frame.index))
                 break;
-            }
-            /*
-             * If it's an array, walk down its items and make them properties for the "items" property
-             */
-            case ExonUtils.SCHEMA_TYPE_ARRAY: {
-                List<Property> collectedItems = new LinkedList<>();
-                int cnt = 0;
-
-                // First, catalog all items a unique property
-                for(final Object localItem : (List)item){
-                    final String localType = ExonUtils.determineType(localItem);
-                    depthStack.addLast("/items_"+cnt);
-                    final Property prop = new Property(stackToString(depthStack),localType,ExonUtils.determineDefault(localType));
-                    analyze(localItem,prop);
-                    collectedItems.add(prop);
-                    depthStack.removeLast();
-                    cnt++;
+            if(frame.sampler.accept(frame.index)) {
+                final PropertyPath localPath = frame.path.item(frame.index);
+                final Property prop = createProperty(localPath, JsonType.of(localItem));
+                final WalkFrame child = enter(localItem,prop,localPath);
+                // The item can only be folded once it has been analyzed completely
+                if(child != null) {
+                    frame.pending = prop;
+                    return child;
                 }
-                // Empty array
-                if(collectedItems.size()==0)
-                    return;
-                // Identify which properties are equivalent
-                List<Property> cont = detectDifferentProps(collectedItems);
-
-                // If only one scenario arises, set it as the "items" property
-                if(cont.size()==1)
-                    currentElement.setItems(cont.get(0));
-                else{
-                    // If multiple scenario arise, we add them to the "anyOf" property
-                    final Property anyOf = new Property();
-                    anyOf.setId(stackToString(depthStack)+"/anyOf");
-                    anyOf.setAnyOf(cont);
-                    currentElement.setItems(anyOf);
-                }
-                break;
+                frame.sampler.add(frame.index, prop);
             }
-            /*
-             * Anything else is a base data time
-             */
-            default:
-                currentElement.setExamples(Sets.newHashSet(item));
+            frame.index++;
+        }
+        return null;
+    }
+
+    /**
+     * Starts the analysis of a child value, unless a subclass takes care of it
+     * @return the frame of the value, if it's an object or an array that still needs to be walked
+     */
+    private WalkFrame enter(Object item, Property currentElement, PropertyPath path){
+        visit(path);
+        if(item instanceof Map || item instanceof List) {
+            if(delegate(item, currentElement, path))
+                return null;
+        }
+        return open(item,currentElement,path);
+    }
+
+    /**
+     * Notifies the listener of a value, after making sure it's not too deep
+     * @param path the location of the value
+     * @throws IllegalArgumentException if the value is deeper than maxDepth
+     */
+    protected void visit(PropertyPath path){
+        if(path.getDepth() > maxDepth)
+            throw new IllegalArgumentException("The data is nested deeper than "+maxDepth+" levels");
+        listener.nodeVisited(path.getDepth());
+    }
+
+    /**
+     * The state of an object or an array being walked
+     */
+    static final class WalkFrame {
+
+        final Iterator<?> iterator;
+
+        /**
+         * Arrays only: the sampler collecting the scenarios of the items
+         */
+        final ArraySampler sampler;
+
+        final Property element;
+
+        final PropertyPath path;
+
+        /**
+         * Arrays only: the index of the current item, and the property of the item being analyzed, if any
+         */
+        int index;
+
+        Property pending;
+
+        WalkFrame(Iterator<?> iterator, ArraySampler sampler, Property element, PropertyPath path){
+            this.iterator = iterator;
+            this.sampler = sampler;
+            this.element = element;
+            this.path = path;
         }
     }
 
@@ -132,52 +324,72 @@ public class ExonWalker {
      * @return a list of the essential properties
      */
     public static List<Property> detectDifferentProps(List<Property> props){
-        List<Property> propertyTypes = Lists.newArrayList(props.get(0));
-        /*
-         * For each item of the props, if the current prop is not equivalent to a prop
-         * previously collected, add it to the collected props
-         */
-        for(final Property currentItem : props){
-            boolean compareSuccess = false;
-            for(Property savedItem : propertyTypes){
-                if(currentItem.equivalentTo(savedItem)) {
-                    compareSuccess = true;
-                    // if it's a base type
-                    if(ExonUtils.isBaseType(currentItem.getType()))
-                        // add the examples to the collected ones
-                        savedItem.addExamples(currentItem.getExamples());
-                    else
-                        // otherwise find which requirements are shared
-                        savedItem.intersectRequires(currentItem.getRequired());
-                }
-            } // if no similar item
-            if(!compareSuccess)
-                propertyTypes.add(currentItem);
-        }
-        return propertyTypes;
+        ScenarioCollector collector = new ScenarioCollector();
+        props.forEach(collector::add);
+        return collector.getScenarios();
     }
 
     /**
-     * Given a data object, collect all the keys to be used as a "required" field
-     * @param values the data object
-     * @return the keys
+     * Creates the property that will describe a piece of data
+     * @param path the location of the property
+     * @param type the type of the piece of data
+     * @return the property
      */
-    protected static Set<String> getRequired(Map<String,Object> values){
-        return values.entrySet().stream().filter( item -> item.getValue() != null ).map(Map.Entry::getKey).collect(Collectors.toSet());
+    protected Property createProperty(PropertyPath path, String type){
+        final JsonType jsonType = JsonType.fromName(type);
+        if(jsonType == null)
+            return discardExamples(new Property(path,type,ExonUtils.determineDefault(type)));
+        return createProperty(path,jsonType);
     }
 
     /**
-     * Transform a depthStack list to a string to be used as a property ID
-     * @param depthStack a depthStack list
-     * @return the generated ID
+     * Creates the property that will describe a piece of data of a known type
+     * @param path the location of the property
+     * @param type the type of the piece of data
+     * @return the property
      */
-    protected static String stackToString(LinkedList<String> depthStack){
-        StringBuilder sb = new StringBuilder();
-        sb.append("#");
+    Property createProperty(PropertyPath path, JsonType type){
+        if(type == null)
+            return createProperty(path,(String)null);
+        return discardExamples(new Property(path,type));
+    }
 
-        //while(iterator.hasNext()){
-        depthStack.forEach(sb::append);
+    /**
+     * Drops the examples of a newly created property, if the examples policy keeps none
+     * @param prop the property
+     * @return the property
+     */
+    private Property discardExamples(Property prop){
+        if(!examplesPolicy.keepsExamples())
+            prop.setExamples(null);
+        return prop;
+    }
+
+    /**
+     * Sets the scenarios detected in an array as the "items" property of the array property
+     * @param currentElement the array property
+     * @param scenarios the detected scenarios
+     * @param path the location of the array property
+     */
+    protected void setItems(Property currentElement, List<Property> scenarios, PropertyPath path){
+        // If only one scenario arises, set it as the "items" property
+        if(scenarios.size()==1)
+            currentElement.setItems(scenarios.get(0));
+        else{
+            // If multiple scenario arise, we add them to the "anyOf" property
+            final Property anyOf = new Property();
+            anyOf.setPath(path.anyOf());
+            anyOf.setAnyOf(scenarios);
+            currentElement.setItems(anyOf);
+        }
+    }
 
-        return sb.toString();
+    /**
+     * Given a data object, collect all the keys to be used as a "required" field
+     * @param values the data object
+     * @return the keys
+     */
+    protected static Set<String> getRequired(Map<String,Object> values){
+        return values.entrySet().stream().filter( item -> item.getValue() != null ).map(Map.Entry::getKey).collect(Collectors.toSet());
     }
 }
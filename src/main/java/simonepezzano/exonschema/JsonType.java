@@ -0,0 +1,182 @@
+/*
+ * @author 2018 Simone Pezzano
+ * ---
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package simonepezzano.exonschema;
+
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.util.Collection;
+
+/**
+ * The JsonSchema types, used internally in place of the type names. Each type has a bit, so a set of types is
+ * just a mask
+ */
+enum JsonType {
+
+    BOOLEAN(ExonUtils.SCHEMA_TYPE_BOOLEAN,true),
+    INTEGER(ExonUtils.SCHEMA_TYPE_INTEGER,0),
+    NUMBER(ExonUtils.SCHEMA_TYPE_NUMBER,0.0),
+    STRING(ExonUtils.SCHEMA_TYPE_STRING,""),
+    NULL(ExonUtils.SCHEMA_TYPE_NULL,null),
+    ARRAY(ExonUtils.SCHEMA_TYPE_ARRAY,null),
+    OBJECT(ExonUtils.SCHEMA_TYPE_OBJECT,null);
+
+    /**
+     * The bit used for type names that are not JsonSchema types, such as the ones found in a loaded schema
+     */
+    static final int UNKNOWN_MASK = 1 << 7;
+
+    /**
+     * The mask of the base, unstructured data types
+     */
+    static final int BASE_TYPES_MASK = BOOLEAN.mask | INTEGER.mask | NUMBER.mask | STRING.mask | NULL.mask;
+
+    private static final JsonType[] VALUES = values();
+
+    /**
+     * The JsonSchema type of each Java class, resolved once per class
+     */
+    private static final ClassValue<JsonType> BY_CLASS = new ClassValue<JsonType>() {
+        @Override
+        protected JsonType computeValue(Class<?> type) {
+            return fromName(ExonUtils.JAVA_TO_SCHEMA_TYPES.get(type.getSimpleName()));
+        }
+    };
+
+    /**
+     * The JsonSchema name of the type
+     */
+    final String schemaName;
+
+    /**
+     * The default value of the type
+     */
+    final Object defaultValue;
+
+    final int mask;
+
+    JsonType(String schemaName, Object defaultValue){
+        this.schemaName = schemaName;
+        this.defaultValue = defaultValue;
+        this.mask = 1 << ordinal();
+    }
+
+    /**
+     * Determines the type of a piece of data
+     * @param data the data to be evaluated
+     * @return the type, or null if the data is not of a known type
+     */
+    static JsonType of(Object data){
+        if(data == null)
+            return NULL;
+        return BY_CLASS.get(data.getClass());
+    }
+
+    /**
+     * Determines the type of the JSON value starting with the provided token
+     * @param token the first token of a JSON value
+     * @return the type, or null if the token does not start a value
+     */
+    static JsonType of(JsonToken token){
+        switch(token){
+            case START_OBJECT:
+                return OBJECT;
+            case START_ARRAY:
+                return ARRAY;
+            case VALUE_STRING:
+                return STRING;
+            case VALUE_NUMBER_INT:
+                return INTEGER;
+            case VALUE_NUMBER_FLOAT:
+                return NUMBER;
+            case VALUE_TRUE:
+            case VALUE_FALSE:
+                return BOOLEAN;
+            case VALUE_NULL:
+                return NULL;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @param name a JsonSchema type name
+     * @return the type, or null if the name is not a JsonSchema type
+     */
+    static JsonType fromName(String name){
+        if(name == null)
+            return null;
+        switch(name){
+            case ExonUtils.SCHEMA_TYPE_BOOLEAN:
+                return BOOLEAN;
+            case ExonUtils.SCHEMA_TYPE_INTEGER:
+                return INTEGER;
+            case ExonUtils.SCHEMA_TYPE_NUMBER:
+                return NUMBER;
+            case ExonUtils.SCHEMA_TYPE_STRING:
+                return STRING;
+            case ExonUtils.SCHEMA_TYPE_NULL:
+                return NULL;
+            case ExonUtils.SCHEMA_TYPE_ARRAY:
+                return ARRAY;
+            case ExonUtils.SCHEMA_TYPE_OBJECT:
+                return OBJECT;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Computes the mask of a "type" field value, either a type name or a collection of type names
+     * @param type a "type" field value
+     * @return the mask
+     */
+    static int maskOf(Object type){
+        if(type == null)
+            return 0;
+        if(type instanceof Collection) {
+            int mask = 0;
+            for(Object item : (Collection) type)
+                mask |= maskOf(item);
+            return mask;
+        }
+        final JsonType jsonType = fromName(type.toString());
+        return (jsonType != null) ? jsonType.mask : UNKNOWN_MASK;
+    }
+
+    /**
+     * @param mask a type mask
+     * @return the type, if the mask holds exactly one known type, null otherwise
+     */
+    static JsonType single(int mask){
+        if(Integer.bitCount(mask) != 1 || mask == UNKNOWN_MASK)
+            return null;
+        return VALUES[Integer.numberOfTrailingZeros(mask)];
+    }
+
+    /**
+     * @param mask a type mask
+     * @return true if the mask only holds base types
+     */
+    static boolean isBase(int mask){
+        return mask != 0 && (mask & ~BASE_TYPES_MASK) == 0;
+    }
+}
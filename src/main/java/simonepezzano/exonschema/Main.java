@@ -32,23 +32,70 @@ public class Main {
 
     public static void main(String[] args) throws Exception {
         Options options = new Options();
-        options.addOption(Option.builder("f").desc("Input file").required().hasArg().build());
+        options.addOption(Option.builder("f").desc("Input file, possibly gzip-compressed. Use - for the standard input").required().hasArg().build());
         options.addOption(Option.builder("s").desc("Perform simplification").build());
         options.addOption(Option.builder("r").desc("Similarity rate").hasArg().build());
+        options.addOption(Option.builder("d").desc("Store repeated sub-schemas once under definitions").build());
+        options.addOption(Option.builder("c").desc("Compact output").build());
+        options.addOption(Option.builder().longOpt("no-ids").desc("Leave the IDs of the properties out").build());
+        options.addOption(Option.builder().longOpt("no-examples").desc("Leave examples and default values out").build());
+        options.addOption(Option.builder("n").desc("Input file is newline-delimited JSON, one document per line").build());
+        options.addOption(Option.builder("t").desc("Worker threads for newline-delimited JSON").hasArg().build());
+        options.addOption(Option.builder("m").desc("Report the metrics of each phase on stderr").build());
+        options.addOption(Option.builder().longOpt("statistics").desc("Add the bounds, lengths, formats, enums and counts of the values").build());
+        options.addOption(Option.builder().longOpt("max-depth").desc("Fail on data nested deeper than this").hasArg().build());
         CommandLineParser cmdParser = new DefaultParser();
         try {
             CommandLine commandLine = cmdParser.parse(options, args);
-            ExonWalker exonWalker = new ExonWalker();
+            final boolean stdin = "-".equals(commandLine.getOptionValue("f"));
             File file = new File(commandLine.getOptionValue("f"));
-            Schema schema = exonWalker.analyze(ExonUtils.deserializeJsonPayload(file), file.getPath(), file.getName());
+            final String id = stdin ? "stdin" : file.getPath();
+            final String title = stdin ? "stdin" : file.getName();
+            final ExonMetrics metrics = new ExonMetrics();
+            final ExonListener listener = commandLine.hasOption("m") ? metrics : ExonListener.NONE;
+            Schema schema;
+            if(commandLine.hasOption("n")){
+                int threads = Runtime.getRuntime().availableProcessors();
+                if(commandLine.hasOption("t"))
+                    threads = Integer.valueOf(commandLine.getOptionValue("t"));
+                ExonStreamWalker exonWalker = new ExonStreamWalker();
+                exonWalker.setListener(listener);
+                if(commandLine.hasOption("max-depth"))
+                    exonWalker.setMaxDepth(Integer.valueOf(commandLine.getOptionValue("max-depth")));
+                exonWalker.setValueStatistics(commandLine.hasOption("statistics"));
+                ExonNdjsonPipeline pipeline = new ExonNdjsonPipeline(exonWalker,threads,ExonNdjsonPipeline.DEFAULT_CHUNK_SIZE);
+                schema = stdin ? pipeline.analyze(System.in, id, title) : pipeline.analyze(file, id, title);
+                System.err.println(String.format("%d documents in %.2fs (%.0f documents/sec)",pipeline.getDocumentCount(),
+                                                    pipeline.getElapsedNanos()/1e9,pipeline.getDocumentsPerSecond()));
+                if(schema == null)
+                    return;
+            } else {
+                ExonStreamWalker exonWalker = new ExonStreamWalker();
+                exonWalker.setListener(listener);
+                if(commandLine.hasOption("max-depth"))
+                    exonWalker.setMaxDepth(Integer.valueOf(commandLine.getOptionValue("max-depth")));
+                exonWalker.setValueStatistics(commandLine.hasOption("statistics"));
+                schema = stdin ? exonWalker.analyze(System.in, id, title) : exonWalker.analyze(file.toPath(), id, title);
+            }
             if(commandLine.hasOption("s")){
                 int rate = 3;
                 if(commandLine.hasOption("r"))
                     rate = Integer.valueOf(commandLine.getOptionValue("r"));
                 ExonSimplifier exonSimplifier = new ExonSimplifier(rate);
+                exonSimplifier.setListener(listener);
                 schema = exonSimplifier.analyze(schema);
             }
-            System.out.println(ExonUtils.serializeJsonPayload(schema));
+            if(commandLine.hasOption("d"))
+                schema = new ExonDeduplicator().analyze(schema);
+            ExonSchemaWriter writer = new ExonSchemaWriter();
+            writer.setPretty(!commandLine.hasOption("c"));
+            writer.setWriteIds(!commandLine.hasOption("no-ids"));
+            writer.setWriteExamples(!commandLine.hasOption("no-examples"));
+            writer.setListener(listener);
+            writer.write(schema,System.out);
+            System.out.println();
+            if(commandLine.hasOption("m"))
+                System.err.println(metrics);
         }catch(ParseException e){
             new HelpFormatter().printHelp("exonschema",options);
         }
@@ -0,0 +1,204 @@
+/*
+ * @author 2018 Simone Pezzano
+ * ---
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package simonepezzano.exonschema;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Groups the scenarios that have similar child properties (see ExonUtils.haveSimilarProps), without comparing
+ * every scenario with every other one. Each scenario gets a MinHash signature of its key set, and locality
+ * sensitive hashing (LSH) puts the scenarios whose signatures share a band in the same bucket. All the pairs of
+ * scenarios sharing a bucket are compared, and the similar ones end up in the same cluster, transitively, so the
+ * clusters don't depend on the order of the scenarios. Two similar scenarios share a bucket with probability
+ * RECALL at least: when they don't, they may end up in different clusters
+ */
+class MinHashClusterer {
+
+    /**
+     * The length of the MinHash signatures, unless the similarity rate needs longer ones to reach RECALL
+     */
+    static final int SIGNATURE_LENGTH = 64;
+
+    /**
+     * The minimum probability for two similar scenarios to share at least one bucket
+     */
+    static final double RECALL = 0.999;
+
+    private static final int MAX_ROWS = 8;
+
+    private final int similarityRate;
+
+    /**
+     * How many signature values make a band, and how many bands there are
+     */
+    private final int rows;
+
+    private final int bands;
+
+    /**
+     * The seeds of the hash functions, one per signature value
+     */
+    private final long[] seeds;
+
+    /**
+     * Default constructor
+     * @param similarityRate the similarity rate, as in ExonSimplifier
+     */
+    MinHashClusterer(int similarityRate){
+        this.similarityRate = similarityRate;
+        this.rows = rowsFor(similarityRate);
+        this.bands = bandsFor(similarityRate,rows);
+        this.seeds = new long[rows*bands];
+        long seed = 0x5DEECE66DL;
+        for(int i = 0; i < seeds.length; i++)
+            seeds[i] = seed = mix(seed+0x9E3779B97F4A7C15L);
+    }
+
+    /**
+     * Two key sets pass the similarity test only if they share more than 1/similarityRate of the larger one, so
+     * their Jaccard similarity is at least 1/(2*similarityRate-1). The bands get as many rows as possible (the
+     * more the rows, the fewer the false candidates) while the bands needed for two sets with that similarity to
+     * share a bucket with probability RECALL still fit in SIGNATURE_LENGTH. High rates fit no band of two rows
+     * or more, so they get bands of one row, as many as RECALL needs
+     * @param similarityRate the similarity rate
+     * @return the number of rows of each band
+     */
+    static int rowsFor(int similarityRate){
+        int rows = 1;
+        for(int r = 2; r <= MAX_ROWS; r++)
+            if(bandsFor(similarityRate,r) <= SIGNATURE_LENGTH/r)
+                rows = r;
+        return rows;
+    }
+
+    /**
+     * @param similarityRate the similarity rate
+     * @param rows the number of rows of each band
+     * @return the smallest number of bands for two sets with the least similarity passing the test to share a
+     * bucket with probability RECALL
+     */
+    static int bandsFor(int similarityRate, int rows){
+        final double jaccard = 1.0/Math.max(1,2*similarityRate-1);
+        final double miss = 1-Math.pow(jaccard,rows);
+        if(miss <= 0)
+            return 1;
+        return Math.max(1,(int) Math.ceil(Math.log(1-RECALL)/Math.log(miss)));
+    }
+
+    /**
+     * Clusters the scenarios. Scenarios without child properties are never clustered
+     * @param scenarios the scenarios
+     * @return the clusters, each sorted and the whole list ordered by first appearance
+     */
+    List<List<Property>> cluster(List<Property> scenarios){
+        final int size = scenarios.size();
+        final int[] parents = new int[size];
+        for(int i = 0; i < size; i++)
+            parents[i] = i;
+
+        // Bucketing by band. Linked maps keep the comparisons in the order of the scenarios
+        final Map<Long,List<Integer>> buckets = new LinkedHashMap<>();
+        for(int i = 0; i < size; i++) {
+            final Property scenario = scenarios.get(i);
+            if(!scenario.hasProperties())
+                continue;
+            final long[] signature = signature(scenario);
+            for(int band = 0; band < bands; band++){
+                long hash = band;
+                for(int r = band*rows; r < band*rows+rows; r++)
+                    hash = hash*31+signature[r];
+                buckets.computeIfAbsent(mix(hash), key -> new ArrayList<>(2)).add(i);
+            }
+        }
+
+        for(List<Integer> bucket : buckets.values()){
+            if(bucket.size() < 2)
+                continue;
+            // All the pairs are compared, unless they're in the same cluster already
+            for(int i = 0; i < bucket.size(); i++){
+                final int member = bucket.get(i);
+                for(int j = 0; j < i; j++){
+                    final int other = bucket.get(j);
+                    if(find(parents,member) != find(parents,other)
+                            && ExonUtils.haveSimilarProps(scenarios.get(member),scenarios.get(other),similarityRate))
+                        union(parents,member,other);
+                }
+            }
+        }
+
+        final Map<Integer,List<Property>> clusters = new LinkedHashMap<>();
+        for(int i = 0; i < size; i++)
+            clusters.computeIfAbsent(find(parents,i), key -> new ArrayList<>()).add(scenarios.get(i));
+        return new ArrayList<>(clusters.values());
+    }
+
+    /**
+     * @param scenario a scenario
+     * @return the MinHash signature of the keys of the child properties
+     */
+    long[] signature(Property scenario){
+        final long[] signature = new long[seeds.length];
+        Arrays.fill(signature,Long.MAX_VALUE);
+        for(String key : scenario.getPropertiesKeys()){
+            final long keyHash = mix(key.hashCode());
+            for(int i = 0; i < seeds.length; i++){
+                final long hash = mix(keyHash^seeds[i]);
+                if(hash < signature[i])
+                    signature[i] = hash;
+            }
+        }
+        return signature;
+    }
+
+    private static int find(int[] parents, int i){
+        while(parents[i] != i) {
+            parents[i] = parents[parents[i]];
+            i = parents[i];
+        }
+        return i;
+    }
+
+    /**
+     * Joins two clusters. The root is always the smallest index, so that clusters are ordered by first appearance
+     */
+    private static void union(int[] parents, int a, int b){
+        final int rootA = find(parents,a);
+        final int rootB = find(parents,b);
+        if(rootA < rootB)
+            parents[rootB] = rootA;
+        else
+            parents[rootA] = rootB;
+    }
+
+    private static long mix(long hash){
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
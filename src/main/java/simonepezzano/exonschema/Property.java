@@ -24,6 +24,7 @@ package simonepezzano.exonschema;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 import com.google.common.collect.Sets;
 
 import java.util.*;
@@ -32,17 +33,54 @@ import java.util.*;
  * The JsonSchema property
  */
 @JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonPropertyOrder({"type","defaultValue","examples","minimum","maximum","minLength","maxLength","format","enum",
+        "x-nulls","x-integers","x-fractions","x-cardinality","anyOf","required","properties","items","title","definitions","$id","$ref","$schema","x-sampling"})
 public class Property implements Cloneable {
 
+    /**
+     * The structural hash of a property whose structure makes equivalentTo more lenient than a plain comparison
+     */
+    public static final int LOOSE_STRUCTURE = 0;
+
+    /**
+     * The seed of the structural hash of "anyOf" properties
+     */
+    private static final int ANY_OF_HASH = 0x416e794f;
+
     @JsonProperty("$id")
     private String id;
 
+    /**
+     * The location of the property, used to build the ID lazily when no explicit ID has been set
+     */
+    @JsonIgnore
+    private PropertyPath path;
+
     private Object type;
 
+    /**
+     * The type as a JsonType mask, kept in sync with the type field so that type checks don't need to look at
+     * strings and sets
+     */
+    @JsonIgnore
+    private int typeMask;
+
     private Object defaultValue;
 
     private Set<Object> examples;
 
+    /**
+     * How many distinct values have been offered to the examples, including the ones that have been discarded
+     */
+    @JsonIgnore
+    private long examplesSeen;
+
+    /**
+     * The statistics of the values, for base types, when the walker collects them
+     */
+    @JsonIgnore
+    private ValueStatistics statistics;
+
     private List<Property> anyOf;
 
     private Set<String> required;
@@ -51,6 +89,12 @@ public class Property implements Cloneable {
 
     private Property items;
 
+    /**
+     * A reference to another schema, as in "#/definitions/name". A reference property has no other content
+     */
+    @JsonProperty("$ref")
+    private String ref;
+
     /**
      * Base constructor. It initializes the ID as the hashCode method relies on it.
      * Mostly used by deserializers
@@ -66,22 +110,90 @@ public class Property implements Cloneable {
      * @param defaultValue its default value
      */
     public Property(String id, Object type, Object defaultValue){
+        this(type,defaultValue);
         this.id = id;
+    }
+
+    /**
+     * Constructor for properties whose ID is their location in the schema. The ID string will only be built when
+     * requested
+     * @param path the location of the property
+     * @param type the type of the object
+     * @param defaultValue its default value
+     */
+    public Property(PropertyPath path, Object type, Object defaultValue){
+        this(type,defaultValue);
+        this.path = path;
+    }
+
+    /**
+     * Constructor for properties describing a piece of data of a known type, as the walkers create them
+     * @param path the location of the property
+     * @param type the type of the piece of data
+     */
+    Property(PropertyPath path, JsonType type){
+        this(type.schemaName,type.mask,type.defaultValue);
+        this.path = path;
+    }
+
+    private Property(Object type, Object defaultValue){
+        this(type,JsonType.maskOf(type),defaultValue);
+    }
+
+    private Property(Object type, int typeMask, Object defaultValue){
         this.type = type;
+        this.typeMask = typeMask;
         this.defaultValue = defaultValue;
         setExamples(new HashSet<>());
         if( this.defaultValue != null )
-            getExamples().add(this.defaultValue);
+            addExample(this.defaultValue,ExamplesPolicy.ALL);
+    }
+
+    /**
+     * Creates a property that only references another schema
+     * @param ref the reference, as in "#/definitions/name"
+     * @return the reference property
+     */
+    public static Property reference(String ref){
+        final Property property = new Property();
+        property.ref = ref;
+        return property;
     }
 
     public void setId(String id){
         this.id = id;
+        this.path = null;
     }
 
+    /**
+     * @return the ID of the property. References have none, as anything next to a "$ref" is ignored
+     */
     public String getId(){
+        if(ref != null)
+            return null;
+        if(id == null && path != null)
+            return path.toString();
         return id;
     }
 
+    /**
+     * Sets the location of the property, which will be used as ID
+     * @param path the location of the property
+     */
+    @JsonIgnore
+    public void setPath(PropertyPath path){
+        this.id = null;
+        this.path = path;
+    }
+
+    /**
+     * @return the location of the property, or null if the property has an explicit ID
+     */
+    @JsonIgnore
+    public PropertyPath getPath(){
+        return path;
+    }
+
     public void setAnyOf(List<Property> anyOf){
         this.anyOf = anyOf;
     }
@@ -100,6 +212,7 @@ public class Property implements Cloneable {
 
     public void setExamples(Set<Object> examples){
         this.examples = examples;
+        this.examplesSeen = (examples != null) ? examples.size() : 0;
     }
 
     /**
@@ -107,9 +220,201 @@ public class Property implements Cloneable {
      * @param set a set of examples
      */
     public void addExamples(Set set){
+        addExamples(set,ExamplesPolicy.ALL);
+    }
+
+    /**
+     * Inits the examples collection, if necessary, and adds a set of examples following an examples policy
+     * @param set a set of examples
+     * @param policy the examples policy
+     */
+    public void addExamples(Set set, ExamplesPolicy policy){
+        if(set == null || !policy.keepsExamples())
+            return;
+        for(Object value : set)
+            addExample(value,policy);
+    }
+
+    /**
+     * Inits the examples collection, if necessary, and adds an example following an examples policy
+     * @param value the example
+     * @param policy the examples policy
+     */
+    public void addExample(Object value, ExamplesPolicy policy){
+        if(!policy.keepsExamples())
+            return;
         if(examples == null)
             examples = new HashSet<>();
-        examples.addAll(set);
+        if(examples.contains(value))
+            return;
+        examplesSeen++;
+        policy.offer(examples,value,examplesSeen);
+    }
+
+    /**
+     * Replaces the examples with a single value, or with nothing if the policy keeps no examples
+     * @param value the example
+     * @param policy the examples policy
+     */
+    public void setExample(Object value, ExamplesPolicy policy){
+        if(policy.keepsExamples()) {
+            examples = Sets.newHashSet(value);
+            examplesSeen = 1;
+        } else {
+            examples = null;
+            examplesSeen = 0;
+        }
+    }
+
+    /**
+     * @return how many distinct values have been offered to the examples, including the discarded ones
+     */
+    @JsonIgnore
+    public long getExamplesSeen(){
+        return examplesSeen;
+    }
+
+    /**
+     * Sets how many distinct values have been offered to the examples, as when restoring a checkpoint
+     * @param examplesSeen the number of values
+     */
+    void setExamplesSeen(long examplesSeen){
+        this.examplesSeen = examplesSeen;
+    }
+
+    @JsonIgnore
+    public ValueStatistics getStatistics(){
+        return statistics;
+    }
+
+    @JsonIgnore
+    public void setStatistics(ValueStatistics statistics){
+        this.statistics = statistics;
+    }
+
+    /**
+     * Adds statistics of values to the ones of this property
+     * @param statistics the statistics, may be null
+     */
+    public void addStatistics(ValueStatistics statistics){
+        if(statistics == null)
+            return;
+        if(this.statistics == null)
+            this.statistics = statistics.copy();
+        else
+            this.statistics.add(statistics);
+    }
+
+    /**
+     * @return the statistics of the values, created if necessary, as when reading a schema
+     */
+    private ValueStatistics initAndGetStatistics(){
+        if(statistics == null)
+            statistics = new ValueStatistics();
+        return statistics;
+    }
+
+    /*
+     * The statistics of the values, as JsonSchema keywords and extensions
+     */
+
+    public Number getMinimum(){
+        return (statistics != null) ? statistics.getMinimum() : null;
+    }
+
+    public void setMinimum(Number minimum){
+        initAndGetStatistics().setMinimum(minimum);
+    }
+
+    public Number getMaximum(){
+        return (statistics != null) ? statistics.getMaximum() : null;
+    }
+
+    public void setMaximum(Number maximum){
+        initAndGetStatistics().setMaximum(maximum);
+    }
+
+    public Long getMinLength(){
+        return (statistics != null) ? statistics.getMinLength() : null;
+    }
+
+    public void setMinLength(long minLength){
+        initAndGetStatistics().setMinLength(minLength);
+    }
+
+    public Long getMaxLength(){
+        return (statistics != null) ? statistics.getMaxLength() : null;
+    }
+
+    public void setMaxLength(long maxLength){
+        initAndGetStatistics().setMaxLength(maxLength);
+    }
+
+    public String getFormat(){
+        return (statistics != null) ? statistics.getFormat() : null;
+    }
+
+    public void setFormat(String format){
+        initAndGetStatistics().setFormat(format);
+    }
+
+    /**
+     * @return the values of an enumeration of strings, if the property only holds strings and nulls
+     */
+    public List<Object> getEnum(){
+        if(statistics == null)
+            return null;
+        final int mask = JsonType.maskOf(type);
+        if((mask & JsonType.STRING.mask) == 0 || (mask & ~(JsonType.STRING.mask | JsonType.NULL.mask)) != 0)
+            return null;
+        return statistics.getEnum();
+    }
+
+    public void setEnum(List<Object> values){
+        initAndGetStatistics().setEnum(values);
+    }
+
+    @JsonProperty("x-nulls")
+    public Long getNullCount(){
+        return (statistics != null && statistics.getNulls() > 0) ? statistics.getNulls() : null;
+    }
+
+    @JsonProperty("x-nulls")
+    public void setNullCount(long nulls){
+        initAndGetStatistics().setNulls(nulls);
+    }
+
+    @JsonProperty("x-integers")
+    public Long getIntegerCount(){
+        return (statistics != null && statistics.getIntegers() > 0) ? statistics.getIntegers() : null;
+    }
+
+    @JsonProperty("x-integers")
+    public void setIntegerCount(long integers){
+        initAndGetStatistics().setIntegers(integers);
+    }
+
+    @JsonProperty("x-fractions")
+    public Long getFractionCount(){
+        return (statistics != null && statistics.getFractions() > 0) ? statistics.getFractions() : null;
+    }
+
+    @JsonProperty("x-fractions")
+    public void setFractionCount(long fractions){
+        initAndGetStatistics().setFractions(fractions);
+    }
+
+    /**
+     * @return the number of distinct values, unless they are an enumeration
+     */
+    @JsonProperty("x-cardinality")
+    public Long getCardinality(){
+        return (statistics != null && getEnum() == null) ? statistics.getCardinality() : null;
+    }
+
+    @JsonProperty("x-cardinality")
+    public void setCardinality(long cardinality){
+        initAndGetStatistics().setCardinality(cardinality);
     }
 
     public void setRequired(Set<String> required){
@@ -122,6 +427,10 @@ public class Property implements Cloneable {
         return defaultValue;
     }
 
+    void setDefaultValue(Object defaultValue){
+        this.defaultValue = defaultValue;
+    }
+
     /**
      * Inits the properties map if necessary, and returns it
      * @return the properties map
@@ -188,8 +497,32 @@ public class Property implements Cloneable {
         return items != null;
     }
 
+    public void setRef(String ref){
+        this.ref = ref;
+    }
+
+    public String getRef(){
+        return ref;
+    }
+
+    /**
+     * @return true if the property is a reference to another schema
+     */
+    @JsonIgnore
+    public boolean isReference(){
+        return ref != null;
+    }
+
+    /**
+     * Sets the type. Collections of types (as they come from deserialization) are turned into sets, keeping their
+     * order
+     * @param type a JsonSchema type, or a collection of JsonSchema types
+     */
     public void setType(Object type) {
+        if(type instanceof Collection && !(type instanceof Set))
+            type = new LinkedHashSet<>((Collection) type);
         this.type = type;
+        this.typeMask = JsonType.maskOf(type);
     }
 
     public Object getType(){
@@ -227,6 +560,10 @@ public class Property implements Cloneable {
      * @return true when the proposed type is equal to the type property, ro is present in the type collection
      */
     public boolean typeEquals(Object type){
+        final int mask = JsonType.maskOf(type);
+        // Unknown type names can only be compared by name
+        if(((typeMask | mask) & JsonType.UNKNOWN_MASK) == 0)
+            return typeEquals(mask,type != null && !(type instanceof String));
         /*
          * When the current type is null and the incoming type isn't, they are certainly different.
          * We probably ended up comparing an anyOf and another property.
@@ -247,63 +584,261 @@ public class Property implements Cloneable {
     }
 
     /**
-     * The crazy, crazy equivalentTo method. This method does not really represent equality, but a sufficient similarity
+     * Mask-based version of typeEquals(Object)
+     * @param mask the mask of the type to verify
+     * @param multiple true if the type to verify is a set of types
+     * @return true when the proposed type is equal to the type property, or is present in the type collection
+     */
+    private boolean typeEquals(int mask, boolean multiple){
+        // Comparing two sets
+        if(multiple)
+            return !isSingleType() && typeMask == mask;
+        // The current type is a set, check whether the provided type is in it
+        if(!isSingleType())
+            return mask != 0 && (typeMask & mask) == mask;
+        return typeMask == mask && type != null;
+    }
+
+    /**
+     * Verifies whether the type of another property is equal to the type property, or is present in the type
+     * collection. See typeEquals(Object)
+     * @param other the other property
+     * @return true when the type of the other property is equal to the type property, or is present in the type
+     * collection
+     */
+    boolean typeEquals(Property other){
+        if(((typeMask | other.typeMask) & JsonType.UNKNOWN_MASK) != 0)
+            return typeEquals(other.type);
+        return typeEquals(other.typeMask,!other.isSingleType());
+    }
+
+    /**
+     * @param type a JsonType
+     * @return true if the type is exactly the provided one
+     */
+    boolean isOfType(JsonType type){
+        return typeMask == type.mask && isSingleType();
+    }
+
+    /**
+     * @return true if the type only contains base types. See ExonUtils.isBaseType
+     */
+    boolean hasBaseType(){
+        return JsonType.isBase(typeMask);
+    }
+
+    /**
+     * The crazy, crazy equivalentTo method. This method does not really represent equality, but a sufficient similarity.
+     * The child properties still to compare are kept in a stack on the heap, so the depth of the properties is not
+     * limited by the call stack
      * @param obj the object to compare to
      * @return true if the two objects are similar
      */
     public boolean equivalentTo(Object obj){
-        if(obj instanceof Property) {
-            Property otherProp = (Property) obj;
-
-            // This happens when we are comparing anyOf properties
-            if(this.type == null && otherProp.type == null)
-                return true;
-
-            //If types are equal or compatible...
-            if(this.typeEquals(otherProp.type)){
-                if(this.hasProperties() && otherProp.hasProperties()){
-                    // If the names of the child properties are the same...
-                    if(this.getPropertiesKeys().equals(otherProp.getPropertiesKeys())){
-                        // For each property name...
-                        for(final String key : this.getPropertiesKeys()){
-                            /*
-                             * If the child property from the current object and the proposed object are
-                             * not similar, then we can pretty much accept the two objects are not similar
-                             */
-                            if(!this.getProperty(key).equivalentTo(otherProp.getProperty(key)))
-                                return false;
+        if(!(obj instanceof Property))
+            return false;
+        Property current = this;
+        Property otherProp = (Property) obj;
+        // Pairs of properties that still have to be compared, only created when there's some child to compare
+        Deque<Property> pending = null;
+        while(true){
+            // References are only equivalent to references to the same schema
+            if(current.ref != null || otherProp.ref != null) {
+                if(!Objects.equals(current.ref, otherProp.ref))
+                    return false;
+            } else
+                // This happens when we are comparing anyOf properties. If types are equal or compatible...
+                if(current.type != null || otherProp.type != null){
+                    if(!current.typeEquals(otherProp))
+                        return false;
+                    if(current.hasProperties() && otherProp.hasProperties()){
+                        // If the names of the child properties are not the same, the objects are not similar
+                        if(!current.getPropertiesKeys().equals(otherProp.getPropertiesKeys()))
+                            return false;
+                        /*
+                         * Otherwise, for each property name, the child property from the current object and the
+                         * proposed object have to be similar
+                         */
+                        if(pending == null)
+                            pending = new ArrayDeque<>();
+                        for(final Map.Entry<String,Property> entry : current.properties.entrySet()){
+                            pending.push(otherProp.getProperty(entry.getKey()));
+                            pending.push(entry.getValue());
                         }
-                        // If the child properties names are not the same
-                    } else return false;
+                    }
+                    // If the current object and the proposed object have the "items" field, they have to be similar
+                    if(current.hasItems() && otherProp.hasItems()){
+                        if(pending == null)
+                            pending = new ArrayDeque<>();
+                        pending.push(otherProp.getItems());
+                        pending.push(current.getItems());
+                    }
                 }
-                // If the current object and the proposed object have the "items" field
-                if(this.hasItems() && otherProp.hasItems()){
-                    // ... we verify whether the "items" fields are similar
-                    return this.getItems().equivalentTo(otherProp.getItems());
-                }
-                // If the types are equal, but any other scenario does not trigger, we assume they are similar
+            // If no comparison has failed, the properties are similar
+            if(pending == null || pending.isEmpty())
                 return true;
+            current = pending.pop();
+            otherProp = pending.pop();
+        }
+    }
+
+    /**
+     * Computes a hash of the structure of the property: type, keys and structures of the child properties,
+     * structure of the "items". Properties with the same structure have the same hash, so two properties
+     * can only be equivalent if their hashes match.
+     * Empty objects, arrays without items and multiple types are equivalent to a whole range of structures, so
+     * whenever one of them is found, LOOSE_STRUCTURE is returned and equivalentTo is the only reliable comparison
+     * @return the structural hash, or LOOSE_STRUCTURE
+     */
+    public int structuralHash(){
+        if(!hasNestedStructure())
+            return flatHash();
+        // The properties whose children are being hashed, the deepest on top
+        final Deque<HashFrame> stack = new ArrayDeque<>();
+        stack.push(new HashFrame(this));
+        while(true){
+            HashFrame frame = stack.peek();
+            final Property child = frame.next();
+            final int hash;
+            if(child == null){
+                stack.pop();
+                hash = frame.finish();
+                if(stack.isEmpty())
+                    return hash;
+                frame = stack.peek();
+            } else
+                if(child.hasNestedStructure()) {
+                    stack.push(new HashFrame(child));
+                    continue;
+                } else
+                    hash = child.flatHash();
+            if(hash == LOOSE_STRUCTURE)
+                return LOOSE_STRUCTURE;
+            frame.add(hash);
+        }
+    }
+
+    /**
+     * @return true if the structural hash of the property depends on the hashes of its child properties or "items"
+     */
+    private boolean hasNestedStructure(){
+        return ref == null && type != null && isSingleType() &&
+                ((typeMask == JsonType.OBJECT.mask && hasProperties()) || (typeMask == JsonType.ARRAY.mask && hasItems()));
+    }
+
+    /**
+     * @return the structural hash of a property with no nested structure
+     */
+    private int flatHash(){
+        if(ref != null)
+            return mix(ref.hashCode());
+        // All "anyOf" properties are equivalent to each other
+        if(type == null)
+            return mix(ANY_OF_HASH);
+        // Multiple types, empty objects and arrays without items
+        if(!isSingleType() || typeMask == JsonType.OBJECT.mask || typeMask == JsonType.ARRAY.mask)
+            return LOOSE_STRUCTURE;
+        return mix(typeMask);
+    }
+
+    /**
+     * The state of a property whose child properties, or "items", are being hashed
+     */
+    private static final class HashFrame {
+
+        final Property property;
+
+        /**
+         * Objects only: the child properties still to hash, and the key of the last one
+         */
+        final Iterator<Map.Entry<String,Property>> entries;
+
+        String key;
+
+        /**
+         * Arrays only: whether the "items" have been handed out already
+         */
+        boolean itemsVisited;
+
+        int childrenHash;
+
+        HashFrame(Property property){
+            this.property = property;
+            this.entries = (property.typeMask == JsonType.OBJECT.mask) ? property.properties.entrySet().iterator() : null;
+        }
+
+        /**
+         * @return the next child property to hash, or null if there is none left
+         */
+        Property next(){
+            if(entries != null){
+                if(!entries.hasNext())
+                    return null;
+                final Map.Entry<String,Property> entry = entries.next();
+                key = entry.getKey();
+                return entry.getValue();
             }
+            if(itemsVisited)
+                return null;
+            itemsVisited = true;
+            return property.items;
         }
-        // In any other case
-        return false;
+
+        /**
+         * @param childHash the hash of the child property last returned by next
+         */
+        void add(int childHash){
+            if(entries != null)
+                // Summing, so that the order of the keys does not matter
+                childrenHash += mix(key.hashCode()*31+childHash);
+            else
+                childrenHash = childHash;
+        }
+
+        /**
+         * @return the structural hash of the property
+         */
+        int finish(){
+            return mix(property.typeMask*31+childrenHash);
+        }
+    }
+
+    /**
+     * Spreads the bits of a hash, making sure the result is never LOOSE_STRUCTURE
+     * @param hash a hash
+     * @return the mixed hash
+     */
+    private static int mix(int hash){
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return (hash == LOOSE_STRUCTURE) ? 1 : hash;
     }
 
     /**
-     * Finds common items between this object's "required" set, and the proposed set of required keys
+     * Finds common items between this object's "required" set, and the proposed set of required keys.
+     * A new set is created only when some key actually has to go
      * @param required a set of strings
+     * @return true if some key has been removed
      */
-    public void intersectRequires(Set<String> required){
-        if(this.required != null && required != null)
-            this.required = Sets.intersection(this.required,required);
+    public boolean intersectRequires(Set<String> required){
+        if(this.required != null && required != null && !required.containsAll(this.required)) {
+            this.required = Sets.newHashSet(Sets.intersection(this.required, required));
+            return true;
+        }
+        return false;
     }
 
     public int hashCode(){
-        return id.hashCode();
+        if(id == null && path != null)
+            return path.hashCode();
+        return Objects.hashCode(id);
     }
 
     public Schema asSchema(String title){
-        Schema schema = new Schema(id,title,getTypeAsString());
+        Schema schema = new Schema(getId(),title,getTypeAsString());
         schema.setProperties(properties);
         schema.setItems(items);
         schema.setRequired(required);
@@ -311,12 +846,127 @@ public class Property implements Cloneable {
     }
 
     public Property clone(){
-        Property property = new Property(this.id,this.type,this.defaultValue);
-        if(items != null)
-            property.items = this.items.clone();
-        if(properties != null)
-            properties.entrySet().forEach( entry -> property.addChildProperty(entry.getKey(),entry.getValue().clone()));
+        Property property = new Property(this.type,this.typeMask,this.defaultValue);
+        cloneInto(property);
         return property;
     }
 
+    /**
+     * Copies this property, sharing its child properties, "items" and "anyOf" scenarios instead of copying them.
+     * The collections are new, so the copy can get children added, replaced or removed without affecting this
+     * property. The shared sub-properties must not be modified in place
+     * @return the copy
+     */
+    public Property shallowClone(){
+        Property property = new Property(this.type,this.typeMask,this.defaultValue);
+        shallowCloneInto(property);
+        return property;
+    }
+
+    /**
+     * Copies the content of this property into another property, sharing the sub-properties
+     * @param property the property that will receive the copy
+     */
+    protected void shallowCloneInto(Property property){
+        property.id = this.id;
+        property.ref = this.ref;
+        property.path = this.path;
+        property.type = this.type;
+        property.typeMask = this.typeMask;
+        property.defaultValue = this.defaultValue;
+        property.examples = (examples != null) ? new HashSet<>(examples) : null;
+        property.examplesSeen = this.examplesSeen;
+        property.statistics = (statistics != null) ? statistics.copy() : null;
+        property.required = (required != null) ? new HashSet<>(required) : null;
+        property.items = this.items;
+        property.anyOf = (anyOf != null) ? new LinkedList<>(anyOf) : null;
+        property.properties = (properties != null) ? new HashMap<>(properties) : null;
+    }
+
+    /**
+     * Deep-copies the content of this property into another property. The sub-properties still to copy are kept in
+     * a stack on the heap, so the depth of the properties is not limited by the call stack
+     * @param property the property that will receive the copy
+     */
+    protected void cloneInto(Property property){
+        // Pairs of sub-properties and of the copies that still have to receive their content
+        final Deque<Property> pending = new ArrayDeque<>();
+        Property source = this;
+        Property target = property;
+        while(true){
+            target.id = source.id;
+            target.ref = source.ref;
+            target.path = source.path;
+            target.type = source.type;
+            target.typeMask = source.typeMask;
+            target.defaultValue = source.defaultValue;
+            target.examples = (source.examples != null) ? new HashSet<>(source.examples) : null;
+            target.examplesSeen = source.examplesSeen;
+            target.statistics = (source.statistics != null) ? source.statistics.copy() : null;
+            target.required = (source.required != null) ? new HashSet<>(source.required) : null;
+            if(source.items != null)
+                target.items = copyLater(source.items,pending);
+            if(source.anyOf != null) {
+                target.anyOf = new LinkedList<>();
+                for(final Property item : source.anyOf)
+                    target.anyOf.add(copyLater(item,pending));
+            }
+            if(source.properties != null)
+                for(final Map.Entry<String,Property> entry : source.properties.entrySet())
+                    target.addChildProperty(entry.getKey(),copyLater(entry.getValue(),pending));
+            if(pending.isEmpty())
+                return;
+            source = pending.pop();
+            target = pending.pop();
+        }
+    }
+
+    /**
+     * Creates an empty copy of a sub-property, which will receive the content of the sub-property later on
+     * @param source the sub-property
+     * @param pending the pairs of sub-properties and copies still to fill
+     * @return the copy
+     */
+    private static Property copyLater(Property source, Deque<Property> pending){
+        final Property target = new Property(source.type,source.typeMask,source.defaultValue);
+        pending.push(target);
+        pending.push(source);
+        return target;
+    }
+
+    /**
+     * Turns this property into an "anyOf" property. The current content of the property is moved to a new property,
+     * which becomes the first scenario of the "anyOf"
+     * @return the property now holding the original content
+     */
+    public Property moveToAnyOf(){
+        Property moved = new Property();
+        moved.id = id;
+        moved.path = path;
+        moved.ref = ref;
+        moved.type = type;
+        moved.typeMask = typeMask;
+        moved.defaultValue = defaultValue;
+        moved.examples = examples;
+        moved.examplesSeen = examplesSeen;
+        moved.statistics = statistics;
+        moved.required = required;
+        moved.properties = properties;
+        moved.items = items;
+        moved.anyOf = anyOf;
+        ref = null;
+        type = null;
+        typeMask = 0;
+        defaultValue = null;
+        examples = null;
+        examplesSeen = 0;
+        statistics = null;
+        required = null;
+        properties = null;
+        items = null;
+        anyOf = new LinkedList<>();
+        anyOf.add(moved);
+        return moved;
+    }
+
 }
@@ -0,0 +1,188 @@
+/*
+ * @author 2018 Simone Pezzano
+ * ---
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package simonepezzano.exonschema;
+
+/**
+ * The location of a property in the schema, such as #/properties/a/items_17. Each path only holds its last segment
+ * and a reference to its parent path, so all the paths sharing a prefix share the same parent nodes.
+ * The string version of the path is only built when requested
+ */
+public final class PropertyPath {
+
+    private static final byte ROOT_SEGMENT = 0;
+    private static final byte PROPERTY_SEGMENT = 1;
+    private static final byte ITEM_SEGMENT = 2;
+    private static final byte ANY_OF_SEGMENT = 3;
+
+    /**
+     * The root of every path, #
+     */
+    public static final PropertyPath ROOT = new PropertyPath(null,ROOT_SEGMENT,null,0);
+
+    private final PropertyPath parent;
+
+    private final byte segmentType;
+
+    private final String key;
+
+    private final int index;
+
+    private final int depth;
+
+    private final int hash;
+
+    private PropertyPath(PropertyPath parent, byte segmentType, String key, int index){
+        this.parent = parent;
+        this.segmentType = segmentType;
+        this.key = key;
+        this.index = index;
+        this.depth = (parent != null) ? parent.depth+1 : 0;
+        int h = (parent != null) ? parent.hash*31 : 0;
+        h = h*31+segmentType;
+        h = h*31+((key != null) ? key.hashCode() : index);
+        this.hash = h;
+    }
+
+    /**
+     * @param key the key of a child property
+     * @return the path of the child property, such as #/properties/key
+     */
+    public PropertyPath property(String key){
+        return new PropertyPath(this,PROPERTY_SEGMENT,key,0);
+    }
+
+    /**
+     * @param index the index of an array item
+     * @return the path of the array item, such as #/items_index
+     */
+    public PropertyPath item(int index){
+        return new PropertyPath(this,ITEM_SEGMENT,null,index);
+    }
+
+    /**
+     * @return the path of the "anyOf" of an array, such as #/anyOf
+     */
+    public PropertyPath anyOf(){
+        return new PropertyPath(this,ANY_OF_SEGMENT,null,0);
+    }
+
+    public PropertyPath getParent(){
+        return parent;
+    }
+
+    byte getSegmentType(){
+        return segmentType;
+    }
+
+    String getKey(){
+        return key;
+    }
+
+    int getIndex(){
+        return index;
+    }
+
+    /**
+     * Creates a path out of the fields of its last segment, as returned by getSegmentType, getKey and getIndex
+     * @param parent the parent path, null for the root
+     * @param segmentType the type of the last segment
+     * @param key the key of the last segment, if a property
+     * @param index the index of the last segment, if an array item
+     * @return the path
+     */
+    static PropertyPath of(PropertyPath parent, byte segmentType, String key, int index){
+        if(segmentType == ROOT_SEGMENT)
+            return ROOT;
+        if(parent == null || segmentType > ANY_OF_SEGMENT)
+            throw new IllegalArgumentException("Invalid path segment "+segmentType);
+        return new PropertyPath(parent,segmentType,key,index);
+    }
+
+    /**
+     * @return the number of segments after the root
+     */
+    public int getDepth(){
+        return depth;
+    }
+
+    /**
+     * Appends the last segment of the path to a string builder
+     * @param sb a string builder
+     */
+    private void appendSegment(StringBuilder sb){
+        switch(segmentType){
+            case ROOT_SEGMENT:
+                sb.append('#');
+                break;
+            case PROPERTY_SEGMENT:
+                sb.append("/properties/").append(key);
+                break;
+            case ITEM_SEGMENT:
+                sb.append("/items_").append(index);
+                break;
+            default:
+                sb.append("/anyOf");
+        }
+    }
+
+    /**
+     * @return the path as a property ID
+     */
+    @Override
+    public String toString(){
+        final PropertyPath[] segments = new PropertyPath[depth+1];
+        PropertyPath current = this;
+        for(int i = depth; i >= 0; i--) {
+            segments[i] = current;
+            current = current.parent;
+        }
+        final StringBuilder sb = new StringBuilder(16*(depth+1));
+        for(final PropertyPath segment : segments)
+            segment.appendSegment(sb);
+        return sb.toString();
+    }
+
+    @Override
+    public int hashCode(){
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj){
+        if(this == obj)
+            return true;
+        if(!(obj instanceof PropertyPath))
+            return false;
+        PropertyPath p1 = this;
+        PropertyPath p2 = (PropertyPath) obj;
+        if(p1.hash != p2.hash || p1.depth != p2.depth)
+            return false;
+        while(p1 != null && p1 != p2){
+            if(p1.segmentType != p2.segmentType || p1.index != p2.index
+                    || (p1.key != null ? !p1.key.equals(p2.key) : p2.key != null))
+                return false;
+            p1 = p1.parent;
+            p2 = p2.parent;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * @author 2018 Simone Pezzano
+ * ---
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package simonepezzano.exonschema;
+
+/**
+ * Decides which items of an array get analyzed. Homogeneous arrays stop adding information to the schema after a
+ * few items, so the walkers can look at the first K items, one item every N, a uniform sample of K items
+ * (reservoir sampling), or stop as soon as N items in a row have not changed the scenarios (adaptive).
+ * Schemas generated with any policy other than ALL record it in their "x-sampling" field
+ */
+public final class SamplingPolicy {
+
+    public enum Mode {
+        /**
+         * Every item is analyzed
+         */
+        ALL,
+        /**
+         * The first K items are analyzed
+         */
+        FIRST,
+        /**
+         * One item every N is analyzed, starting from the first one
+         */
+        STRIDE,
+        /**
+         * A uniform sample of K items is analyzed
+         */
+        RESERVOIR,
+        /**
+         * Items are analyzed until N of them in a row add no new scenario and make no key optional
+         */
+        ADAPTIVE
+    }
+
+    /**
+     * Analyzes every item. This is the default
+     */
+    public static final SamplingPolicy ALL = new SamplingPolicy(Mode.ALL,Integer.MAX_VALUE);
+
+    private final Mode mode;
+
+    private final int limit;
+
+    private SamplingPolicy(Mode mode, int limit){
+        this.mode = mode;
+        this.limit = limit;
+    }
+
+    /**
+     * @param limit the number of items
+     * @return a policy analyzing the first "limit" items of each array
+     */
+    public static SamplingPolicy first(int limit){
+        if(limit < 1)
+            throw new IllegalArgumentException("The sampling limit must be positive");
+        return new SamplingPolicy(Mode.FIRST,limit);
+    }
+
+    /**
+     * @param stride the distance between two analyzed items
+     * @return a policy analyzing one item every "stride" items of each array
+     */
+    public static SamplingPolicy stride(int stride){
+        if(stride < 1)
+            throw new IllegalArgumentException("The sampling stride must be positive");
+        return new SamplingPolicy(Mode.STRIDE,stride);
+    }
+
+    /**
+     * @param limit the number of items
+     * @return a policy analyzing a uniform sample of "limit" items of each array
+     */
+    public static SamplingPolicy reservoir(int limit){
+        if(limit < 1)
+            throw new IllegalArgumentException("The sampling limit must be positive");
+        return new SamplingPolicy(Mode.RESERVOIR,limit);
+    }
+
+    /**
+     * @param patience how many items in a row must leave the scenarios unchanged before the walk stops
+     * @return a policy analyzing the items of each array until the scenarios stop changing
+     */
+    public static SamplingPolicy adaptive(int patience){
+        if(patience < 1)
+            throw new IllegalArgumentException("The sampling patience must be positive");
+        return new SamplingPolicy(Mode.ADAPTIVE,patience);
+    }
+
+    public Mode getMode(){
+        return mode;
+    }
+
+    public int getLimit(){
+        return limit;
+    }
+
+    /**
+     * @return true if the policy may skip some items
+     */
+    public boolean isSampling(){
+        return mode != Mode.ALL;
+    }
+
+    /**
+     * @param examplesPolicy the examples policy to follow when folding the items
+     * @param listener the listener to notify of the scenarios being collected
+     * @param valueStatistics true if the statistics of the values get collected
+     * @return a sampler for a new array
+     */
+    ArraySampler newSampler(ExamplesPolicy examplesPolicy, ExonListener listener, boolean valueStatistics){
+        return new ArraySampler(this,examplesPolicy,listener,valueStatistics);
+    }
+
+    /**
+     * A cheap pseudo-random number, derived from the position of the item so that the same data always leads to the
+     * same sample
+     * @param index the position of the item
+     * @return a pseudo-random number
+     */
+    static long scramble(long index){
+        long hash = index*0x9E3779B97F4A7C15L;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    @Override
+    public String toString(){
+        switch(mode){
+            case FIRST:
+                return "first("+limit+")";
+            case STRIDE:
+                return "stride("+limit+")";
+            case RESERVOIR:
+                return "reservoir("+limit+")";
+            case ADAPTIVE:
+                return "adaptive("+limit+")";
+            default:
+                return "all";
+        }
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * @author 2018 Simone Pezzano
+ * ---
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package simonepezzano.exonschema;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the scenarios of an array, one item at a time. Each item is compared to the scenarios collected so far:
+ * if it's equivalent to some of them, it gets folded into them, otherwise it becomes a new scenario.
+ * Scenarios are bucketed by their structural hash, so finding the matching scenario is a single lookup. Only the
+ * scenarios with a loose structure (see Property.structuralHash) need to be compared one by one
+ */
+public class ScenarioCollector {
+
+    private final ExamplesPolicy examplesPolicy;
+
+    private final ExonListener listener;
+
+    /**
+     * Whether the statistics of the values of equivalent objects and arrays get folded all the way down
+     */
+    private final boolean valueStatistics;
+
+    private final List<Property> scenarios = new ArrayList<>();
+
+    /**
+     * The scenarios with an exact structure, by structural hash
+     */
+    private final Map<Integer,List<Property>> exactScenarios = new HashMap<>();
+
+    /**
+     * The scenarios with a loose structure
+     */
+    private final List<Property> looseScenarios = new ArrayList<>();
+
+    private boolean looseItems;
+
+    /**
+     * The first item, as long as it's the only one. It doesn't need to be compared to anything, so it only gets
+     * hashed and bucketed when the second item comes: arrays of one item, nested as deep as they are, never pay
+     * for hashing the structure below them
+     */
+    private Property unhashed;
+
+    /**
+     * Set by fold when an item makes some keys of a scenario optional
+     */
+    private boolean requiredChanged;
+
+    /**
+     * Default constructor, keeping all the examples
+     */
+    public ScenarioCollector(){
+        this(ExamplesPolicy.ALL);
+    }
+
+    /**
+     * Constructor with an examples policy
+     * @param examplesPolicy the policy to follow when folding the examples of an item into a scenario
+     */
+    public ScenarioCollector(ExamplesPolicy examplesPolicy){
+        this(examplesPolicy,ExonListener.NONE);
+    }
+
+    /**
+     * Constructor with an examples policy and a listener
+     * @param examplesPolicy the policy to follow when folding the examples of an item into a scenario
+     * @param listener the listener to notify of new scenarios, comparisons and merges
+     */
+    public ScenarioCollector(ExamplesPolicy examplesPolicy, ExonListener listener){
+        this(examplesPolicy,listener,false);
+    }
+
+    /**
+     * Constructor with an examples policy, a listener, and whether the statistics of the values are collected
+     * @param examplesPolicy the policy to follow when folding the examples of an item into a scenario
+     * @param listener the listener to notify of new scenarios, comparisons and merges
+     * @param valueStatistics true if the statistics of the values of an item have to be folded into the scenario,
+     *                        including the ones of the child properties and items
+     */
+    public ScenarioCollector(ExamplesPolicy examplesPolicy, ExonListener listener, boolean valueStatistics){
+        super();
+        this.examplesPolicy = examplesPolicy;
+        this.listener = listener;
+        this.valueStatistics = valueStatistics;
+    }
+
+    /**
+     * Folds an item into the collected scenarios
+     * @param item the property describing an array item
+     * @return true if the scenarios changed: the item became a new scenario, or made some keys optional
+     */
+    public boolean add(Property item){
+        requiredChanged = false;
+        if(scenarios.isEmpty()) {
+            listener.scenarioCreated();
+            scenarios.add(item);
+            unhashed = item;
+            return true;
+        }
+        if(unhashed != null)
+            bucket(unhashed, hash(unhashed));
+        unhashed = null;
+        return foldOrCreate(item, hash(item));
+    }
+
+    /**
+     * Folds an item whose structural hash has been computed already into the collected scenarios
+     * @param item the property describing an array item
+     * @param hash the structural hash of the item
+     * @return true if the scenarios changed: the item became a new scenario, or made some keys optional
+     */
+    boolean add(Property item, int hash){
+        requiredChanged = false;
+        if(hash == Property.LOOSE_STRUCTURE)
+            looseItems = true;
+        if(unhashed != null)
+            bucket(unhashed, hash(unhashed));
+        unhashed = null;
+        if(scenarios.isEmpty()) {
+            listener.scenarioCreated();
+            scenarios.add(item);
+            bucket(item, hash);
+            return true;
+        }
+        return foldOrCreate(item, hash);
+    }
+
+    /**
+     * Folds an item into the equivalent scenarios, or makes it a new scenario
+     * @param item the property describing an array item
+     * @param hash the structural hash of the item
+     * @return true if the scenarios changed
+     */
+    private boolean foldOrCreate(Property item, int hash){
+        boolean compareSuccess;
+        if(hash != Property.LOOSE_STRUCTURE) {
+            /*
+             * An exact item can only be equivalent to the exact scenarios with the same hash (the equivalentTo
+             * check guards against collisions) or to the loose ones
+             */
+            compareSuccess = fold(item, exactScenarios.get(hash));
+            compareSuccess |= fold(item, looseScenarios);
+        } else
+            // A loose item may be equivalent to anything
+            compareSuccess = fold(item, scenarios);
+        // if no similar item
+        if(!compareSuccess) {
+            listener.scenarioCreated();
+            scenarios.add(item);
+            bucket(item, hash);
+            return true;
+        }
+        return requiredChanged;
+    }
+
+    /**
+     * @param item the property describing an array item
+     * @return the structural hash of the item, taking note of loose items
+     */
+    private int hash(Property item){
+        final int hash = item.structuralHash();
+        if(hash == Property.LOOSE_STRUCTURE)
+            looseItems = true;
+        return hash;
+    }
+
+    /**
+     * Files a new scenario under its structural hash
+     * @param item the scenario
+     * @param hash the structural hash of the scenario
+     */
+    private void bucket(Property item, int hash){
+        if(hash != Property.LOOSE_STRUCTURE)
+            exactScenarios.computeIfAbsent(hash, key -> new ArrayList<>(1)).add(item);
+        else
+            looseScenarios.add(item);
+    }
+
+    /**
+     * Folds an item into all the equivalent scenarios of a list
+     * @param item the property describing an array item
+     * @param candidates the candidate scenarios, may be null
+     * @return true if at least one equivalent scenario has been found
+     */
+    private boolean fold(Property item, List<Property> candidates){
+        if(candidates == null)
+            return false;
+        boolean compareSuccess = false;
+        for(Property savedItem : candidates){
+            listener.equivalenceChecked();
+            if(item.equivalentTo(savedItem)) {
+                compareSuccess = true;
+                listener.merged();
+                // if it's a base type
+                if(item.hasBaseType()) {
+                    // add the examples and the statistics to the collected ones
+                    savedItem.addExamples(item.getExamples(),examplesPolicy);
+                    savedItem.addStatistics(item.getStatistics());
+                } else {
+                    // otherwise find which requirements are shared
+                    requiredChanged |= savedItem.intersectRequires(item.getRequired());
+                    if(valueStatistics)
+                        foldStatistics(savedItem, item);
+                }
+            }
+        }
+        return compareSuccess;
+    }
+
+    /**
+     * Adds the statistics of the values of an item to the ones of an equivalent scenario, all the way down. The
+     * scenario must describe every value of the item, so that its bounds hold for them too
+     * @param scenario the scenario
+     * @param item the equivalent item
+     */
+    private static void foldStatistics(Property scenario, Property item){
+        // Pairs of properties of the scenario and of the item still to fold
+        final Deque<Property> pending = new ArrayDeque<>();
+        Property target = scenario;
+        Property source = item;
+        while(true){
+            target.addStatistics(source.getStatistics());
+            if(target.hasProperties() && source.hasProperties())
+                for(Map.Entry<String,Property> entry : target.getProperties().entrySet()) {
+                    final Property child = source.getProperty(entry.getKey());
+                    if(child != null) {
+                        pending.push(child);
+                        pending.push(entry.getValue());
+                    }
+                }
+            if(target.hasItems() && source.hasItems()) {
+                pending.push(source.getItems());
+                pending.push(target.getItems());
+            }
+            // Scenarios are paired by equivalence, any "anyOf" is equivalent to any other
+            if(target.hasAnyOf() && source.hasAnyOf())
+                for(Property sourceScenario : source.getAnyOf())
+                    for(Property targetScenario : target.getAnyOf())
+                        if(sourceScenario.equivalentTo(targetScenario)) {
+                            pending.push(sourceScenario);
+                            pending.push(targetScenario);
+                            break;
+                        }
+            if(pending.isEmpty())
+                return;
+            target = pending.pop();
+            source = pending.pop();
+        }
+    }
+
+    /**
+     * @return true if no item has been collected yet
+     */
+    public boolean isEmpty(){
+        return scenarios.isEmpty();
+    }
+
+    /**
+     * @return true if at least one of the items had a loose structure (see Property.structuralHash)
+     */
+    public boolean hasLooseItems(){
+        if(unhashed != null) {
+            bucket(unhashed, hash(unhashed));
+            unhashed = null;
+        }
+        return looseItems;
+    }
+
+    /**
+     * @return the collected scenarios, in order of first appearance
+     */
+    public List<Property> getScenarios(){
+        return scenarios;
+    }
+}
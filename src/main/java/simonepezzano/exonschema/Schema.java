@@ -21,10 +21,13 @@
 
 package simonepezzano.exonschema;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * The JSON schema
@@ -39,6 +42,19 @@ public class Schema extends Property {
     @JsonProperty("$schema")
     private final String schema = "http://json-schema.org/draft-07/schema#";
 
+    /**
+     * The sampling policy the schema has been generated with, when some array items may have been skipped
+     */
+    @JsonProperty("x-sampling")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String sampling;
+
+    /**
+     * The sub-schemas referenced by the "$ref" of the properties, by name
+     */
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    private Map<String,Property> definitions;
+
     /**
      * Base constructor. Mostly used by deserializers
      */
@@ -86,8 +102,48 @@ public class Schema extends Property {
         return schema;
     }
 
+    public String getSampling(){
+        return sampling;
+    }
+
+    public void setSampling(String sampling){
+        this.sampling = sampling;
+    }
+
+    public Map<String,Property> getDefinitions(){
+        return definitions;
+    }
+
+    public void setDefinitions(Map<String,Property> definitions){
+        this.definitions = definitions;
+    }
+
+    /**
+     * @param name the name of a definition
+     * @return the definition, or null if no such definition exists
+     */
+    public Property getDefinition(String name){
+        return (definitions != null) ? definitions.get(name) : null;
+    }
+
     public Schema clone(){
-        return  super.clone().asSchema("schema");
+        Schema schema = new Schema(getId(),title,null);
+        cloneInto(schema);
+        schema.sampling = sampling;
+        if(definitions != null) {
+            schema.definitions = new LinkedHashMap<>();
+            definitions.forEach( (name,definition) -> schema.definitions.put(name,definition.clone()));
+        }
+        return schema;
+    }
+
+    public Schema shallowClone(){
+        Schema schema = new Schema(getId(),title,null);
+        shallowCloneInto(schema);
+        schema.sampling = sampling;
+        if(definitions != null)
+            schema.definitions = new LinkedHashMap<>(definitions);
+        return schema;
     }
 
 }
@@ -0,0 +1,372 @@
+/*
+ * @author 2018 Simone Pezzano
+ * ---
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package simonepezzano.exonschema;
+
+/**
+ * The string formats JsonSchema defines that can be recognized in the values of a property. Each format has a bit,
+ * so the formats a string may have are just a mask.
+ * The classifiers are written by hand: they go through the characters once, without allocating anything, and they
+ * work both on strings and on the text buffer of a parser. They're strict, and accept a subset of what validators
+ * accept, so that an inferred format never rejects the values it's been inferred from
+ */
+enum StringFormat {
+
+    DATE_TIME("date-time"),
+    UUID("uuid"),
+    IPV4("ipv4"),
+    EMAIL("email"),
+    URI("uri");
+
+    /**
+     * The mask of all the formats, which is what is still possible before any string has been seen
+     */
+    static final int ALL = (1 << 5) - 1;
+
+    private static final StringFormat[] VALUES = values();
+
+    /**
+     * The number of days of each month, in a non-leap year
+     */
+    private static final int[] DAYS_IN_MONTH = {31,28,31,30,31,30,31,31,30,31,30,31};
+
+    /**
+     * The format name, as found in the "format" keyword
+     */
+    final String formatName;
+
+    final int mask;
+
+    StringFormat(String formatName){
+        this.formatName = formatName;
+        this.mask = 1 << ordinal();
+    }
+
+    /**
+     * @param formatName the name of a format
+     * @return the format, or null if the name is not the name of a format
+     */
+    static StringFormat fromName(String formatName){
+        for(StringFormat format : VALUES)
+            if(format.formatName.equals(formatName))
+                return format;
+        return null;
+    }
+
+    /**
+     * @param mask a mask of formats
+     * @return the name of the first format in the mask, or null if the mask is empty or holds all the formats, as
+     * before any string has been seen
+     */
+    static String nameOf(int mask){
+        if(mask == 0 || mask == ALL)
+            return null;
+        return VALUES[Integer.numberOfTrailingZeros(mask)].formatName;
+    }
+
+    /**
+     * @param value a string
+     * @param candidates the mask of the formats to check
+     * @return the mask of the candidate formats the string has
+     */
+    static int match(CharSequence value, int candidates){
+        return match(null,value,0,value.length(),candidates);
+    }
+
+    /**
+     * Classifies a string held in a portion of an array of characters, as the text buffer of a parser
+     * @param chars the characters
+     * @param offset the offset of the string in the array
+     * @param length the length of the string
+     * @param candidates the mask of the formats to check
+     * @return the mask of the candidate formats the string has
+     */
+    static int match(char[] chars, int offset, int length, int candidates){
+        return match(chars,null,offset,offset+length,candidates);
+    }
+
+    /**
+     * Classifies a string, held either in an array of characters or in a CharSequence. Each classifier gives up
+     * as soon as a character doesn't fit, which for most strings is within the first few characters
+     * @param chars the characters, or null
+     * @param text the text, when chars is null
+     * @param start the index of the first character
+     * @param end the index after the last character
+     * @param candidates the mask of the formats to check
+     * @return the mask of the candidate formats the string has
+     */
+    private static int match(char[] chars, CharSequence text, int start, int end, int candidates){
+        if(start == end)
+            return 0;
+        int mask = 0;
+        if((candidates & DATE_TIME.mask) != 0 && isDateTime(chars,text,start,end))
+            mask |= DATE_TIME.mask;
+        if((candidates & UUID.mask) != 0 && isUuid(chars,text,start,end))
+            mask |= UUID.mask;
+        if((candidates & IPV4.mask) != 0 && isIpv4(chars,text,start,end))
+            mask |= IPV4.mask;
+        if((candidates & EMAIL.mask) != 0 && isEmail(chars,text,start,end))
+            mask |= EMAIL.mask;
+        if((candidates & URI.mask) != 0 && isUri(chars,text,start,end))
+            mask |= URI.mask;
+        return mask;
+    }
+
+    private static char charAt(char[] chars, CharSequence text, int index){
+        return (chars != null) ? chars[index] : text.charAt(index);
+    }
+
+    /**
+     * @return the value of the two digits at an index, or -1 if they're not both digits
+     */
+    private static int twoDigits(char[] chars, CharSequence text, int index){
+        final int high = charAt(chars,text,index) - '0';
+        final int low = charAt(chars,text,index+1) - '0';
+        if(high < 0 || high > 9 || low < 0 || low > 9)
+            return -1;
+        return high*10+low;
+    }
+
+    /**
+     * A RFC 3339 date-time, such as 2018-07-30T10:15:30Z or 2018-07-30T10:15:30.250+02:00, with an upper case T
+     * and Z, and no leap seconds
+     */
+    private static boolean isDateTime(char[] chars, CharSequence text, int start, int end){
+        if(end-start < 20)
+            return false;
+        final int century = twoDigits(chars,text,start);
+        final int decade = twoDigits(chars,text,start+2);
+        if(century < 0 || decade < 0 || charAt(chars,text,start+4) != '-')
+            return false;
+        final int year = century*100+decade;
+        final int month = twoDigits(chars,text,start+5);
+        if(year == 0 || month < 1 || month > 12 || charAt(chars,text,start+7) != '-')
+            return false;
+        final int day = twoDigits(chars,text,start+8);
+        final boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+        final int monthDays = (month == 2 && leap) ? 29 : DAYS_IN_MONTH[month-1];
+        if(day < 1 || day > monthDays || charAt(chars,text,start+10) != 'T')
+            return false;
+        final int hour = twoDigits(chars,text,start+11);
+        if(hour < 0 || hour > 23 || charAt(chars,text,start+13) != ':')
+            return false;
+        final int minute = twoDigits(chars,text,start+14);
+        if(minute < 0 || minute > 59 || charAt(chars,text,start+16) != ':')
+            return false;
+        final int second = twoDigits(chars,text,start+17);
+        if(second < 0 || second > 59)
+            return false;
+        int index = start+19;
+        if(charAt(chars,text,index) == '.'){
+            final int fraction = ++index;
+            while(index < end && index-fraction < 10 && isDigit(charAt(chars,text,index)))
+                index++;
+            if(index == fraction || index-fraction > 9 || index == end)
+                return false;
+        }
+        final char zone = charAt(chars,text,index);
+        if(zone == 'Z')
+            return index+1 == end;
+        if((zone != '+' && zone != '-') || end-index != 6)
+            return false;
+        final int offsetHour = twoDigits(chars,text,index+1);
+        final int offsetMinute = twoDigits(chars,text,index+4);
+        return offsetHour >= 0 && offsetMinute >= 0 && charAt(chars,text,index+3) == ':' && offsetMinute <= 59 &&
+                (offsetHour < 18 || (offsetHour == 18 && offsetMinute == 0));
+    }
+
+    /**
+     * A UUID in its canonical form, 8-4-4-4-12 hexadecimal digits, in either case
+     */
+    private static boolean isUuid(char[] chars, CharSequence text, int start, int end){
+        if(end-start != 36)
+            return false;
+        for(int index = 0; index < 36; index++){
+            final char c = charAt(chars,text,start+index);
+            if(index == 8 || index == 13 || index == 18 || index == 23) {
+                if(c != '-')
+                    return false;
+            } else
+                if(!isHexDigit(c))
+                    return false;
+        }
+        return true;
+    }
+
+    /**
+     * A dotted-quad IPv4 address, with no leading zeros
+     */
+    private static boolean isIpv4(char[] chars, CharSequence text, int start, int end){
+        if(end-start < 7 || end-start > 15)
+            return false;
+        int index = start;
+        for(int part = 0; part < 4; part++){
+            if(part > 0 && (index == end || charAt(chars,text,index++) != '.'))
+                return false;
+            final int first = index;
+            int value = 0;
+            while(index < end && index-first < 4 && isDigit(charAt(chars,text,index)))
+                value = value*10+charAt(chars,text,index++)-'0';
+            final int digits = index-first;
+            if(digits == 0 || digits > 3 || value > 255 || (digits > 1 && charAt(chars,text,first) == '0'))
+                return false;
+        }
+        return index == end;
+    }
+
+    /**
+     * An email address made of a dot-atom local part, up to 64 characters, and a domain name of at least two
+     * labels, the last one alphabetic. Quoted local parts and address literals are not recognized
+     */
+    private static boolean isEmail(char[] chars, CharSequence text, int start, int end){
+        int index = start;
+        char previous = '.';
+        char c = 0;
+        while(index < end && (c = charAt(chars,text,index)) != '@'){
+            if(c == '.' ? previous == '.' : !isAtext(c))
+                return false;
+            previous = c;
+            index++;
+        }
+        if(index == end || previous == '.' || index-start > 64)
+            return false;
+        return isDomain(chars,text,index+1,end);
+    }
+
+    /**
+     * A domain name of at least two labels of letters, digits and hyphens, the last one alphabetic. Hyphens can't
+     * start or end a label
+     */
+    private static boolean isDomain(char[] chars, CharSequence text, int start, int end){
+        if(end-start > 253)
+            return false;
+        int labels = 0;
+        int labelStart = start;
+        for(int index = start; index <= end; index++){
+            final char c = (index < end) ? charAt(chars,text,index) : '.';
+            if(c == '.'){
+                final int length = index-labelStart;
+                if(length == 0 || length > 63 || charAt(chars,text,index-1) == '-')
+                    return false;
+                labels++;
+                labelStart = index+1;
+            } else
+                if(c == '-' ? index == labelStart : !isLetter(c) && !isDigit(c))
+                    return false;
+        }
+        return labels > 1 && isTopLevelDomain(chars,text,start,end);
+    }
+
+    /**
+     * @return true if the last label of a domain name is made of two letters or more
+     */
+    private static boolean isTopLevelDomain(char[] chars, CharSequence text, int start, int end){
+        int index = end;
+        while(index > start && isLetter(charAt(chars,text,index-1)))
+            index--;
+        return end-index > 1 && (index == start || charAt(chars,text,index-1) == '.');
+    }
+
+    /**
+     * An absolute URI: a scheme, a colon and the rest of the URI, made of the characters RFC 3986 allows and of
+     * valid percent-encoded octets. IPv6 literals are not recognized
+     */
+    private static boolean isUri(char[] chars, CharSequence text, int start, int end){
+        if(!isLetter(charAt(chars,text,start)))
+            return false;
+        int index = start+1;
+        char c = 0;
+        while(index < end && isSchemeChar(c = charAt(chars,text,index)))
+            index++;
+        // The part after the scheme can't be empty, nor be just a fragment
+        if(index == end || c != ':' || ++index == end || charAt(chars,text,index) == '#')
+            return false;
+        // An authority can't be empty, unless a path, a query or a fragment follows it
+        if(end-index == 2 && charAt(chars,text,index) == '/' && charAt(chars,text,index+1) == '/')
+            return false;
+        boolean fragment = false;
+        while(index < end){
+            c = charAt(chars,text,index);
+            if(c == '%') {
+                if(end-index < 3 || !isHexDigit(charAt(chars,text,index+1)) || !isHexDigit(charAt(chars,text,index+2)))
+                    return false;
+                index += 3;
+                continue;
+            }
+            if(c == '#') {
+                if(fragment)
+                    return false;
+                fragment = true;
+            } else if(!isUriChar(c))
+                return false;
+            index++;
+        }
+        return true;
+    }
+
+    private static boolean isDigit(char c){
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isLetter(char c){
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isHexDigit(char c){
+        return isDigit(c) || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+
+    private static boolean isSchemeChar(char c){
+        return isLetter(c) || isDigit(c) || c == '+' || c == '-' || c == '.';
+    }
+
+    /**
+     * @return true if the character is allowed in the local part of an email address, dots apart
+     */
+    private static boolean isAtext(char c){
+        if(isLetter(c) || isDigit(c))
+            return true;
+        switch(c){
+            case '!': case '#': case '$': case '%': case '&': case '\'': case '*': case '+': case '-': case '/':
+            case '=': case '?': case '^': case '_': case '`': case '{': case '|': case '}': case '~':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return true if the character is an unreserved or reserved URI character, square brackets and the number
+     * sign apart
+     */
+    private static boolean isUriChar(char c){
+        if(isLetter(c) || isDigit(c))
+            return true;
+        switch(c){
+            case '-': case '.': case '_': case '~': case ':': case '/': case '?': case '@': case '!': case '$':
+            case '&': case '\'': case '(': case ')': case '*': case '+': case ',': case ';': case '=':
+                return true;
+            default:
+                return false;
+        }
+    }
+}
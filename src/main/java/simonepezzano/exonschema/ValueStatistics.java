@@ -0,0 +1,462 @@
+/*
+ * @author 2018 Simone Pezzano
+ * ---
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package simonepezzano.exonschema;
+
+import com.fasterxml.jackson.core.JsonParser;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.List;
+
+/**
+ * Statistics of the values of a base type property: bounds of the numbers, bounds of the lengths of the strings,
+ * and how many nulls, integers and fractions have been seen. Everything is held in primitive fields, so values
+ * don't need to be kept, nor boxed when they come from a parser.
+ * The bounds end up in the schema as the "minimum", "maximum", "minLength" and "maxLength" keywords, which the
+ * values seen so far always satisfy, and the format all the strings have, if any, as the "format" keyword. The
+ * distinct values end up as an "enum" when they're strings, few and repeated, or as their number otherwise
+ */
+public final class ValueStatistics {
+
+    long nulls;
+
+    /**
+     * Numbers with no fractional part, as 2 or 2.0, and numbers with a fractional part
+     */
+    long integers;
+
+    long fractions;
+
+    long strings;
+
+    /**
+     * The bounds of the numbers that have been seen as longs, kept apart so that they don't lose precision
+     */
+    long integerMinimum = Long.MAX_VALUE;
+
+    long integerMaximum = Long.MIN_VALUE;
+
+    /**
+     * The bounds of all the other numbers
+     */
+    double numberMinimum = Double.POSITIVE_INFINITY;
+
+    double numberMaximum = Double.NEGATIVE_INFINITY;
+
+    /**
+     * The bounds of the lengths of the strings, in code points as JSON Schema counts them
+     */
+    long minLength = Long.MAX_VALUE;
+
+    long maxLength = -1;
+
+    /**
+     * The mask of the string formats all the strings seen so far have. Once empty, strings are not classified anymore
+     */
+    int formats = StringFormat.ALL;
+
+    /**
+     * The distinct numbers and strings, created with the first of them
+     */
+    DistinctValues distinct;
+
+    /**
+     * Default constructor, with no values
+     */
+    public ValueStatistics(){
+        super();
+    }
+
+    /**
+     * Creates the statistics of a single value
+     * @param value a value of a base type
+     * @return the statistics, or null if the value is not a number, a string or null
+     */
+    public static ValueStatistics of(Object value){
+        if(value != null && !(value instanceof Number) && !(value instanceof CharSequence))
+            return null;
+        final ValueStatistics statistics = new ValueStatistics();
+        statistics.add(value);
+        return statistics;
+    }
+
+    /**
+     * Creates the statistics of the value a parser is positioned on, without boxing it
+     * @param parser the parser
+     * @return the statistics, or null if the value is not a number, a string or null
+     * @throws IOException
+     */
+    public static ValueStatistics of(JsonParser parser) throws IOException {
+        final ValueStatistics statistics = new ValueStatistics();
+        switch(parser.currentToken()){
+            case VALUE_NUMBER_INT:
+                if(parser.getNumberType() == JsonParser.NumberType.BIG_INTEGER)
+                    statistics.addApproximateNumber(parser.getDoubleValue());
+                else
+                    statistics.addInteger(parser.getLongValue());
+                return statistics;
+            case VALUE_NUMBER_FLOAT:
+                statistics.addNumber(parser.getDoubleValue());
+                return statistics;
+            case VALUE_STRING:
+                statistics.addString(parser.getTextCharacters(),parser.getTextOffset(),parser.getTextLength());
+                return statistics;
+            case VALUE_NULL:
+                statistics.addNull();
+                return statistics;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Adds a value. Anything but numbers, strings and null is ignored
+     * @param value the value
+     */
+    public void add(Object value){
+        if(value == null)
+            addNull();
+        else if(value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte)
+            addInteger(((Number) value).longValue());
+        else if(value instanceof Double || value instanceof Float)
+            addNumber(((Number) value).doubleValue());
+        else if(value instanceof BigInteger || value instanceof BigDecimal)
+            addApproximateNumber(((Number) value).doubleValue());
+        else if(value instanceof CharSequence)
+            addString((CharSequence) value);
+    }
+
+    public void addNull(){
+        nulls++;
+    }
+
+    /**
+     * @param value an integer
+     */
+    public void addInteger(long value){
+        distinct().addInteger(value);
+        integers++;
+        if(value < integerMinimum)
+            integerMinimum = value;
+        if(value > integerMaximum)
+            integerMaximum = value;
+    }
+
+    /**
+     * @param value a number
+     */
+    public void addNumber(double value){
+        distinct().addNumber(value);
+        if(value == Math.rint(value))
+            integers++;
+        else
+            fractions++;
+        if(value < numberMinimum)
+            numberMinimum = value;
+        if(value > numberMaximum)
+            numberMaximum = value;
+    }
+
+    /**
+     * Adds a number that may have been rounded to fit a double, such as a big integer. The bounds get widened by
+     * the rounding error, so that the number still satisfies them
+     * @param value a rounded number
+     */
+    private void addApproximateNumber(double value){
+        addNumber(value);
+        numberMinimum = Math.min(numberMinimum,Math.nextDown(value));
+        numberMaximum = Math.max(numberMaximum,Math.nextUp(value));
+    }
+
+    /**
+     * @param value a string
+     */
+    public void addString(CharSequence value){
+        addLength(Character.codePointCount(value,0,value.length()));
+        distinct().addString(value);
+        if(formats != 0)
+            formats &= StringFormat.match(value,formats);
+    }
+
+    /**
+     * Adds a string held in a portion of an array of characters, as the text buffer of a parser
+     * @param chars the characters
+     * @param offset the offset of the string in the array
+     * @param length the length of the string
+     */
+    public void addString(char[] chars, int offset, int length){
+        addLength(Character.codePointCount(chars,offset,length));
+        distinct().addString(chars,offset,length);
+        if(formats != 0)
+            formats &= StringFormat.match(chars,offset,length,formats);
+    }
+
+    private DistinctValues distinct(){
+        if(distinct == null)
+            distinct = new DistinctValues();
+        return distinct;
+    }
+
+    private void addLength(long length){
+        strings++;
+        if(length < minLength)
+            minLength = length;
+        if(length > maxLength)
+            maxLength = length;
+    }
+
+    /**
+     * Adds the values of other statistics to these ones
+     * @param other the other statistics, may be null
+     */
+    public void add(ValueStatistics other){
+        if(other == null)
+            return;
+        nulls += other.nulls;
+        integers += other.integers;
+        fractions += other.fractions;
+        strings += other.strings;
+        integerMinimum = Math.min(integerMinimum,other.integerMinimum);
+        integerMaximum = Math.max(integerMaximum,other.integerMaximum);
+        numberMinimum = Math.min(numberMinimum,other.numberMinimum);
+        numberMaximum = Math.max(numberMaximum,other.numberMaximum);
+        minLength = Math.min(minLength,other.minLength);
+        maxLength = Math.max(maxLength,other.maxLength);
+        formats &= other.formats;
+        if(other.distinct != null) {
+            if(distinct == null)
+                distinct = other.distinct.copy();
+            else
+                distinct.add(other.distinct);
+        }
+    }
+
+    /**
+     * Merges two statistics, leaving them untouched
+     * @param first some statistics, may be null
+     * @param second other statistics, may be null
+     * @return the merged statistics, or null if both are null
+     */
+    public static ValueStatistics merge(ValueStatistics first, ValueStatistics second){
+        if(first == null)
+            return (second != null) ? second.copy() : null;
+        final ValueStatistics merged = first.copy();
+        merged.add(second);
+        return merged;
+    }
+
+    public ValueStatistics copy(){
+        final ValueStatistics copy = new ValueStatistics();
+        copy.add(this);
+        return copy;
+    }
+
+    public long getNulls(){
+        return nulls;
+    }
+
+    public void setNulls(long nulls){
+        this.nulls = nulls;
+    }
+
+    public long getIntegers(){
+        return integers;
+    }
+
+    public void setIntegers(long integers){
+        this.integers = integers;
+    }
+
+    public long getFractions(){
+        return fractions;
+    }
+
+    public void setFractions(long fractions){
+        this.fractions = fractions;
+    }
+
+    public long getStrings(){
+        return strings;
+    }
+
+    public void setStrings(long strings){
+        this.strings = strings;
+    }
+
+    /**
+     * @return the smallest number, as a Long if it's been seen as an integer, or null if no number has been seen
+     */
+    public Number getMinimum(){
+        // Long.MAX_VALUE is a bound only if some integer has been seen at all
+        final boolean integer = integerMinimum != Long.MAX_VALUE || integerMaximum == Long.MAX_VALUE;
+        final boolean number = Double.isFinite(numberMinimum);
+        if(integer && (!number || integerMinimum <= numberMinimum))
+            return integerMinimum;
+        return number ? (Number) numberMinimum : null;
+    }
+
+    /**
+     * @return the largest number, as a Long if it's been seen as an integer, or null if no number has been seen
+     */
+    public Number getMaximum(){
+        final boolean integer = integerMaximum != Long.MIN_VALUE || integerMinimum == Long.MIN_VALUE;
+        final boolean number = Double.isFinite(numberMaximum);
+        if(integer && (!number || integerMaximum >= numberMaximum))
+            return integerMaximum;
+        return number ? (Number) numberMaximum : null;
+    }
+
+    /**
+     * Sets the lower bound of the numbers, as when reading a schema
+     * @param minimum the lower bound
+     */
+    public void setMinimum(Number minimum){
+        if(minimum instanceof Integer || minimum instanceof Long)
+            integerMinimum = minimum.longValue();
+        else
+            numberMinimum = minimum.doubleValue();
+    }
+
+    /**
+     * Sets the upper bound of the numbers, as when reading a schema
+     * @param maximum the upper bound
+     */
+    public void setMaximum(Number maximum){
+        if(maximum instanceof Integer || maximum instanceof Long)
+            integerMaximum = maximum.longValue();
+        else
+            numberMaximum = maximum.doubleValue();
+    }
+
+    /**
+     * @return the length of the shortest string, or null if no string has been seen
+     */
+    public Long getMinLength(){
+        return (minLength != Long.MAX_VALUE) ? minLength : null;
+    }
+
+    /**
+     * Sets the length of the shortest string, as when reading a schema. Strings have been seen, so unless a format
+     * is set as well, they have none
+     * @param minLength the length of the shortest string
+     */
+    public void setMinLength(long minLength){
+        this.minLength = minLength;
+        if(formats == StringFormat.ALL)
+            formats = 0;
+    }
+
+    /**
+     * @return the length of the longest string, or null if no string has been seen
+     */
+    public Long getMaxLength(){
+        return (maxLength >= 0) ? maxLength : null;
+    }
+
+    /**
+     * Sets the length of the longest string, as when reading a schema. See setMinLength
+     * @param maxLength the length of the longest string
+     */
+    public void setMaxLength(long maxLength){
+        this.maxLength = maxLength;
+        if(formats == StringFormat.ALL)
+            formats = 0;
+    }
+
+    /**
+     * @return the name of the format all the strings have, or null if they don't share a format, or if no string
+     * has been seen
+     */
+    public String getFormat(){
+        return StringFormat.nameOf(formats);
+    }
+
+    /**
+     * Sets the format of the strings, as when reading a schema
+     * @param format the name of the format, or null if the strings have no format. Formats that can't be inferred
+     *               are treated as no format
+     */
+    public void setFormat(String format){
+        final StringFormat stringFormat = StringFormat.fromName(format);
+        formats = (stringFormat != null) ? stringFormat.mask : 0;
+    }
+
+    /**
+     * @return the distinct numbers and strings, or null if none has been seen
+     */
+    public DistinctValues getDistinctValues(){
+        return distinct;
+    }
+
+    /**
+     * @return the values of an enumeration of strings, plus null if nulls have been seen, or null if the strings
+     * are too many or not repeated enough, or if numbers have been seen
+     */
+    public List<Object> getEnum(){
+        if(distinct == null || !distinct.isEnum() || integers > 0 || fractions > 0)
+            return null;
+        final List<Object> values = distinct.getValues();
+        if(nulls > 0)
+            values.add(null);
+        return values;
+    }
+
+    /**
+     * Sets the values of an enumeration, as when reading a schema. A null value means that nulls have been seen
+     * @param values the values
+     */
+    public void setEnum(List<Object> values){
+        distinct = new DistinctValues();
+        distinct.setEnum(values);
+        if(nulls == 0 && values.contains(null))
+            nulls = 1;
+    }
+
+    /**
+     * @return the number of distinct numbers and strings, exact or estimated, or null if none has been seen
+     */
+    public Long getCardinality(){
+        return (distinct != null) ? distinct.getCardinality() : null;
+    }
+
+    /**
+     * Sets the number of distinct values, as when reading a schema
+     * @param cardinality the number of distinct values
+     */
+    public void setCardinality(long cardinality){
+        if(distinct == null) {
+            distinct = new DistinctValues();
+            distinct.dropExactSet();
+        }
+        distinct.lowerBound = cardinality;
+    }
+
+    /**
+     * @return true if no value has been seen
+     */
+    public boolean isEmpty(){
+        return nulls == 0 && integers == 0 && fractions == 0 && strings == 0 && getMinimum() == null &&
+                getMaximum() == null && getMinLength() == null && getMaxLength() == null;
+    }
+}
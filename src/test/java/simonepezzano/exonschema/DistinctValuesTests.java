@@ -0,0 +1,154 @@
+/*
+ * @author 2018 Simone Pezzano
+ * ---
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package simonepezzano.exonschema;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class DistinctValuesTests {
+
+    @Test
+    public void testExact(){
+        DistinctValues distinct = new DistinctValues();
+        distinct.addString("b");
+        distinct.addString("xxayy".toCharArray(),2,1);
+        distinct.addString("a");
+        distinct.addInteger(2);
+        distinct.addNumber(2.0);
+        distinct.addNumber(0.5);
+        assertTrue(distinct.isExact());
+        assertEquals(6,distinct.getCount());
+        assertEquals(4,distinct.getCardinality());
+        assertEquals(Arrays.asList(0.5,2L,"a","b"),distinct.getValues());
+        assertFalse(distinct.isEnum());
+        for(int i = 0; i < 10; i++)
+            distinct.addString("a");
+        assertTrue(distinct.isEnum());
+    }
+
+    @Test
+    public void testSketch(){
+        DistinctValues distinct = new DistinctValues();
+        for(int i = 0; i < DistinctValues.EXACT_LIMIT; i++)
+            distinct.addString("value"+i);
+        assertTrue(distinct.isExact());
+        distinct.addString("one more");
+        assertFalse(distinct.isExact());
+        assertNull(distinct.getValues());
+        assertEquals(DistinctValues.EXACT_LIMIT+1,distinct.getCardinality(),2);
+
+        for(int i = 0; i < 100000; i++) {
+            distinct.addString("value"+i);
+            distinct.addInteger(i % 1000);
+        }
+        // The standard error is about 3%, the estimate is deterministic
+        assertEquals(101001,distinct.getCardinality(),101001*0.06);
+    }
+
+    @Test
+    public void testMerge(){
+        DistinctValues first = new DistinctValues();
+        DistinctValues second = new DistinctValues();
+        DistinctValues all = new DistinctValues();
+        for(int i = 0; i < 50000; i++) {
+            (i % 3 == 0 ? first : second).addString("value"+i);
+            all.addString("value"+i);
+        }
+        second.addString("value0");
+        DistinctValues merged = first.copy();
+        merged.add(second);
+        DistinctValues reversed = second.copy();
+        reversed.add(first);
+        // Sketches merge with no loss: the union is the same as if the values were added to one sketch
+        assertEquals(all.getCardinality(),merged.getCardinality());
+        assertEquals(merged.getCardinality(),reversed.getCardinality());
+        assertEquals(50001,merged.getCount());
+
+        DistinctValues small = new DistinctValues();
+        small.addString("a");
+        small.addString("value1");
+        DistinctValues mixed = small.copy();
+        mixed.add(merged);
+        assertEquals(merged.getCardinality()+1,mixed.getCardinality(),merged.getCardinality()*0.01);
+        small.add(small.copy());
+        assertEquals(2,small.getCardinality());
+        assertEquals(4,small.getCount());
+    }
+
+    @Test
+    public void testSchemas() throws Exception {
+        final StringBuilder data = new StringBuilder("[");
+        for(int i = 0; i < 60; i++)
+            data.append(i > 0 ? "," : "").append("{\"kind\":\"").append(i % 3 == 0 ? "small" : "big")
+                    .append("\",\"name\":\"item").append(i).append("\",\"size\":").append(i % 4)
+                    .append("}");
+        data.append("]");
+        ExonWalker walker = new ExonWalker();
+        walker.setValueStatistics(true);
+        Schema schema = walker.analyze(ExonUtils.deserializeJsonPayload(data.toString()),"foo","bar");
+        Property items = schema.getItems();
+        assertEquals(Arrays.asList("big","small"),items.getProperty("kind").getEnum());
+        assertNull(items.getProperty("kind").getCardinality());
+        assertNull(items.getProperty("name").getEnum());
+        // Past the exact set, the cardinality is estimated
+        assertEquals(60,items.getProperty("name").getCardinality(),2);
+        // Numbers are counted, but are no enum
+        assertNull(items.getProperty("size").getEnum());
+        assertEquals(Long.valueOf(4),items.getProperty("size").getCardinality());
+
+        final String json = ExonUtils.serializeJsonPayload(schema);
+        assertEquals(json,new ExonSchemaWriter().writeToString(schema));
+        ExonStreamWalker streamWalker = new ExonStreamWalker();
+        streamWalker.setValueStatistics(true);
+        assertEquals(json,ExonUtils.serializeJsonPayload(streamWalker.analyze(data.toString().getBytes("UTF-8"),"foo","bar")));
+
+        // Enums and cardinalities survive a round trip through JSON and checkpoints
+        Schema restored = Schema.create(json);
+        assertEquals(Arrays.asList("big","small"),restored.getItems().getProperty("kind").getEnum());
+        assertEquals(Arrays.asList("x",null),Schema.create("{\"type\":[\"string\",\"null\"],\"enum\":[\"x\",null]}").getEnum());
+        assertEquals(items.getProperty("name").getCardinality(),restored.getItems().getProperty("name").getCardinality());
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExonCheckpoint.write(schema,out);
+        Schema checkpoint = ExonCheckpoint.readSchema(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(json,ExonUtils.serializeJsonPayload(checkpoint));
+
+        // Merged schemas get the union of the distinct values
+        Schema other = walker.analyze(ExonUtils.deserializeJsonPayload(
+                "[{\"kind\":\"medium\",\"name\":\"item0\",\"size\":1}]"),"foo","bar");
+        for(Property merged : Arrays.asList(ExonUtils.merge(schema.getItems(),other.getItems()),
+                                            new ExonSchemaMerger().merge(schema,other).getItems()))
+            assertEquals(Arrays.asList("big","medium","small"),merged.getProperty("kind").getEnum());
+        assertEquals(items.getProperty("name").getCardinality(),
+                ExonUtils.merge(schema.getItems(),other.getItems()).getProperty("name").getCardinality());
+
+        // Nulls are part of the enum of a nullable property
+        Schema nulls = walker.analyze(ExonUtils.deserializeJsonPayload("[{\"kind\":null,\"name\":null,\"size\":0}]"),"foo","bar");
+        Property nullable = ExonUtils.merge(schema.getItems(),nulls.getItems()).getProperty("kind");
+        assertEquals(Arrays.asList("big","small",null),nullable.getEnum());
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * @author 2018 Simone Pezzano
+ * ---
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package simonepezzano.exonschema;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ExamplesPolicyTests {
+
+    @Test
+    public void testFirst(){
+        Schema schema = walk(ExamplesPolicy.first(3));
+        assertEquals(3,schema.getItems().getExamples().size());
+        assertTrue(schema.getItems().getExamples().contains("line 0"));
+        assertTrue(schema.getItems().getExamples().contains("line 2"));
+        assertEquals(10000,schema.getItems().getExamplesSeen());
+    }
+
+    @Test
+    public void testReservoir(){
+        Schema schema = walk(ExamplesPolicy.reservoir(5));
+        assertEquals(5,schema.getItems().getExamples().size());
+        int late = 0;
+        for(Object example : schema.getItems().getExamples()) {
+            assertTrue(example.toString().startsWith("line "));
+            if(Integer.parseInt(example.toString().substring(5)) >= 5)
+                late++;
+        }
+        // The sample is spread over the whole array, not just the first lines
+        assertTrue(late > 0);
+        assertEquals(schema.getItems().getExamples(),walk(ExamplesPolicy.reservoir(5)).getItems().getExamples());
+    }
+
+    @Test
+    public void testNone() throws Exception {
+        Schema schema = walk(ExamplesPolicy.NONE);
+        assertNull(schema.getItems().getExamples());
+        assertFalse(ExonUtils.serializeJsonPayload(schema).contains("examples"));
+    }
+
+    @Test
+    public void testMerge(){
+        Property p1 = new Property("#/p1","string","foobar");
+        Property p2 = new Property("#/p1","string","dog");
+        Property p3 = ExonUtils.merge(p1,p2,ExamplesPolicy.first(1));
+        assertEquals(1,p3.getExamples().size());
+        assertTrue(p3.getExamples().contains("foobar"));
+        assertNull(ExonUtils.merge(p1,p2,ExamplesPolicy.NONE).getExamples());
+    }
+
+    @Test
+    public void testMergeReservoirs(){
+        // 1000 values on one side and 10 on the other: a uniform sample of 10 holds about 0.1 values of the latter
+        ExamplesPolicy policy = ExamplesPolicy.reservoir(10);
+        int small = 0, smallMerged = 0;
+        for(int i = 0; i < 100; i++) {
+            ExonWalker walker = new ExonWalker();
+            walker.setExamplesPolicy(policy);
+            Property large = walker.analyze(values("large "+i+" ",1000),"foo","bar").getItems();
+            Property target = walker.analyze(values("small "+i+" ",10),"foo","bar").getItems();
+            Property merged = ExonUtils.merge(target,large,policy);
+            ExonUtils.mergeInto(target,large,policy);
+            assertEquals(10,target.getExamples().size());
+            assertEquals(1010,target.getExamplesSeen());
+            assertEquals(1010,merged.getExamplesSeen());
+            for(Object example : target.getExamples())
+                if(example.toString().startsWith("small"))
+                    small++;
+            for(Object example : merged.getExamples())
+                if(example.toString().startsWith("small"))
+                    smallMerged++;
+            // The order of the sides makes no difference
+            assertEquals(merged.getExamples(),ExonUtils.merge(large,walker.analyze(values("small "+i+" ",10),"foo","bar").getItems(),policy).getExamples());
+        }
+        assertTrue(small < 40);
+        assertTrue(smallMerged < 40);
+    }
+
+    @Test
+    public void testMergeCountsSharedValuesOnce(){
+        ExamplesPolicy policy = ExamplesPolicy.reservoir(10);
+        ExonWalker walker = new ExonWalker();
+        walker.setExamplesPolicy(policy);
+        Property target = walker.analyze(values("line ",8),"foo","bar").getItems();
+        ExonUtils.mergeInto(target,walker.analyze(values("line ",6),"foo","bar").getItems(),policy);
+        assertEquals(8,target.getExamples().size());
+        assertEquals(8,target.getExamplesSeen());
+    }
+
+    private static List<Object> values(String prefix, int count){
+        List<Object> values = new ArrayList<>();
+        for(int i = 0; i < count; i++)
+            values.add(prefix+i);
+        return values;
+    }
+
+    private Schema walk(ExamplesPolicy policy){
+        List<Object> lines = new ArrayList<>();
+        for(int i = 0; i < 10000; i++)
+            lines.add("line "+i);
+        ExonWalker walker = new ExonWalker();
+        walker.setExamplesPolicy(policy);
+        return walker.analyze(lines,"foo","bar");
+    }
+}
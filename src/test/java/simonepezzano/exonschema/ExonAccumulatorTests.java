@@ -0,0 +1,143 @@
+/*
+ * @author 2018 Simone Pezzano
+ * ---
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package simonepezzano.exonschema;
+
+import org.everit.json.schema.loader.SchemaLoader;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class ExonAccumulatorTests {
+
+    @Test
+    public void testSameDocumentKeepsSchema() throws Exception {
+        File f = new File("samples"+File.separator+"real_world"+File.separator+"spotify.json");
+        Object data = ExonUtils.deserializeJsonPayload(f);
+        ExonAccumulator accumulator = new ExonAccumulator("foo","bar");
+        for(int i = 0; i < 50; i++)
+            accumulator.add(data);
+        Schema expected = new ExonWalker().analyze(data,"foo","bar");
+        assertEquals(50,accumulator.getDocumentCount());
+        assertEquals(ExonUtils.serializeJsonPayload(expected.clone()),ExonUtils.serializeJsonPayload(accumulator.snapshot()));
+    }
+
+    @Test
+    public void testOptionalKeys() throws Exception {
+        ExonAccumulator accumulator = new ExonAccumulator("foo","bar");
+        accumulator.add(ExonUtils.deserializeJsonPayload("{\"a\":1,\"b\":{\"c\":\"x\",\"d\":true}}"));
+        accumulator.add(ExonUtils.deserializeJsonPayload("{\"a\":2,\"b\":{\"c\":\"y\"},\"e\":null}"));
+        Schema schema = accumulator.snapshot();
+        assertEquals(3,schema.getProperties().size());
+        assertTrue(schema.getRequired().contains("a"));
+        assertTrue(schema.getRequired().contains("b"));
+        assertFalse(schema.getRequired().contains("e"));
+        Property b = schema.getProperty("b");
+        assertEquals(2,b.getProperties().size());
+        assertTrue(b.getRequired().contains("c"));
+        assertFalse(b.getRequired().contains("d"));
+        assertTrue(b.getProperty("c").getExamples().contains("x"));
+        assertTrue(b.getProperty("c").getExamples().contains("y"));
+        assertTrue(schema.getProperty("a").getExamples().contains(1));
+        assertTrue(schema.getProperty("a").getExamples().contains(2));
+    }
+
+    @Test
+    public void testConflictingTypes() throws Exception {
+        ExonAccumulator accumulator = new ExonAccumulator("foo","bar");
+        accumulator.add(ExonUtils.deserializeJsonPayload("{\"a\":1,\"b\":[1,2]}"));
+        accumulator.add(ExonUtils.deserializeJsonPayload("{\"a\":\"x\",\"b\":{\"c\":1}}"));
+        accumulator.add(ExonUtils.deserializeJsonPayload("{\"a\":null,\"b\":[\"z\"]}"));
+        Schema schema = accumulator.snapshot();
+        Property a = schema.getProperty("a");
+        assertTrue(a.typeEquals("integer"));
+        assertTrue(a.typeEquals("string"));
+        assertTrue(a.typeEquals("null"));
+        Property b = schema.getProperty("b");
+        assertTrue(b.hasAnyOf());
+        assertEquals(2,b.getAnyOf().size());
+        Property array = b.getAnyOf().get(0);
+        assertTrue(array.getItems().typeEquals("integer"));
+        assertTrue(array.getItems().typeEquals("string"));
+        validate(schema,"{\"a\":1,\"b\":[1,2]}");
+        validate(schema,"{\"a\":\"x\",\"b\":{\"c\":1}}");
+        validate(schema,"{\"a\":null,\"b\":[\"z\"]}");
+    }
+
+    @Test
+    public void testArrayScenarios() throws Exception {
+        ExonAccumulator accumulator = new ExonAccumulator("foo","bar");
+        accumulator.add(ExonUtils.deserializeJsonPayload("{\"events\":[{\"type\":\"click\",\"x\":1}]}"));
+        accumulator.add(ExonUtils.deserializeJsonPayload("{\"events\":[{\"type\":\"view\",\"page\":\"a\"},{\"type\":\"click\",\"x\":2}]}"));
+        Schema schema = accumulator.snapshot();
+        Property items = schema.getProperty("events").getItems();
+        assertTrue(items.hasAnyOf());
+        assertEquals(2,items.getAnyOf().size());
+        assertTrue(items.getAnyOf().get(0).getProperty("x").getExamples().contains(2));
+        validate(schema,"{\"events\":[{\"type\":\"view\",\"page\":\"a\"},{\"type\":\"click\",\"x\":2}]}");
+        // An array with no items accepts anything, so the accumulated one does too
+        accumulator.add(ExonUtils.deserializeJsonPayload("{\"events\":[]}"));
+        assertFalse(accumulator.snapshot().getProperty("events").hasItems());
+    }
+
+    @Test
+    public void testMergeAccumulators() throws Exception {
+        ExonAccumulator acc1 = new ExonAccumulator("foo","bar");
+        ExonAccumulator acc2 = new ExonAccumulator("foo","bar");
+        acc1.add(ExonUtils.deserializeJsonPayload("{\"a\":1}"));
+        acc2.add(ExonUtils.deserializeJsonPayload("{\"a\":2,\"b\":true}"));
+        acc1.add(acc2);
+        assertEquals(2,acc1.getDocumentCount());
+        assertEquals(1,acc2.getDocumentCount());
+        Schema schema = acc1.snapshot();
+        assertEquals(2,schema.getProperties().size());
+        assertFalse(schema.getRequired().contains("b"));
+        assertEquals(1,acc2.snapshot().getProperty("a").getExamples().size());
+    }
+
+    @Test
+    public void testUnconstrainedContent() throws Exception {
+        // The second document's schema has items with no properties, which must not be narrowed by the first one's
+        ExonAccumulator accumulator = new ExonAccumulator("foo","bar");
+        accumulator.add(ExonUtils.deserializeJsonPayload("{\"arr\":[{\"k3\":1}]}"));
+        accumulator.add(ExonUtils.deserializeJsonPayload("{\"arr\":[{},{\"k3\":true}]}"));
+        Schema schema = accumulator.snapshot();
+        assertFalse(schema.getProperty("arr").getItems().hasProperties());
+        validate(schema,"{\"arr\":[{\"k3\":1}]}");
+        validate(schema,"{\"arr\":[{},{\"k3\":true}]}");
+
+        // Arrays with no items as well, in either order
+        accumulator = new ExonAccumulator("foo","bar");
+        accumulator.add(ExonUtils.deserializeJsonPayload("{\"arr\":[[1]]}"));
+        accumulator.add(ExonUtils.deserializeJsonPayload("{\"arr\":[[],[\"s\"]]}"));
+        accumulator.add(ExonUtils.deserializeJsonPayload("{\"arr\":[[2]]}"));
+        schema = accumulator.snapshot();
+        assertFalse(schema.getProperty("arr").getItems().hasItems());
+        validate(schema,"{\"arr\":[[],[\"s\"]]}");
+    }
+
+    private void validate(Schema schema, String json) throws Exception {
+        SchemaLoader.load(new JSONObject(ExonUtils.serializeJsonPayload(schema))).validate(new JSONObject(json));
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * @author 2018 Simone Pezzano
+ * ---
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package simonepezzano.exonschema;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class ExonCheckpointTests {
+
+    private static final File SPOTIFY = new File("samples"+File.separator+"real_world"+File.separator+"spotify.json");
+
+    private static byte[] checkpoint(Schema schema) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExonCheckpoint.write(schema,out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Sets and maps may iterate in a different order after a restore, so schemas are compared field by field
+     */
+    private static void assertSameState(Property expected, Property actual){
+        assertEquals(expected.getId(),actual.getId());
+        assertEquals(expected.getRef(),actual.getRef());
+        assertEquals(expected.getType(),actual.getType());
+        assertEquals(expected.getDefaultValue(),actual.getDefaultValue());
+        assertEquals(expected.getExamples(),actual.getExamples());
+        assertEquals(expected.getExamplesSeen(),actual.getExamplesSeen());
+        assertEquals(expected.getRequired(),actual.getRequired());
+        assertEquals(expected.getMinimum(),actual.getMinimum());
+        assertEquals(expected.getMaximum(),actual.getMaximum());
+        assertEquals(expected.getMinLength(),actual.getMinLength());
+        assertEquals(expected.getFormat(),actual.getFormat());
+        assertEquals(expected.getEnum(),actual.getEnum());
+        assertEquals(expected.getCardinality(),actual.getCardinality());
+        assertEquals(expected.getMaxLength(),actual.getMaxLength());
+        assertEquals(expected.getNullCount(),actual.getNullCount());
+        assertEquals(expected.getIntegerCount(),actual.getIntegerCount());
+        assertEquals(expected.getFractionCount(),actual.getFractionCount());
+        if(expected.getProperties() == null)
+            assertNull(actual.getProperties());
+        else {
+            assertEquals(expected.getProperties().keySet(),actual.getProperties().keySet());
+            expected.getProperties().forEach( (key,property) -> assertSameState(property,actual.getProperty(key)));
+        }
+        if(expected.getAnyOf() == null)
+            assertNull(actual.getAnyOf());
+        else {
+            assertEquals(expected.getAnyOf().size(),actual.getAnyOf().size());
+            for(int i = 0; i < expected.getAnyOf().size(); i++)
+                assertSameState(expected.getAnyOf().get(i),actual.getAnyOf().get(i));
+        }
+        if(expected.getItems() == null)
+            assertNull(actual.getItems());
+        else
+            assertSameState(expected.getItems(),actual.getItems());
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        Schema schema = new ExonWalker().analyze(ExonUtils.deserializeJsonPayload(SPOTIFY),"foo","bar");
+        byte[] bytes = checkpoint(schema);
+        Schema restored = ExonCheckpoint.readSchema(new ByteArrayInputStream(bytes));
+        assertSameState(schema,restored);
+        assertEquals(schema.getTitle(),restored.getTitle());
+        assertTrue(schema.equivalentTo(restored));
+        assertTrue(bytes.length < ExonUtils.serializeJsonPayload(schema).getBytes("UTF-8").length/2);
+
+        Property item = restored.getProperty("tracks").getProperty("items").getItems();
+        assertNotNull(item.getPath());
+        assertSame(item.getPath(),item.getProperty("name").getPath().getParent());
+    }
+
+    @Test
+    public void testStatistics() throws Exception {
+        ExonWalker walker = new ExonWalker();
+        walker.setValueStatistics(true);
+        Schema schema = walker.analyze(ExonUtils.deserializeJsonPayload(SPOTIFY),"foo","bar");
+        Schema restored = ExonCheckpoint.readSchema(new ByteArrayInputStream(checkpoint(schema)));
+        assertSameState(schema,restored);
+        assertNotNull(restored.getProperty("tracks").getProperty("items").getItems().getProperty("name").getStatistics());
+    }
+
+    @Test
+    public void testValuesAndSpecialProperties() throws Exception {
+        Schema schema = new ExonWalker().analyze(ExonUtils.deserializeJsonPayload("{\"a\":[1,\"x\",{\"b\":true}],\"c\":null,\"d\":1.5}"),"foo","bar");
+        Property d = schema.getProperty("d");
+        d.setExample(new BigDecimal("12345678901234567890.123"),ExamplesPolicy.ALL);
+        d.setExample(new BigInteger("123456789012345678901234567890"),ExamplesPolicy.ALL);
+        d.setExample(Long.MIN_VALUE,ExamplesPolicy.ALL);
+        d.setExample(-7,ExamplesPolicy.ALL);
+        schema.setSampling("first(10)");
+        Map<String,Property> definitions = new LinkedHashMap<>();
+        definitions.put("shared",schema.getProperty("c").clone());
+        schema.setDefinitions(definitions);
+        schema.getProperties().put("e",Property.reference("#/definitions/shared"));
+
+        Schema restored = ExonCheckpoint.readSchema(new ByteArrayInputStream(checkpoint(schema)));
+        assertSameState(schema,restored);
+        assertSameState(schema.getDefinition("shared"),restored.getDefinition("shared"));
+        assertEquals(d.getExamples(),restored.getProperty("d").getExamples());
+        assertEquals(d.getExamplesSeen(),restored.getProperty("d").getExamplesSeen());
+        assertEquals("first(10)",restored.getSampling());
+        assertEquals("#/definitions/shared",restored.getProperty("e").getRef());
+    }
+
+    @Test
+    public void testScalarRoot() throws Exception {
+        Schema schema = Schema.create("{\"type\":\"string\",\"defaultValue\":\"\",\"examples\":[\"x\"]}");
+        Schema restored = ExonCheckpoint.readSchema(new ByteArrayInputStream(checkpoint(schema)));
+        assertSameState(schema,restored);
+        assertEquals("",restored.getDefaultValue());
+    }
+
+    @Test
+    public void testRejectsUnknownContent() throws Exception {
+        byte[] bytes = checkpoint(new ExonWalker().analyze(ExonUtils.deserializeJsonPayload("{\"a\":1}"),"foo","bar"));
+        bytes[4] = 99;
+        try {
+            ExonCheckpoint.readSchema(new ByteArrayInputStream(bytes));
+            fail();
+        }catch(IOException e){
+            assertTrue(e.getMessage().contains("version"));
+        }
+        try {
+            ExonAccumulator.restore(new ByteArrayInputStream(checkpoint(new Schema("foo","bar","object"))),new ExonWalker());
+            fail();
+        }catch(IOException e){
+            assertTrue(e.getMessage().contains("content"));
+        }
+    }
+
+    @Test
+    public void testAccumulatorResumes() throws Exception {
+        List<Object> documents = new ArrayList<>();
+        for(int i = 0; i < 20; i++)
+            documents.add(ExonUtils.deserializeJsonPayload("{\"a\":"+i+",\"b\":["+(i%3 == 0 ? "\"x\"" : "{\"c\":"+i+"}")+"]"+(i%2 == 0 ? ",\"d\":null" : "")+"}"));
+        ExonAccumulator uninterrupted = new ExonAccumulator("foo","bar");
+        documents.forEach(uninterrupted::add);
+
+        ExonAccumulator first = new ExonAccumulator("foo","bar");
+        documents.subList(0,10).forEach(first::add);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        first.checkpoint(out);
+        ExonAccumulator resumed = ExonAccumulator.restore(new ByteArrayInputStream(out.toByteArray()),new ExonWalker());
+        assertEquals(10,resumed.getDocumentCount());
+        documents.subList(10,20).forEach(resumed::add);
+
+        assertEquals(uninterrupted.getDocumentCount(),resumed.getDocumentCount());
+        assertSameState(uninterrupted.snapshot(),resumed.snapshot());
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * @author 2018 Simone Pezzano
+ * ---
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package simonepezzano.exonschema;
+
+import org.everit.json.schema.loader.SchemaLoader;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class ExonDeduplicatorTests {
+
+    @Test
+    public void testRealWorld() throws Exception {
+        File f = new File("samples"+File.separator+"real_world"+File.separator+"spotify.json");
+        Schema schema = new ExonWalker().analyze(ExonUtils.deserializeJsonPayload(f),"foo","bar");
+        String original = ExonUtils.serializeJsonPayload(schema);
+        Schema deduplicated = new ExonDeduplicator().analyze(schema);
+        // The original schema is left untouched
+        assertEquals(original,ExonUtils.serializeJsonPayload(schema));
+
+        String serialized = ExonUtils.serializeJsonPayload(deduplicated);
+        assertTrue(serialized.length() < original.length());
+        // Images show up in artists and albums
+        Property images = deduplicated.getDefinition("images");
+        assertNotNull(images);
+        assertEquals("#/definitions/images",deduplicated.getProperty("artists").getProperty("items").getItems()
+                                                        .getProperty("images").getRef());
+        // The examples of all the occurrences end up in the definition
+        Set<?> urls = schema.getProperty("artists").getProperty("items").getItems()
+                            .getProperty("images").getItems().getProperty("url").getExamples();
+        Set<?> definitionUrls = images.getItems().getProperty("url").getExamples();
+        assertTrue(definitionUrls.containsAll(urls));
+
+        SchemaLoader.load(new JSONObject(serialized)).validate(new JSONObject(ExonUtils.load(f)));
+        // Deserializing keeps the references
+        Schema deserialized = Schema.create(serialized);
+        assertEquals(3,deserialized.getDefinitions().size());
+        assertEquals("#/definitions/images",deserialized.getProperty("artists").getProperty("items").getItems()
+                                                        .getProperty("images").getRef());
+    }
+
+    @Test
+    public void testRecursion() throws Exception {
+        Map<String,Object> data = new LinkedHashMap<>();
+        data.put("title","thread");
+        data.put("comments",comments(3));
+        Schema schema = new ExonWalker().analyze(data,"foo","bar");
+        Schema deduplicated = new ExonDeduplicator().analyze(schema);
+
+        // The comment is a definition referencing itself through the replies, which share the shape of the comments
+        Property comment = deduplicated.getDefinition("comments_item");
+        assertNotNull(comment);
+        assertEquals("#/definitions/comments",deduplicated.getProperty("comments").getRef());
+        assertEquals("#/definitions/comments_item",deduplicated.getDefinition("comments").getItems().getRef());
+        assertEquals("#/definitions/comments",comment.getProperty("replies").getRef());
+        assertEquals(2,deduplicated.getDefinitions().size());
+
+        // Threads deeper than the sample are valid as well
+        data.put("comments",comments(8));
+        org.everit.json.schema.Schema validator = SchemaLoader.load(new JSONObject(ExonUtils.serializeJsonPayload(deduplicated)));
+        validator.validate(new JSONObject(ExonUtils.serializeJsonPayload(data)));
+        assertFalse(ExonUtils.serializeJsonPayload(schema).contains("$ref"));
+    }
+
+    @Test
+    public void testRootRecursion() throws Exception {
+        Map<String,Object> data = node(3);
+        Schema deduplicated = new ExonDeduplicator().analyze(new ExonWalker().analyze(data,"foo","bar"));
+        assertEquals(ExonDeduplicator.ROOT_REFERENCE,deduplicated.getProperty("children").getItems().getRef());
+        assertNull(deduplicated.getDefinitions());
+        org.everit.json.schema.Schema validator = SchemaLoader.load(new JSONObject(ExonUtils.serializeJsonPayload(deduplicated)));
+        validator.validate(new JSONObject(ExonUtils.serializeJsonPayload(node(6))));
+
+        // Without recursion detection, there's nothing to share
+        Schema plain = new ExonDeduplicator(2,false,ExamplesPolicy.ALL).analyze(new ExonWalker().analyze(data,"foo","bar"));
+        assertFalse(ExonUtils.serializeJsonPayload(plain).contains("$ref"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMinOccurrences(){
+        new ExonDeduplicator(1,true,ExamplesPolicy.ALL);
+    }
+
+    private static List<Object> comments(int depth){
+        List<Object> comments = new ArrayList<>();
+        for(int i = 0; i < 2; i++) {
+            Map<String,Object> comment = new LinkedHashMap<>();
+            comment.put("author","user"+depth+i);
+            comment.put("score",depth*i);
+            comment.put("replies",(depth > 1) ? comments(depth-1) : new ArrayList<>());
+            comments.add(comment);
+        }
+        return comments;
+    }
+
+    private static Map<String,Object> node(int depth){
+        Map<String,Object> node = new LinkedHashMap<>();
+        node.put("name","node"+depth);
+        List<Object> children = new ArrayList<>();
+        if(depth > 1) {
+            children.add(node(depth-1));
+            children.add(node(depth-1));
+        }
+        node.put("children",children);
+        return node;
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * @author 2018 Simone Pezzano
+ * ---
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package simonepezzano.exonschema;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class ExonFlightRecorderTests {
+
+    @Test
+    public void testPhaseEvents() throws Exception {
+        File f = new File("samples"+File.separator+"real_world"+File.separator+"spotify.json");
+        Path output = Files.createTempFile("exonschema",".jfr");
+        try(Recording recording = new Recording()) {
+            recording.enable("simonepezzano.exonschema.Phase");
+            recording.start();
+            ExonFlightRecorder recorder = new ExonFlightRecorder();
+            ExonStreamWalker walker = new ExonStreamWalker();
+            walker.setListener(recorder);
+            Schema schema = walker.analyze(f,"foo","bar");
+            ExonSimplifier simplifier = new ExonSimplifier();
+            simplifier.setListener(recorder);
+            simplifier.analyze(schema);
+            recording.stop();
+            recording.dump(output);
+
+            List<RecordedEvent> events = RecordingFile.readAllEvents(output).stream()
+                    .filter( event -> event.getEventType().getName().equals("simonepezzano.exonschema.Phase"))
+                    .collect(Collectors.toList());
+            assertEquals(2,events.size());
+            RecordedEvent walk = events.get(0);
+            assertEquals("WALK",walk.getString("phase"));
+            assertEquals(f.length(),walk.getLong("bytes"));
+            assertTrue(walk.getLong("nodes") > 1000);
+            assertEquals(8,walk.getInt("maxDepth"));
+            assertEquals("SIMPLIFY",events.get(1).getString("phase"));
+        } finally {
+            Files.deleteIfExists(output);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * @author 2018 Simone Pezzano
+ * ---
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package simonepezzano.exonschema;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ExonMetricsTests {
+
+    @Test
+    public void testWalkerMetrics() throws Exception {
+        ExonMetrics metrics = new ExonMetrics();
+        ExonWalker walker = new ExonWalker();
+        walker.setListener(metrics);
+        walker.analyze(ExonUtils.deserializeJsonPayload("{\"a\":[1,2,{\"b\":[true]}],\"c\":\"x\"}"),"foo","bar");
+        // root, a, 1, 2, {b}, b, true, c
+        assertEquals(8,metrics.getNodesVisited());
+        assertEquals(4,metrics.getMaxDepth());
+        // [1,2,{b}] has two scenarios, [true] one
+        assertEquals(3,metrics.getScenariosCreated());
+        assertEquals(1,metrics.getMerges());
+        assertEquals(1,metrics.getCount(ExonPhase.WALK));
+        assertTrue(metrics.getNanos(ExonPhase.WALK) > 0);
+        assertEquals(0,metrics.getCount(ExonPhase.SIMPLIFY));
+
+        metrics.reset();
+        assertEquals(0,metrics.getNodesVisited());
+        assertEquals(0,metrics.getCount(ExonPhase.WALK));
+    }
+
+    @Test
+    public void testStreamingPipeline() throws Exception {
+        File f = new File("samples"+File.separator+"real_world"+File.separator+"spotify.json");
+        ExonMetrics metrics = new ExonMetrics();
+        List<ExonPhase> phases = new ArrayList<>();
+        ExonStreamWalker walker = new ExonStreamWalker();
+        walker.setListener(ExonListener.of(metrics,new ExonListener() {
+            @Override
+            public void phaseStarted(ExonPhase phase){
+                synchronized (phases) {
+                    phases.add(phase);
+                }
+            }
+        }));
+        Schema schema = walker.analyze(f,"foo","bar");
+        assertEquals(f.length(),metrics.getBytesRead());
+        // The streaming walker visits the same nodes the walker does
+        ExonMetrics walkerMetrics = new ExonMetrics();
+        ExonWalker treeWalker = new ExonWalker();
+        treeWalker.setListener(walkerMetrics);
+        treeWalker.analyze(ExonUtils.deserializeJsonPayload(f),"foo","bar");
+        assertEquals(walkerMetrics.getNodesVisited(),metrics.getNodesVisited());
+        assertEquals(walkerMetrics.getScenariosCreated(),metrics.getScenariosCreated());
+
+        ExonSimplifier simplifier = new ExonSimplifier();
+        simplifier.setListener(metrics);
+        simplifier.analyze(schema);
+        ExonSchemaWriter writer = new ExonSchemaWriter();
+        writer.setListener(metrics);
+        writer.write(schema,new ByteArrayOutputStream());
+        assertEquals(1,metrics.getCount(ExonPhase.SIMPLIFY));
+        assertEquals(1,metrics.getCount(ExonPhase.SERIALIZE));
+
+        ExonNdjsonPipeline pipeline = new ExonNdjsonPipeline(walker,2,2);
+        pipeline.analyze(new BufferedReader(new StringReader("{\"a\":1}\n{\"a\":2}\n{\"b\":3}\n")),"foo","bar");
+        assertEquals(4,metrics.getCount(ExonPhase.WALK));
+        assertEquals(2,metrics.getCount(ExonPhase.MERGE));
+        assertEquals(4,phases.stream().filter( phase -> phase == ExonPhase.WALK).count());
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * @author 2018 Simone Pezzano
+ * ---
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package simonepezzano.exonschema;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+public class ExonNdjsonPipelineTests {
+
+    private static String generate(int lines){
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < lines; i++) {
+            sb.append("{\"id\":").append(i).append(",\"name\":\"n").append(i%7).append("\"");
+            if(i % 3 == 0)
+                sb.append(",\"tags\":[\"t").append(i%5).append("\"]");
+            if(i % 10 == 0)
+                sb.append(",\"extra\":{\"flag\":").append(i%20 == 0).append("}");
+            sb.append("}\n");
+            if(i % 50 == 0)
+                sb.append("\n");
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testSameAsAccumulator() throws Exception {
+        String ndjson = generate(1000);
+        ExonAccumulator accumulator = new ExonAccumulator("foo","bar");
+        for(String line : ndjson.split("\n"))
+            if(!line.isEmpty())
+                accumulator.add(ExonUtils.deserializeJsonPayload(line));
+        ExonNdjsonPipeline streaming = new ExonNdjsonPipeline(new ExonStreamWalker(),4,7);
+        Schema schema = streaming.analyze(new BufferedReader(new StringReader(ndjson)),"foo","bar");
+        assertEquals(1000,streaming.getDocumentCount());
+        assertEquals(ExonParallelWalkerTests.canonical(accumulator.snapshot()),ExonParallelWalkerTests.canonical(schema));
+        ExonNdjsonPipeline tree = new ExonNdjsonPipeline(new ExonWalker(),2,100);
+        schema = tree.analyze(new BufferedReader(new StringReader(ndjson)),"foo","bar");
+        assertEquals(ExonParallelWalkerTests.canonical(accumulator.snapshot()),ExonParallelWalkerTests.canonical(schema));
+        assertTrue(schema.getRequired().contains("name"));
+        assertFalse(schema.getRequired().contains("tags"));
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        ExonNdjsonPipeline pipeline = new ExonNdjsonPipeline();
+        assertNull(pipeline.analyze(new BufferedReader(new StringReader("\n\n")),"foo","bar"));
+        assertEquals(0,pipeline.getDocumentCount());
+    }
+
+    @Test
+    public void testInvalidLine() throws Exception {
+        String ndjson = generate(30)+"{\"id\":\n"+generate(30);
+        try {
+            new ExonNdjsonPipeline(new ExonStreamWalker(),3,4).analyze(new BufferedReader(new StringReader(ndjson)),"foo","bar");
+            fail();
+        } catch(IOException e) {
+            assertEquals("Invalid JSON at line 32",e.getMessage());
+        }
+    }
+
+    @Test
+    public void testTrailingContent() throws Exception {
+        for(String line : new String[]{"{\"a\":1} garbage","{\"a\":1}{\"b\":2}","[1] 2"}) {
+            String ndjson = generate(30)+line+"\n"+generate(30);
+            for(ExonWalker walker : new ExonWalker[]{new ExonStreamWalker(),new ExonWalker()}) {
+                try {
+                    new ExonNdjsonPipeline(walker,3,4).analyze(new BufferedReader(new StringReader(ndjson)),"foo","bar");
+                    fail(line);
+                } catch(IOException e) {
+                    assertEquals("Invalid JSON at line 32",e.getMessage());
+                }
+            }
+        }
+    }
+}
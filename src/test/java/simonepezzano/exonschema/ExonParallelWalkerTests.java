@@ -0,0 +1,125 @@
+/*
+ * @author 2018 Simone Pezzano
+ * ---
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package simonepezzano.exonschema;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+
+public class ExonParallelWalkerTests {
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+
+    @Test
+    public void testSamples() throws Exception {
+        List<File> files = new ArrayList<>(Arrays.asList(new File("samples").listFiles((dir, name) -> name.endsWith(".json"))));
+        files.addAll(Arrays.asList(new File("samples"+File.separator+"real_world").listFiles((dir, name) -> name.endsWith(".json"))));
+        for(File f : files)
+            compare(ExonUtils.deserializeJsonPayload(f));
+    }
+
+    @Test
+    public void testLargeHeterogeneousArray() throws Exception {
+        Random random = new Random(7);
+        List<Object> events = new ArrayList<>();
+        for(int i = 0; i < 5000; i++) {
+            Map<String,Object> event = new LinkedHashMap<>();
+            event.put("type","event"+random.nextInt(5));
+            event.put("value",random.nextBoolean() ? random.nextInt(100) : "v"+random.nextInt(100));
+            if(random.nextInt(3) == 0)
+                event.put("tags",Arrays.asList("a"+random.nextInt(3),"b"));
+            events.add(event);
+        }
+        compare(ExonUtils.deserializeJsonPayload(ExonUtils.serializeJsonPayload(events)));
+    }
+
+    @Test
+    public void testWideObject() throws Exception {
+        Map<String,Object> wide = new LinkedHashMap<>();
+        for(int i = 0; i < 1000; i++)
+            wide.put("key"+i,(i % 2 == 0) ? Collections.singletonMap("x",i) : "value"+i);
+        compare(ExonUtils.deserializeJsonPayload(ExonUtils.serializeJsonPayload(wide)));
+    }
+
+    @Test
+    public void testLooseItems() throws Exception {
+        List<Object> items = new ArrayList<>();
+        for(int i = 0; i < 100; i++)
+            items.add(Collections.singletonMap("a",i));
+        for(int i = 0; i < 100; i++)
+            items.add(Collections.singletonMap("b",i));
+        items.add(new LinkedHashMap<>());
+        Object data = ExonUtils.deserializeJsonPayload(ExonUtils.serializeJsonPayload(items));
+        compare(data);
+
+        // Items with a loose structure are folded in order, and still analyzed only once
+        ExonMetrics expected = new ExonMetrics();
+        ExonWalker walker = new ExonWalker();
+        walker.setListener(expected);
+        walker.analyze(data,"foo","bar");
+        ExonMetrics actual = new ExonMetrics();
+        ExonParallelWalker parallelWalker = new ExonParallelWalker(pool,4);
+        parallelWalker.setListener(actual);
+        parallelWalker.analyze(data,"foo","bar");
+        assertEquals(expected.getNodesVisited(),actual.getNodesVisited());
+        assertEquals(expected.getScenariosCreated(),actual.getScenariosCreated());
+        assertEquals(expected.getEquivalenceChecks(),actual.getEquivalenceChecks());
+        assertEquals(expected.getMaxDepth(),actual.getMaxDepth());
+    }
+
+    private void compare(Object data) throws Exception {
+        Schema expected = new ExonWalker().analyze(data,"foo","bar");
+        Schema actual = new ExonParallelWalker(pool,4).analyze(data,"foo","bar");
+        assertEquals(canonical(expected),canonical(actual));
+    }
+
+    /**
+     * Turns a schema in a JSON tree where the examples are sorted, as the iteration order of the sets may differ
+     */
+    static JsonNode canonical(Property property) throws Exception {
+        JsonNode node = new ObjectMapper().readTree(ExonUtils.serializeJsonPayload(property));
+        sortExamples(node);
+        return node;
+    }
+
+    private static void sortExamples(JsonNode node){
+        if(node instanceof ObjectNode) {
+            JsonNode examples = node.get("examples");
+            if(examples instanceof ArrayNode) {
+                List<JsonNode> sorted = new ArrayList<>();
+                examples.forEach(sorted::add);
+                sorted.sort(Comparator.comparing(JsonNode::toString));
+                ((ArrayNode) examples).removeAll();
+                ((ArrayNode) examples).addAll(sorted);
+            }
+        }
+        node.forEach(ExonParallelWalkerTests::sortExamples);
+    }
+}
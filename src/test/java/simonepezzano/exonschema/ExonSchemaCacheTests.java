@@ -0,0 +1,217 @@
+/*
+ * @author 2018 Simone Pezzano
+ * ---
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package simonepezzano.exonschema;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class ExonSchemaCacheTests {
+
+    @Test
+    public void testHitsAndMisses() throws Exception {
+        ExonSchemaCache cache = new ExonSchemaCache();
+        Schema first = cache.analyze(ExonUtils.deserializeJsonPayload("{\"a\":1,\"b\":[\"x\",\"y\"]}"),"foo","bar");
+        // Same shape: other values, other key order, longer arrays of the same items
+        Schema second = cache.analyze(ExonUtils.deserializeJsonPayload("{\"b\":[\"z\",\"w\",\"v\"],\"a\":2}"),"foo","bar");
+        assertSame(first,second);
+        assertEquals(1,cache.stats().hitCount());
+        assertEquals(1,cache.stats().missCount());
+
+        // A different shape, a new item shape in the array, a null value, another ID: all misses
+        cache.analyze(ExonUtils.deserializeJsonPayload("{\"a\":\"1\",\"b\":[\"x\"]}"),"foo","bar");
+        cache.analyze(ExonUtils.deserializeJsonPayload("{\"a\":1,\"b\":[\"x\",2]}"),"foo","bar");
+        cache.analyze(ExonUtils.deserializeJsonPayload("{\"a\":null,\"b\":[\"x\"]}"),"foo","bar");
+        assertNotSame(first,cache.analyze(ExonUtils.deserializeJsonPayload("{\"a\":1,\"b\":[\"x\"]}"),"other","bar"));
+        assertEquals(5,cache.stats().missCount());
+        assertEquals(5,cache.size());
+    }
+
+    @Test
+    public void testSimilarShapes() throws Exception {
+        // Keys with the same String.hashCode
+        assertEquals("Aa".hashCode(),"BB".hashCode());
+        ExonSchemaCache cache = new ExonSchemaCache();
+        cache.analyze(ExonUtils.deserializeJsonPayload("{\"Aa\":1}"),"foo","bar");
+        Schema schema = cache.analyze(ExonUtils.deserializeJsonPayload("{\"BB\":1}"),"foo","bar");
+        assertEquals(Collections.singleton("BB"),schema.getPropertiesKeys());
+
+        // The IDs of the scenarios depend on the index where each shape first appears
+        ExonWalker walker = new ExonWalker();
+        cache.analyze(ExonUtils.deserializeJsonPayload("[1,\"s\"]"),"foo","bar");
+        Object data = ExonUtils.deserializeJsonPayload("[1,1,\"s\"]");
+        assertEquals(ExonUtils.serializeJsonPayload(walker.analyze(data,"foo","bar")),
+                        ExonUtils.serializeJsonPayload(cache.analyze(data,"foo","bar")));
+        assertEquals(0,cache.stats().hitCount());
+    }
+
+    @Test
+    public void testSampling() throws Exception {
+        ExonWalker walker = new ExonWalker();
+        walker.setSamplingPolicy(SamplingPolicy.first(1));
+        ExonSchemaCache cache = new ExonSchemaCache(walker,10);
+        cache.analyze(ExonUtils.deserializeJsonPayload("[1,\"s\"]"),"foo","bar");
+        cache.analyze(ExonUtils.deserializeJsonPayload("[\"s\",1]"),"foo","bar");
+        // Sampled schemas are not cached
+        assertEquals(0,cache.size());
+        assertEquals("string",cache.analyze(ExonUtils.deserializeJsonPayload("[\"s\",1]"),"foo","bar").getItems().getType());
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        ExonSchemaCache cache = new ExonSchemaCache(new ExonWalker(),2);
+        for(int i = 0; i < 5; i++)
+            cache.analyze(ExonUtils.deserializeJsonPayload("{\"key"+i+"\":1}"),"foo","bar");
+        assertEquals(3,cache.stats().evictionCount());
+        assertEquals(2,cache.size());
+    }
+
+    @Test
+    public void testSameShapeSameSchema() throws Exception {
+        // Payloads with the same fingerprint get the same schema from the walker, examples aside
+        File f = new File("samples"+File.separator+"real_world"+File.separator+"spotify.json");
+        Object data = ExonUtils.deserializeJsonPayload(f);
+        Object other = changeValues(ExonUtils.deserializeJsonPayload(f));
+        assertEquals(ExonSchemaCache.fingerprint(data),ExonSchemaCache.fingerprint(other));
+        ExonWalker walker = new ExonWalker();
+        walker.setExamplesPolicy(ExamplesPolicy.NONE);
+        assertEquals(ExonUtils.serializeJsonPayload(walker.analyze(data,"foo","bar")),
+                        ExonUtils.serializeJsonPayload(walker.analyze(other,"foo","bar")));
+    }
+
+    @Test
+    public void testMergeExamples() throws Exception {
+        ExonSchemaCache cache = new ExonSchemaCache();
+        cache.setMergeExamples(true);
+        Schema first = cache.analyze(ExonUtils.deserializeJsonPayload("{\"a\":1,\"b\":[\"x\",{\"c\":true}]}"),"foo","bar");
+        Schema second = cache.analyze(ExonUtils.deserializeJsonPayload("{\"a\":2,\"b\":[\"y\",{\"c\":false}]}"),"foo","bar");
+        assertEquals(1,cache.stats().hitCount());
+        // Copies are returned, the first one is left as it was
+        assertNotSame(first,second);
+        assertEquals(Collections.singleton(1),first.getProperty("a").getExamples());
+        assertEquals(new HashSet<>(Arrays.asList(1,2)),second.getProperty("a").getExamples());
+        List<Property> scenarios = second.getProperty("b").getItems().getAnyOf();
+        assertEquals(new HashSet<>(Arrays.asList("x","y")),scenarios.get(0).getExamples());
+        assertEquals(new HashSet<>(Arrays.asList(true,false)),scenarios.get(1).getProperty("c").getExamples());
+    }
+
+    @Test
+    public void testMergeStatistics() throws Exception {
+        ExonWalker walker = new ExonWalker();
+        walker.setValueStatistics(true);
+        ExonSchemaCache cache = new ExonSchemaCache(walker,10);
+        Schema first = cache.analyze(ExonUtils.deserializeJsonPayload("{\"a\":1,\"b\":\"x\"}"),"foo","bar");
+        Schema second = cache.analyze(ExonUtils.deserializeJsonPayload("{\"a\":5,\"b\":\"long string\"}"),"foo","bar");
+        assertEquals(1,cache.stats().hitCount());
+        // The statistics describe both payloads, even though examples are not merged
+        assertNotSame(first,second);
+        assertEquals(1L,first.getProperty("a").getMaximum().longValue());
+        assertEquals(5L,second.getProperty("a").getMaximum().longValue());
+        assertEquals(Long.valueOf(11),second.getProperty("b").getMaxLength());
+        assertEquals(Collections.singleton(1),second.getProperty("a").getExamples());
+    }
+
+    @Test
+    public void testScenariosByShape() throws Exception {
+        // The second payload's integer array goes to the integer scenario, not to the first array scenario
+        for(boolean mergeExamples : new boolean[]{false,true}) {
+            ExonWalker walker = new ExonWalker();
+            walker.setValueStatistics(true);
+            ExonSchemaCache cache = new ExonSchemaCache(walker,10);
+            cache.setMergeExamples(mergeExamples);
+            cache.analyze(ExonUtils.deserializeJsonPayload("[[\"a\"],[1]]"),"foo","bar");
+            Object data = ExonUtils.deserializeJsonPayload("[[\"zzzzzzzzz\"],[100000]]");
+            Schema schema = cache.analyze(data,"foo","bar");
+            assertEquals(1,cache.stats().hitCount());
+            assertTrue(ExonValidator.compile(schema).isValid(data));
+            List<Property> scenarios = schema.getItems().getAnyOf();
+            assertEquals(Long.valueOf(9),scenarios.get(0).getItems().getMaxLength());
+            assertNull(scenarios.get(0).getItems().getMaximum());
+            assertEquals(100000L,scenarios.get(1).getItems().getMaximum().longValue());
+        }
+    }
+
+    @Test
+    public void testStatisticsAcceptEveryPayload() throws Exception {
+        // Payloads of a few shapes, with arrays of several scenarios, and random values
+        String[] shapes = {"[[S],[I]]","{\"a\":[I,S,{\"k\":I}],\"b\":[[S,I],[I],{}]}","[{\"k\":S},{\"k\":I},[{\"k\":N}]]"};
+        Random random = new Random(5);
+        for(boolean mergeExamples : new boolean[]{false,true}) {
+            ExonWalker walker = new ExonWalker();
+            walker.setValueStatistics(true);
+            ExonSchemaCache cache = new ExonSchemaCache(walker,10);
+            cache.setMergeExamples(mergeExamples);
+            for(int i = 0; i < 200; i++) {
+                StringBuilder json = new StringBuilder();
+                for(char c : shapes[random.nextInt(shapes.length)].toCharArray()) {
+                    if(c == 'S')
+                        json.append('"').append(String.join("",Collections.nCopies(random.nextInt(10),"x"))).append('"');
+                    else if(c == 'I')
+                        json.append(random.nextInt(1000)-500);
+                    else if(c == 'N')
+                        json.append(random.nextInt(1000)/8.0);
+                    else
+                        json.append(c);
+                }
+                Object data = ExonUtils.deserializeJsonPayload(json.toString());
+                assertTrue(json.toString(),ExonValidator.compile(cache.analyze(data,"foo","bar")).isValid(data));
+            }
+            assertTrue(cache.stats().hitCount() > 190);
+        }
+    }
+
+    /**
+     * Replaces each base value with another value of the same type
+     * @return a copy of the data with the changed values
+     */
+    private static Object changeValues(Object data){
+        if(data instanceof Map) {
+            Map<String,Object> map = new LinkedHashMap<>();
+            for(Map.Entry<?,?> entry : ((Map<?,?>) data).entrySet())
+                map.put((String) entry.getKey(),changeValues(entry.getValue()));
+            return map;
+        }
+        if(data instanceof List) {
+            List<Object> list = new ArrayList<>();
+            for(Object item : (List<?>) data)
+                list.add(changeValues(item));
+            return list;
+        }
+        return changeValue(data);
+    }
+
+    private static Object changeValue(Object value){
+        if(value instanceof String)
+            return value+"!";
+        if(value instanceof Integer)
+            return (Integer) value+1;
+        if(value instanceof Double)
+            return (Double) value+0.5;
+        if(value instanceof Boolean)
+            return !(Boolean) value;
+        return value;
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * @author 2018 Simone Pezzano
+ * ---
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package simonepezzano.exonschema;
+
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class ExonSchemaMergerTests {
+
+    private static final String[] KEYS = {"a","b","c","d"};
+
+    /**
+     * A random document made of a few keys, so that the documents often overlap
+     */
+    private static Object randomValue(Random random, int depth){
+        switch(random.nextInt(depth > 3 ? 5 : 7)){
+            case 0:
+                return random.nextInt(3);
+            case 1:
+                return "s"+random.nextInt(3);
+            case 2:
+                return random.nextBoolean();
+            case 3:
+                return null;
+            case 4:
+                return random.nextInt(2)+0.5;
+            case 5: {
+                Map<String,Object> map = new LinkedHashMap<>();
+                for(String key : KEYS)
+                    if(random.nextBoolean())
+                        map.put(key,randomValue(random,depth+1));
+                return map;
+            }
+            default: {
+                List<Object> list = new ArrayList<>();
+                // Empty objects and arrays first, so that the items folded into them are widened
+                if(random.nextBoolean())
+                    list.add(random.nextBoolean() ? new LinkedHashMap<>() : new ArrayList<>());
+                for(int i = random.nextInt(4); i > 0; i--)
+                    list.add(randomValue(random,depth+1));
+                return list;
+            }
+        }
+    }
+
+    /**
+     * A random document, with at least one key: an empty document would leave the merged root with no properties
+     */
+    private static Object randomDocument(Random random){
+        Map<String,Object> map = new LinkedHashMap<>();
+        for(String key : KEYS)
+            if(random.nextInt(3) > 0)
+                map.put(key,randomValue(random,1));
+        if(map.isEmpty())
+            map.put(KEYS[random.nextInt(KEYS.length)],randomValue(random,1));
+        return map;
+    }
+
+    /**
+     * A representation of a property that does not depend on the iteration order of its sets and maps
+     */
+    private static Object canonical(Property property){
+        if(property == null)
+            return null;
+        Map<String,Object> map = new TreeMap<>();
+        map.put("id",property.getId());
+        map.put("ref",property.getRef());
+        map.put("type",(property.getType() instanceof Collection) ? new TreeSet<>((Collection<?>) property.getType()) : property.getType());
+        map.put("default",String.valueOf(property.getDefaultValue()));
+        if(property.getExamples() != null) {
+            Set<String> examples = new TreeSet<>();
+            for(Object example : property.getExamples())
+                examples.add(String.valueOf(example));
+            map.put("examples",examples);
+        }
+        map.put("seen",property.getExamplesSeen());
+        map.put("required",(property.getRequired() != null) ? new TreeSet<>(property.getRequired()) : null);
+        map.put("minimum",String.valueOf(property.getMinimum()));
+        map.put("maximum",String.valueOf(property.getMaximum()));
+        map.put("minLength",property.getMinLength());
+        map.put("maxLength",property.getMaxLength());
+        map.put("format",property.getFormat());
+        if(property.getEnum() != null) {
+            List<String> values = new ArrayList<>();
+            for(Object value : property.getEnum())
+                values.add(String.valueOf(value));
+            map.put("enum",values);
+        }
+        map.put("cardinality",property.getCardinality());
+        if(property.getProperties() != null) {
+            Map<String,Object> children = new TreeMap<>();
+            property.getProperties().forEach( (key,child) -> children.put(key,canonical(child)));
+            map.put("properties",children);
+        }
+        map.put("items",canonical(property.getItems()));
+        if(property.getAnyOf() != null) {
+            List<Object> anyOf = new ArrayList<>();
+            property.getAnyOf().forEach( scenario -> anyOf.add(canonical(scenario)));
+            map.put("anyOf",anyOf);
+        }
+        return map;
+    }
+
+    private static void assertSameSchema(Property expected, Property actual){
+        assertEquals(canonical(expected),canonical(actual));
+    }
+
+    private static void assertCommutativeAndAssociative(ExonWalker walker, Random random) throws Exception {
+        for(ExonSchemaMerger merger : Arrays.asList(new ExonSchemaMerger(),
+                new ExonSchemaMerger(ExamplesPolicy.first(2),ForkJoinPool.commonPool(),ExonSchemaMerger.DEFAULT_BATCH_SIZE))) {
+            for (int i = 0; i < 200; i++) {
+                Schema a = walker.analyze(randomDocument(random), "foo", "bar");
+                Schema b = walker.analyze(randomDocument(random), "foo", "bar");
+                Schema c = walker.analyze(randomDocument(random), "foo", "bar");
+                String before = ExonUtils.serializeJsonPayload(a);
+
+                assertSameSchema(merger.merge(a, b), merger.merge(b, a));
+                assertSameSchema(merger.merge(merger.merge(a, b), c), merger.merge(a, merger.merge(b, c)));
+                assertSameSchema(merger.merge(merger.merge(a, c), b), merger.merge(Arrays.asList(c, b, a)));
+                // The merged schemas are left untouched
+                assertEquals(before, ExonUtils.serializeJsonPayload(a));
+            }
+        }
+    }
+
+    @Test
+    public void testCommutativeAndAssociative() throws Exception {
+        assertCommutativeAndAssociative(new ExonWalker(),new Random(7));
+    }
+
+    @Test
+    public void testCommutativeAndAssociativeStatistics() throws Exception {
+        ExonWalker walker = new ExonWalker();
+        walker.setValueStatistics(true);
+        assertCommutativeAndAssociative(walker,new Random(7));
+    }
+
+    @Test
+    public void testMergedSchemaValidatesEveryDocument() throws Exception {
+        Random random = new Random(11);
+        ExonWalker walker = new ExonWalker();
+        ExonSchemaMerger merger = new ExonSchemaMerger();
+        int merged = 0;
+        for(int i = 0; i < 2000; i++) {
+            Object doc1 = randomDocument(random);
+            Object doc2 = randomDocument(random);
+            Schema schema1 = walker.analyze(doc1,"foo","bar");
+            Schema schema2 = walker.analyze(doc2,"foo","bar");
+            // Arrays whose items have several scenarios are all equivalent, so a document may not fit its own schema
+            if(!ExonValidator.compile(schema1).isValid(doc1) || !ExonValidator.compile(schema2).isValid(doc2))
+                continue;
+            ExonValidator validator = ExonValidator.compile(merger.merge(schema1,schema2));
+            assertTrue(validator.isValid(doc1));
+            assertTrue(validator.isValid(doc2));
+            merged++;
+        }
+        assertTrue(merged > 1800);
+    }
+
+    @Test
+    public void testUnconstrainedContent() throws Exception {
+        // An array with no items, or an object with no properties, widens the merged property
+        ExonWalker walker = new ExonWalker();
+        Object doc1 = ExonUtils.deserializeJsonPayload("{\"arr\":[[[1]]]}");
+        Object doc2 = ExonUtils.deserializeJsonPayload("{\"arr\":[[],[{\"k3\":false}]]}");
+        Schema merged = new ExonSchemaMerger().merge(walker.analyze(doc1,"foo","bar"),walker.analyze(doc2,"foo","bar"));
+        assertFalse(merged.getProperty("arr").getItems().hasItems());
+        assertTrue(ExonValidator.compile(merged).isValid(doc1));
+        assertTrue(ExonValidator.compile(merged).isValid(doc2));
+        merged = new ExonSchemaMerger().merge(walker.analyze(ExonUtils.deserializeJsonPayload("{\"o\":{\"k\":1}}"),"foo","bar"),
+                                                walker.analyze(ExonUtils.deserializeJsonPayload("{\"o\":{}}"),"foo","bar"));
+        assertFalse(merged.getProperty("o").hasProperties());
+        assertTrue(ExonValidator.compile(merged).isValid(ExonUtils.deserializeJsonPayload("{\"o\":{\"k\":\"s\"}}")));
+    }
+
+    @Test
+    public void testMergeDetails() throws Exception {
+        ExonWalker walker = new ExonWalker();
+        Schema merged = new ExonSchemaMerger().merge(walker.analyze(ExonUtils.deserializeJsonPayload("{\"a\":1,\"b\":[{\"x\":1},\"s\"],\"c\":{\"d\":true}}"),"foo","bar"),
+                walker.analyze(ExonUtils.deserializeJsonPayload("{\"a\":\"x\",\"b\":[{\"x\":2},{\"y\":3}],\"c\":[1]}"),"foo","bar"));
+        assertEquals("foo",merged.getId());
+        assertEquals(new TreeSet<>(Arrays.asList("a","b","c")),merged.getRequired());
+        assertEquals(new TreeSet<>(Arrays.asList("integer","string")),merged.getProperty("a").getType());
+        assertEquals(new HashSet<>(Arrays.asList(1,"x")),merged.getProperty("a").getExamples());
+
+        // Objects in arrays are grouped by their keys
+        Property items = merged.getProperty("b").getItems();
+        assertEquals(3,items.getAnyOf().size());
+        assertEquals(new HashSet<>(Arrays.asList(1,2)),items.getAnyOf().get(0).getProperty("x").getExamples());
+        assertEquals("#/properties/b/items_1",items.getAnyOf().get(1).getId());
+        assertEquals("#/properties/b/anyOf",items.getId());
+
+        // Elsewhere, different kinds become scenarios
+        Property c = merged.getProperty("c");
+        assertEquals(2,c.getAnyOf().size());
+        assertTrue(c.getAnyOf().get(0).isOfType(JsonType.OBJECT));
+        assertTrue(c.getAnyOf().get(1).isOfType(JsonType.ARRAY));
+    }
+
+    @Test
+    public void testReduce() throws Exception {
+        Random random = new Random(13);
+        ExonWalker walker = new ExonWalker();
+        List<Schema> schemas = new ArrayList<>();
+        ExonAccumulator accumulator = new ExonAccumulator("foo","bar");
+        for(int i = 0; i < 100; i++) {
+            Object document = randomDocument(random);
+            schemas.add(walker.analyze(document,"foo","bar"));
+            accumulator.add(document);
+        }
+        ForkJoinPool pool = new ForkJoinPool(4);
+        Schema reduced;
+        try {
+            ExonSchemaMerger merger = new ExonSchemaMerger(ExamplesPolicy.ALL,pool,4);
+            reduced = merger.reduce(schemas);
+            assertSameSchema(merger.merge(schemas),reduced);
+            Collections.shuffle(schemas,random);
+            assertSameSchema(reduced,merger.reduce(schemas));
+        } finally {
+            pool.shutdown();
+        }
+        // The same examples the accumulator collects
+        assertEquals(accumulator.snapshot().getProperty("a").getExamples(),reduced.getProperty("a").getExamples());
+    }
+}
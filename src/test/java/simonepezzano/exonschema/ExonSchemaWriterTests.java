@@ -0,0 +1,94 @@
+/*
+ * @author 2018 Simone Pezzano
+ * ---
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package simonepezzano.exonschema;
+
+import org.everit.json.schema.loader.SchemaLoader;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class ExonSchemaWriterTests {
+
+    @Test
+    public void testSameAsJackson() throws Exception {
+        List<File> files = new ArrayList<>(Arrays.asList(new File("samples").listFiles((dir, name) -> name.endsWith(".json"))));
+        files.add(new File("samples"+File.separator+"real_world"+File.separator+"spotify.json"));
+        ExonSchemaWriter writer = new ExonSchemaWriter();
+        for(File f : files) {
+            Schema schema = new ExonWalker().analyze(ExonUtils.deserializeJsonPayload(f),"foo","bar");
+            for(Schema variant : Arrays.asList(schema,new ExonSimplifier().analyze(schema),new ExonDeduplicator().analyze(schema)))
+                assertEquals(f.getName(),ExonUtils.serializeJsonPayload(variant),writer.writeToString(variant));
+        }
+        ExonWalker walker = new ExonWalker();
+        walker.setSamplingPolicy(SamplingPolicy.first(1));
+        Schema sampled = walker.analyze(ExonUtils.deserializeJsonPayload(files.get(files.size()-1)),"foo",null);
+        assertEquals(ExonUtils.serializeJsonPayload(sampled),writer.writeToString(sampled));
+    }
+
+    @Test
+    public void testCompact() throws Exception {
+        File f = new File("samples"+File.separator+"real_world"+File.separator+"spotify.json");
+        Schema schema = new ExonWalker().analyze(ExonUtils.deserializeJsonPayload(f),"foo","bar");
+        ExonSchemaWriter writer = new ExonSchemaWriter();
+        writer.setPretty(false);
+        // The stream is left open
+        ClosingStream stream = new ClosingStream();
+        writer.write(schema,stream);
+        assertFalse(stream.closed);
+        String compact = new String(stream.toByteArray(),StandardCharsets.UTF_8);
+        assertFalse(compact.contains("\n"));
+        assertEquals(ExonUtils.deserializeJsonPayload(ExonUtils.serializeJsonPayload(schema)),ExonUtils.deserializeJsonPayload(compact));
+    }
+
+    @Test
+    public void testWithoutIdsAndExamples() throws Exception {
+        File f = new File("samples"+File.separator+"real_world"+File.separator+"spotify.json");
+        Schema schema = new ExonWalker().analyze(ExonUtils.deserializeJsonPayload(f),"foo","bar");
+        ExonSchemaWriter writer = new ExonSchemaWriter();
+        writer.setWriteIds(false);
+        writer.setWriteExamples(false);
+        String written = writer.writeToString(schema);
+        assertFalse(written.contains("examples"));
+        assertFalse(written.contains("defaultValue"));
+        // Only the schema keeps its ID
+        assertEquals(written.indexOf("\"$id\""),written.lastIndexOf("\"$id\""));
+        assertTrue(written.length() < ExonUtils.serializeJsonPayload(schema).length()/2);
+        SchemaLoader.load(new JSONObject(written)).validate(new JSONObject(ExonUtils.load(f)));
+    }
+
+    private static class ClosingStream extends ByteArrayOutputStream {
+
+        boolean closed;
+
+        @Override
+        public void close(){
+            closed = true;
+        }
+    }
+}
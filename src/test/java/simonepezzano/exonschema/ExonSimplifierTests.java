@@ -0,0 +1,140 @@
+/*
+ * @author 2018 Simone Pezzano
+ * ---
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package simonepezzano.exonschema;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class ExonSimplifierTests {
+
+    @Test
+    public void testMixedKeys() throws Exception {
+        File f = new File("samples"+File.separator+"mixed_keys.json");
+        Schema schema = new ExonWalker().analyze(ExonUtils.deserializeJsonPayload(f),"foo","bar");
+        String original = ExonUtils.serializeJsonPayload(schema);
+        Schema simplified = new ExonSimplifier().analyze(schema);
+        // The original schema is left untouched
+        assertEquals(original,ExonUtils.serializeJsonPayload(schema));
+
+        Property mergeable = simplified.getProperty("mergeable").getItems();
+        assertFalse(mergeable.hasAnyOf());
+        assertEquals(keys("a b c"),mergeable.getPropertiesKeys());
+        assertEquals(keys("a b"),mergeable.getRequired());
+        assertEquals(3,simplified.getProperty("not_mergeable").getItems().getAnyOf().size());
+
+        // What didn't change is shared, nothing is copied when there's nothing to simplify
+        assertSame(schema.getProperty("not_mergeable"),simplified.getProperty("not_mergeable"));
+        assertNotSame(schema.getProperty("mergeable"),simplified.getProperty("mergeable"));
+        assertSame(simplified,new ExonSimplifier().analyze(simplified));
+    }
+
+    @Test
+    public void testManyScenarios() throws Exception {
+        // 40 families of events, each with its own keys plus some optional ones, make hundreds of scenarios
+        Random random = new Random(7);
+        List<Object> events = new ArrayList<>();
+        for(int i = 0; i < 5000; i++) {
+            int family = random.nextInt(40);
+            Map<String,Object> event = new LinkedHashMap<>();
+            for(int k = 0; k < 6; k++)
+                event.put("f"+family+"_k"+k,k);
+            for(int k = 0; k < 4; k++)
+                if(random.nextBoolean())
+                    event.put("f"+family+"_opt"+k,"x");
+            events.add(event);
+        }
+        Schema schema = new ExonWalker().analyze(ExonUtils.deserializeJsonPayload(ExonUtils.serializeJsonPayload(events)),"foo","bar");
+        assertTrue(schema.getItems().getAnyOf().size() > 400);
+        Schema simplified = new ExonSimplifier().analyze(schema);
+        List<Property> scenarios = simplified.getItems().getAnyOf();
+        assertEquals(40,scenarios.size());
+        for(Property scenario : scenarios) {
+            String family = scenario.getPropertiesKeys().iterator().next().split("_")[0];
+            for(String key : scenario.getPropertiesKeys())
+                assertTrue(key.startsWith(family+"_"));
+            assertEquals(6,scenario.getRequired().size());
+        }
+        assertEquals(bruteForceClusters(schema.getItems().getAnyOf(),3),scenarios.size());
+    }
+
+    @Test
+    public void testClusteringRecall() {
+        for(int rate = 1; rate <= 20; rate++) {
+            int rows = MinHashClusterer.rowsFor(rate);
+            int bands = MinHashClusterer.bandsFor(rate,rows);
+            double jaccard = 1.0/Math.max(1,2*rate-1);
+            assertTrue("rate "+rate,1-Math.pow(1-Math.pow(jaccard,rows),bands) >= MinHashClusterer.RECALL);
+            assertTrue("rate "+rate,rows == 1 || rows*bands <= MinHashClusterer.SIGNATURE_LENGTH);
+        }
+        assertEquals(1,MinHashClusterer.rowsFor(10));
+        assertTrue(MinHashClusterer.bandsFor(10,1) > MinHashClusterer.SIGNATURE_LENGTH);
+    }
+
+    @Test
+    public void testClustersDoNotDependOnOrder() throws Exception {
+        // A chain of scenarios, each similar to its neighbours only, makes one cluster whatever the order
+        List<Object> events = new ArrayList<>();
+        for(int i = 0; i < 12; i++) {
+            Map<String,Object> event = new LinkedHashMap<>();
+            for(int k = 0; k < 6; k++)
+                event.put("k"+(i*3+k),k);
+            events.add(event);
+        }
+        Schema schema = new ExonWalker().analyze(ExonUtils.deserializeJsonPayload(ExonUtils.serializeJsonPayload(events)),"foo","bar");
+        List<Property> scenarios = new ArrayList<>(schema.getItems().getAnyOf());
+        assertEquals(12,scenarios.size());
+        Random random = new Random(3);
+        for(int i = 0; i < 50; i++) {
+            Collections.shuffle(scenarios,random);
+            assertEquals(1,new MinHashClusterer(3).cluster(scenarios).size());
+        }
+    }
+
+    /**
+     * Counts the clusters comparing all the pairs of scenarios
+     */
+    private static int bruteForceClusters(List<Property> scenarios, int rate){
+        int[] cluster = new int[scenarios.size()];
+        for(int i = 0; i < cluster.length; i++)
+            cluster[i] = i;
+        for(int i = 0; i < cluster.length; i++)
+            for(int j = i+1; j < cluster.length; j++)
+                if(ExonUtils.haveSimilarProps(scenarios.get(i),scenarios.get(j),rate)) {
+                    int from = cluster[j], to = cluster[i];
+                    for(int k = 0; k < cluster.length; k++)
+                        if(cluster[k] == from)
+                            cluster[k] = to;
+                }
+        Set<Integer> distinct = new HashSet<>();
+        for(int c : cluster)
+            distinct.add(c);
+        return distinct.size();
+    }
+
+    private static Set<String> keys(String keys){
+        return new HashSet<>(Arrays.asList(keys.split(" ")));
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * @author 2018 Simone Pezzano
+ * ---
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package simonepezzano.exonschema;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+public class ExonStreamWalkerTests {
+
+    @Test
+    public void testSamplesMatchTreeWalker() throws Exception {
+        File[] files = new File("samples").listFiles((dir, name) -> name.endsWith(".json"));
+        for(File f : files)
+            compareWalkers(f);
+    }
+
+    @Test
+    public void testRealWorldMatchesTreeWalker() throws Exception {
+        File[] files = new File("samples"+File.separator+"real_world").listFiles((dir, name) -> name.endsWith(".json"));
+        for(File f : files)
+            compareWalkers(f);
+    }
+
+    @Test
+    public void testLooseItems() throws Exception {
+        String json = "[{\"a\":1},{\"b\":2},{},{\"a\":3,\"c\":null},[],[1],[[]],{\"x\":{}},{\"x\":{\"y\":1}},null,\"s\",1.5,7]";
+        Schema expected = new ExonWalker().analyze(ExonUtils.deserializeJsonPayload(json),"foo","bar");
+        Schema actual = new ExonStreamWalker().analyze(ExonUtils.createParser(json),"foo","bar");
+        assertEquals(ExonUtils.serializeJsonPayload(expected),ExonUtils.serializeJsonPayload(actual));
+    }
+
+    @Test
+    public void testScalarPayload() throws Exception {
+        Schema schema = new ExonStreamWalker().analyze(ExonUtils.createParser("\"foobar\""),"foo","bar");
+        assertEquals("string",schema.getType());
+        assertEquals(1,schema.getExamples().size());
+        assertEquals("foobar",schema.getExamples().iterator().next());
+    }
+
+    @Test
+    public void testInputs() throws Exception {
+        File f = new File("samples"+File.separator+"real_world"+File.separator+"spotify.json");
+        String expected = ExonUtils.serializeJsonPayload(new ExonWalker().analyze(ExonUtils.deserializeJsonPayload(f),"foo","bar"));
+        byte[] data = Files.readAllBytes(f.toPath());
+        byte[] gzipped = gzip(data);
+        ExonStreamWalker walker = new ExonStreamWalker();
+        assertEquals(expected,ExonUtils.serializeJsonPayload(walker.analyze(data,"foo","bar")));
+        assertEquals(expected,ExonUtils.serializeJsonPayload(walker.analyze(gzipped,"foo","bar")));
+        assertEquals(expected,ExonUtils.serializeJsonPayload(walker.analyze(new ByteArrayInputStream(data),"foo","bar")));
+        assertEquals(expected,ExonUtils.serializeJsonPayload(walker.analyze(new ByteArrayInputStream(gzipped),"foo","bar")));
+
+        // Heap buffer with an offset, and direct buffer
+        byte[] padded = new byte[data.length+10];
+        System.arraycopy(data,0,padded,5,data.length);
+        ByteBuffer heap = ByteBuffer.wrap(padded,5,data.length).slice();
+        assertEquals(expected,ExonUtils.serializeJsonPayload(walker.analyze(heap,"foo","bar")));
+        ByteBuffer direct = ByteBuffer.allocateDirect(gzipped.length);
+        direct.put(gzipped).flip();
+        assertEquals(expected,ExonUtils.serializeJsonPayload(walker.analyze(direct,"foo","bar")));
+        assertEquals(0,direct.position());
+
+        Path tmp = Files.createTempFile("exon",".json.gz");
+        try {
+            Files.write(tmp,gzipped);
+            assertEquals(expected,ExonUtils.serializeJsonPayload(walker.analyze(tmp,"foo","bar")));
+            assertEquals(ExonUtils.serializeJsonPayload(ExonUtils.deserializeJsonPayload(f)),
+                    ExonUtils.serializeJsonPayload(ExonUtils.deserializeJsonPayload(tmp)));
+        } finally {
+            Files.delete(tmp);
+        }
+    }
+
+    @Test
+    public void testDeepDocument() throws Exception {
+        // Far deeper than any call stack would allow
+        final int levels = 50000;
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < levels; i++)
+            sb.append("{\"a\":[");
+        sb.append("1");
+        for(int i = 0; i < levels; i++)
+            sb.append("]}");
+        Schema actual = new ExonStreamWalker().analyze(sb.toString().getBytes("UTF-8"),"foo","bar");
+        Schema expected = new ExonWalker().analyze(deepDocument(levels),"foo","bar");
+
+        Property property = actual;
+        for(int i = 0; i < levels; i++)
+            property = property.getProperty("a").getItems();
+        assertEquals("integer",property.getType());
+        assertEquals(levels*2,property.getPath().getDepth());
+
+        assertTrue(expected.equivalentTo(actual));
+        assertEquals(expected.structuralHash(),actual.structuralHash());
+        Schema clone = actual.clone();
+        assertTrue(clone.equivalentTo(actual));
+        assertNotSame(actual.getProperty("a"),clone.getProperty("a"));
+        assertSame(actual,new ExonSimplifier().analyze(actual));
+    }
+
+    @Test
+    public void testMaxDepth() throws Exception {
+        final String data = "{\"a\":[{\"b\":1}]}";
+        ExonStreamWalker walker = new ExonStreamWalker();
+        ExonWalker treeWalker = new ExonWalker();
+        walker.setMaxDepth(3);
+        treeWalker.setMaxDepth(3);
+        assertEquals(ExonUtils.serializeJsonPayload(new ExonWalker().analyze(ExonUtils.deserializeJsonPayload(data),"foo","bar")),
+                ExonUtils.serializeJsonPayload(walker.analyze(data.getBytes("UTF-8"),"foo","bar")));
+        treeWalker.analyze(ExonUtils.deserializeJsonPayload(data),"foo","bar");
+
+        walker.setMaxDepth(2);
+        treeWalker.setMaxDepth(2);
+        try {
+            walker.analyze(data.getBytes("UTF-8"),"foo","bar");
+            fail("The document is too deep");
+        } catch(IllegalArgumentException e) {
+            assertEquals("The data is nested deeper than 2 levels",e.getMessage());
+        }
+        try {
+            treeWalker.analyze(ExonUtils.deserializeJsonPayload(data),"foo","bar");
+            fail("The document is too deep");
+        } catch(IllegalArgumentException e) {
+            assertEquals("The data is nested deeper than 2 levels",e.getMessage());
+        }
+    }
+
+    /**
+     * Builds a document of nested objects and arrays without going through the (recursive) deserializer
+     */
+    private static Object deepDocument(int levels){
+        Object value = 1;
+        for(int i = 0; i < levels; i++) {
+            List<Object> items = new ArrayList<>();
+            items.add(value);
+            Map<String,Object> object = new LinkedHashMap<>();
+            object.put("a",items);
+            value = object;
+        }
+        return value;
+    }
+
+    private static byte[] gzip(byte[] data) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try(OutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(data);
+        }
+        return bytes.toByteArray();
+    }
+
+    private void compareWalkers(File f) throws Exception {
+        Schema expected = new ExonWalker().analyze(ExonUtils.deserializeJsonPayload(f),"foo","bar");
+        Schema actual = new ExonStreamWalker().analyze(f,"foo","bar");
+        assertEquals(f.getName(),ExonUtils.serializeJsonPayload(expected),ExonUtils.serializeJsonPayload(actual));
+    }
+}
@@ -23,10 +23,12 @@ package simonepezzano.exonschema;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.*;
 
 public class ExonUtilsTests {
 
@@ -97,5 +99,40 @@ public class ExonUtilsTests {
         assertTrue(p3.getProperty("p2").getExamples().contains(22));
     }
 
+    @Test
+    public void multiplePropertyMergeTest() throws Exception {
+        ExonWalker walker = new ExonWalker();
+        List<Property> props = new ArrayList<>();
+        props.add(walker.analyze(ExonUtils.deserializeJsonPayload("{\"a\":1,\"b\":\"x\",\"c\":[1]}"),"#","p"));
+        props.add(walker.analyze(ExonUtils.deserializeJsonPayload("{\"a\":\"y\",\"b\":\"z\",\"c\":[{\"d\":1}]}"),"#","p"));
+        props.add(walker.analyze(ExonUtils.deserializeJsonPayload("{\"a\":2,\"b\":{\"e\":true}}"),"#","p"));
+        String before = ExonUtils.serializeJsonPayload(props);
+        Property p = ExonUtils.merge(props,ExamplesPolicy.ALL);
+        assertEquals(before,ExonUtils.serializeJsonPayload(props));
+        assertEquals(new HashSet<>(Arrays.asList("a","b")),p.getRequired());
+        assertTrue(p.getProperty("a").typeEquals("integer"));
+        assertTrue(p.getProperty("a").typeEquals("string"));
+        assertEquals(3,p.getProperty("a").getExamples().size());
+        assertEquals(2,p.getProperty("b").getAnyOf().size());
+        assertEquals("#/properties/b",p.getProperty("b").getId());
+        assertEquals(2,p.getProperty("c").getItems().getAnyOf().size());
+        assertEquals("#/properties/c/anyOf",p.getProperty("c").getItems().getId());
+    }
 
+    @Test
+    public void mergeSharesUnchangedProperties() throws Exception {
+        ExonWalker walker = new ExonWalker();
+        Property p1 = walker.analyze(ExonUtils.deserializeJsonPayload("{\"a\":{\"x\":1},\"b\":[1,2],\"c\":\"s\"}"),"#","p");
+        Property p2 = walker.analyze(ExonUtils.deserializeJsonPayload("{\"b\":[3],\"c\":4,\"d\":{\"y\":true}}"),"#","p");
+        String before = ExonUtils.serializeJsonPayload(p1)+ExonUtils.serializeJsonPayload(p2);
+        Property p3 = ExonUtils.merge(p1,p2);
+        assertEquals(before,ExonUtils.serializeJsonPayload(p1)+ExonUtils.serializeJsonPayload(p2));
+        assertSame(p1.getProperty("a"),p3.getProperty("a"));
+        assertSame(p2.getProperty("d"),p3.getProperty("d"));
+        assertNotSame(p1.getProperty("b"),p3.getProperty("b"));
+        assertSame(p1.getProperty("b").getItems(),p3.getProperty("b").getItems());
+        assertTrue(p3.getProperty("c").typeEquals("integer"));
+        assertTrue(p3.getProperty("c").typeEquals("string"));
+        assertEquals(new HashSet<>(Arrays.asList("b","c")),p3.getRequired());
+    }
 }
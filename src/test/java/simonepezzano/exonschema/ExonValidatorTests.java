@@ -0,0 +1,225 @@
+/*
+ * @author 2018 Simone Pezzano
+ * ---
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package simonepezzano.exonschema;
+
+import com.fasterxml.jackson.core.JsonParser;
+import org.everit.json.schema.ValidationException;
+import org.everit.json.schema.loader.SchemaLoader;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class ExonValidatorTests {
+
+    @Test
+    public void testSamples() throws Exception {
+        List<File> files = new ArrayList<>(Arrays.asList(new File("samples").listFiles((dir, name) -> name.endsWith(".json"))));
+        files.add(new File("samples"+File.separator+"real_world"+File.separator+"spotify.json"));
+        for(File f : files) {
+            Object data = ExonUtils.deserializeJsonPayload(f);
+            Schema schema = new ExonWalker().analyze(data,"foo","bar");
+            for(Schema variant : Arrays.asList(schema,new ExonSimplifier().analyze(schema),new ExonDeduplicator().analyze(schema))) {
+                ExonValidator validator = ExonValidator.compile(variant);
+                assertTrue(f.getName(),validator.isValid(data));
+                try(JsonParser parser = ExonUtils.createParser(f)) {
+                    assertTrue(f.getName(),validator.isValid(parser));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testAgreesWithEverit() throws Exception {
+        assertAgreesWithEverit(new ExonWalker(),null,"x",42,1.5,true,new LinkedHashMap<>(),new ArrayList<>());
+    }
+
+    @Test
+    public void testStatisticsAgreeWithEverit() throws Exception {
+        ExonWalker walker = new ExonWalker();
+        walker.setValueStatistics(true);
+        // Relative references are a "uri" to everit, so the strings are absolute URIs of different lengths
+        assertAgreesWithEverit(walker,null,"http://a.io","https://example.com/"+String.join("",Collections.nCopies(20,"path/")),
+                                0,42,-1e9,1e12,1.5,true,new ArrayList<>());
+    }
+
+    /**
+     * Mutates a sample many times, and verifies that everit and the validator compiled out of the schema of the
+     * sample agree on each mutated document
+     */
+    private static void assertAgreesWithEverit(ExonWalker walker, Object... replacements) throws Exception {
+        File f = new File("samples"+File.separator+"real_world"+File.separator+"spotify.json");
+        String text = ExonUtils.load(f);
+        Schema schema = walker.analyze(ExonUtils.deserializeJsonPayload(text),"foo","bar");
+        for(Schema variant : Arrays.asList(schema,new ExonDeduplicator().analyze(schema))) {
+            org.everit.json.schema.Schema everit = SchemaLoader.load(new JSONObject(ExonUtils.serializeJsonPayload(variant)));
+            ExonValidator validator = ExonValidator.compile(variant);
+            Random random = new Random(3);
+            int invalid = 0;
+            for(int i = 0; i < 300; i++) {
+                Object data = ExonUtils.deserializeJsonPayload(text);
+                data = mutate(data,random,replacements);
+                String json = ExonUtils.serializeJsonPayload(data);
+                boolean expected = true;
+                try {
+                    everit.validate(new JSONObject(json));
+                } catch(ValidationException e) {
+                    expected = false;
+                    invalid++;
+                }
+                assertEquals(json,expected,validator.isValid(data));
+                try(JsonParser parser = ExonUtils.createParser(json)) {
+                    assertEquals(json,expected,validator.isValid(parser));
+                }
+            }
+            // Most mutations break the document, but not all of them
+            assertTrue(invalid > 100 && invalid < 300);
+        }
+    }
+
+    @Test
+    public void testTypes() throws Exception {
+        Schema schema = Schema.create("{\"type\":\"object\",\"required\":[\"a\"],\"properties\":{"+
+                                        "\"a\":{\"type\":\"integer\"},"+
+                                        "\"b\":{\"type\":[\"number\",\"null\"]},"+
+                                        "\"c\":{\"type\":\"array\",\"items\":{\"anyOf\":[{\"type\":\"string\"},"+
+                                            "{\"type\":\"object\",\"required\":[\"x\"]},{\"type\":\"object\",\"required\":[\"y\"]}]}}}}");
+        ExonValidator validator = ExonValidator.compile(schema);
+        assertValid(validator,true,"{\"a\":1,\"b\":null,\"c\":[\"s\",{\"x\":1},{\"y\":1}]}");
+        // Numbers with no fraction are integers, integers are numbers
+        assertValid(validator,true,"{\"a\":2.0,\"b\":3}");
+        assertValid(validator,false,"{\"a\":2.5}");
+        assertValid(validator,false,"{\"b\":1}");
+        assertValid(validator,false,"{\"a\":1,\"b\":\"s\"}");
+        assertValid(validator,false,"{\"a\":1,\"c\":[\"s\",{\"z\":1}]}");
+        assertValid(validator,false,"{\"a\":1,\"c\":[1]}");
+        assertValid(validator,false,"[]");
+    }
+
+    @Test
+    public void testValueStatistics() throws Exception {
+        Schema schema = Schema.create("{\"type\":\"object\",\"properties\":{"+
+                                        "\"a\":{\"type\":\"number\",\"minimum\":-1,\"maximum\":2.5},"+
+                                        "\"b\":{\"type\":\"string\",\"minLength\":2,\"maxLength\":3,\"format\":\"ipv4\"},"+
+                                        "\"c\":{\"type\":[\"string\",\"null\"],\"enum\":[\"x\",\"yy\",null]},"+
+                                        "\"d\":{\"type\":\"string\",\"format\":\"unknown\"}}}");
+        ExonValidator validator = ExonValidator.compile(schema);
+        assertValid(validator,true,"{\"a\":-1,\"c\":\"yy\",\"d\":\"s\"}");
+        assertValid(validator,true,"{\"a\":2.5,\"c\":null}");
+        assertValid(validator,false,"{\"a\":-1.5}");
+        assertValid(validator,false,"{\"a\":3}");
+        assertValid(validator,false,"{\"b\":\"1.2.3.4\"}");
+        assertValid(validator,false,"{\"c\":\"z\"}");
+        // Lengths are in code points
+        validator = ExonValidator.compile(Schema.create("{\"type\":\"string\",\"maxLength\":1}"));
+        assertValid(validator,true,"\"\\ud83d\\ude00\"");
+        assertValid(validator,false,"\"ab\"");
+    }
+
+    @Test
+    public void testRecursion() throws Exception {
+        Schema schema = new ExonDeduplicator().analyze(new ExonWalker().analyze(
+                                ExonUtils.deserializeJsonPayload("{\"name\":\"a\",\"children\":[{\"name\":\"b\",\"children\":[]}]}"),"foo","bar"));
+        ExonValidator validator = ExonValidator.compile(schema);
+        assertValid(validator,true,"{\"name\":\"a\",\"children\":[{\"name\":\"b\",\"children\":[{\"name\":\"c\",\"children\":[]}]}]}");
+        assertValid(validator,false,"{\"name\":\"a\",\"children\":[{\"name\":\"b\",\"children\":[{\"name\":1,\"children\":[]}]}]}");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnresolvedReference(){
+        Property property = new Property();
+        property.setRef("#/definitions/missing");
+        ExonValidator.compile(property);
+    }
+
+    private static void assertValid(ExonValidator validator, boolean expected, String json) throws Exception {
+        assertEquals(json,expected,validator.isValid(ExonUtils.deserializeJsonPayload(json)));
+        try(JsonParser parser = ExonUtils.createParser(json)) {
+            assertEquals(json,expected,validator.isValid(parser));
+        }
+    }
+
+    private static final Object REMOVED = new Object();
+
+    /**
+     * Replaces, removes or changes the type of a random value in a piece of data
+     * @return a mutated copy of the data
+     */
+    private static Object mutate(Object data, Random random, Object[] replacements){
+        List<Object> containers = new ArrayList<>();
+        collectContainers(data,containers);
+        Object container = containers.get(random.nextInt(containers.size()));
+        Object replacement = replacements[random.nextInt(replacements.length)];
+        if(container instanceof Map) {
+            Map<?,?> map = (Map<?,?>) container;
+            if(map.isEmpty())
+                return data;
+            Object key = new ArrayList<>(map.keySet()).get(random.nextInt(map.size()));
+            return copy(data,container,key,random.nextInt(4) == 0 ? REMOVED : replacement);
+        }
+        List<?> list = (List<?>) container;
+        if(list.isEmpty())
+            return data;
+        return copy(data,container,random.nextInt(list.size()),replacement);
+    }
+
+    /**
+     * Copies a piece of data, setting the value at the given key or index of one of its containers
+     * @param replacement the new value, or REMOVED to remove the key
+     */
+    private static Object copy(Object data, Object container, Object keyOrIndex, Object replacement){
+        if(data instanceof Map) {
+            Map<String,Object> map = new LinkedHashMap<>();
+            for(Map.Entry<?,?> entry : ((Map<?,?>) data).entrySet()) {
+                if(data != container || !entry.getKey().equals(keyOrIndex))
+                    map.put((String) entry.getKey(),copy(entry.getValue(),container,keyOrIndex,replacement));
+                else
+                    if(replacement != REMOVED)
+                        map.put((String) entry.getKey(),replacement);
+            }
+            return map;
+        }
+        if(data instanceof List) {
+            List<?> items = (List<?>) data;
+            List<Object> list = new ArrayList<>(items.size());
+            for(int i = 0; i < items.size(); i++)
+                list.add(data == container && keyOrIndex.equals(i) ? replacement : copy(items.get(i),container,keyOrIndex,replacement));
+            return list;
+        }
+        return data;
+    }
+
+    private static void collectContainers(Object data, List<Object> containers){
+        if(data instanceof Map) {
+            containers.add(data);
+            ((Map<?,?>) data).values().forEach( value -> collectContainers(value,containers));
+        } else
+            if(data instanceof List) {
+                containers.add(data);
+                ((List<?>) data).forEach( value -> collectContainers(value,containers));
+            }
+    }
+}
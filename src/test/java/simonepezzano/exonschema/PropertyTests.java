@@ -26,6 +26,7 @@ import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
 
 public class PropertyTests {
@@ -54,5 +55,57 @@ public class PropertyTests {
         p1 = new Property("#/p1",Sets.newHashSet("integer","boolean"),true);
         assertTrue(p1.typeEquals("boolean"));
         assertTrue(p1.typeEquals("integer"));
+        assertFalse(p1.typeEquals("string"));
+        assertTrue(p1.typeEquals(Sets.newHashSet("boolean","integer")));
+        assertFalse(p1.typeEquals(Sets.newHashSet("boolean","integer","null")));
+        assertFalse(new Property("#/p2","integer",1).typeEquals(Sets.newHashSet("integer")));
+        assertTrue(new Property("#/p3","uuid",null).typeEquals("uuid"));
+        assertFalse(new Property("#/p3","uuid",null).typeEquals("string"));
+        assertFalse(new Property().typeEquals("string"));
+    }
+
+    @Test
+    public void testTypeSerialization() throws Exception {
+        Schema schema = ExonUtils.deserializeSchema("{\"type\":\"object\",\"properties\":{" +
+                "\"a\":{\"type\":[\"string\",\"null\"]},\"b\":{\"type\":[\"null\",\"string\"]}}}");
+        Property a = schema.getProperty("a");
+        assertTrue(a.typeEquals("null"));
+        assertTrue(a.typeEquals(schema.getProperty("b").getType()));
+        assertTrue(ExonUtils.isBaseType(a.getType()));
+        assertEquals(schema.getProperty("b").getType().toString(),"[null, string]");
+        assertEquals(ExonUtils.serializeJsonPayload(schema),ExonUtils.serializeJsonPayload(ExonUtils.deserializeSchema(ExonUtils.serializeJsonPayload(schema))));
+    }
+
+    @Test
+    public void testStructuralHash() throws Exception {
+        ExonWalker walker = new ExonWalker();
+        Property p1 = walker.analyze(ExonUtils.deserializeJsonPayload("{\"a\":1,\"b\":[\"x\"],\"c\":{\"d\":true}}"),"#","p1");
+        Property p2 = walker.analyze(ExonUtils.deserializeJsonPayload("{\"c\":{\"d\":false},\"b\":[\"y\",\"z\"],\"a\":2}"),"#","p2");
+        Property p3 = walker.analyze(ExonUtils.deserializeJsonPayload("{\"a\":1,\"b\":[\"x\"],\"c\":{\"d\":1}}"),"#","p3");
+        assertTrue(p1.equivalentTo(p2));
+        assertEquals(p1.structuralHash(),p2.structuralHash());
+        assertFalse(p1.equivalentTo(p3));
+        assertNotEquals(p1.structuralHash(),p3.structuralHash());
+        assertNotEquals(Property.LOOSE_STRUCTURE,p1.structuralHash());
+    }
+
+    @Test
+    public void testLooseStructuralHash() throws Exception {
+        ExonWalker walker = new ExonWalker();
+        assertEquals(Property.LOOSE_STRUCTURE,walker.analyze(ExonUtils.deserializeJsonPayload("{\"a\":{}}"),"#","p").structuralHash());
+        assertEquals(Property.LOOSE_STRUCTURE,walker.analyze(ExonUtils.deserializeJsonPayload("{\"a\":[]}"),"#","p").structuralHash());
+        assertEquals(Property.LOOSE_STRUCTURE,new Property("#/p1",Sets.newHashSet("integer","boolean"),true).structuralHash());
+    }
+
+    @Test
+    public void testPathIds(){
+        PropertyPath parent = PropertyPath.ROOT.property("a").item(17);
+        Property p1 = new Property(parent.property("b"),"string","");
+        assertEquals("#/properties/a/items_17/properties/b",p1.getId());
+        assertEquals("#/properties/a/items_17/anyOf",parent.anyOf().toString());
+        assertTrue(p1.getPath().getParent() == parent);
+        assertEquals(PropertyPath.ROOT.property("a").item(17),parent);
+        p1.setId("#/foo");
+        assertEquals("#/foo",p1.getId());
     }
 }
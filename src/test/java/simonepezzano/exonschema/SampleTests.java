@@ -50,8 +50,15 @@ public class SampleTests {
     }
 
     private void runTest(File f) throws Exception {
+        runTest(f,false);
+        // The bounds of the values must hold for the data they come from
+        runTest(f,true);
+    }
+
+    private void runTest(File f, boolean valueStatistics) throws Exception {
         Object data = ExonUtils.deserializeJsonPayload(f);
         ExonWalker walker = new ExonWalker();
+        walker.setValueStatistics(valueStatistics);
         Schema generatedSchema = walker.analyze(data,"foo","bar");
         org.everit.json.schema.Schema schema = SchemaLoader.load(new JSONObject(ExonUtils.serializeJsonPayload(generatedSchema)));
         String text = ExonUtils.load(f);
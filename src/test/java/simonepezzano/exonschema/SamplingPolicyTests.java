@@ -0,0 +1,121 @@
+/*
+ * @author 2018 Simone Pezzano
+ * ---
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package simonepezzano.exonschema;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class SamplingPolicyTests {
+
+    @Test
+    public void testFirst() throws Exception {
+        Schema schema = walk(SamplingPolicy.first(100),lines(10000));
+        assertEquals(100,schema.getItems().getExamples().size());
+        assertTrue(schema.getItems().getExamples().contains("line 99"));
+        assertFalse(schema.getItems().getExamples().contains("line 100"));
+        assertEquals("first(100)",schema.getSampling());
+        assertTrue(ExonUtils.serializeJsonPayload(schema).contains("\"x-sampling\" : \"first(100)\""));
+    }
+
+    @Test
+    public void testStride() throws Exception {
+        Schema schema = walk(SamplingPolicy.stride(1000),lines(10000));
+        assertEquals(10,schema.getItems().getExamples().size());
+        assertTrue(schema.getItems().getExamples().contains("line 0"));
+        assertTrue(schema.getItems().getExamples().contains("line 9000"));
+    }
+
+    @Test
+    public void testReservoir() throws Exception {
+        Schema schema = walk(SamplingPolicy.reservoir(20),lines(10000));
+        assertEquals(20,schema.getItems().getExamples().size());
+        int late = 0;
+        for(Object example : schema.getItems().getExamples())
+            if(Integer.parseInt(example.toString().substring(5)) >= 20)
+                late++;
+        // The sample is spread over the whole array, not just the first items
+        assertTrue(late > 0);
+        assertEquals(schema.getItems().getExamples(),walk(SamplingPolicy.reservoir(20),lines(10000)).getItems().getExamples());
+    }
+
+    @Test
+    public void testAdaptive() throws Exception {
+        Schema schema = walk(SamplingPolicy.adaptive(50),lines(100000));
+        // The first item creates the scenario, the following 50 change nothing
+        assertEquals(51,schema.getItems().getExamples().size());
+
+        // Keys becoming optional and new scenarios reset the count
+        List<Object> items = new ArrayList<>();
+        for(int i = 0; i < 1000; i++) {
+            Map<String,Object> item = new LinkedHashMap<>();
+            // An empty object is equivalent to any other, and makes all the keys optional
+            if(i != 40) {
+                item.put("id", i);
+                item.put("name", "n" + i);
+            }
+            if(i == 60)
+                item.put("extra",true);
+            items.add(item);
+        }
+        schema = walk(SamplingPolicy.adaptive(50),items);
+        assertEquals(2,schema.getItems().getAnyOf().size());
+        assertFalse(schema.getItems().getAnyOf().get(0).getRequired().contains("name"));
+        schema = walk(SamplingPolicy.adaptive(10),items);
+        assertNull(schema.getItems().getAnyOf());
+        assertTrue(schema.getItems().getRequired().contains("name"));
+    }
+
+    @Test
+    public void testAll() throws Exception {
+        Schema schema = walk(SamplingPolicy.ALL,lines(100));
+        assertEquals(100,schema.getItems().getExamples().size());
+        assertNull(schema.getSampling());
+        assertFalse(ExonUtils.serializeJsonPayload(schema).contains("x-sampling"));
+    }
+
+    private static List<Object> lines(int count){
+        List<Object> lines = new ArrayList<>();
+        for(int i = 0; i < count; i++)
+            lines.add("line "+i);
+        return lines;
+    }
+
+    /**
+     * Walks the data with both the tree walker and the stream walker, verifying they agree
+     */
+    private static Schema walk(SamplingPolicy policy, List<Object> data) throws Exception {
+        ExonWalker walker = new ExonWalker();
+        walker.setSamplingPolicy(policy);
+        Schema schema = walker.analyze(data,"foo","bar");
+        ExonStreamWalker streamWalker = new ExonStreamWalker();
+        streamWalker.setSamplingPolicy(policy);
+        Schema streamed = streamWalker.analyze(ExonUtils.createParser(ExonUtils.serializeJsonPayload(data)),"foo","bar");
+        assertEquals(ExonUtils.serializeJsonPayload(schema),ExonUtils.serializeJsonPayload(streamed));
+        return schema;
+    }
+}
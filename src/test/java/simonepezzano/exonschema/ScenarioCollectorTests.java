@@ -0,0 +1,115 @@
+/*
+ * @author 2018 Simone Pezzano
+ * ---
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package simonepezzano.exonschema;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+
+public class ScenarioCollectorTests {
+
+    @Test
+    public void testMatchesLinearScan() throws Exception {
+        Random random = new Random(42);
+        for(int round = 0; round < 50; round++) {
+            List<Object> items = new ArrayList<>();
+            for(int i = 0; i < 300; i++)
+                items.add(randomItem(random,2));
+            ScenarioCollector collector = new ScenarioCollector();
+            walk(items).forEach(collector::add);
+            assertEquals(ExonUtils.serializeJsonPayload(linearScan(walk(items))),ExonUtils.serializeJsonPayload(collector.getScenarios()));
+        }
+    }
+
+    @Test
+    public void testLargeArray(){
+        List<Object> items = new ArrayList<>();
+        for(int i = 0; i < 200000; i++) {
+            Map<String,Object> item = new LinkedHashMap<>();
+            item.put("id",i);
+            item.put("name",(i % 1000 == 999) ? null : "name");
+            items.add(item);
+        }
+        Schema schema = new ExonWalker().analyze(items,"foo","bar");
+        assertEquals("#/anyOf",schema.getItems().getId());
+        assertEquals(2,schema.getItems().getAnyOf().size());
+        Property first = schema.getItems().getAnyOf().get(0);
+        assertEquals("#/items_0",first.getId());
+        assertEquals(2,first.getRequired().size());
+        assertEquals("#/items_999",schema.getItems().getAnyOf().get(1).getId());
+    }
+
+    private List<Property> walk(List<Object> items){
+        ExonWalker walker = new ExonWalker();
+        List<Property> props = new ArrayList<>();
+        int cnt = 0;
+        for(Object item : items)
+            props.add(walker.analyze(item,"#/items_"+cnt++,"item"));
+        return props;
+    }
+
+    /**
+     * Compares each item with every scenario collected so far, as detectDifferentProps used to
+     */
+    private List<Property> linearScan(List<Property> props){
+        List<Property> scenarios = new ArrayList<>();
+        for(Property prop : props){
+            boolean compareSuccess = false;
+            for(Property savedItem : scenarios){
+                if(prop.equivalentTo(savedItem)) {
+                    compareSuccess = true;
+                    if(ExonUtils.isBaseType(prop.getType()))
+                        savedItem.addExamples(prop.getExamples());
+                    else
+                        savedItem.intersectRequires(prop.getRequired());
+                }
+            }
+            if(!compareSuccess)
+                scenarios.add(prop);
+        }
+        return scenarios;
+    }
+
+    private Object randomItem(Random random, int depth){
+        switch(random.nextInt(depth > 0 ? 6 : 3)){
+            case 0: return random.nextInt(3);
+            case 1: return random.nextBoolean() ? "x" : null;
+            case 2: return random.nextInt(2) == 0 ? 1.5 : "y";
+            case 3: {
+                Map<String,Object> map = new LinkedHashMap<>();
+                int size = random.nextInt(3);
+                for(int i = 0; i < size; i++)
+                    map.put(String.valueOf((char)('a'+random.nextInt(3))),randomItem(random,depth-1));
+                return map;
+            }
+            default: {
+                List<Object> list = new ArrayList<>();
+                int size = random.nextInt(3);
+                for(int i = 0; i < size; i++)
+                    list.add(randomItem(random,depth-1));
+                return list;
+            }
+        }
+    }
+}
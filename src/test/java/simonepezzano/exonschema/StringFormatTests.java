@@ -0,0 +1,120 @@
+/*
+ * @author 2018 Simone Pezzano
+ * ---
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package simonepezzano.exonschema;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StringFormatTests {
+
+    private static void assertFormat(StringFormat expected, String value){
+        final int mask = (expected != null) ? expected.mask : 0;
+        assertEquals(value,mask,StringFormat.match(value,StringFormat.ALL));
+        // The same string in the middle of a buffer
+        final char[] chars = ("[\"" + value + "\"]").toCharArray();
+        assertEquals(value,mask,StringFormat.match(chars,2,value.length(),StringFormat.ALL));
+    }
+
+    @Test
+    public void testDateTime(){
+        assertFormat(StringFormat.DATE_TIME,"2018-07-30T10:15:30Z");
+        assertFormat(StringFormat.DATE_TIME,"2016-02-29T23:59:59.123456789+18:00");
+        assertFormat(StringFormat.DATE_TIME,"1900-02-28T00:00:00-05:30");
+        assertFormat(null,"1900-02-29T00:00:00Z");
+        assertFormat(null,"2018-07-30");
+        assertFormat(null,"2018-07-30 10:15:30Z");
+        assertFormat(null,"2018-07-30t10:15:30z");
+        assertFormat(null,"2018-07-30T24:00:00Z");
+        assertFormat(null,"2018-07-30T10:15:60Z");
+        assertFormat(null,"2018-07-30T10:15:30.1234567890Z");
+        assertFormat(null,"2018-07-30T10:15:30.Z");
+        assertFormat(null,"2018-07-30T10:15:30+1:00");
+        assertFormat(null,"2018-07-30T10:15:30+19:00");
+        assertFormat(null,"0000-01-01T00:00:00Z");
+    }
+
+    @Test
+    public void testUuid(){
+        assertFormat(StringFormat.UUID,"123e4567-e89b-12d3-a456-426614174000");
+        assertFormat(StringFormat.UUID,"ABCDEF01-2345-6789-ABCD-EF0123456789");
+        assertFormat(null,"123e4567e89b12d3a456426614174000");
+        assertFormat(null,"123e4567-e89b-12d3-a456-42661417400g");
+        assertFormat(null,"123e4567-e89b-12d3-a4566-42661417400");
+    }
+
+    @Test
+    public void testIpv4(){
+        assertFormat(StringFormat.IPV4,"192.168.0.1");
+        assertFormat(StringFormat.IPV4,"0.0.0.0");
+        assertFormat(StringFormat.IPV4,"255.255.255.255");
+        assertFormat(null,"256.1.1.1");
+        assertFormat(null,"01.2.3.4");
+        assertFormat(null,"1.2.3");
+        assertFormat(null,"1.2.3.4.");
+        assertFormat(null,"1..3.4");
+        assertFormat(null,"1.2.3.4.5");
+    }
+
+    @Test
+    public void testEmail(){
+        assertFormat(StringFormat.EMAIL,"john.doe@example.com");
+        assertFormat(StringFormat.EMAIL,"a+tag@mail-server.example.org");
+        assertFormat(null,"john..doe@example.com");
+        assertFormat(null,".john@example.com");
+        assertFormat(null,"john@localhost");
+        assertFormat(null,"john@example.c0m");
+        assertFormat(null,"john@-example.com");
+        assertFormat(null,"john@example..com");
+        assertFormat(null,"john doe@example.com");
+        assertFormat(null,"@example.com");
+    }
+
+    @Test
+    public void testUri(){
+        assertFormat(StringFormat.URI,"https://api.spotify.com/v1/albums/0HcHPBu9aaF1MxOiZmUQTl?market=IT");
+        assertFormat(StringFormat.URI,"spotify:album:0HcHPBu9aaF1MxOiZmUQTl");
+        assertFormat(StringFormat.URI,"file:///tmp/a%20b#top");
+        assertFormat(StringFormat.URI,"mailto:john.doe@example.com");
+        assertFormat(null,"http://");
+        assertFormat(null,"mailto:");
+        assertFormat(null,"about:#top");
+        assertFormat(null,"http://host/a b");
+        assertFormat(null,"http://host/%zz");
+        assertFormat(null,"http://host/a#b#c");
+        assertFormat(null,"1http://host");
+        assertFormat(null,"/relative/path");
+    }
+
+    @Test
+    public void testCandidates(){
+        assertEquals(0,StringFormat.match("192.168.0.1",StringFormat.URI.mask | StringFormat.EMAIL.mask));
+        assertEquals(0,StringFormat.match("",StringFormat.ALL));
+        assertEquals(0,StringFormat.match("hello world",StringFormat.ALL));
+        assertEquals("uri",StringFormat.nameOf(StringFormat.URI.mask));
+        assertNull(StringFormat.nameOf(0));
+        assertNull(StringFormat.nameOf(StringFormat.ALL));
+        assertEquals(StringFormat.DATE_TIME,StringFormat.fromName("date-time"));
+        assertNull(StringFormat.fromName("hostname"));
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * @author 2018 Simone Pezzano
+ * ---
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+
+package simonepezzano.exonschema;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class ValueStatisticsTests {
+
+    private static final File SPOTIFY = new File("samples"+File.separator+"real_world"+File.separator+"spotify.json");
+
+    @Test
+    public void testValues(){
+        ValueStatistics statistics = new ValueStatistics();
+        assertTrue(statistics.isEmpty());
+        assertNull(statistics.getMinimum());
+        assertNull(statistics.getMinLength());
+        statistics.add(3);
+        statistics.add(-2L);
+        statistics.add(2.0);
+        statistics.add(7.5);
+        statistics.add((Object) null);
+        statistics.add(true);
+        assertEquals(-2L,statistics.getMinimum());
+        assertEquals(7.5,statistics.getMaximum());
+        assertEquals(3,statistics.getIntegers());
+        assertEquals(1,statistics.getFractions());
+        assertEquals(1,statistics.getNulls());
+        assertNull(statistics.getMaxLength());
+
+        // Lengths are in code points, as JSON Schema counts them
+        statistics.add("ab");
+        statistics.add("\uD83D\uDE00");
+        statistics.addString("xxhello".toCharArray(),2,5);
+        assertEquals(Long.valueOf(1),statistics.getMinLength());
+        assertEquals(Long.valueOf(5),statistics.getMaxLength());
+        assertEquals(3,statistics.getStrings());
+
+        assertNull(ValueStatistics.of(true));
+        // Big numbers are rounded to doubles, but the bounds still hold
+        BigInteger big = new BigInteger("123456789012345678901234567891");
+        ValueStatistics bigStatistics = ValueStatistics.of(big);
+        assertTrue(new java.math.BigDecimal(bigStatistics.getMinimum().doubleValue()).toBigInteger().compareTo(big) <= 0);
+        assertTrue(new java.math.BigDecimal(bigStatistics.getMaximum().doubleValue()).toBigInteger().compareTo(big) >= 0);
+    }
+
+    @Test
+    public void testMerge(){
+        ValueStatistics first = ValueStatistics.of(10);
+        first.add("abc");
+        ValueStatistics second = ValueStatistics.of(-1.5);
+        second.add((Object) null);
+        ValueStatistics merged = ValueStatistics.merge(first,second);
+        assertEquals(-1.5,merged.getMinimum());
+        assertEquals(10L,merged.getMaximum());
+        assertEquals(Long.valueOf(3),merged.getMinLength());
+        assertEquals(1,merged.getNulls());
+        // The merged statistics are new, and don't depend on the order
+        assertEquals(10L,first.getMinimum());
+        ValueStatistics reversed = ValueStatistics.merge(second,first);
+        assertEquals(merged.getMinimum(),reversed.getMinimum());
+        assertEquals(merged.getMaximum(),reversed.getMaximum());
+        assertEquals(merged.getIntegers(),reversed.getIntegers());
+        assertNull(ValueStatistics.merge(null,null));
+    }
+
+    @Test
+    public void testWalkers() throws Exception {
+        final String data = "{\"a\":[1,5,-3,{\"b\":\"xy\"},{\"b\":\"wxyz\"}],\"c\":2.5,\"d\":null,\"e\":true}";
+        ExonWalker walker = new ExonWalker();
+        walker.setValueStatistics(true);
+        Schema schema = walker.analyze(ExonUtils.deserializeJsonPayload(data),"foo","bar");
+        Property numbers = schema.getProperty("a").getItems().getAnyOf().get(0);
+        assertEquals(-3L,numbers.getMinimum());
+        assertEquals(5L,numbers.getMaximum());
+        assertEquals(Long.valueOf(3),numbers.getIntegerCount());
+        Property strings = schema.getProperty("a").getItems().getAnyOf().get(1).getProperty("b");
+        assertEquals(Long.valueOf(2),strings.getMinLength());
+        assertEquals(Long.valueOf(4),strings.getMaxLength());
+        assertEquals(Long.valueOf(1),schema.getProperty("d").getNullCount());
+        assertEquals(Long.valueOf(1),schema.getProperty("c").getFractionCount());
+        assertNull(schema.getProperty("e").getStatistics());
+        assertNull(schema.getStatistics());
+
+        final String json = ExonUtils.serializeJsonPayload(schema);
+        assertTrue(json.contains("\"minimum\" : -3"));
+        // The statistics survive a round trip through JSON
+        Schema restored = Schema.create(json);
+        assertEquals(-3L,restored.getProperty("a").getItems().getAnyOf().get(0).getMinimum());
+        assertEquals(Long.valueOf(4),restored.getProperty("a").getItems().getAnyOf().get(1).getProperty("b").getMaxLength());
+        assertEquals(Long.valueOf(1),restored.getProperty("d").getNullCount());
+        assertEquals(2.5,restored.getProperty("c").getMaximum());
+        assertEquals(json,new ExonSchemaWriter().writeToString(schema));
+
+        // The streaming walker gets the same statistics, with or without examples
+        ExonStreamWalker streamWalker = new ExonStreamWalker();
+        streamWalker.setValueStatistics(true);
+        assertEquals(json,ExonUtils.serializeJsonPayload(streamWalker.analyze(data.getBytes("UTF-8"),"foo","bar")));
+        streamWalker.setExamplesPolicy(ExamplesPolicy.NONE);
+        assertEquals(-3L,streamWalker.analyze(data.getBytes("UTF-8"),"foo","bar").getProperty("a").getItems().getAnyOf().get(0).getMinimum());
+
+        streamWalker.setExamplesPolicy(ExamplesPolicy.ALL);
+        assertEquals(ExonUtils.serializeJsonPayload(walker.analyze(ExonUtils.deserializeJsonPayload(SPOTIFY),"foo","bar")),
+                ExonUtils.serializeJsonPayload(streamWalker.analyze(SPOTIFY,"foo","bar")));
+    }
+
+    @Test
+    public void testFormats() throws Exception {
+        ValueStatistics statistics = ValueStatistics.of("2018-07-30T10:15:30Z");
+        assertEquals("date-time",statistics.getFormat());
+        statistics.addString("x2018-07-30T10:15:30.5+02:00".toCharArray(),1,27);
+        assertEquals("date-time",statistics.getFormat());
+        // The format is only there as long as every string has it
+        assertNull(ValueStatistics.merge(statistics,ValueStatistics.of("192.168.0.1")).getFormat());
+        statistics.add("yesterday");
+        assertNull(statistics.getFormat());
+        statistics.add("2018-07-30T10:15:30Z");
+        assertNull(statistics.getFormat());
+        // Values that are not strings don't count
+        ValueStatistics ips = ValueStatistics.of("10.0.0.1");
+        ips.add((Object) null);
+        ips.add(3);
+        assertEquals("ipv4",ips.getFormat());
+        assertNull(new ValueStatistics().getFormat());
+        assertNull(ValueStatistics.of(3).getFormat());
+
+        ExonWalker walker = new ExonWalker();
+        walker.setValueStatistics(true);
+        Schema schema = walker.analyze(ExonUtils.deserializeJsonPayload(SPOTIFY),"foo","bar");
+        Property album = schema.getProperty("tracks").getProperty("items").getItems().getProperty("album");
+        assertEquals("uri",album.getProperty("uri").getFormat());
+        assertEquals("uri",album.getProperty("href").getFormat());
+        assertNull(album.getProperty("name").getFormat());
+        final String json = ExonUtils.serializeJsonPayload(schema);
+        assertTrue(json.contains("\"format\" : \"uri\""));
+        assertEquals(json,new ExonSchemaWriter().writeToString(schema));
+        ExonStreamWalker streamWalker = new ExonStreamWalker();
+        streamWalker.setValueStatistics(true);
+        assertEquals(json,ExonUtils.serializeJsonPayload(streamWalker.analyze(SPOTIFY,"foo","bar")));
+
+        // Strings read from a schema without a format have none, even when merged with strings that have one
+        Schema restored = Schema.create(json);
+        Property restoredAlbum = restored.getProperty("tracks").getProperty("items").getItems().getProperty("album");
+        assertEquals("uri",restoredAlbum.getProperty("uri").getFormat());
+        assertNull(restoredAlbum.getProperty("name").getFormat());
+        Property url = new Property("url",ExonUtils.SCHEMA_TYPE_STRING,"");
+        url.setStatistics(ValueStatistics.of("http://example.com"));
+        assertEquals("uri",url.getFormat());
+        assertNull(ExonUtils.merge(restoredAlbum.getProperty("name"),url).getFormat());
+    }
+
+    @Test
+    public void testMergers() throws Exception {
+        ExonWalker walker = new ExonWalker();
+        walker.setValueStatistics(true);
+        Schema first = walker.analyze(ExonUtils.deserializeJsonPayload("{\"a\":1,\"b\":\"x\"}"),"foo","bar");
+        Schema second = walker.analyze(ExonUtils.deserializeJsonPayload("{\"a\":9,\"b\":\"xyz\"}"),"foo","bar");
+
+        for(Property merged : Arrays.asList(ExonUtils.merge(first,second),
+                                            ExonUtils.merge(Arrays.asList(first,second),ExamplesPolicy.ALL),
+                                            new ExonSchemaMerger().merge(first,second))) {
+            assertEquals(1L,merged.getProperty("a").getMinimum());
+            assertEquals(9L,merged.getProperty("a").getMaximum());
+            assertEquals(Long.valueOf(3),merged.getProperty("b").getMaxLength());
+        }
+        // The merged properties are untouched
+        assertEquals(1L,first.getProperty("a").getMaximum());
+
+        ExonAccumulator accumulator = new ExonAccumulator(walker,"foo","bar");
+        accumulator.add(ExonUtils.deserializeJsonPayload("{\"a\":1,\"b\":\"x\"}"));
+        accumulator.add(ExonUtils.deserializeJsonPayload("{\"a\":-4,\"b\":null}"));
+        Schema snapshot = accumulator.snapshot();
+        assertEquals(-4L,snapshot.getProperty("a").getMinimum());
+        assertEquals(Long.valueOf(2),snapshot.getProperty("a").getIntegerCount());
+        assertEquals(Long.valueOf(1),snapshot.getProperty("b").getNullCount());
+        assertEquals(Long.valueOf(1),snapshot.getProperty("b").getMinLength());
+    }
+}